@@ -23,6 +23,8 @@ import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.protobuf.MessageLite
 import org.jetbrains.kotlin.serialization.deserialization.getClassId
 
+private const val CONSTRUCTOR_NAME = "<init>"
+
 class ChangesCollector {
     private val removedMembers = hashMapOf<FqName, MutableSet<String>>()
     private val changedMembers = hashMapOf<FqName, MutableSet<String>>()
@@ -118,6 +120,32 @@ class ChangesCollector {
         }
     }
 
+    /**
+     * Collects the changes of a class or a package part from the fingerprints of its old and new protos, without comparing the protos.
+     * Returns `false` if the declaration itself has changed, then the protos should be compared with [collectProtoChanges].
+     */
+    fun collectProtoChanges(oldFingerprint: AbiFingerprint, newFingerprint: AbiFingerprint, newData: ProtoData): Boolean {
+        if (oldFingerprint.isPackageFacade != newFingerprint.isPackageFacade ||
+            oldFingerprint.declarationHash != newFingerprint.declarationHash
+        ) return false
+
+        val changedMembersNames = oldFingerprint.changedMemberNames(newFingerprint)
+        when (newData) {
+            is ClassProtoData -> {
+                // Constructors affect the class itself, like in DifferenceCalculatorForClass
+                if (CONSTRUCTOR_NAME in changedMembersNames) {
+                    collectSignature(newData, areSubclassesAffected = false)
+                }
+                val fqName = newData.nameResolver.getClassId(newData.proto.fqName).asSingleFqName()
+                collectChangedMembers(fqName, changedMembersNames - CONSTRUCTOR_NAME)
+            }
+            is PackagePartProtoData -> {
+                collectChangedMembers(newData.packageFqName, changedMembersNames)
+            }
+        }
+        return true
+    }
+
     private fun <T> T.getNonPrivateNames(nameResolver: NameResolver, vararg members: T.() -> List<MessageLite>): Set<String> =
             members.flatMap { this.it().filterNot { it.isPrivate }.names(nameResolver) }.toSet()
 
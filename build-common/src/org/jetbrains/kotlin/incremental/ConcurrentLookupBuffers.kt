@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import org.jetbrains.kotlin.incremental.components.LookupInfo
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import java.util.concurrent.ConcurrentLinkedQueue
+
+/**
+ * Lookups recorded by lookup trackers, possibly from several threads.
+ *
+ * Every thread records into its own buffer, which is locked only by that thread and by [drain], so the locks are never contended
+ * during the analysis. Lookups are deduplicated and their strings are interned within a buffer,
+ * so a buffer grows only with distinct lookups of its thread.
+ *
+ * If [requiresPosition] is true, [LookupInfo]s are kept instead of names.
+ */
+class ConcurrentLookupBuffers(private val requiresPosition: Boolean) {
+    private class Buffer {
+        private val strings = HashMap<String, String>()
+
+        // file path -> scope fq-name -> names or LookupInfos
+        var lookups = HashMap<String, HashMap<String, HashSet<Any>>>()
+
+        fun intern(string: String): String = strings.getOrPut(string) { string }
+
+        fun takeLookups(): Map<String, Map<String, Set<Any>>> {
+            val result = lookups
+            lookups = HashMap()
+            strings.clear()
+            return result
+        }
+    }
+
+    private val buffers = ConcurrentLinkedQueue<Buffer>()
+
+    private val threadBuffer = object : ThreadLocal<Buffer>() {
+        override fun initialValue(): Buffer = Buffer().also { buffers.add(it) }
+    }
+
+    fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
+        val buffer = threadBuffer.get()
+        synchronized(buffer) {
+            val lookupsByScope = buffer.lookups.getOrPut(buffer.intern(filePath)) { HashMap() }
+            val lookups = lookupsByScope.getOrPut(buffer.intern(scopeFqName)) { HashSet() }
+            lookups.add(
+                if (requiresPosition) LookupInfo(filePath, position, scopeFqName, scopeKind, name) else buffer.intern(name)
+            )
+        }
+    }
+
+    /**
+     * Removes the recorded lookups from the buffers and passes them to [consumer] grouped by file and scope.
+     * The same file and scope may be passed several times, once per buffer.
+     */
+    fun drain(consumer: (filePath: String, scopeFqName: String, lookups: Set<Any>) -> Unit) {
+        for (buffer in buffers) {
+            val lookups = synchronized(buffer) { buffer.takeLookups() }
+            for ((filePath, lookupsByScope) in lookups) {
+                for ((scopeFqName, scopeLookups) in lookupsByScope) {
+                    consumer(filePath, scopeFqName, scopeLookups)
+                }
+            }
+        }
+    }
+}
+
+/**
+ * Returns true for scopes of the Kotlin standard library and of the JDK.
+ * Declarations in these packages can't be changed by a compiled module unless it's compiled with `-Xallow-kotlin-package`,
+ * so lookups into them never make a source dirty and can be skipped (see [SKIP_PLATFORM_LOOKUPS_PROPERTY]).
+ */
+fun isPlatformLookupScope(scopeFqName: String): Boolean =
+    isInPackage(scopeFqName, "kotlin") || isInPackage(scopeFqName, "java")
+
+private fun isInPackage(fqName: String, packageName: String): Boolean =
+    fqName.startsWith(packageName) && (fqName.length == packageName.length || fqName[packageName.length] == '.')
@@ -51,6 +51,7 @@ open class IncrementalJvmCache(
 ), IncrementalCache {
     companion object {
         private val PROTO_MAP = "proto"
+        private val ABI_FINGERPRINTS_MAP = "abi-fingerprints"
         private val CONSTANTS_MAP = "constants"
         private val PACKAGE_PARTS = "package-parts"
         private val MULTIFILE_CLASS_FACADES = "multifile-class-facades"
@@ -66,6 +67,7 @@ open class IncrementalJvmCache(
     override val dirtyOutputClassesMap = registerMap(DirtyClassesJvmNameMap(DIRTY_OUTPUT_CLASSES.storageFile))
 
     private val protoMap = registerMap(ProtoMap(PROTO_MAP.storageFile))
+    private val abiFingerprintsMap = registerMap(AbiFingerprintsMap(ABI_FINGERPRINTS_MAP.storageFile))
     private val constantsMap = registerMap(ConstantsMap(CONSTANTS_MAP.storageFile))
     private val packagePartMap = registerMap(PackagePartMap(PACKAGE_PARTS.storageFile))
     private val multifileFacadeToParts = registerMap(MultifileClassFacadeMap(MULTIFILE_CLASS_FACADES.storageFile))
@@ -293,10 +295,20 @@ open class IncrementalJvmCache(
                 BitEncoding.decodeBytes(header.data!!),
                 header.strings!!
             )
+            // Recompiled classes usually have exactly the same metadata, in this case there's no need to decode and compare it
+            if (oldData != null && oldData.hasSameContent(newData)) return
+
             storage[key] = newData
 
             val packageFqName = kotlinClass.className.packageFqName
-            changesCollector.collectProtoChanges(oldData?.toProtoData(packageFqName), newData.toProtoData(packageFqName))
+            val newProtoData = newData.toProtoData(packageFqName)
+            val newFingerprint = newProtoData.abiFingerprint()
+            val oldFingerprint = abiFingerprintsMap[kotlinClass.className]
+            abiFingerprintsMap[kotlinClass.className] = newFingerprint
+            // The old proto is decoded and compared only if the fingerprints can't tell which members have changed
+            if (oldData != null && oldFingerprint != null && changesCollector.collectProtoChanges(oldFingerprint, newFingerprint, newProtoData)) return
+
+            changesCollector.collectProtoChanges(oldData?.toProtoData(packageFqName), newProtoData)
         }
 
         operator fun contains(className: JvmClassName): Boolean =
@@ -305,6 +317,9 @@ open class IncrementalJvmCache(
         operator fun get(className: JvmClassName): ProtoMapValue? =
             storage[className.internalName]
 
+        private fun ProtoMapValue.hasSameContent(other: ProtoMapValue): Boolean =
+            isPackageFacade == other.isPackageFacade && bytes.contentEquals(other.bytes) && strings.contentEquals(other.strings)
+
         fun remove(className: JvmClassName, changesCollector: ChangesCollector) {
             val key = className.internalName
             val oldValue = storage[key] ?: return
@@ -312,6 +327,7 @@ open class IncrementalJvmCache(
                 changesCollector.collectProtoChanges(oldData = oldValue.toProtoData(className.packageFqName), newData = null)
             }
             storage.remove(key)
+            abiFingerprintsMap.remove(className)
         }
 
         override fun dumpValue(value: ProtoMapValue): String {
@@ -319,6 +335,25 @@ open class IncrementalJvmCache(
         }
     }
 
+    private inner class AbiFingerprintsMap(storageFile: File) : BasicStringMap<AbiFingerprint>(storageFile, AbiFingerprintExternalizer) {
+        operator fun get(className: JvmClassName): AbiFingerprint? =
+            storage[className.internalName]
+
+        operator fun set(className: JvmClassName, fingerprint: AbiFingerprint) {
+            storage[className.internalName] = fingerprint
+        }
+
+        fun remove(className: JvmClassName) {
+            storage.remove(className.internalName)
+        }
+
+        override fun dumpValue(value: AbiFingerprint): String =
+            (if (value.isPackageFacade) "1" else "0") + java.lang.Long.toHexString(value.declarationHash) +
+                    value.memberHashes.entries.sortedBy { it.key }.joinToString(prefix = "{", postfix = "}") { (name, hash) ->
+                        name + "=" + java.lang.Long.toHexString(hash)
+                    }
+    }
+
     private inner class JavaSourcesProtoMap(storageFile: File) :
         BasicStringMap<SerializedJavaClass>(storageFile, JavaClassProtoMapValueExternalizer) {
         fun process(jvmClassName: JvmClassName, newData: SerializedJavaClass, changesCollector: ChangesCollector) {
@@ -209,21 +209,53 @@ open class LookupStorage(
     }
 }
 
-class LookupTrackerImpl(private val delegate: LookupTracker) : LookupTracker {
-    val lookups = MultiMap.createSet<LookupSymbol, String>()
-    val pathInterner = StringInterner()
+/**
+ * Lookup tracker of incremental compilation. It can be called from several threads; if so, [delegate] should be thread-safe too.
+ * Lookups are buffered per thread and are merged into [lookups] when they are requested.
+ *
+ * If [skipPlatformScopes] is true, lookups into the standard library and the JDK are ignored (see [isPlatformLookupScope]).
+ */
+class LookupTrackerImpl(
+    private val delegate: LookupTracker,
+    private val skipPlatformScopes: Boolean = false
+) : LookupTracker {
+    private val buffers = ConcurrentLookupBuffers(requiresPosition = false)
+    private val mergedLookups = MultiMap.createSet<LookupSymbol, String>()
+    private val mergedPathInterner = StringInterner()
     private val interner = StringInterner()
 
+    val lookups: MultiMap<LookupSymbol, String>
+        get() = synchronized(this) {
+            mergeBuffers()
+            mergedLookups
+        }
+
+    val pathInterner: StringInterner
+        get() = synchronized(this) {
+            mergeBuffers()
+            mergedPathInterner
+        }
+
     override val requiresPosition: Boolean
         get() = delegate.requiresPosition
 
     override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
-        val internedScopeFqName = interner.intern(scopeFqName)
-        val internedName = interner.intern(name)
-        val internedFilePath = pathInterner.intern(filePath)
+        if (skipPlatformScopes && isPlatformLookupScope(scopeFqName)) return
 
-        lookups.putValue(LookupSymbol(internedName, internedScopeFqName), internedFilePath)
-        delegate.record(internedFilePath, position, internedScopeFqName, scopeKind, internedName)
+        buffers.record(filePath, position, scopeFqName, scopeKind, name)
+        if (delegate !== LookupTracker.DO_NOTHING) {
+            delegate.record(filePath, position, scopeFqName, scopeKind, name)
+        }
+    }
+
+    private fun mergeBuffers() {
+        buffers.drain { filePath, scopeFqName, names ->
+            val internedFilePath = mergedPathInterner.intern(filePath)
+            val internedScopeFqName = interner.intern(scopeFqName)
+            for (name in names) {
+                mergedLookups.putValue(LookupSymbol(interner.intern(name as String), internedScopeFqName), internedFilePath)
+            }
+        }
     }
 }
 
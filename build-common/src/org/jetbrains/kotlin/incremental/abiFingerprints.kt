@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import com.intellij.util.io.DataExternalizer
+import com.intellij.util.io.IOUtil
+import org.jetbrains.kotlin.metadata.deserialization.NameResolver
+import org.jetbrains.kotlin.metadata.jvm.JvmProtoBuf
+import org.jetbrains.kotlin.protobuf.MessageLite
+import java.io.DataInput
+import java.io.DataOutput
+
+/**
+ * Hashes of the ABI of a class or a package part, which are stored next to its proto
+ * so that a recompiled class doesn't have to be compared with the old proto member by member.
+ *
+ * [declarationHash] covers everything except the members, and [memberHashes] maps the name of each non-private member
+ * (`<init>` for constructors) to the hash of all members with this name. Private members and local variables are not hashed.
+ * The hashes don't depend on the order of the string table, so they can be compared across compilations.
+ */
+data class AbiFingerprint(val isPackageFacade: Boolean, val declarationHash: Long, val memberHashes: Map<String, Long>) {
+    fun changedMemberNames(other: AbiFingerprint): Set<String> =
+        (memberHashes.keys + other.memberHashes.keys).filterTo(hashSetOf()) { memberHashes[it] != other.memberHashes[it] }
+}
+
+fun ProtoData.abiFingerprint(): AbiFingerprint =
+    when (this) {
+        is ClassProtoData -> {
+            val declaration = proto.toBuilder()
+                .clearConstructor()
+                .clearFunction()
+                .clearProperty()
+                .clearTypeAlias()
+                .clearExtension(JvmProtoBuf.classLocalVariable)
+                .build()
+            AbiFingerprint(
+                isPackageFacade = false,
+                declarationHash = nameResolver.fingerprint { strings, fqNames -> declaration.hashCode(strings, fqNames) },
+                memberHashes = nameResolver.memberHashes(proto.constructorList + proto.functionList + proto.propertyList + proto.typeAliasList)
+            )
+        }
+        is PackagePartProtoData -> {
+            val declaration = proto.toBuilder()
+                .clearFunction()
+                .clearProperty()
+                .clearTypeAlias()
+                .clearExtension(JvmProtoBuf.packageLocalVariable)
+                .build()
+            AbiFingerprint(
+                isPackageFacade = true,
+                declarationHash = nameResolver.fingerprint { strings, fqNames -> declaration.hashCode(strings, fqNames) },
+                memberHashes = nameResolver.memberHashes(proto.functionList + proto.propertyList + proto.typeAliasList)
+            )
+        }
+    }
+
+private fun NameResolver.memberHashes(members: List<MessageLite>): Map<String, Long> {
+    val result = hashMapOf<String, Long>()
+    for (member in members) {
+        if (member.isPrivate) continue
+
+        // A sum doesn't depend on the order of the overloads
+        val hash = fingerprint { strings, fqNames -> member.getHashCode(strings, fqNames) }
+        val name = member.name(this)
+        result[name] = (result[name] ?: 0L) + hash
+    }
+    return result
+}
+
+/**
+ * Combines two hashes of a message, which use different hashes of the strings it refers to, into one 64-bit hash.
+ */
+private inline fun NameResolver.fingerprint(hashCode: (strings: (Int) -> Int, fqNames: (Int) -> Int) -> Int): Long {
+    val high = hashCode({ getString(it).hashCode() }, { getQualifiedClassName(it).hashCode() })
+    val low = hashCode({ getString(it).fnvHashCode() }, { getQualifiedClassName(it).fnvHashCode() })
+    return (high.toLong() shl 32) or (low.toLong() and 0xFFFFFFFFL)
+}
+
+private fun String.fnvHashCode(): Int {
+    var hash = 0x811C9DC5.toInt()
+    for (char in this) {
+        hash = (hash xor char.toInt()) * 0x01000193
+    }
+    return hash
+}
+
+object AbiFingerprintExternalizer : DataExternalizer<AbiFingerprint> {
+    override fun save(output: DataOutput, value: AbiFingerprint) {
+        output.writeBoolean(value.isPackageFacade)
+        output.writeLong(value.declarationHash)
+        output.writeInt(value.memberHashes.size)
+        for ((name, hash) in value.memberHashes) {
+            IOUtil.writeString(name, output)
+            output.writeLong(hash)
+        }
+    }
+
+    override fun read(input: DataInput): AbiFingerprint {
+        val isPackageFacade = input.readBoolean()
+        val declarationHash = input.readLong()
+        val size = input.readInt()
+        val memberHashes = HashMap<String, Long>(size)
+        repeat(size) {
+            memberHashes[IOUtil.readString(input)] = input.readLong()
+        }
+        return AbiFingerprint(isPackageFacade, declarationHash, memberHashes)
+    }
+}
@@ -36,6 +36,10 @@ import kotlin.collections.HashSet
 
 const val DELETE_MODULE_FILE_PROPERTY = "kotlin.delete.module.file.after.build"
 
+// lookups into the standard library and the JDK are not recorded by incremental compilation (see isPlatformLookupScope);
+// must not be enabled if a module of the project is compiled with -Xallow-kotlin-package
+const val SKIP_PLATFORM_LOOKUPS_PROPERTY = "kotlin.incremental.skip.platform.lookups"
+
 fun makeModuleFile(
         name: String,
         isTest: Boolean,
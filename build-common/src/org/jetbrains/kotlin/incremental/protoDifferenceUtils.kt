@@ -58,7 +58,7 @@ internal val MessageLite.isPrivate: Boolean
                 else -> error("Unknown message: $this")
             }))
 
-private fun MessageLite.name(nameResolver: NameResolver): String {
+internal fun MessageLite.name(nameResolver: NameResolver): String {
     return when (this) {
         is ProtoBuf.Constructor -> "<init>"
         is ProtoBuf.Function -> nameResolver.getString(name)
@@ -68,6 +68,16 @@ private fun MessageLite.name(nameResolver: NameResolver): String {
     }
 }
 
+internal fun MessageLite.getHashCode(stringIndexes: (Int) -> Int, fqNameIndexes: (Int) -> Int): Int {
+    return when (this) {
+        is ProtoBuf.Constructor -> hashCode(stringIndexes, fqNameIndexes)
+        is ProtoBuf.Function -> hashCode(stringIndexes, fqNameIndexes)
+        is ProtoBuf.Property -> hashCode(stringIndexes, fqNameIndexes)
+        is ProtoBuf.TypeAlias -> hashCode(stringIndexes, fqNameIndexes)
+        else -> error("Unknown message: $this")
+    }
+}
+
 internal fun List<MessageLite>.names(nameResolver: NameResolver): List<String> = map { it.name(nameResolver) }
 
 abstract class DifferenceCalculator {
@@ -91,6 +101,8 @@ abstract class DifferenceCalculator {
             val differentMembers = when {
                 newMembers == null -> oldMembers!!.names(compareObject.oldNameResolver)
                 oldMembers == null -> newMembers.names(compareObject.newNameResolver)
+                // usually a hash identifies a single member in both lists, so there's nothing to match
+                oldMembers.size == 1 && newMembers.size == 1 -> calcDifferenceForSingleMembers(oldMembers[0], newMembers[0])
                 else -> calcDifferenceForEqualHashes(oldMembers, newMembers)
             }
             result.addAll(differentMembers)
@@ -99,6 +111,14 @@ abstract class DifferenceCalculator {
         return result
     }
 
+    private fun calcDifferenceForSingleMembers(oldMember: MessageLite, newMember: MessageLite): Collection<String> =
+        if (compareObject.checkEquals(oldMember, newMember)) {
+            emptyList()
+        }
+        else {
+            setOf(oldMember.name(compareObject.oldNameResolver), newMember.name(compareObject.newNameResolver))
+        }
+
     private fun calcDifferenceForEqualHashes(
             oldList: List<MessageLite>,
             newList: List<MessageLite>
@@ -132,16 +152,6 @@ abstract class DifferenceCalculator {
         return oldNames.union(newNames) - oldNames.intersect(newNames)
     }
 
-    private fun MessageLite.getHashCode(stringIndexes: (Int) -> Int, fqNameIndexes: (Int) -> Int): Int {
-        return when (this) {
-            is ProtoBuf.Constructor -> hashCode(stringIndexes, fqNameIndexes)
-            is ProtoBuf.Function -> hashCode(stringIndexes, fqNameIndexes)
-            is ProtoBuf.Property -> hashCode(stringIndexes, fqNameIndexes)
-            is ProtoBuf.TypeAlias -> hashCode(stringIndexes, fqNameIndexes)
-            else -> error("Unknown message: $this")
-        }
-    }
-
     private fun ProtoCompareGenerated.checkEquals(old: MessageLite, new: MessageLite): Boolean {
         return when {
             old is ProtoBuf.Constructor && new is ProtoBuf.Constructor -> checkEquals(old, new)
@@ -65,11 +65,30 @@ abstract class TransformationMethodVisitor(
 
         super.visitEnd()
 
+        onMethodEnd()
+    }
+
+    /**
+     * Transforms the visited method and passes it to the delegate.
+     * Subclasses may postpone it by calling [transformMethod] and [emitMethod] later.
+     */
+    protected open fun onMethodEnd() {
+        transformMethod()
+        emitMethod()
+    }
+
+    fun transformMethod() {
         try {
             if (shouldBeTransformed(methodNode)) {
                 performTransformations(methodNode)
             }
+        } catch (t: Throwable) {
+            throw CompilationException("Couldn't transform method node:\n" + methodNode.nodeText, t, null)
+        }
+    }
 
+    fun emitMethod() {
+        try {
             methodNode.accept(EndIgnoringMethodVisitorDecorator(Opcodes.API_VERSION, delegate))
 
 
@@ -531,19 +531,23 @@ class CoroutineTransformerMethodVisitor(
 
     private fun spillVariables(suspensionPoints: List<SuspensionPoint>, methodNode: MethodNode): List<List<SpilledVariableDescriptor>> {
         val instructions = methodNode.instructions
-        val frames = performRefinedTypeAnalysis(methodNode, containingClassInternalName)
+        // Both analyses below need the same basic frames, so they are computed once for the whole method
+        val basicFrames = MethodTransformer.analyze(containingClassInternalName, methodNode, OptimizationBasicInterpreter())
+        val frames = performRefinedTypeAnalysis(methodNode, containingClassInternalName, basicFrames)
         fun AbstractInsnNode.index() = instructions.indexOf(this)
 
         // We postpone these actions because they change instruction indices that we use when obtaining frames
         val postponedActions = mutableListOf<() -> Unit>()
         val maxVarsCountByType = mutableMapOf<Type, Int>()
-        val livenessFrames = analyzeLiveness(methodNode)
+        val livenessFrames = analyzeLiveness(methodNode, basicFrames)
         val spilledToVariableMapping = arrayListOf<List<SpilledVariableDescriptor>>()
+        val localVariablesBySlot = LocalVariablesBySlot(methodNode)
+        val nonSpilledSlots = setOf(continuationIndex, dataIndex, exceptionIndex)
 
         for (suspension in suspensionPoints) {
             val suspensionCallBegin = suspension.suspensionCallBegin
 
-            assert(frames[suspension.suspensionCallEnd.next.index()]?.stackSize == 1) {
+            assert(basicFrames[suspension.suspensionCallEnd.next.index()]?.stackSize == 1) {
                 "Stack should be spilled before suspension call"
             }
 
@@ -575,7 +579,7 @@ class CoroutineTransformerMethodVisitor(
             // k + 2 - exception
             val variablesToSpill =
                 (0 until localsCount)
-                    .filterNot { it in setOf(continuationIndex, dataIndex, exceptionIndex) }
+                    .filterNot { it in nonSpilledSlots }
                     .map { Pair(it, frame.getLocal(it)) }
                     .filter { (index, value) ->
                         (index == 0 && needDispatchReceiver && isForNamedFunction) ||
@@ -602,7 +606,7 @@ class CoroutineTransformerMethodVisitor(
                 varsCountByType[normalizedType] = indexBySort
 
                 val fieldName = normalizedType.fieldNameForVar(indexBySort)
-                localVariableName(methodNode, index, suspension.suspensionCallEnd.next.index())
+                localVariablesBySlot.findName(index, suspension.suspensionCallEnd.next.index())
                     ?.let { spilledToVariable.add(SpilledVariableDescriptor(fieldName, it)) }
 
                 postponedActions.add {
@@ -647,16 +651,26 @@ class CoroutineTransformerMethodVisitor(
         return spilledToVariableMapping
     }
 
-    private fun localVariableName(
-        methodNode: MethodNode,
-        index: Int,
-        suspensionCallIndex: Int
-    ): String? {
-        val variable = methodNode.localVariables.find {
-            index == it.index && methodNode.instructions.indexOf(it.start) <= suspensionCallIndex
-                    && suspensionCallIndex < methodNode.instructions.indexOf(it.end)
+    /**
+     * Local variables grouped by their slots, so finding a variable at a suspension point doesn't iterate over the whole table
+     * (which is long in functions with many suspension points).
+     */
+    private class LocalVariablesBySlot(methodNode: MethodNode) {
+        private class Range(val name: String, val startIndex: Int, val endIndex: Int)
+
+        private val rangesBySlot = hashMapOf<Int, MutableList<Range>>()
+
+        init {
+            for (variable in methodNode.localVariables) {
+                val range = Range(
+                    variable.name, methodNode.instructions.indexOf(variable.start), methodNode.instructions.indexOf(variable.end)
+                )
+                rangesBySlot.getOrPut(variable.index) { arrayListOf() }.add(range)
+            }
         }
-        return variable?.name
+
+        fun findName(slot: Int, suspensionCallIndex: Int): String? =
+            rangesBySlot[slot]?.find { it.startIndex <= suspensionCallIndex && suspensionCallIndex < it.endIndex }?.name
     }
 
     /**
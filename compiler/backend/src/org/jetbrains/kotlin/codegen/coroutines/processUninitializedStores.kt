@@ -87,10 +87,10 @@ class UninitializedStoresProcessor(
     fun run() {
         val interpreter = UninitializedNewValueMarkerInterpreter(methodNode.instructions)
 
-        val frames = CustomFramesMethodAnalyzer(
-                "fake", methodNode, interpreter,
-                this::UninitializedNewValueFrame
-        ).analyze()
+        val frames = CustomFramesMethodAnalyzer("fake", methodNode, interpreter) { nLocals, nStack ->
+            newPooledFrame(UninitializedNewValueFrame::class.java, nLocals, nStack) { UninitializedNewValueFrame(nLocals, nStack) }
+                .also { it.processor = this }
+        }.analyze()
 
         interpreter.analyzePopInstructions(frames)
 
@@ -150,9 +150,12 @@ class UninitializedStoresProcessor(
         }
     }
 
-    private inner class UninitializedNewValueFrame(nLocals: Int, nStack: Int) : Frame<BasicValue>(nLocals, nStack) {
+    // Frames are taken from the FramePool of the current thread, so a frame is bound to its processor when it's taken
+    private class UninitializedNewValueFrame(nLocals: Int, nStack: Int) : Frame<BasicValue>(nLocals, nStack) {
+        lateinit var processor: UninitializedStoresProcessor
+
         override fun execute(insn: AbstractInsnNode, interpreter: Interpreter<BasicValue>?) {
-            val replaceTopValueWithInitialized = getUninitializedValueForConstructorCall(insn) != null
+            val replaceTopValueWithInitialized = with(processor) { getUninitializedValueForConstructorCall(insn) } != null
 
             super.execute(insn, interpreter)
 
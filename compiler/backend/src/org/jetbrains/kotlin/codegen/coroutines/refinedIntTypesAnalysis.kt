@@ -34,9 +34,12 @@ import java.util.*
 // But it seems like Dalvik does not follow it, and spilling boolean value into an 'int' field fails with VerifyError on Android 4,
 // so this function calculates refined frames' markup.
 // Note that type of some values is only possible to determine by their usages (e.g. ICONST_1, BALOAD both may push boolean or byte on stack)
-internal fun performRefinedTypeAnalysis(methodNode: MethodNode, thisName: String): Array<out Frame<out BasicValue>?> {
+internal fun performRefinedTypeAnalysis(
+    methodNode: MethodNode,
+    thisName: String,
+    basicFrames: Array<Frame<BasicValue>?> = MethodTransformer.analyze(thisName, methodNode, OptimizationBasicInterpreter())
+): RefinedFrames {
     val insnList = methodNode.instructions
-    val basicFrames = MethodTransformer.analyze(thisName, methodNode, OptimizationBasicInterpreter())
     val sourceValueFrames = MethodTransformer.analyze(thisName, methodNode, MySourceInterpreter())
 
     val expectedTypeAndSourcesByInsnIndex: Array<Pair<Type, List<SourceValue>>?> = arrayOfNulls(insnList.size())
@@ -123,6 +126,9 @@ internal fun performRefinedTypeAnalysis(methodNode: MethodNode, thisName: String
         saveExpectedTypeForVarStore(insn, sourceValueFrame)
     }
 
+    // Nothing to refine, e.g. there are no boolean, char, byte or short variables
+    if (expectedTypeAndSourcesByInsnIndex.all { it == null }) return RefinedFrames(basicFrames, null)
+
     val refinedVarFrames = analyze(methodNode, object : BackwardAnalysisInterpreter<VarExpectedTypeFrame> {
         override fun newFrame(maxLocals: Int): VarExpectedTypeFrame = VarExpectedTypeFrame(maxLocals)
 
@@ -143,11 +149,23 @@ internal fun performRefinedTypeAnalysis(methodNode: MethodNode, thisName: String
         }
     })
 
-    return Array(basicFrames.size) {
-        insnIndex ->
-        val current = Frame(basicFrames[insnIndex] ?: return@Array null)
+    return RefinedFrames(basicFrames, refinedVarFrames.map { it.expectedTypeByVarIndex })
+}
 
-        refinedVarFrames[insnIndex].expectedTypeByVarIndex.withIndex().filter { it.value != null }.forEach {
+/**
+ * Frames are refined only when they are requested: copies of all frames of a long method would take as much memory as the frames themselves,
+ * while only frames at suspension points are needed.
+ */
+internal class RefinedFrames(
+    private val basicFrames: Array<Frame<BasicValue>?>,
+    private val expectedTypesByInsnIndex: List<Array<Type?>>?
+) {
+    operator fun get(insnIndex: Int): Frame<BasicValue>? {
+        val basicFrame = basicFrames[insnIndex] ?: return null
+        val expectedTypeByVarIndex = expectedTypesByInsnIndex?.get(insnIndex) ?: return basicFrame
+
+        val current = Frame(basicFrame)
+        expectedTypeByVarIndex.withIndex().filter { it.value != null }.forEach {
             assert(current.getLocal(it.index)?.type?.sort in ALL_INT_SORTS) {
                 "int type expected, but ${current.getLocal(it.index)?.type} was found in basic frames"
             }
@@ -155,7 +173,7 @@ internal fun performRefinedTypeAnalysis(methodNode: MethodNode, thisName: String
             current.setLocal(it.index, StrictBasicValue(it.value))
         }
 
-        current
+        return current
     }
 }
 
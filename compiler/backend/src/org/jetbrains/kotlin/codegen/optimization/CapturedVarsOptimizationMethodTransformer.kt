@@ -145,13 +145,23 @@ class CapturedVarsOptimizationMethodTransformer : MethodTransformer() {
         }
 
         private fun analyze() {
-            frames = MethodTransformer.analyze(internalClassName, methodNode, Interpreter())
+            frames =
+                if (OptimizationMethodVisitor.canBeOptimized(methodNode))
+                    MethodTransformer.analyze(internalClassName, methodNode, Interpreter())
+                else
+                    analyzeWithSparseFrames(internalClassName, methodNode, Interpreter(), isFrameUsed())
             trackPops()
             assignLocalVars()
 
             refValues.removeAll { !it.canRewrite() }
         }
 
+        // Frames are read only at these instructions, see trackPops and assignLocalVars
+        private fun isFrameUsed(): (AbstractInsnNode) -> Boolean {
+            val localVariableStarts = methodNode.localVariables.mapTo(HashSet<AbstractInsnNode>()) { it.start }
+            return { insn -> insn.opcode == Opcodes.POP || insn.opcode == Opcodes.POP2 || insn in localVariableStarts }
+        }
+
         private fun trackPops() {
             for (i in insns.indices) {
                 val frame = frames[i] ?: continue
@@ -24,13 +24,33 @@ import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 import org.jetbrains.org.objectweb.asm.MethodVisitor;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 public class OptimizationClassBuilder extends DelegatingClassBuilder {
     private final ClassBuilder delegate;
     private final GenerationState generationState;
+    // If not null, the methods of the class are optimized in parallel when the class is done.
+    // Classes themselves are generated sequentially either way.
+    @Nullable
+    private final ExecutorService optimizationExecutor;
+    private final List<OptimizationMethodVisitor> postponedMethods = new ArrayList<>();
 
     public OptimizationClassBuilder(@NotNull ClassBuilder delegate, @NotNull GenerationState generationState) {
+        this(delegate, generationState, null);
+    }
+
+    public OptimizationClassBuilder(
+            @NotNull ClassBuilder delegate,
+            @NotNull GenerationState generationState,
+            @Nullable ExecutorService optimizationExecutor
+    ) {
         this.delegate = delegate;
         this.generationState = generationState;
+        this.optimizationExecutor = optimizationExecutor;
     }
 
     @NotNull
@@ -51,7 +71,67 @@ public class OptimizationClassBuilder extends DelegatingClassBuilder {
     ) {
         return new OptimizationMethodVisitor(
                 super.newMethod(origin, access, name, desc, signature, exceptions),
-                generationState, access, name, desc, signature, exceptions
+                generationState, access, name, desc, signature, exceptions,
+                optimizationExecutor != null ? postponedMethods : null
         );
     }
+
+    @Override
+    public void done() {
+        optimizePostponedMethods();
+        super.done();
+    }
+
+    /**
+     * Optimizes the methods of the class which were postponed until the class is done, and passes them to the delegate.
+     *
+     * Only optimizations run concurrently: the code generation is blocked meanwhile, so the optimizations can read the binding context,
+     * and the methods are passed to the delegate in the order they were created in, so the output doesn't depend on the scheduling.
+     */
+    void optimizePostponedMethods() {
+        if (postponedMethods.isEmpty()) return;
+
+        List<OptimizationMethodVisitor> methods = new ArrayList<>(postponedMethods);
+        postponedMethods.clear();
+
+        if (methods.size() == 1 || optimizationExecutor == null) {
+            for (OptimizationMethodVisitor method : methods) {
+                method.transformMethod();
+            }
+        }
+        else {
+            List<Future<?>> futures = new ArrayList<>(methods.size());
+            for (OptimizationMethodVisitor method : methods) {
+                futures.add(optimizationExecutor.submit(method::transformMethod));
+            }
+            awaitAll(futures);
+        }
+
+        for (OptimizationMethodVisitor method : methods) {
+            method.emitMethod();
+        }
+    }
+
+    private static void awaitAll(@NotNull List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        finally {
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
 }
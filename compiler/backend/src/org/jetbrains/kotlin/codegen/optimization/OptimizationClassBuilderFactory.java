@@ -17,22 +17,63 @@
 package org.jetbrains.kotlin.codegen.optimization;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.codegen.ClassBuilder;
 import org.jetbrains.kotlin.codegen.ClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.DelegatingClassBuilderFactory;
 import org.jetbrains.kotlin.codegen.state.GenerationState;
 import org.jetbrains.kotlin.resolve.jvm.diagnostics.JvmDeclarationOrigin;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class OptimizationClassBuilderFactory extends DelegatingClassBuilderFactory {
     private final GenerationState generationState;
+    @Nullable
+    private final ExecutorService optimizationExecutor;
 
     public OptimizationClassBuilderFactory(ClassBuilderFactory delegate, @NotNull GenerationState generationState) {
         super(delegate);
         this.generationState = generationState;
+        this.optimizationExecutor = generationState.getOptimizationThreads() > 1
+                                    ? createOptimizationExecutor(generationState.getOptimizationThreads())
+                                    : null;
     }
 
     @NotNull
     @Override
     public OptimizationClassBuilder newClassBuilder(@NotNull JvmDeclarationOrigin origin) {
-        return new OptimizationClassBuilder(getDelegate().newClassBuilder(origin), generationState);
+        return new OptimizationClassBuilder(getDelegate().newClassBuilder(origin), generationState, optimizationExecutor);
+    }
+
+    @Override
+    public byte[] asBytes(ClassBuilder builder) {
+        ((OptimizationClassBuilder) builder).optimizePostponedMethods();
+        return super.asBytes(builder);
+    }
+
+    @Override
+    public String asText(ClassBuilder builder) {
+        ((OptimizationClassBuilder) builder).optimizePostponedMethods();
+        return super.asText(builder);
+    }
+
+    @Override
+    public void close() {
+        if (optimizationExecutor != null) {
+            optimizationExecutor.shutdownNow();
+        }
+        super.close();
+    }
+
+    @NotNull
+    private static ExecutorService createOptimizationExecutor(int threadsCount) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threadsCount, runnable -> {
+            Thread thread = new Thread(runnable, "Kotlin bytecode optimization " + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 }
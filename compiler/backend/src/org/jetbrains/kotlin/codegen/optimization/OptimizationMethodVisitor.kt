@@ -20,11 +20,15 @@ import org.jetbrains.kotlin.codegen.TransformationMethodVisitor
 import org.jetbrains.kotlin.codegen.optimization.boxing.PopBackwardPropagationTransformer
 import org.jetbrains.kotlin.codegen.optimization.boxing.RedundantBoxingMethodTransformer
 import org.jetbrains.kotlin.codegen.optimization.boxing.StackPeepholeOptimizationsTransformer
+import org.jetbrains.kotlin.codegen.optimization.common.SparseFramesAnalyzer
 import org.jetbrains.kotlin.codegen.optimization.common.prepareForEmitting
+import org.jetbrains.kotlin.codegen.optimization.common.withPooledFrames
+import org.jetbrains.kotlin.codegen.optimization.common.withSharedBasicFrames
 import org.jetbrains.kotlin.codegen.optimization.nullCheck.RedundantNullCheckMethodTransformer
 import org.jetbrains.kotlin.codegen.optimization.transformer.CompositeMethodTransformer
 import org.jetbrains.kotlin.codegen.state.GenerationState
 import org.jetbrains.org.objectweb.asm.MethodVisitor
+import org.jetbrains.org.objectweb.asm.Opcodes
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 
 class OptimizationMethodVisitor(
@@ -34,7 +38,8 @@ class OptimizationMethodVisitor(
     name: String,
     desc: String,
     signature: String?,
-    exceptions: Array<String>?
+    exceptions: Array<String>?,
+    private val postponedMethods: MutableList<OptimizationMethodVisitor>? = null
 ) : TransformationMethodVisitor(delegate, access, name, desc, signature, exceptions) {
     private val constructorCallNormalizationTransformer =
         UninitializedStoresMethodTransformer(generationState.constructorCallNormalizationMode)
@@ -58,17 +63,54 @@ class OptimizationMethodVisitor(
         MethodVerifier("AFTER optimizations")
     )
 
-    override fun performTransformations(methodNode: MethodNode) {
-        normalizationMethodTransformer.transform("fake", methodNode)
-        constructorCallNormalizationTransformer.transform("fake", methodNode)
+    // Optimizations for methods too large for full frames, they analyze methods with SparseFramesAnalyzer.
+    // There is no MethodVerifier here, it would build the full frames these methods are too large for.
+    val largeMethodOptimizationTransformer = CompositeMethodTransformer(
+        CapturedVarsOptimizationMethodTransformer(),
+        RedundantBoxingMethodTransformer(generationState)
+    )
+
+    override fun onMethodEnd() {
+        // Methods of the class are optimized concurrently when the class is done, see OptimizationClassBuilder
+        if (postponedMethods != null) {
+            postponedMethods.add(this)
+        } else {
+            super.onMethodEnd()
+        }
+    }
 
-        if (canBeOptimized(methodNode) && !generationState.disableOptimization) {
-            optimizationTransformer.transform("fake", methodNode)
+    override fun performTransformations(methodNode: MethodNode) {
+        val cacheKey = if (generationState.cacheOptimizedMethods) OptimizedMethodCache.computeKey(methodNode, generationState) else null
+        val cachedMethod = cacheKey?.let(OptimizedMethodCache::get)
+        if (cachedMethod != null) {
+            methodNode.replaceBodyWith(cachedMethod)
+            return
         }
 
-        DeadCodeEliminationMethodTransformer().transform("fake", methodNode)
+        // Frames of a pass are reused by the following passes and methods, see FramePool. Passes which don't change the method,
+        // e.g. dead code elimination in methods without dead code, share frames with the following ones
+        withPooledFrames {
+            withSharedBasicFrames(methodNode) {
+                normalizationMethodTransformer.transform("fake", methodNode)
+                constructorCallNormalizationTransformer.transform("fake", methodNode)
+
+                if (!generationState.disableOptimization) {
+                    if (canBeOptimized(methodNode)) {
+                        optimizationTransformer.transform("fake", methodNode)
+                    } else if (canBeOptimizedUsingSparseFrames(methodNode)) {
+                        largeMethodOptimizationTransformer.transform("fake", methodNode)
+                    }
+                }
+
+                DeadCodeEliminationMethodTransformer().transform("fake", methodNode)
+            }
+        }
 
         methodNode.prepareForEmitting()
+
+        if (cacheKey != null) {
+            OptimizedMethodCache.put(cacheKey, methodNode)
+        }
     }
 
     companion object {
@@ -79,6 +121,14 @@ class OptimizationMethodVisitor(
             return totalFramesSizeMb < MEMORY_LIMIT_BY_METHOD_MB
         }
 
+        fun canBeOptimizedUsingSparseFrames(node: MethodNode): Boolean {
+            val framesCount = SparseFramesAnalyzer.estimateStoredFramesCount(node) { insn ->
+                insn.opcode == Opcodes.POP || insn.opcode == Opcodes.POP2 || insn.opcode == Opcodes.ASTORE || insn.opcode == Opcodes.ALOAD
+            }
+            val totalFramesSizeMb = framesCount.toLong() * (node.maxLocals + node.maxStack) / (1024 * 1024)
+            return totalFramesSizeMb < MEMORY_LIMIT_BY_METHOD_MB
+        }
+
         fun canBeOptimizedUsingSourceInterpreter(node: MethodNode): Boolean {
             val frameSize = node.maxLocals + node.maxStack
             val methodSize = node.instructions.size().toLong()
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization
+
+import com.intellij.util.containers.ContainerUtil
+import org.jetbrains.annotations.TestOnly
+import org.jetbrains.kotlin.codegen.state.GenerationState
+import org.jetbrains.org.objectweb.asm.ClassReader
+import org.jetbrains.org.objectweb.asm.ClassWriter
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.tree.ClassNode
+import org.jetbrains.org.objectweb.asm.tree.MethodNode
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Optimized bodies of methods, shared by all compilations in the process (e.g. by the builds in the daemon),
+ * see [GenerationState.cacheOptimizedMethods].
+ *
+ * A method is found by a hash of its bytecode before optimizations and of the flags which affect optimizations.
+ * Methods are stored as class files, so each compilation reads its own copy of instructions and labels.
+ * Optimized methods are softly referenced, so they are collected when the memory is low.
+ */
+internal object OptimizedMethodCache {
+    private const val CONTAINER_CLASS_NAME = "OptimizedMethod"
+
+    private val optimizedMethods: MutableMap<String, ByteArray> = ContainerUtil.createConcurrentSoftValueMap()
+
+    val hits = AtomicInteger()
+
+    // returns null if the method can't be written, e.g. if it refers to labels that are not in its instructions
+    fun computeKey(methodNode: MethodNode, state: GenerationState): String? {
+        val bytes = methodNode.toBytes() ?: return null
+
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(bytes)
+        digest.update("${state.disableOptimization}:${state.constructorCallNormalizationMode}".toByteArray())
+        return Base64.getEncoder().encodeToString(digest.digest())
+    }
+
+    fun get(key: String): MethodNode? {
+        val bytes = optimizedMethods[key] ?: return null
+        hits.incrementAndGet()
+        return ClassNode().also { ClassReader(bytes).accept(it, 0) }.methods.single()
+    }
+
+    fun put(key: String, optimizedMethod: MethodNode) {
+        optimizedMethods[key] = optimizedMethod.toBytes() ?: return
+    }
+
+    private fun MethodNode.toBytes(): ByteArray? {
+        val classWriter = ClassWriter(0)
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, CONTAINER_CLASS_NAME, null, "java/lang/Object", null)
+        return try {
+            accept(classWriter)
+            classWriter.visitEnd()
+            classWriter.toByteArray()
+        } catch (e: RuntimeException) {
+            null
+        }
+    }
+}
+
+// The number of methods read from the cache in this process
+@TestOnly
+fun getOptimizedMethodCacheHits(): Int = OptimizedMethodCache.hits.get()
+
+internal fun MethodNode.replaceBodyWith(optimizedMethod: MethodNode) {
+    instructions = optimizedMethod.instructions
+    tryCatchBlocks = optimizedMethod.tryCatchBlocks
+    localVariables = optimizedMethod.localVariables ?: ArrayList(0)
+    visibleLocalVariableAnnotations = optimizedMethod.visibleLocalVariableAnnotations
+    invisibleLocalVariableAnnotations = optimizedMethod.invisibleLocalVariableAnnotations
+    maxStack = optimizedMethod.maxStack
+    maxLocals = optimizedMethod.maxLocals
+}
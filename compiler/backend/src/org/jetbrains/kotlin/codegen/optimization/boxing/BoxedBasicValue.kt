@@ -117,10 +117,20 @@ fun getUnboxedType(boxedType: Type, state: GenerationState): Type {
     throw IllegalArgumentException("Expected primitive type wrapper or KClass or inline class wrapper, got: $boxedType")
 }
 
-fun unboxedTypeOfInlineClass(boxedType: Type, state: GenerationState): Type? {
-    val descriptor = state.jvmBackendClassResolver.resolveToClassDescriptors(boxedType).singleOrNull() ?: return null
-    return state.typeMapper.mapType(descriptor.defaultType)
-}
+fun unboxedTypeOfInlineClass(boxedType: Type, state: GenerationState): Type? =
+    // Methods of a class may be optimized in several threads (see GenerationState.optimizationThreads),
+    // and the type mapper may report diagnostics into a trace which isn't thread-safe
+    synchronized(state.typeMapper) {
+        val descriptor = state.jvmBackendClassResolver.resolveToClassDescriptors(boxedType).singleOrNull() ?: return null
+        state.typeMapper.mapType(descriptor.defaultType)
+    }
+
+internal fun unboxedTypeOfInlineClassOrNull(boxedType: Type, state: GenerationState): Type? =
+    synchronized(state.typeMapper) {
+        val descriptor = state.jvmBackendClassResolver.resolveToClassDescriptors(boxedType).singleOrNull() ?: return null
+        if (!descriptor.isInline) return null
+        state.typeMapper.mapType(descriptor.defaultType)
+    }
 
 private fun isInlineClassValue(boxedType: Type): Boolean {
     return !AsmUtil.isBoxedPrimitiveType(boxedType) && boxedType != AsmTypes.K_CLASS_TYPE
@@ -20,7 +20,9 @@ import com.intellij.openapi.util.Pair
 import org.jetbrains.kotlin.codegen.inline.insnOpcodeText
 import org.jetbrains.kotlin.codegen.inline.insnText
 import org.jetbrains.kotlin.codegen.intrinsics.IntrinsicMethods
+import org.jetbrains.kotlin.codegen.optimization.OptimizationMethodVisitor
 import org.jetbrains.kotlin.codegen.optimization.common.StrictBasicValue
+import org.jetbrains.kotlin.codegen.optimization.common.analyzeWithSparseFrames
 import org.jetbrains.kotlin.codegen.optimization.common.remapLocalVariables
 import org.jetbrains.kotlin.codegen.optimization.fixStack.peek
 import org.jetbrains.kotlin.codegen.optimization.fixStack.top
@@ -39,7 +41,11 @@ class RedundantBoxingMethodTransformer(private val generationState: GenerationSt
 
     override fun transform(internalClassName: String, node: MethodNode) {
         val interpreter = RedundantBoxingInterpreter(node.instructions, generationState)
-        val frames = MethodTransformer.analyze(internalClassName, node, interpreter)
+        val frames: Array<out Frame<BasicValue>?> =
+            if (OptimizationMethodVisitor.canBeOptimized(node))
+                MethodTransformer.analyze(internalClassName, node, interpreter)
+            else
+                analyzeWithSparseFrames(internalClassName, node, interpreter, isFrameUsed(node))
 
         interpretPopInstructionsForBoxedValues(interpreter, node, frames)
 
@@ -57,6 +63,15 @@ class RedundantBoxingMethodTransformer(private val generationState: GenerationSt
         }
     }
 
+    // Frames are read only at these instructions, see interpretPopInstructionsForBoxedValues and getValuesStoredOrLoadedToVariable
+    private fun isFrameUsed(node: MethodNode): (AbstractInsnNode) -> Boolean {
+        val localVariableStarts = node.localVariables.mapTo(HashSet<AbstractInsnNode>()) { it.start }
+        return { insn ->
+            insn.opcode == Opcodes.POP || insn.opcode == Opcodes.POP2 || insn.opcode == Opcodes.ASTORE || insn.opcode == Opcodes.ALOAD ||
+                    insn in localVariableStarts
+        }
+    }
+
     private fun interpretPopInstructionsForBoxedValues(
         interpreter: RedundantBoxingInterpreter,
         node: MethodNode,
@@ -82,7 +97,7 @@ class RedundantBoxingMethodTransformer(private val generationState: GenerationSt
     private fun removeValuesClashingWithVariables(
         values: RedundantBoxedValuesCollection,
         node: MethodNode,
-        frames: Array<Frame<BasicValue>>
+        frames: Array<out Frame<BasicValue>?>
     ) {
         while (removeValuesClashingWithVariablesPass(values, node, frames)) {
             // do nothing
@@ -131,7 +146,7 @@ class RedundantBoxingMethodTransformer(private val generationState: GenerationSt
             !descriptor.isSafeToRemove || descriptor.unboxedType != unboxedType
         }
 
-    private fun adaptLocalVariableTableForBoxedValues(node: MethodNode, frames: Array<Frame<BasicValue>>) {
+    private fun adaptLocalVariableTableForBoxedValues(node: MethodNode, frames: Array<out Frame<BasicValue>?>) {
         for (localVariableNode in node.localVariables) {
             if (Type.getType(localVariableNode.desc).sort != Type.OBJECT) {
                 continue
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.common
+
+import org.jetbrains.org.objectweb.asm.tree.TryCatchBlockNode
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+import org.jetbrains.org.objectweb.asm.tree.analysis.Value
+import java.util.*
+
+/**
+ * Working arrays of [MethodAnalyzer] and [SparseFramesAnalyzer], reused by all analyses on the same thread.
+ *
+ * The arrays are grown to the size of the largest method analyzed on the thread, so analyses of the following methods
+ * don't allocate them again. Frames are returned to the caller of the analysis, so they are reused only inside of
+ * [withPooledFrames], see [FramePool].
+ */
+internal class AnalyzerBuffers private constructor(capacity: Int) {
+    var handlers: Array<MutableList<TryCatchBlockNode>?> = arrayOfNulls(capacity)
+        private set
+    var queued: BooleanArray = BooleanArray(capacity)
+        private set
+    var queue: IntArray = IntArray(capacity)
+        private set
+
+    private var inUse = false
+    private var usedSize = 0
+
+    private fun use(size: Int): AnalyzerBuffers {
+        if (queue.size < size) {
+            handlers = arrayOfNulls(size)
+            queued = BooleanArray(size)
+            queue = IntArray(size)
+        }
+        inUse = true
+        usedSize = size
+        return this
+    }
+
+    fun release() {
+        // The queue is empty after a successful analysis, but the analysis could fail in the middle
+        Arrays.fill(handlers, 0, usedSize, null)
+        Arrays.fill(queued, 0, usedSize, false)
+        inUse = false
+    }
+
+    companion object {
+        // Arrays for larger methods are not kept, so that a single huge method doesn't hold the memory for the lifetime of the thread
+        private const val MAX_RETAINED_SIZE = 1 shl 16
+
+        private val threadBuffers = object : ThreadLocal<AnalyzerBuffers>() {
+            override fun initialValue() = AnalyzerBuffers(0)
+        }
+
+        fun acquire(size: Int): AnalyzerBuffers {
+            val buffers = threadBuffers.get()
+            // Buffers are in use if an analysis is started from another one on the same thread
+            if (buffers.inUse || size > MAX_RETAINED_SIZE) return AnalyzerBuffers(size).use(size)
+            return buffers.use(size)
+        }
+    }
+}
+
+/**
+ * Frames of the analyses run on the current thread inside of [withPooledFrames].
+ *
+ * The passes over a method don't use frames of the previous passes, so the frames taken by a pass are released by
+ * [releasePooledFrames] when the pass is done, and are reused by the following passes and methods for frames of the same class
+ * with the same number of locals and the same stack size. Values of a released frame are kept until the frame is reused.
+ */
+internal class FramePool {
+    // Free frames by their class, and by the number of locals and the stack size
+    private val freeFrames = HashMap<Class<*>, HashMap<Long, ArrayList<Frame<*>>>>()
+    private var freeSlots = 0L
+    private val takenFrames = ArrayList<Frame<*>>()
+
+    fun <F : Frame<*>> take(frameClass: Class<F>, nLocals: Int, nStack: Int, create: () -> F): F {
+        val frames = freeFrames[frameClass]?.get(key(nLocals, nStack))
+        val frame = if (frames != null && frames.isNotEmpty()) {
+            freeSlots -= nLocals + nStack
+            // Locals are overwritten by the analyzer, as in a new frame, but the stack has to be emptied
+            frameClass.cast(frames.removeAt(frames.size - 1)).apply { clearStack() }
+        } else {
+            create()
+        }
+        takenFrames.add(frame)
+        return frame
+    }
+
+    fun release() {
+        var isCleared = false
+        for (frame in takenFrames) {
+            val slots = (frame.locals + frame.maxStackSize).toLong()
+            if (freeSlots + slots > MAX_POOLED_FRAME_SLOTS) {
+                // Frames of the previous passes and methods are dropped in favor of the frames of the last pass,
+                // and frames which don't fit even after that are not kept
+                if (isCleared) break
+                freeFrames.clear()
+                freeSlots = 0
+                isCleared = true
+            }
+            freeFrames.getOrPut(frame.javaClass) { HashMap() }.getOrPut(key(frame.locals, frame.maxStackSize)) { ArrayList() }.add(frame)
+            freeSlots += slots
+        }
+        takenFrames.clear()
+    }
+
+    private fun key(nLocals: Int, nStack: Int): Long = (nLocals.toLong() shl 32) or nStack.toLong()
+
+    companion object {
+        // The pool doesn't keep more frames than a method with a million of frame slots uses
+        private const val MAX_POOLED_FRAME_SLOTS = 1L shl 20
+
+        private val threadPool = object : ThreadLocal<FramePool>() {
+            override fun initialValue() = FramePool()
+        }
+
+        private val currentPool = ThreadLocal<FramePool?>()
+
+        fun current(): FramePool? = currentPool.get()
+
+        fun <T> withPool(block: () -> T): T {
+            val outerPool = currentPool.get()
+            // Releasing frames of a nested scope must not release the frames still used by the outer one
+            val pool = if (outerPool == null) threadPool.get() else FramePool()
+            currentPool.set(pool)
+            try {
+                return block()
+            } finally {
+                pool.release()
+                currentPool.set(outerPool)
+            }
+        }
+    }
+}
+
+/**
+ * Runs [block], in which analyses take frames from the [FramePool] of the current thread. The frames are released
+ * by [releasePooledFrames] and when [block] is finished, so they must not be used after that.
+ */
+fun <T> withPooledFrames(block: () -> T): T = FramePool.withPool(block)
+
+/**
+ * Returns the frames taken inside of the current [withPooledFrames] to the pool, does nothing outside of it.
+ * Must be called only when none of the frames taken since the previous release are used, e.g. between passes over a method.
+ */
+fun releasePooledFrames() {
+    FramePool.current()?.release()
+}
+
+/**
+ * Returns a frame of [frameClass] from the pool of the current thread inside of [withPooledFrames], or a frame created by [create].
+ * [create] must return an instance of exactly [frameClass]. A reused frame has an empty stack, and its locals have to be set.
+ */
+fun <F : Frame<*>> newPooledFrame(frameClass: Class<F>, nLocals: Int, nStack: Int, create: () -> F): F =
+    FramePool.current()?.take(frameClass, nLocals, nStack, create) ?: create()
+
+@Suppress("UNCHECKED_CAST")
+fun <V : Value> newPooledFrame(nLocals: Int, nStack: Int): Frame<V> =
+    newPooledFrame(Frame::class.java, nLocals, nStack) { Frame<V>(nLocals, nStack) } as Frame<V>
@@ -71,14 +71,15 @@ open class MethodAnalyzer<V : Value>(
 
     val frames: Array<Frame<V>?> = arrayOfNulls(nInsns)
 
-    private val handlers: Array<MutableList<TryCatchBlockNode>?> = arrayOfNulls(nInsns)
-    private val queued: BooleanArray = BooleanArray(nInsns)
-    private val queue: IntArray = IntArray(nInsns)
+    // Working arrays of the analysis, taken from AnalyzerBuffers of the current thread
+    private lateinit var handlers: Array<MutableList<TryCatchBlockNode>?>
+    private lateinit var queued: BooleanArray
+    private lateinit var queue: IntArray
     private var top: Int = 0
 
     protected open fun init(owner: String, m: MethodNode) {}
 
-    protected open fun newFrame(nLocals: Int, nStack: Int): Frame<V> = Frame(nLocals, nStack)
+    protected open fun newFrame(nLocals: Int, nStack: Int): Frame<V> = newPooledFrame(nLocals, nStack)
 
     protected open fun newFrame(src: Frame<out V>): Frame<V> {
         val frame = newFrame(src.locals, src.maxStackSize)
@@ -98,6 +99,20 @@ open class MethodAnalyzer<V : Value>(
 
         checkAssertions()
 
+        val buffers = AnalyzerBuffers.acquire(nInsns)
+        try {
+            handlers = buffers.handlers
+            queued = buffers.queued
+            queue = buffers.queue
+            analyzeInstructions()
+        } finally {
+            buffers.release()
+        }
+
+        return frames
+    }
+
+    private fun analyzeInstructions() {
         computeExceptionHandlersForEachInsn(method)
 
         val current = newFrame(method.maxLocals, method.maxStack)
@@ -151,8 +166,6 @@ open class MethodAnalyzer<V : Value>(
             }
 
         }
-
-        return frames
     }
 
     fun getFrame(insn: AbstractInsnNode): Frame<V>? =
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.common
+
+import org.jetbrains.kotlin.codegen.inline.insnText
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.Type
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.AnalyzerException
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+import org.jetbrains.org.objectweb.asm.tree.analysis.Interpreter
+import org.jetbrains.org.objectweb.asm.tree.analysis.Value
+import java.util.*
+
+/**
+ * Data flow analysis like `org.objectweb.asm.tree.analysis.Analyzer`, which keeps frames only for entries of basic blocks
+ * and for instructions accepted by [isFrameRequired].
+ *
+ * The returned array contains frames only for reachable required instructions, so memory used by the analysis is proportional
+ * to the number of basic blocks and usages the caller is interested in, not to the number of instructions.
+ * Values are propagated through a basic block in the same order as by `Analyzer`, so an interpreter sees the same operations.
+ */
+class SparseFramesAnalyzer<V : Value>(
+    private val owner: String,
+    private val method: MethodNode,
+    private val interpreter: Interpreter<V>,
+    private val isFrameRequired: (AbstractInsnNode) -> Boolean
+) {
+    private val instructions = method.instructions
+    private val insns = instructions.toArray()
+
+    private val isBlockStart = computeBlockStarts()
+    private val entryFrames = arrayOfNulls<Frame<V>>(insns.size)
+    private val requiredFrames = arrayOfNulls<Frame<V>>(insns.size)
+
+    // Working arrays of the analysis, taken from AnalyzerBuffers of the current thread
+    private lateinit var handlers: Array<MutableList<TryCatchBlockNode>?>
+    private lateinit var queued: BooleanArray
+    private lateinit var queue: IntArray
+    private var top = 0
+
+    fun analyze(): Array<Frame<V>?> {
+        if (insns.isEmpty()) return requiredFrames
+
+        val buffers = AnalyzerBuffers.acquire(insns.size)
+        try {
+            handlers = buffers.handlers
+            queued = buffers.queued
+            queue = buffers.queue
+            analyzeBlocks()
+        } finally {
+            buffers.release()
+        }
+
+        return requiredFrames
+    }
+
+    private fun analyzeBlocks() {
+        computeExceptionHandlersForEachInsn()
+
+        val current = newPooledFrame<V>(method.maxLocals, method.maxStack)
+        val handler = newPooledFrame<V>(method.maxLocals, method.maxStack)
+        initControlFlowAnalysis(current)
+
+        while (top > 0) {
+            val blockStart = queue[--top]
+            queued[blockStart] = false
+            current.init(entryFrames[blockStart]!!)
+            analyzeBlock(blockStart, current, handler)
+        }
+    }
+
+    private fun analyzeBlock(blockStart: Int, current: Frame<V>, handler: Frame<V>) {
+        var insn = blockStart
+        while (true) {
+            val insnNode = insns[insn]
+            try {
+                if (isFrameRequired(insnNode)) {
+                    val frame = requiredFrames[insn]
+                    if (frame == null) requiredFrames[insn] = newFrame(current) else frame.init(current)
+                }
+
+                handlers[insn]?.forEach { tcb ->
+                    handler.init(current)
+                    handler.clearStack()
+                    handler.push(interpreter.newValue(Type.getObjectType(tcb.type ?: "java/lang/Throwable")))
+                    mergeIntoBlock(instructions.indexOf(tcb.handler), handler)
+                }
+
+                val insnType = insnNode.type
+                if (insnType == AbstractInsnNode.LABEL || insnType == AbstractInsnNode.LINE || insnType == AbstractInsnNode.FRAME) {
+                    // no effect on the frame
+                } else {
+                    current.execute(insnNode, interpreter)
+                }
+
+                val insnOpcode = insnNode.opcode
+                when {
+                    insnNode is JumpInsnNode -> {
+                        if (insnOpcode != Opcodes.GOTO) {
+                            mergeIntoBlock(insn + 1, current)
+                        }
+                        mergeIntoBlock(instructions.indexOf(insnNode.label), current)
+                        return
+                    }
+                    insnNode is TableSwitchInsnNode -> {
+                        mergeIntoBlock(instructions.indexOf(insnNode.dflt), current)
+                        // the same order as in MethodAnalyzer, see the comment there
+                        for (label in insnNode.labels.reversed()) {
+                            mergeIntoBlock(instructions.indexOf(label), current)
+                        }
+                        return
+                    }
+                    insnNode is LookupSwitchInsnNode -> {
+                        mergeIntoBlock(instructions.indexOf(insnNode.dflt), current)
+                        for (label in insnNode.labels) {
+                            mergeIntoBlock(instructions.indexOf(label), current)
+                        }
+                        return
+                    }
+                    insnOpcode == Opcodes.ATHROW || insnOpcode in Opcodes.IRETURN..Opcodes.RETURN ->
+                        return
+                    isBlockStart[insn + 1] -> {
+                        mergeIntoBlock(insn + 1, current)
+                        return
+                    }
+                }
+            } catch (e: AnalyzerException) {
+                throw AnalyzerException(e.node, "Error at instruction #$insn ${insnNode.insnText}: ${e.message}", e)
+            } catch (e: Exception) {
+                throw AnalyzerException(insnNode, "Error at instruction #$insn ${insnNode.insnText}: ${e.message}", e)
+            }
+
+            insn++
+        }
+    }
+
+    // Block starts are the first instruction, targets of jumps and exception handlers, and instructions after jumps.
+    // Ends of methods are considered block starts as well, to stop the analysis if the last instruction falls through.
+    private fun computeBlockStarts(): BooleanArray {
+        val blockStarts = BooleanArray(insns.size + 1)
+        blockStarts[0] = true
+        blockStarts[insns.size] = true
+        for ((index, insn) in insns.withIndex()) {
+            when (insn) {
+                is JumpInsnNode -> {
+                    blockStarts[index + 1] = true
+                    blockStarts[instructions.indexOf(insn.label)] = true
+                }
+                is TableSwitchInsnNode -> {
+                    blockStarts[index + 1] = true
+                    blockStarts[instructions.indexOf(insn.dflt)] = true
+                    insn.labels.forEach { blockStarts[instructions.indexOf(it)] = true }
+                }
+                is LookupSwitchInsnNode -> {
+                    blockStarts[index + 1] = true
+                    blockStarts[instructions.indexOf(insn.dflt)] = true
+                    insn.labels.forEach { blockStarts[instructions.indexOf(it)] = true }
+                }
+                else -> if (insn.opcode == Opcodes.ATHROW || insn.opcode in Opcodes.IRETURN..Opcodes.RETURN) {
+                    blockStarts[index + 1] = true
+                }
+            }
+        }
+        for (tcb in method.tryCatchBlocks) {
+            blockStarts[instructions.indexOf(tcb.handler)] = true
+        }
+        return blockStarts
+    }
+
+    private fun initControlFlowAnalysis(current: Frame<V>) {
+        current.setReturn(interpreter.newValue(Type.getReturnType(method.desc)))
+        var local = 0
+        if ((method.access and Opcodes.ACC_STATIC) == 0) {
+            current.setLocal(local++, interpreter.newValue(Type.getObjectType(owner)))
+        }
+        for (arg in Type.getArgumentTypes(method.desc)) {
+            current.setLocal(local++, interpreter.newValue(arg))
+            if (arg.size == 2) {
+                current.setLocal(local++, interpreter.newValue(null))
+            }
+        }
+        while (local < method.maxLocals) {
+            current.setLocal(local++, interpreter.newValue(null))
+        }
+        mergeIntoBlock(0, current)
+    }
+
+    private fun computeExceptionHandlersForEachInsn() {
+        for (tcb in method.tryCatchBlocks) {
+            val begin = instructions.indexOf(tcb.start)
+            val end = instructions.indexOf(tcb.end)
+            for (j in begin until end) {
+                val insnHandlers = handlers[j] ?: ArrayList<TryCatchBlockNode>().also { handlers[j] = it }
+                insnHandlers.add(tcb)
+            }
+        }
+    }
+
+    private fun newFrame(src: Frame<out V>): Frame<V> = newPooledFrame<V>(src.locals, src.maxStackSize).init(src)
+
+    private fun mergeIntoBlock(blockStart: Int, frame: Frame<V>) {
+        if (blockStart >= insns.size) {
+            throw AnalyzerException(null, "Execution can fall off the end of the code")
+        }
+
+        val oldFrame = entryFrames[blockStart]
+        val changes =
+            if (oldFrame != null)
+                oldFrame.merge(frame, interpreter)
+            else {
+                entryFrames[blockStart] = newFrame(frame)
+                true
+            }
+        if (changes && !queued[blockStart]) {
+            queued[blockStart] = true
+            queue[top++] = blockStart
+        }
+    }
+
+    companion object {
+        /**
+         * Upper bound of the number of frames kept by the analysis of [method].
+         */
+        fun estimateStoredFramesCount(method: MethodNode, isFrameRequired: (AbstractInsnNode) -> Boolean): Int =
+            method.tryCatchBlocks.size + method.instructions.toArray().count { insn ->
+                insn is LabelNode || insn is JumpInsnNode || insn is TableSwitchInsnNode || insn is LookupSwitchInsnNode ||
+                        insn.opcode == Opcodes.ATHROW || insn.opcode in Opcodes.IRETURN..Opcodes.RETURN ||
+                        isFrameRequired(insn)
+            }
+    }
+}
+
+fun <V : Value> analyzeWithSparseFrames(
+    internalClassName: String,
+    node: MethodNode,
+    interpreter: Interpreter<V>,
+    isFrameRequired: (AbstractInsnNode) -> Boolean
+): Array<Frame<V>?> =
+    try {
+        SparseFramesAnalyzer(internalClassName, node, interpreter, isFrameRequired).analyze()
+    } catch (e: AnalyzerException) {
+        throw RuntimeException(e)
+    }
@@ -18,6 +18,7 @@ package org.jetbrains.kotlin.codegen.optimization.common
 
 import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
+import java.util.*
 
 interface VarFrame<F : VarFrame<F>> {
     fun mergeFrom(other: F)
@@ -33,33 +34,50 @@ interface BackwardAnalysisInterpreter<F : VarFrame<F>> {
 
 fun <F : VarFrame<F>> analyze(node: MethodNode, interpreter: BackwardAnalysisInterpreter<F>): List<F> {
     val graph = ControlFlowGraph.build(node)
-    val insnList = node.instructions
+    val insnArray = node.instructions.toArray()
 
-    val frames = (1..insnList.size()).map { interpreter.newFrame(node.maxLocals) }.toMutableList()
-    val insnArray = insnList.toArray()
+    val frames = insnArray.map { interpreter.newFrame(node.maxLocals) }.toMutableList()
 
-    // see Figure 9.16 from Dragon book
-    var wereChanges: Boolean
+    val predecessors = Array(insnArray.size) { arrayListOf<Int>() }
+    for (index in insnArray.indices) {
+        for (successorIndex in graph.getSuccessorsIndices(index)) {
+            predecessors[successorIndex].add(index)
+        }
+    }
 
-    do {
-        wereChanges = false
-        for (insn in insnArray) {
-            val index = insnList.indexOf(insn)
-            val newFrame = interpreter.newFrame(node.maxLocals)
-            for (successorIndex in graph.getSuccessorsIndices(insn)) {
-                newFrame.mergeFrom(frames[successorIndex])
-            }
+    // A frame is recomputed only when a frame of its successor has changed, so the analysis isn't quadratic
+    // in the method size for long methods (e.g. state machines of suspend functions with many suspension points).
+    // The last instructions are processed first, because their frames are merged into the frames of the preceding ones.
+    val worklist = ArrayDeque<Int>(insnArray.size)
+    val inWorklist = BitSet(insnArray.size)
+    for (index in insnArray.indices) {
+        worklist.push(index)
+        inWorklist.set(index)
+    }
 
-            interpreter.def(newFrame, insn)
-            interpreter.use(newFrame, insn)
+    while (worklist.isNotEmpty()) {
+        val index = worklist.pop()
+        inWorklist.clear(index)
 
-            if (frames[index] != newFrame) {
-                frames[index] = newFrame
-                wereChanges = true
-            }
+        val insn = insnArray[index]
+        val newFrame = interpreter.newFrame(node.maxLocals)
+        for (successorIndex in graph.getSuccessorsIndices(index)) {
+            newFrame.mergeFrom(frames[successorIndex])
         }
 
-    } while (wereChanges)
+        interpreter.def(newFrame, insn)
+        interpreter.use(newFrame, insn)
+
+        if (frames[index] != newFrame) {
+            frames[index] = newFrame
+            for (predecessorIndex in predecessors[index]) {
+                if (!inWorklist.get(predecessorIndex)) {
+                    inWorklist.set(predecessorIndex)
+                    worklist.push(predecessorIndex)
+                }
+            }
+        }
+    }
 
     return frames
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen.optimization.common
+
+import org.jetbrains.org.objectweb.asm.tree.*
+import org.jetbrains.org.objectweb.asm.tree.analysis.BasicValue
+import org.jetbrains.org.objectweb.asm.tree.analysis.Frame
+
+// Frames of larger methods are not kept, so that they don't add to the memory used by the following passes
+private const val MAX_SHARED_FRAME_SLOTS = 1 shl 20
+
+private class SharedBasicFrames(val method: MethodNode) {
+    var owner: String? = null
+    var snapshot: MethodSnapshot? = null
+    var frames: Array<Frame<BasicValue>?>? = null
+}
+
+private val currentSharedFrames = ThreadLocal<SharedBasicFrames?>()
+
+/**
+ * Runs [block], in which the passes over [method] calling [analyzeWithSharedBasicFrames] share the result of the analysis
+ * while the method is not changed.
+ */
+fun <T> withSharedBasicFrames(method: MethodNode, block: () -> T): T {
+    val outerSharedFrames = currentSharedFrames.get()
+    currentSharedFrames.set(SharedBasicFrames(method))
+    try {
+        return block()
+    } finally {
+        currentSharedFrames.set(outerSharedFrames)
+    }
+}
+
+/**
+ * Analyzes [method] with [OptimizationBasicInterpreter], or returns frames of the previous analysis inside of [withSharedBasicFrames]
+ * if the instructions, their operands and try-catch blocks of the method are the same as they were at that time.
+ *
+ * The returned frames may be used by other passes and must not be modified. Inside of [withSharedBasicFrames] they are valid only
+ * until the next call for the same method: if the method is changed, that call reuses them as frames of the new analysis.
+ */
+fun analyzeWithSharedBasicFrames(internalClassName: String, method: MethodNode): Array<Frame<BasicValue>?> {
+    val sharedFrames = currentSharedFrames.get()?.takeIf { it.method === method }
+        ?: return PreviousFramesAnalyzer(internalClassName, method, null).analyze()
+
+    val previousFrames = sharedFrames.frames
+    if (previousFrames != null && sharedFrames.owner == internalClassName && sharedFrames.snapshot!!.matches(method)) {
+        return previousFrames
+    }
+
+    val frames = PreviousFramesAnalyzer(internalClassName, method, previousFrames).analyze()
+    val frameSlots = method.instructions.size().toLong() * (method.maxLocals + method.maxStack)
+    if (frameSlots <= MAX_SHARED_FRAME_SLOTS) {
+        sharedFrames.owner = internalClassName
+        sharedFrames.snapshot = MethodSnapshot(method)
+        sharedFrames.frames = frames
+    } else {
+        sharedFrames.owner = null
+        sharedFrames.snapshot = null
+        sharedFrames.frames = null
+    }
+    return frames
+}
+
+// Takes frames of the new analysis from the frames of the previous one, which are not used after the method is changed.
+// Other frames are not taken from the FramePool, because the shared frames are used by several passes.
+private class PreviousFramesAnalyzer(
+    owner: String,
+    method: MethodNode,
+    private val pool: Array<Frame<BasicValue>?>?
+) : MethodAnalyzer<BasicValue>(owner, method, OptimizationBasicInterpreter()) {
+    private var poolIndex = 0
+
+    override fun newFrame(nLocals: Int, nStack: Int): Frame<BasicValue> = Frame(nLocals, nStack)
+
+    override fun newFrame(src: Frame<out BasicValue>): Frame<BasicValue> {
+        if (pool != null) {
+            while (poolIndex < pool.size) {
+                val frame = pool[poolIndex++] ?: continue
+                // init overwrites all values of the frame, if it has the same size
+                if (frame.locals == src.locals && frame.maxStackSize == src.maxStackSize) return frame.init(src)
+            }
+        }
+        return super.newFrame(src)
+    }
+}
+
+/**
+ * Instructions with their operands and try-catch blocks of a method at the time of an analysis.
+ * Instructions are also compared by identity, so that the frames are not shared after an instruction is replaced with an equal one.
+ *
+ * Operands are visited in the same order when the snapshot is taken and when it's matched, so [matches] compares them one by one
+ * without allocations.
+ */
+private class MethodSnapshot(method: MethodNode) : OperandsVisitor() {
+    private val maxLocals = method.maxLocals
+    private val maxStack = method.maxStack
+    private val insns = method.instructions.toArray()
+    private val opcodes = IntArray(insns.size) { insns[it].opcode }
+    private val intOperands: IntArray
+    private val refOperands: Array<Any?>
+
+    private var intIndex = 0
+    private var refIndex = 0
+
+    init {
+        val recorder = OperandsRecorder()
+        recorder.visitOperands(method)
+        intOperands = recorder.ints.copyOf(recorder.intsSize)
+        refOperands = recorder.refs.toTypedArray()
+    }
+
+    fun matches(method: MethodNode): Boolean {
+        if (method.maxLocals != maxLocals || method.maxStack != maxStack || method.instructions.size() != insns.size) return false
+
+        var insn: AbstractInsnNode? = method.instructions.first
+        var index = 0
+        while (insn != null) {
+            if (insn !== insns[index] || insn.opcode != opcodes[index]) return false
+            insn = insn.next
+            index++
+        }
+
+        intIndex = 0
+        refIndex = 0
+        return visitOperands(method) && intIndex == intOperands.size && refIndex == refOperands.size
+    }
+
+    override fun int(value: Int): Boolean = intIndex < intOperands.size && intOperands[intIndex++] == value
+
+    override fun ref(value: Any?): Boolean = refIndex < refOperands.size && refOperands[refIndex++] == value
+}
+
+private class OperandsRecorder : OperandsVisitor() {
+    var ints = IntArray(16)
+    var intsSize = 0
+    val refs = ArrayList<Any?>()
+
+    override fun int(value: Int): Boolean {
+        if (intsSize == ints.size) {
+            ints = ints.copyOf(intsSize * 2)
+        }
+        ints[intsSize++] = value
+        return true
+    }
+
+    override fun ref(value: Any?): Boolean = refs.add(value)
+}
+
+// Visits operands of the instructions and try-catch blocks of a method, stops when a visit returns false
+private abstract class OperandsVisitor {
+    abstract fun int(value: Int): Boolean
+
+    abstract fun ref(value: Any?): Boolean
+
+    fun visitOperands(method: MethodNode): Boolean {
+        var insn: AbstractInsnNode? = method.instructions.first
+        while (insn != null) {
+            if (!visitOperands(insn)) return false
+            insn = insn.next
+        }
+
+        val tryCatchBlocks = method.tryCatchBlocks
+        if (!int(tryCatchBlocks.size)) return false
+        for (i in 0 until tryCatchBlocks.size) {
+            val block = tryCatchBlocks[i]
+            if (!ref(block.start) || !ref(block.end) || !ref(block.handler) || !ref(block.type)) return false
+        }
+        return true
+    }
+
+    private fun visitOperands(insn: AbstractInsnNode): Boolean =
+        when (insn) {
+            is IntInsnNode -> int(insn.operand)
+            is VarInsnNode -> int(insn.`var`)
+            is TypeInsnNode -> ref(insn.desc)
+            is FieldInsnNode -> ref(insn.owner) && ref(insn.name) && ref(insn.desc)
+            is MethodInsnNode -> ref(insn.owner) && ref(insn.name) && ref(insn.desc) && int(if (insn.itf) 1 else 0)
+            is InvokeDynamicInsnNode -> ref(insn.name) && ref(insn.desc) && ref(insn.bsm) && refs(insn.bsmArgs)
+            is JumpInsnNode -> ref(insn.label)
+            is LdcInsnNode -> ref(insn.cst)
+            is IincInsnNode -> int(insn.`var`) && int(insn.incr)
+            is TableSwitchInsnNode -> int(insn.min) && int(insn.max) && ref(insn.dflt) && refs(insn.labels)
+            is LookupSwitchInsnNode -> ref(insn.dflt) && ints(insn.keys) && refs(insn.labels)
+            is MultiANewArrayInsnNode -> ref(insn.desc) && int(insn.dims)
+            is LineNumberNode -> int(insn.line) && ref(insn.start)
+            // the analysis of other instructions depends only on their opcodes
+            else -> true
+        }
+
+    private fun ints(values: List<Int>): Boolean {
+        if (!int(values.size)) return false
+        for (i in 0 until values.size) {
+            if (!int(values[i])) return false
+        }
+        return true
+    }
+
+    private fun refs(values: List<Any?>): Boolean {
+        if (!int(values.size)) return false
+        for (i in 0 until values.size) {
+            if (!ref(values[i])) return false
+        }
+        return true
+    }
+
+    private fun refs(values: Array<out Any?>): Boolean {
+        if (!int(values.size)) return false
+        for (value in values) {
+            if (!ref(value)) return false
+        }
+        return true
+    }
+}
@@ -22,6 +22,7 @@ import org.jetbrains.kotlin.codegen.inline.isBeforeInlineMarker
 import org.jetbrains.kotlin.codegen.inline.isMarkedReturn
 import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalyzer
 import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
+import org.jetbrains.kotlin.codegen.optimization.common.newPooledFrame
 import org.jetbrains.kotlin.codegen.pseudoInsns.PseudoInsn
 import org.jetbrains.org.objectweb.asm.Opcodes
 import org.jetbrains.org.objectweb.asm.tree.AbstractInsnNode
@@ -54,7 +55,7 @@ internal class FixStackAnalyzer(
     fun getExpectedStackSize(location: AbstractInsnNode) = getExpectedStackFrame(location)?.stackSizeWithExtra ?: DEAD_CODE_STACK_SIZE
 
     private fun getExpectedStackFrame(location: AbstractInsnNode) = getFrame(expectedStackNode[location] ?: location)
-    private fun getFrame(location: AbstractInsnNode) = analyzer.getFrame(location) as? InternalAnalyzer.FixStackFrame
+    private fun getFrame(location: AbstractInsnNode) = analyzer.getFrame(location) as? FixStackFrame
 
     fun analyze() {
         preprocess()
@@ -74,7 +75,7 @@ internal class FixStackAnalyzer(
 
     private inner class InternalAnalyzer(owner: String) : MethodAnalyzer<BasicValue>(owner, method, OptimizationBasicInterpreter()) {
         val spilledStacks = hashMapOf<AbstractInsnNode, List<BasicValue>>()
-        var maxExtraStackSize = 0; private set
+        var maxExtraStackSize = 0
 
         override fun visitControlFlowEdge(insn: Int, successor: Int): Boolean {
             if (!skipBreakContinueGotoEdges) return true
@@ -83,25 +84,65 @@ internal class FixStackAnalyzer(
         }
 
         override fun newFrame(nLocals: Int, nStack: Int): Frame<BasicValue> =
-            FixStackFrame(nLocals, nStack)
+            newPooledFrame(FixStackFrame::class.java, nLocals, nStack) { FixStackFrame(nLocals, nStack) }.also { it.analyzer = this }
 
         private fun indexOf(node: AbstractInsnNode) = method.instructions.indexOf(node)
 
-        inner class FixStackFrame(nLocals: Int, nStack: Int) : Frame<BasicValue>(nLocals, nStack) {
-            val extraStack = Stack<BasicValue>()
+        fun FixStackFrame.executeBeforeInlineCallMarker(insn: AbstractInsnNode) {
+            saveStackAndClear(insn)
+        }
 
-            override fun init(src: Frame<out BasicValue>): Frame<BasicValue> {
-                extraStack.clear()
-                extraStack.addAll((src as FixStackFrame).extraStack)
-                return super.init(src)
+        private fun FixStackFrame.saveStackAndClear(insn: AbstractInsnNode) {
+            val savedValues = getStackContent()
+            spilledStacks[insn] = savedValues
+            clearStack()
+        }
+
+        fun FixStackFrame.executeAfterInlineCallMarker(insn: AbstractInsnNode) {
+            val beforeInlineMarker = context.openingInlineMethodMarker[insn]
+            if (stackSize > 0) {
+                val returnValue = pop()
+                clearStack()
+                val savedValues = spilledStacks[beforeInlineMarker]
+                pushAll(savedValues!!)
+                push(returnValue)
+            } else {
+                val savedValues = spilledStacks[beforeInlineMarker]
+                pushAll(savedValues!!)
             }
+        }
 
-            override fun clearStack() {
-                extraStack.clear()
-                super.clearStack()
+        fun FixStackFrame.executeRestoreStackInTryCatch(insn: AbstractInsnNode) {
+            val saveNode = context.saveStackMarkerForRestoreMarker[insn]
+            val savedValues = spilledStacks.getOrElse(saveNode!!) {
+                throw AssertionError("${indexOf(insn)}: Restore stack is unavailable for ${indexOf(saveNode)}")
             }
+            pushAll(savedValues)
+        }
+
+        fun FixStackFrame.executeSaveStackBeforeTry(insn: AbstractInsnNode) {
+            saveStackAndClear(insn)
+        }
+    }
+
+    // Frames are taken from the FramePool of the current thread, so a frame is bound to its analyzer when it's taken
+    private class FixStackFrame(nLocals: Int, nStack: Int) : Frame<BasicValue>(nLocals, nStack) {
+        lateinit var analyzer: InternalAnalyzer
+        val extraStack = Stack<BasicValue>()
 
-            override fun execute(insn: AbstractInsnNode, interpreter: Interpreter<BasicValue>) {
+        override fun init(src: Frame<out BasicValue>): Frame<BasicValue> {
+            extraStack.clear()
+            extraStack.addAll((src as FixStackFrame).extraStack)
+            return super.init(src)
+        }
+
+        override fun clearStack() {
+            extraStack.clear()
+            super.clearStack()
+        }
+
+        override fun execute(insn: AbstractInsnNode, interpreter: Interpreter<BasicValue>) {
+            with(analyzer) {
                 when {
                     PseudoInsn.SAVE_STACK_BEFORE_TRY.isa(insn) ->
                         executeSaveStackBeforeTry(insn)
@@ -116,85 +157,47 @@ internal class FixStackAnalyzer(
                         if (insn.opcode == Opcodes.RETURN) return
                     }
                 }
-
-                super.execute(insn, interpreter)
-            }
-
-            val stackSizeWithExtra: Int get() = super.getStackSize() + extraStack.size
-
-            fun getStackContent(): List<BasicValue> {
-                val savedStack = arrayListOf<BasicValue>()
-                IntRange(0, super.getStackSize() - 1).mapTo(savedStack) { super.getStack(it) }
-                savedStack.addAll(extraStack)
-                return savedStack
-            }
-
-            override fun push(value: BasicValue) {
-                if (super.getStackSize() < maxStackSize) {
-                    super.push(value)
-                } else {
-                    extraStack.add(value)
-                    maxExtraStackSize = max(maxExtraStackSize, extraStack.size)
-                }
             }
 
-            fun pushAll(values: Collection<BasicValue>) {
-                values.forEach { push(it) }
-            }
+            super.execute(insn, interpreter)
+        }
 
-            override fun pop(): BasicValue {
-                return if (extraStack.isNotEmpty()) {
-                    extraStack.pop()
-                } else {
-                    super.pop()
-                }
-            }
+        val stackSizeWithExtra: Int get() = super.getStackSize() + extraStack.size
 
-            override fun getStack(i: Int): BasicValue {
-                return if (i < super.getMaxStackSize()) {
-                    super.getStack(i)
-                } else {
-                    extraStack[i - maxStackSize]
-                }
-            }
+        fun getStackContent(): List<BasicValue> {
+            val savedStack = arrayListOf<BasicValue>()
+            IntRange(0, super.getStackSize() - 1).mapTo(savedStack) { super.getStack(it) }
+            savedStack.addAll(extraStack)
+            return savedStack
         }
 
-        private fun FixStackFrame.executeBeforeInlineCallMarker(insn: AbstractInsnNode) {
-            saveStackAndClear(insn)
+        override fun push(value: BasicValue) {
+            if (super.getStackSize() < maxStackSize) {
+                super.push(value)
+            } else {
+                extraStack.add(value)
+                analyzer.maxExtraStackSize = max(analyzer.maxExtraStackSize, extraStack.size)
+            }
         }
 
-        private fun FixStackFrame.saveStackAndClear(insn: AbstractInsnNode) {
-            val savedValues = getStackContent()
-            spilledStacks[insn] = savedValues
-            clearStack()
+        fun pushAll(values: Collection<BasicValue>) {
+            values.forEach { push(it) }
         }
 
-        private fun FixStackFrame.executeAfterInlineCallMarker(insn: AbstractInsnNode) {
-            val beforeInlineMarker = context.openingInlineMethodMarker[insn]
-            if (stackSize > 0) {
-                val returnValue = pop()
-                clearStack()
-                val savedValues = spilledStacks[beforeInlineMarker]
-                pushAll(savedValues!!)
-                push(returnValue)
+        override fun pop(): BasicValue {
+            return if (extraStack.isNotEmpty()) {
+                extraStack.pop()
             } else {
-                val savedValues = spilledStacks[beforeInlineMarker]
-                pushAll(savedValues!!)
+                super.pop()
             }
         }
 
-        private fun FixStackFrame.executeRestoreStackInTryCatch(insn: AbstractInsnNode) {
-            val saveNode = context.saveStackMarkerForRestoreMarker[insn]
-            val savedValues = spilledStacks.getOrElse(saveNode!!) {
-                throw AssertionError("${indexOf(insn)}: Restore stack is unavailable for ${indexOf(saveNode)}")
+        override fun getStack(i: Int): BasicValue {
+            return if (i < super.getMaxStackSize()) {
+                super.getStack(i)
+            } else {
+                extraStack[i - maxStackSize]
             }
-            pushAll(savedValues)
-        }
-
-        private fun FixStackFrame.executeSaveStackBeforeTry(insn: AbstractInsnNode) {
-            saveStackAndClear(insn)
         }
     }
-
-
 }
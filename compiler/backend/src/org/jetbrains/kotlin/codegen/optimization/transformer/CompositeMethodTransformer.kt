@@ -16,13 +16,18 @@
 
 package org.jetbrains.kotlin.codegen.optimization.transformer
 
+import org.jetbrains.kotlin.codegen.optimization.common.releasePooledFrames
 import org.jetbrains.org.objectweb.asm.tree.MethodNode
 
 open class CompositeMethodTransformer(private val transformers: List<MethodTransformer>) : MethodTransformer() {
     constructor(vararg transformers: MethodTransformer?) : this(transformers.filterNotNull())
 
     override fun transform(internalClassName: String, methodNode: MethodNode) {
-        transformers.forEach { it.transform(internalClassName, methodNode) }
+        for (transformer in transformers) {
+            transformer.transform(internalClassName, methodNode)
+            // Frames of a pass are not used by the following ones
+            releasePooledFrames()
+        }
     }
 
     companion object {
@@ -17,6 +17,7 @@
 package org.jetbrains.kotlin.codegen.optimization.transformer;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.codegen.optimization.common.AnalyzerBuffersKt;
 import org.jetbrains.org.objectweb.asm.tree.MethodNode;
 import org.jetbrains.org.objectweb.asm.tree.analysis.*;
 
@@ -41,8 +42,25 @@ public abstract class MethodTransformer {
             @NotNull MethodNode node,
             @NotNull Interpreter<V> interpreter
     ) {
-        return runAnalyzer(new Analyzer<>(interpreter), internalClassName, node);
+        return runAnalyzer(new PooledFramesAnalyzer<>(interpreter), internalClassName, node);
     }
 
     public abstract void transform(@NotNull String internalClassName, @NotNull MethodNode methodNode);
+
+    // Takes frames from the FramePool of the current thread, see AnalyzerBuffersKt.withPooledFrames
+    private static class PooledFramesAnalyzer<V extends Value> extends Analyzer<V> {
+        PooledFramesAnalyzer(@NotNull Interpreter<V> interpreter) {
+            super(interpreter);
+        }
+
+        @Override
+        protected Frame<V> newFrame(int nLocals, int nStack) {
+            return AnalyzerBuffersKt.newPooledFrame(nLocals, nStack);
+        }
+
+        @Override
+        protected Frame<V> newFrame(Frame<? extends V> frame) {
+            return newFrame(frame.getLocals(), frame.getMaxStackSize()).init(frame);
+        }
+    }
 }
@@ -254,6 +254,9 @@ class GenerationState private constructor(
 
     val disableOptimization = configuration.get(JVMConfigurationKeys.DISABLE_OPTIMIZATION, false)
 
+    val optimizationThreads = configuration.get(JVMConfigurationKeys.OPTIMIZATION_THREADS, 1)
+    val cacheOptimizedMethods = configuration.get(JVMConfigurationKeys.CACHE_OPTIMIZED_METHODS, false)
+
     val metadataVersion = configuration.get(CommonConfigurationKeys.METADATA_VERSION) ?: JvmMetadataVersion.INSTANCE
 
     init {
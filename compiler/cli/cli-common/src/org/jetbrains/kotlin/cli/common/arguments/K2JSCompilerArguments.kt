@@ -114,6 +114,25 @@ class K2JSCompilerArguments : CommonCompilerArguments() {
     )
     var irProduceOnly: String? by NullableStringFreezableVar(null)
 
+    @Argument(
+        value = "-Xparallel-fragment-processing",
+        description = "Run per-file post-processing of translated JS code on multiple threads"
+    )
+    var parallelFragmentProcessing: Boolean by FreezableVar(false)
+
+    @Argument(
+        value = "-Xstreaming-output",
+        description = "Write generated JS code and source map directly to the output files instead of building them in memory"
+    )
+    var streamingOutput: Boolean by FreezableVar(false)
+
+    @Argument(
+        value = "-Xtranslated-fragment-cache",
+        valueDescription = "<path>",
+        description = "Directory for caching inlined JS code of files between builds"
+    )
+    var translatedFragmentCache: String? by NullableStringFreezableVar(null)
+
 
     @GradleOption(DefaultValues.BooleanTrueDefault::class)
     @Argument(value = "-Xtyped-arrays", description = "Translate primitive arrays to JS typed arrays")
@@ -107,6 +107,25 @@ class K2JVMCompilerArguments : CommonCompilerArguments() {
     @Argument(value = "-Xno-optimize", description = "Disable optimizations")
     var noOptimize: Boolean by FreezableVar(false)
 
+    @Argument(
+        value = "-Xoptimization-threads",
+        valueDescription = "<N>",
+        description = "Optimize bytecode of methods of each generated class in N parallel threads, while classes are still generated sequentially, default is 1 (no parallelism)"
+    )
+    var optimizationThreads: String? by NullableStringFreezableVar(null)
+
+    @Argument(
+        value = "-Xcache-optimized-methods",
+        description = "Reuse optimized bytecode of methods whose bodies didn't change since a previous compilation in this process"
+    )
+    var cacheOptimizedMethods: Boolean by FreezableVar(false)
+
+    @Argument(
+        value = "-Xno-jar-compression",
+        description = "Store entries of the output jar without compression, e.g. for intermediate jars"
+    )
+    var noJarCompression: Boolean by FreezableVar(false)
+
     @Argument(
         value = "-Xnormalize-constructor-calls",
         valueDescription = "{disable|enable}",
@@ -184,6 +203,12 @@ class K2JVMCompilerArguments : CommonCompilerArguments() {
     @Argument(value = "-Xcompile-java", description = "Reuse javac analysis and compile Java source files")
     var compileJava by FreezableVar(false)
 
+    @Argument(
+        value = "-Xconcurrent-classpath-index",
+        description = "Use a thread-safe index of classpath roots that doesn't take locks on lookups"
+    )
+    var concurrentClasspathIndex: Boolean by FreezableVar(false)
+
     @Argument(
         value = "-Xjavac-arguments",
         valueDescription = "<option[,]>",
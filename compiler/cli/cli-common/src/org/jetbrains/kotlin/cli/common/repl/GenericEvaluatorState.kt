@@ -38,3 +38,14 @@ open class GenericReplEvaluatorState(baseClasspath: Iterable<File>, baseClassloa
 
 internal fun makeReplClassLoader(baseClassloader: ClassLoader?, baseClasspath: Iterable<File>) =
         ReplClassLoader(URLClassLoader(baseClasspath.map { it.toURI().toURL() }.toTypedArray(), baseClassloader))
+
+// previous line classes are found by the line loader itself, so its parent only loads classes from the classpath
+internal fun makeLineClassLoader(previousLineClassLoader: ClassLoader, classpathAddendum: List<File>): ReplClassLoader {
+    if (previousLineClassLoader !is ReplClassLoader) return makeReplClassLoader(previousLineClassLoader, classpathAddendum)
+
+    val classpathClassLoader = previousLineClassLoader.parent
+    val parent =
+            if (classpathAddendum.isEmpty()) classpathClassLoader
+            else URLClassLoader(classpathAddendum.map { it.toURI().toURL() }.toTypedArray(), classpathClassLoader)
+    return ReplClassLoader(parent, previousLineClassLoader)
+}
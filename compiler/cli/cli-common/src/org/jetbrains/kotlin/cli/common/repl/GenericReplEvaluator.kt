@@ -136,7 +136,7 @@ private open class HistoryActionsForNoRepeat(val state: GenericReplEvaluatorStat
                                                  compileResult: ReplCompileResult.CompiledClasses
     ): Pair<ClassLoader, Class<out Any>> {
         var mainLineClassName: String? = null
-        val classLoader = makeReplClassLoader(effectiveHistory.lastOrNull()?.classLoader ?: state.topClassLoader, compileResult.classpathAddendum)
+        val classLoader = makeLineClassLoader(effectiveHistory.lastOrNull()?.classLoader ?: state.topClassLoader, compileResult.classpathAddendum)
         fun classNameFromPath(path: String) = JvmClassName.byInternalName(path.removeSuffix(".class"))
         fun compiledClassesNames() = compileResult.classes.map { classNameFromPath(it.path).internalName.replace('/', '.') }
         val expectedClassName = compileResult.mainClassName
@@ -18,19 +18,110 @@ package org.jetbrains.kotlin.cli.common.repl;
 
 import com.google.common.collect.Maps;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.resolve.jvm.JvmClassName;
 import org.jetbrains.org.objectweb.asm.ClassReader;
 import org.jetbrains.org.objectweb.asm.util.TraceClassVisitor;
 
 import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Loads classes of a REPL line.
+ *
+ * A loader created with a previous line loader is a segment of a chain of line loaders: classes of earlier lines are found via an
+ * index shared by the chain, and all other classes are loaded by the parent, which is not a line loader. So loading a class doesn't
+ * delegate through loaders of all previous lines, and segments of lines removed from the history can be collected.
+ */
 public class ReplClassLoader extends ClassLoader {
 
     private final Map<JvmClassName, byte[]> classes = Maps.newLinkedHashMap();
 
+    @Nullable
+    private final ReplClassLoader previousLineLoader;
+
+    private final int lineDepth;
+
+    // binary class name -> the line loader which has the class, shared by all segments of a chain
+    private final Map<String, WeakReference<ReplClassLoader>> classOwners;
+
+    // line depth -> the line loader of this branch of the history, shared by the lines of the branch. A line which continues
+    // a line that already has a next one, e.g. after a reset of the history, starts a new branch with a copy of the common lines
+    private final Map<Integer, WeakReference<ReplClassLoader>> branch;
+
     public ReplClassLoader(@NotNull ClassLoader parent) {
+        this(parent, null);
+    }
+
+    public ReplClassLoader(@NotNull ClassLoader parent, @Nullable ReplClassLoader previousLineLoader) {
         super(parent);
+        this.previousLineLoader = previousLineLoader;
+        if (previousLineLoader != null) {
+            lineDepth = previousLineLoader.lineDepth + 1;
+            classOwners = previousLineLoader.classOwners;
+            if (previousLineLoader.branch.size() == lineDepth) {
+                branch = previousLineLoader.branch;
+            }
+            else {
+                branch = new ConcurrentHashMap<Integer, WeakReference<ReplClassLoader>>();
+                for (int depth = 0; depth < lineDepth; depth++) {
+                    branch.put(depth, previousLineLoader.branch.get(depth));
+                }
+            }
+        }
+        else {
+            lineDepth = 0;
+            classOwners = new ConcurrentHashMap<String, WeakReference<ReplClassLoader>>();
+            branch = new ConcurrentHashMap<Integer, WeakReference<ReplClassLoader>>();
+        }
+        branch.put(lineDepth, new WeakReference<ReplClassLoader>(this));
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        ReplClassLoader owner = findLineLoader(name);
+        if (owner == null) {
+            return super.loadClass(name, resolve);
+        }
+
+        Class<?> result = owner.loadOwnClass(name);
+        if (resolve) {
+            resolveClass(result);
+        }
+        return result;
+    }
+
+    @Nullable
+    private ReplClassLoader findLineLoader(@NotNull String name) {
+        WeakReference<ReplClassLoader> ownerReference = classOwners.get(name);
+        if (ownerReference == null) return null;
+
+        ReplClassLoader owner = ownerReference.get();
+        if (owner != null && isThisOrPreviousLine(owner)) return owner;
+
+        // the class was redefined in another branch of the history (e.g. after a reset), look for it in the lines of this branch
+        JvmClassName className = JvmClassName.byFqNameWithoutInnerClasses(name);
+        for (ReplClassLoader loader = this; loader != null; loader = loader.previousLineLoader) {
+            if (loader.classes.containsKey(className)) return loader;
+        }
+        return null;
+    }
+
+    private boolean isThisOrPreviousLine(@NotNull ReplClassLoader loader) {
+        if (loader.lineDepth > lineDepth) return false;
+        // previous lines are reachable from this one, so their references in the branch are not cleared
+        WeakReference<ReplClassLoader> reference = branch.get(loader.lineDepth);
+        return reference != null && reference.get() == loader;
+    }
+
+    @NotNull
+    private Class<?> loadOwnClass(@NotNull String name) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> result = findLoadedClass(name);
+            return result != null ? result : findClass(name);
+        }
     }
 
     @NotNull
@@ -50,6 +141,7 @@ public class ReplClassLoader extends ClassLoader {
         if (oldBytes != null) {
             throw new IllegalStateException("Rewrite at key " + className);
         }
+        classOwners.put(className.getInternalName().replace('/', '.'), new WeakReference<ReplClassLoader>(this));
     }
 
     public void dumpClasses(@NotNull PrintWriter writer) {
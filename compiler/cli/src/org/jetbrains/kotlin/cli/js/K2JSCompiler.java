@@ -24,6 +24,7 @@ import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ExceptionUtil;
 import com.intellij.util.SmartList;
+import kotlin.Unit;
 import kotlin.collections.ArraysKt;
 import kotlin.collections.CollectionsKt;
 import kotlin.collections.SetsKt;
@@ -42,6 +43,7 @@ import org.jetbrains.kotlin.cli.common.messages.AnalyzerWithCompilerReport;
 import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity;
 import org.jetbrains.kotlin.cli.common.messages.MessageCollector;
 import org.jetbrains.kotlin.cli.common.messages.MessageUtil;
+import org.jetbrains.kotlin.cli.common.messages.OutputMessageUtil;
 import org.jetbrains.kotlin.cli.common.output.OutputUtilsKt;
 import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles;
 import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment;
@@ -49,6 +51,7 @@ import org.jetbrains.kotlin.cli.jvm.plugins.PluginCliParser;
 import org.jetbrains.kotlin.config.*;
 import org.jetbrains.kotlin.incremental.components.ExpectActualTracker;
 import org.jetbrains.kotlin.incremental.components.LookupTracker;
+import org.jetbrains.kotlin.incremental.js.FileTranslatedFragmentCache;
 import org.jetbrains.kotlin.incremental.js.IncrementalDataProvider;
 import org.jetbrains.kotlin.incremental.js.IncrementalResultsConsumer;
 import org.jetbrains.kotlin.incremental.js.TranslationResultValue;
@@ -310,17 +313,30 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         if (!(translationResult instanceof TranslationResult.Success)) return ExitCode.COMPILATION_ERROR;
 
         TranslationResult.Success successResult = (TranslationResult.Success) translationResult;
-        OutputFileCollection outputFiles = successResult.getOutputFiles(outputFile, outputPrefixFile, outputPostfixFile);
 
         if (outputFile.isDirectory()) {
             messageCollector.report(ERROR, "Cannot open output file '" + outputFile.getPath() + "': is a directory", null);
             return ExitCode.COMPILATION_ERROR;
         }
 
+        boolean reportOutputFiles = configuration.getBoolean(CommonConfigurationKeys.REPORT_OUTPUT_FILES);
+        OutputFileCollection outputFiles;
+        if (arguments.getStreamingOutput()) {
+            outputFiles = successResult.writeCodeAndGetMetadataFiles(
+                    outputFile, outputDir, outputPrefixFile, outputPostfixFile,
+                    !reportOutputFiles ? null : (sources, output) -> {
+                        messageCollector.report(OUTPUT, OutputMessageUtil.formatOutputMessage(sources, output), null);
+                        return Unit.INSTANCE;
+                    }
+            );
+        }
+        else {
+            outputFiles = successResult.getOutputFiles(outputFile, outputPrefixFile, outputPostfixFile);
+        }
+
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled();
 
-        OutputUtilsKt.writeAll(outputFiles, outputDir, messageCollector,
-                               configuration.getBoolean(CommonConfigurationKeys.REPORT_OUTPUT_FILES));
+        OutputUtilsKt.writeAll(outputFiles, outputDir, messageCollector, reportOutputFiles);
 
         return OK;
     }
@@ -419,6 +435,15 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
 
         configuration.put(JSConfigurationKeys.FRIEND_PATHS_DISABLED, arguments.getFriendModulesDisabled());
 
+        if (arguments.getTranslatedFragmentCache() != null) {
+            configuration.put(JSConfigurationKeys.TRANSLATED_FRAGMENT_CACHE,
+                              new FileTranslatedFragmentCache(new File(arguments.getTranslatedFragmentCache())));
+        }
+
+        if (arguments.getParallelFragmentProcessing()) {
+            configuration.put(JSConfigurationKeys.FRAGMENT_PROCESSING_THREADS, Runtime.getRuntime().availableProcessors());
+        }
+
         if (!arguments.getFriendModulesDisabled() && arguments.getFriendModules() != null) {
             List<String> friendPaths = ArraysKt.filterNot(arguments.getFriendModules().split(File.pathSeparator), String::isEmpty);
             configuration.put(JSConfigurationKeys.FRIEND_PATHS, friendPaths);
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.compiler
+
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.ZipException
+
+/**
+ * Writes a jar file without going through [java.util.jar.JarOutputStream]:
+ * - entries are deflated on a thread pool and written in the order they were added,
+ * - entries of other jars are copied as is, without inflating and deflating them again,
+ * - [store] disables compression of new entries, which is useful for intermediate jars.
+ *
+ * Like [java.util.jar.JarOutputStream], zip64 extensions are written only for jars with more than 65535 entries
+ * or larger than 4 Gb, and only for the values which don't fit into the classic zip format.
+ */
+class JarOutputWriter @JvmOverloads constructor(
+    private val output: OutputStream,
+    private val store: Boolean,
+    threadCount: Int = Runtime.getRuntime().availableProcessors()
+) : Closeable {
+    private class PreparedEntry(
+        val name: ByteArray,
+        val method: Int,
+        val crc: Long,
+        val compressedSize: Long,
+        val size: Long,
+        val dosTime: Long,
+        val extra: ByteArray,
+        val writeData: (OutputStream) -> Unit
+    )
+
+    private val executor = if (store || threadCount <= 1) null else Executors.newFixedThreadPool(threadCount) { r ->
+        Thread(r, "kotlin-jar-writer").apply { isDaemon = true }
+    }
+
+    private val entries = ArrayList<Future<PreparedEntry>>()
+    private val names = HashSet<String>()
+    private val time = System.currentTimeMillis()
+
+    fun addEntry(name: String, content: ByteArray) {
+        addEntry(name, content, extra = EMPTY)
+    }
+
+    /**
+     * Adds the manifest, which has to be the first entry. It's marked with the same extra field
+     * as the one written by [java.util.jar.JarOutputStream].
+     */
+    fun addManifest(content: ByteArray) {
+        check(entries.isEmpty()) { "Manifest should be the first entry of a jar" }
+        addEntry(MANIFEST_NAME, content, extra = JAR_MAGIC)
+    }
+
+    private fun addEntry(name: String, content: ByteArray, extra: ByteArray) {
+        checkName(name)
+        val nameBytes = name.toByteArray(Charsets.UTF_8)
+        val dosTime = javaToDosTime(time)
+
+        val task = {
+            val crc = CRC32().apply { update(content) }.value
+            if (store || content.isEmpty()) {
+                PreparedEntry(nameBytes, STORED, crc, content.size.toLong(), content.size.toLong(), dosTime, extra) { it.write(content) }
+            } else {
+                val compressed = deflate(content)
+                PreparedEntry(nameBytes, DEFLATED, crc, compressed.size.toLong(), content.size.toLong(), dosTime, extra) { it.write(compressed) }
+            }
+        }
+
+        entries += executor?.submit(Callable { task() }) ?: CompletedFuture(task())
+    }
+
+    /**
+     * Copies entries of [jar] satisfying [filter] without recompressing them.
+     */
+    fun copyEntries(jar: File, filter: (String) -> Boolean) {
+        FileChannel.open(jar.toPath(), StandardOpenOption.READ).use { channel ->
+            for (entry in readCentralDirectory(channel)) {
+                if (!filter(entry.name)) continue
+                checkName(entry.name)
+
+                val data = readRawData(channel, entry)
+                entries += CompletedFuture(PreparedEntry(
+                    entry.name.toByteArray(Charsets.UTF_8), entry.method, entry.crc, entry.compressedSize, entry.size,
+                    entry.dosTime, EMPTY
+                ) { it.write(data) })
+            }
+        }
+    }
+
+    /**
+     * Writes all added entries and the central directory. The underlying stream is not closed.
+     */
+    fun finish() {
+        val out = CountingOutputStream(BufferedOutputStream(output, 1 shl 16))
+        val offsets = LongArray(entries.size)
+        val prepared = ArrayList<PreparedEntry>(entries.size)
+
+        try {
+            for ((index, future) in entries.withIndex()) {
+                val entry = future.getUnwrapped()
+                offsets[index] = out.count
+                writeLocalHeader(out, entry)
+                entry.writeData(out)
+                prepared += entry
+            }
+
+            val centralDirectoryOffset = out.count
+            for ((index, entry) in prepared.withIndex()) {
+                writeCentralDirectoryHeader(out, entry, offsets[index])
+            }
+            val centralDirectorySize = out.count - centralDirectoryOffset
+
+            if (prepared.size >= 0xFFFF || centralDirectorySize >= ZIP64_MAGIC || centralDirectoryOffset >= ZIP64_MAGIC) {
+                writeZip64EndOfCentralDirectory(out, prepared.size, centralDirectorySize, centralDirectoryOffset)
+            }
+            writeEndOfCentralDirectory(out, prepared.size, centralDirectorySize, centralDirectoryOffset)
+            out.flush()
+        } finally {
+            entries.clear()
+        }
+    }
+
+    override fun close() {
+        executor?.shutdownNow()
+    }
+
+    private fun checkName(name: String) {
+        if (!names.add(name)) throw ZipException("duplicate entry: $name")
+    }
+
+    private fun deflate(content: ByteArray): ByteArray {
+        val deflater = Deflater(Deflater.DEFAULT_COMPRESSION, true)
+        try {
+            deflater.setInput(content)
+            deflater.finish()
+            val result = ByteArrayOutputStream(content.size / 2 + 64)
+            val buffer = ByteArray(8192)
+            while (!deflater.finished()) {
+                val count = deflater.deflate(buffer)
+                result.write(buffer, 0, count)
+            }
+            return result.toByteArray()
+        } finally {
+            deflater.end()
+        }
+    }
+
+    private fun writeLocalHeader(out: OutputStream, entry: PreparedEntry) {
+        // Both sizes are in the zip64 extra field of a local header if any of them doesn't fit
+        val zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC
+        val extra = if (zip64) entry.extra + zip64ExtraField(entry.size, entry.compressedSize) else entry.extra
+
+        val header = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN)
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+        header.putShort(versionNeeded(entry, zip64).toShort())
+        header.putShort(UTF8_FLAG.toShort())
+        header.putShort(entry.method.toShort())
+        header.putInt(entry.dosTime.toInt())
+        header.putInt(entry.crc.toInt())
+        header.putInt(if (zip64) ZIP64_MAGIC.toInt() else entry.compressedSize.toInt())
+        header.putInt(if (zip64) ZIP64_MAGIC.toInt() else entry.size.toInt())
+        header.putShort(entry.name.size.toShort())
+        header.putShort(extra.size.toShort())
+        out.write(header.array())
+        out.write(entry.name)
+        out.write(extra)
+    }
+
+    private fun writeCentralDirectoryHeader(out: OutputStream, entry: PreparedEntry, offset: Long) {
+        // Only the values which don't fit are in the zip64 extra field of a central directory header
+        val zip64Values = listOf(entry.size, entry.compressedSize, offset).filter { it >= ZIP64_MAGIC }
+        val zip64 = zip64Values.isNotEmpty()
+        val extra = if (zip64) entry.extra + zip64ExtraField(*zip64Values.toLongArray()) else entry.extra
+
+        val header = ByteBuffer.allocate(46).order(ByteOrder.LITTLE_ENDIAN)
+        header.putInt(CENTRAL_HEADER_SIGNATURE)
+        header.putShort(versionNeeded(entry, zip64).toShort())
+        header.putShort(versionNeeded(entry, zip64).toShort())
+        header.putShort(UTF8_FLAG.toShort())
+        header.putShort(entry.method.toShort())
+        header.putInt(entry.dosTime.toInt())
+        header.putInt(entry.crc.toInt())
+        header.putInt(minOf(entry.compressedSize, ZIP64_MAGIC).toInt())
+        header.putInt(minOf(entry.size, ZIP64_MAGIC).toInt())
+        header.putShort(entry.name.size.toShort())
+        header.putShort(extra.size.toShort())
+        header.putShort(0) // comment length
+        header.putShort(0) // disk number
+        header.putShort(0) // internal attributes
+        header.putInt(0) // external attributes
+        header.putInt(minOf(offset, ZIP64_MAGIC).toInt())
+        out.write(header.array())
+        out.write(entry.name)
+        out.write(extra)
+    }
+
+    private fun zip64ExtraField(vararg values: Long): ByteArray {
+        val field = ByteBuffer.allocate(4 + 8 * values.size).order(ByteOrder.LITTLE_ENDIAN)
+        field.putShort(ZIP64_EXTRA_ID.toShort())
+        field.putShort((8 * values.size).toShort())
+        values.forEach { field.putLong(it) }
+        return field.array()
+    }
+
+    private fun writeZip64EndOfCentralDirectory(out: CountingOutputStream, count: Int, size: Long, offset: Long) {
+        val zip64EndOffset = out.count
+
+        val record = ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN)
+        record.putInt(ZIP64_END_SIGNATURE)
+        record.putLong(44) // size of the remaining record
+        record.putShort(ZIP64_VERSION.toShort())
+        record.putShort(ZIP64_VERSION.toShort())
+        record.putInt(0) // number of this disk
+        record.putInt(0) // disk with the central directory
+        record.putLong(count.toLong())
+        record.putLong(count.toLong())
+        record.putLong(size)
+        record.putLong(offset)
+        out.write(record.array())
+
+        val locator = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN)
+        locator.putInt(ZIP64_LOCATOR_SIGNATURE)
+        locator.putInt(0) // disk with the zip64 end of central directory record
+        locator.putLong(zip64EndOffset)
+        locator.putInt(1) // total number of disks
+        out.write(locator.array())
+    }
+
+    private fun writeEndOfCentralDirectory(out: OutputStream, count: Int, size: Long, offset: Long) {
+        val record = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN)
+        record.putInt(END_SIGNATURE)
+        record.putShort(0)
+        record.putShort(0)
+        record.putShort(minOf(count, 0xFFFF).toShort())
+        record.putShort(minOf(count, 0xFFFF).toShort())
+        record.putInt(minOf(size, ZIP64_MAGIC).toInt())
+        record.putInt(minOf(offset, ZIP64_MAGIC).toInt())
+        record.putShort(0)
+        out.write(record.array())
+    }
+
+    private fun versionNeeded(entry: PreparedEntry, zip64: Boolean): Int = when {
+        zip64 -> ZIP64_VERSION
+        entry.method == DEFLATED -> 20
+        else -> 10
+    }
+
+    private class SourceEntry(
+        val name: String,
+        val method: Int,
+        val crc: Long,
+        val compressedSize: Long,
+        val size: Long,
+        val dosTime: Long,
+        val localHeaderOffset: Long
+    )
+
+    private fun readCentralDirectory(channel: FileChannel): List<SourceEntry> {
+        val fileSize = channel.size()
+        val tailSize = minOf(fileSize, (0xFFFF + 22).toLong()).toInt()
+        val tailOffset = fileSize - tailSize
+        val tail = channel.readFully(tailOffset, tailSize)
+
+        var endOffset = tailSize - 22
+        while (endOffset >= 0 && tail.getInt(endOffset) != END_SIGNATURE) endOffset--
+        if (endOffset < 0) throw ZipException("End of central directory not found in $channel")
+
+        var count = (tail.getShort(endOffset + 10).toInt() and 0xFFFF).toLong()
+        var size = tail.getInt(endOffset + 12).toLong() and 0xFFFFFFFFL
+        var offset = tail.getInt(endOffset + 16).toLong() and 0xFFFFFFFFL
+
+        val locatorOffset = tailOffset + endOffset - 20
+        if (locatorOffset >= 0) {
+            val locator = channel.readFully(locatorOffset, 20)
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIGNATURE) {
+                val zip64End = channel.readFully(locator.getLong(8), 56)
+                if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) throw ZipException("Invalid zip64 end of central directory record")
+                count = zip64End.getLong(32)
+                size = zip64End.getLong(40)
+                offset = zip64End.getLong(48)
+            }
+        }
+
+        if (count > Int.MAX_VALUE || size > Int.MAX_VALUE) throw ZipException("Central directory is too large in $channel")
+        val directory = channel.readFully(offset, size.toInt())
+        val result = ArrayList<SourceEntry>(count.toInt())
+        var position = 0
+        repeat(count.toInt()) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) throw ZipException("Invalid central directory header")
+            val flags = directory.getShort(position + 8).toInt() and 0xFFFF
+            val nameLength = directory.getShort(position + 28).toInt() and 0xFFFF
+            val extraLength = directory.getShort(position + 30).toInt() and 0xFFFF
+            val commentLength = directory.getShort(position + 32).toInt() and 0xFFFF
+            val nameBytes = ByteArray(nameLength) { directory.get(position + 46 + it) }
+
+            var entrySize = directory.getInt(position + 24).toLong() and 0xFFFFFFFFL
+            var compressedSize = directory.getInt(position + 20).toLong() and 0xFFFFFFFFL
+            var localHeaderOffset = directory.getInt(position + 42).toLong() and 0xFFFFFFFFL
+            if (entrySize == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                // The zip64 extra field has only the values which don't fit, in this order
+                var valuePosition = findZip64ExtraField(directory, position + 46 + nameLength, extraLength)
+                if (entrySize == ZIP64_MAGIC) {
+                    entrySize = directory.getLong(valuePosition)
+                    valuePosition += 8
+                }
+                if (compressedSize == ZIP64_MAGIC) {
+                    compressedSize = directory.getLong(valuePosition)
+                    valuePosition += 8
+                }
+                if (localHeaderOffset == ZIP64_MAGIC) {
+                    localHeaderOffset = directory.getLong(valuePosition)
+                }
+            }
+
+            result += SourceEntry(
+                name = String(nameBytes, if (flags and UTF8_FLAG != 0) Charsets.UTF_8 else Charsets.ISO_8859_1),
+                method = directory.getShort(position + 10).toInt() and 0xFFFF,
+                dosTime = directory.getInt(position + 12).toLong() and 0xFFFFFFFFL,
+                crc = directory.getInt(position + 16).toLong() and 0xFFFFFFFFL,
+                compressedSize = compressedSize,
+                size = entrySize,
+                localHeaderOffset = localHeaderOffset
+            )
+            position += 46 + nameLength + extraLength + commentLength
+        }
+        return result
+    }
+
+    // Returns the position of the data of the zip64 extra field
+    private fun findZip64ExtraField(directory: ByteBuffer, extraStart: Int, extraLength: Int): Int {
+        var position = extraStart
+        while (position + 4 <= extraStart + extraLength) {
+            val id = directory.getShort(position).toInt() and 0xFFFF
+            val dataSize = directory.getShort(position + 2).toInt() and 0xFFFF
+            if (id == ZIP64_EXTRA_ID) return position + 4
+            position += 4 + dataSize
+        }
+        throw ZipException("Zip64 extra field not found")
+    }
+
+    private fun readRawData(channel: FileChannel, entry: SourceEntry): ByteArray {
+        if (entry.compressedSize > Int.MAX_VALUE) throw ZipException("Entry ${entry.name} is too large to be copied")
+        val header = channel.readFully(entry.localHeaderOffset, 30)
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) throw ZipException("Invalid local header of ${entry.name}")
+        val nameLength = header.getShort(26).toInt() and 0xFFFF
+        val extraLength = header.getShort(28).toInt() and 0xFFFF
+        val data = channel.readFully(entry.localHeaderOffset + 30 + nameLength + extraLength, entry.compressedSize.toInt())
+        return data.array()
+    }
+
+    private fun FileChannel.readFully(position: Long, size: Int): ByteBuffer {
+        val buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+        while (buffer.hasRemaining()) {
+            if (read(buffer, position + buffer.position()) < 0) throw EOFException()
+        }
+        buffer.flip()
+        return buffer
+    }
+
+    private class CountingOutputStream(private val delegate: OutputStream) : FilterOutputStream(delegate) {
+        var count = 0L
+            private set
+
+        override fun write(b: Int) {
+            delegate.write(b)
+            count++
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            delegate.write(b, off, len)
+            count += len
+        }
+    }
+
+    private class CompletedFuture<T>(private val value: T) : Future<T> {
+        override fun cancel(mayInterruptIfRunning: Boolean) = false
+        override fun isCancelled() = false
+        override fun isDone() = true
+        override fun get() = value
+        override fun get(timeout: Long, unit: TimeUnit) = value
+    }
+
+    private fun <T> Future<T>.getUnwrapped(): T =
+        try {
+            get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+
+    companion object {
+        private const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+        private const val CENTRAL_HEADER_SIGNATURE = 0x02014b50
+        private const val END_SIGNATURE = 0x06054b50
+        private const val ZIP64_END_SIGNATURE = 0x06064b50
+        private const val ZIP64_LOCATOR_SIGNATURE = 0x07064b50
+
+        private const val ZIP64_MAGIC = 0xFFFFFFFFL
+        private const val ZIP64_EXTRA_ID = 0x0001
+        private const val ZIP64_VERSION = 45
+
+        private const val STORED = 0
+        private const val DEFLATED = 8
+        private const val UTF8_FLAG = 0x800
+
+        private const val MANIFEST_NAME = "META-INF/MANIFEST.MF"
+
+        private val EMPTY = ByteArray(0)
+        private val JAR_MAGIC = byteArrayOf(0xFE.toByte(), 0xCA.toByte(), 0, 0)
+
+        private fun javaToDosTime(time: Long): Long {
+            val calendar = Calendar.getInstance().apply { timeInMillis = time }
+            val year = calendar.get(Calendar.YEAR)
+            if (year < 1980) return ((1 shl 21) or (1 shl 16)).toLong()
+            return (((year - 1980) shl 25) or
+                    ((calendar.get(Calendar.MONTH) + 1) shl 21) or
+                    (calendar.get(Calendar.DAY_OF_MONTH) shl 16) or
+                    (calendar.get(Calendar.HOUR_OF_DAY) shl 11) or
+                    (calendar.get(Calendar.MINUTE) shl 5) or
+                    (calendar.get(Calendar.SECOND) shr 1)).toLong() and 0xFFFFFFFFL
+        }
+    }
+}
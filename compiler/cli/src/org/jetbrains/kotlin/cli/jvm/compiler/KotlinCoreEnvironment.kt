@@ -241,7 +241,10 @@ class KotlinCoreEnvironment private constructor(
 
         // REPL and kapt2 update classpath dynamically
         rootsIndex = JvmDependenciesDynamicCompoundIndex().apply {
-            addIndex(JvmDependenciesIndexImpl(roots))
+            addIndex(
+                if (configuration.getBoolean(JVMConfigurationKeys.CONCURRENT_CLASSPATH_INDEX)) ConcurrentJvmDependenciesIndexImpl(roots)
+                else JvmDependenciesIndexImpl(roots)
+            )
             updateClasspathFromRootsIndex(this)
         }
 
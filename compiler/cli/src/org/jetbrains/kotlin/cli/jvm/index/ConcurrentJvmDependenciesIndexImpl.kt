@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.cli.jvm.index
+
+import com.intellij.ide.highlighter.JavaClassFileType
+import com.intellij.ide.highlighter.JavaFileType
+import com.intellij.openapi.vfs.VfsUtilCore
+import com.intellij.openapi.vfs.VirtualFile
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+// Thread-safe counterpart of JvmDependenciesIndexImpl.
+// Instead of discovering roots of a package one by one, all roots containing a package are computed at once (only among the roots
+// containing its parent package) and published as an immutable snapshot, so lookups of already visited packages never take locks.
+class ConcurrentJvmDependenciesIndexImpl(_roots: List<JavaRoot>) : JvmDependenciesIndex {
+    //these fields are computed based on _roots passed to constructor which are filled in later
+    private val roots: List<JavaRoot> by lazy { _roots.toList() }
+
+    override val indexedRoots by lazy { roots.asSequence() }
+
+    // each "PackageNode" object corresponds to a package
+    private class PackageNode(val name: String, val depth: Int) {
+        private val children = ConcurrentHashMap<String, PackageNode>()
+
+        // computed once all roots containing the parent package are known, never changed afterwards
+        @Volatile
+        var contents: PackageContents? = null
+
+        fun child(name: String): PackageNode =
+            children[name] ?: children.putIfAbsent(name, PackageNode(name, depth + 1)) ?: children[name]!!
+    }
+
+    // roots containing a package in the order of the classpath and a directory of the package in each of them
+    private class PackageContents(val rootIndices: BitSet, val directories: Array<VirtualFile>) {
+        val isEmpty: Boolean
+            get() = directories.isEmpty()
+    }
+
+    // root "PackageNode" object corresponds to DefaultPackage which exists in every root. Roots with non-default fqname are also listed
+    // here but they will be ignored on requests with invalid fqname prefix.
+    private val rootNode: PackageNode by lazy {
+        PackageNode("", 0).apply {
+            contents = PackageContents(BitSet(roots.size).apply { set(0, roots.size) }, Array(roots.size) { roots[it].file })
+        }
+    }
+
+    // holds the request and the result last time we searched for class on this thread
+    // helps improve several scenarios, LazyJavaResolverContext.findClassInJava being the most important
+    private val lastClassSearch = ThreadLocal<Pair<FindClassRequest, SearchResult>>()
+
+    override fun traverseDirectoriesInPackage(
+        packageFqName: FqName,
+        acceptedRootTypes: Set<JavaRoot.RootType>,
+        continueSearch: (VirtualFile, JavaRoot.RootType) -> Boolean
+    ) {
+        search(TraverseRequest(packageFqName, acceptedRootTypes)) { dir, rootType ->
+            if (continueSearch(dir, rootType)) null else Unit
+        }
+    }
+
+    // findClassGivenDirectory MUST check whether the class with this classId exists in given package
+    override fun <T : Any> findClass(
+        classId: ClassId,
+        acceptedRootTypes: Set<JavaRoot.RootType>,
+        findClassGivenDirectory: (VirtualFile, JavaRoot.RootType) -> T?
+    ): T? {
+        // make a decision based on information saved from last class search
+        val lastSearch = lastClassSearch.get()
+        if (lastSearch?.first?.classId != classId) {
+            return search(FindClassRequest(classId, acceptedRootTypes), findClassGivenDirectory)
+        }
+
+        val (cachedRequest, cachedResult) = lastSearch
+        return when (cachedResult) {
+            is SearchResult.NotFound -> {
+                val limitedRootTypes = acceptedRootTypes - cachedRequest.acceptedRootTypes
+                if (limitedRootTypes.isEmpty()) {
+                    null
+                } else {
+                    search(FindClassRequest(classId, limitedRootTypes), findClassGivenDirectory)
+                }
+            }
+            is SearchResult.Found -> {
+                if (cachedRequest.acceptedRootTypes == acceptedRootTypes) {
+                    findClassGivenDirectory(cachedResult.packageDirectory, cachedResult.root.type)
+                } else {
+                    search(FindClassRequest(classId, acceptedRootTypes), findClassGivenDirectory)
+                }
+            }
+        }
+    }
+
+    private fun <T : Any> search(request: SearchRequest, handler: (VirtualFile, JavaRoot.RootType) -> T?): T? {
+        val contents = findPackageContents(request.packageFqName)
+
+        var directoryIndex = 0
+        var rootIndex = contents.rootIndices.nextSetBit(0)
+        while (rootIndex >= 0) {
+            val root = roots[rootIndex]
+            val directoryInRoot = contents.directories[directoryIndex++]
+            if (root.type in request.acceptedRootTypes) {
+                val result = handler(directoryInRoot, root.type)
+                if (result != null) {
+                    if (request is FindClassRequest) {
+                        lastClassSearch.set(Pair(request, SearchResult.Found(directoryInRoot, root)))
+                    }
+                    return result
+                }
+            }
+            rootIndex = contents.rootIndices.nextSetBit(rootIndex + 1)
+        }
+
+        if (request is FindClassRequest) {
+            lastClassSearch.set(Pair(request, SearchResult.NotFound))
+        }
+        return null
+    }
+
+    private fun findPackageContents(packageFqName: FqName): PackageContents {
+        var node = rootNode
+        var contents = node.contents!!
+        for (segment in packageFqName.pathSegments()) {
+            // no need to remember packages which can't exist
+            if (contents.isEmpty) return contents
+
+            node = node.child(segment.identifier)
+            contents = node.contents ?: computePackageContents(node, contents)
+        }
+        return contents
+    }
+
+    // Several threads may compute contents of the same package simultaneously, which is harmless: the results are equal and immutable,
+    // and the volatile write publishes them safely
+    private fun computePackageContents(node: PackageNode, parentContents: PackageContents): PackageContents {
+        val rootIndices = BitSet()
+        val directories = ArrayList<VirtualFile>()
+
+        var parentDirectoryIndex = 0
+        var rootIndex = parentContents.rootIndices.nextSetBit(0)
+        while (rootIndex >= 0) {
+            val root = roots[rootIndex]
+            val parentDirectory = parentContents.directories[parentDirectoryIndex++]
+            val prefixPathSegments = root.prefixFqName?.pathSegments()
+
+            val directory =
+                if (prefixPathSegments != null && node.depth <= prefixPathSegments.size) {
+                    // Traverse prefix first instead of traversing real directories
+                    if (prefixPathSegments[node.depth - 1].identifier == node.name) parentDirectory else null
+                } else {
+                    parentDirectory.findChildPackage(node.name, root.type)
+                }
+
+            if (directory != null) {
+                rootIndices.set(rootIndex)
+                directories.add(directory)
+            }
+
+            rootIndex = parentContents.rootIndices.nextSetBit(rootIndex + 1)
+        }
+
+        return PackageContents(rootIndices, directories.toTypedArray()).also { node.contents = it }
+    }
+
+    private fun VirtualFile.findChildPackage(subPackageName: String, rootType: JavaRoot.RootType): VirtualFile? {
+        val childDirectory = findChild(subPackageName) ?: return null
+
+        val fileExtension = when (rootType) {
+            JavaRoot.RootType.BINARY -> JavaClassFileType.INSTANCE.defaultExtension
+            JavaRoot.RootType.SOURCE -> JavaFileType.INSTANCE.defaultExtension
+        }
+
+        // If in addition to a directory "foo" there's a class file "foo.class" AND there are no classes anywhere in the directory "foo",
+        // then we ignore the directory and let the resolution choose the class "foo" instead.
+        if (findChild("$subPackageName.$fileExtension")?.isDirectory == false) {
+            if (VfsUtilCore.processFilesRecursively(childDirectory) { file -> file.extension != fileExtension }) {
+                return null
+            }
+        }
+
+        return childDirectory
+    }
+
+    private data class FindClassRequest(val classId: ClassId, override val acceptedRootTypes: Set<JavaRoot.RootType>) : SearchRequest {
+        override val packageFqName: FqName
+            get() = classId.packageFqName
+    }
+
+    private data class TraverseRequest(
+        override val packageFqName: FqName,
+        override val acceptedRootTypes: Set<JavaRoot.RootType>
+    ) : SearchRequest
+
+    private interface SearchRequest {
+        val packageFqName: FqName
+        val acceptedRootTypes: Set<JavaRoot.RootType>
+    }
+
+    private sealed class SearchResult {
+        class Found(val packageDirectory: VirtualFile, val root: JavaRoot) : SearchResult()
+
+        object NotFound : SearchResult()
+    }
+}
@@ -23,6 +23,7 @@ fun CompilerConfiguration.setupJvmSpecificArguments(arguments: K2JVMCompilerArgu
     val messageCollector = getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY)
 
     put(JVMConfigurationKeys.INCLUDE_RUNTIME, arguments.includeRuntime)
+    put(JVMConfigurationKeys.NO_JAR_COMPRESSION, arguments.noJarCompression)
 
     putIfNotNull(JVMConfigurationKeys.FRIEND_PATHS, arguments.friendPaths?.asList())
 
@@ -153,6 +154,20 @@ fun CompilerConfiguration.configureAdvancedJvmOptions(arguments: K2JVMCompilerAr
     )
     put(JVMConfigurationKeys.DISABLE_OPTIMIZATION, arguments.noOptimize)
 
+    arguments.optimizationThreads?.let { optimizationThreads ->
+        val threadsCount = optimizationThreads.toIntOrNull()
+        if (threadsCount == null || threadsCount < 1) {
+            getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY).report(
+                ERROR,
+                "Invalid number of optimization threads: $optimizationThreads, a positive number is expected"
+            )
+        } else {
+            put(JVMConfigurationKeys.OPTIMIZATION_THREADS, threadsCount)
+        }
+    }
+
+    put(JVMConfigurationKeys.CACHE_OPTIMIZED_METHODS, arguments.cacheOptimizedMethods)
+
     if (!JVMConstructorCallNormalizationMode.isSupportedValue(arguments.constructorCallNormalizationMode)) {
         getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY).report(
             ERROR,
@@ -187,6 +202,7 @@ fun CompilerConfiguration.configureAdvancedJvmOptions(arguments: K2JVMCompilerAr
     put(JVMConfigurationKeys.USE_TYPE_TABLE, arguments.useTypeTable)
     put(JVMConfigurationKeys.SKIP_RUNTIME_VERSION_CHECK, arguments.skipRuntimeVersionCheck)
     put(JVMConfigurationKeys.USE_FAST_CLASS_FILES_READING, !arguments.useOldClassFilesReading)
+    put(JVMConfigurationKeys.CONCURRENT_CLASSPATH_INDEX, arguments.concurrentClasspathIndex)
 
     if (arguments.useOldClassFilesReading) {
         getNotNull(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY)
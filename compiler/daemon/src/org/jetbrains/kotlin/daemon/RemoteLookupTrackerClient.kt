@@ -16,16 +16,16 @@
 
 package org.jetbrains.kotlin.daemon
 
-import com.intellij.util.containers.StringInterner
-import gnu.trove.THashMap
-import gnu.trove.THashSet
 import org.jetbrains.kotlin.daemon.common.CompilerCallbackServicesFacade
 import org.jetbrains.kotlin.daemon.common.DummyProfiler
 import org.jetbrains.kotlin.daemon.common.Profiler
+import org.jetbrains.kotlin.incremental.ConcurrentLookupBuffers
+import org.jetbrains.kotlin.incremental.SKIP_PLATFORM_LOOKUPS_PROPERTY
 import org.jetbrains.kotlin.incremental.components.LookupInfo
 import org.jetbrains.kotlin.incremental.components.LookupTracker
 import org.jetbrains.kotlin.incremental.components.Position
 import org.jetbrains.kotlin.incremental.components.ScopeKind
+import org.jetbrains.kotlin.incremental.isPlatformLookupScope
 
 
 class RemoteLookupTrackerClient(
@@ -35,25 +35,17 @@ class RemoteLookupTrackerClient(
 ) : LookupTracker {
     private val isDoNothing = profiler.withMeasure(this) { facade.lookupTracker_isDoNothing() }
 
-    // Map: FileName -> (ScopeFqName -> Set<Name[String] | LookupInfo>)
-    private val lookups = THashMap<String, MutableMap<String, MutableSet<Any>>>()
-    private val interner = StringInterner()
-
     override val requiresPosition: Boolean = profiler.withMeasure(this) { facade.lookupTracker_requiresPosition() }
 
-    override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
-        if (isDoNothing) return
+    private val skipPlatformScopes = System.getProperty(SKIP_PLATFORM_LOOKUPS_PROPERTY)?.toBoolean() == true
 
-        val internedSymbolFqName = interner.intern(scopeFqName)
-        val internedName = interner.intern(name)
+    private val lookups = ConcurrentLookupBuffers(requiresPosition)
 
-        val objectToPut: Any =
-            if (requiresPosition)
-                LookupInfo(filePath, position, scopeFqName, scopeKind, name)
-            else
-                internedName
+    override fun record(filePath: String, position: Position, scopeFqName: String, scopeKind: ScopeKind, name: String) {
+        if (isDoNothing) return
+        if (skipPlatformScopes && isPlatformLookupScope(scopeFqName)) return
 
-        lookups.getOrPut(filePath, ::THashMap).getOrPut(internedSymbolFqName, ::THashSet).add(objectToPut)
+        lookups.record(filePath, position, scopeFqName, scopeKind, name)
     }
 
     init {
@@ -61,26 +53,21 @@ class RemoteLookupTrackerClient(
     }
 
     private fun flush() {
-        if (isDoNothing || lookups.isEmpty) return
+        if (isDoNothing) return
 
-        profiler.withMeasure(this) {
-            facade.lookupTracker_record(
-                lookups.flatMap { (filePath, lookupsByFile) ->
-                    lookupsByFile.flatMap { (scopeFqName, lookupsByScopeFqName) ->
-                        lookupsByScopeFqName.map { lookupInfoOrString ->
-                            if (requiresPosition)
-                                lookupInfoOrString as LookupInfo
-                            else
-                                LookupInfo(
-                                    filePath, Position.NO_POSITION, scopeFqName, ScopeKind.CLASSIFIER,
-                                    lookupInfoOrString as String
-                                )
-                        }
-                    }
-                }
-            )
+        val lookupInfos = ArrayList<LookupInfo>()
+        lookups.drain { filePath, scopeFqName, lookupsByScopeFqName ->
+            lookupsByScopeFqName.mapTo(lookupInfos) { lookupInfoOrString ->
+                if (requiresPosition)
+                    lookupInfoOrString as LookupInfo
+                else
+                    LookupInfo(filePath, Position.NO_POSITION, scopeFqName, ScopeKind.CLASSIFIER, lookupInfoOrString as String)
+            }
         }
+        if (lookupInfos.isEmpty()) return
 
-        lookups.clear()
+        profiler.withMeasure(this) {
+            facade.lookupTracker_record(lookupInfos)
+        }
     }
 }
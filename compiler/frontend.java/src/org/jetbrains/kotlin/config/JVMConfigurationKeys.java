@@ -33,6 +33,10 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("output .jar");
     public static final CompilerConfigurationKey<Boolean> INCLUDE_RUNTIME =
             CompilerConfigurationKey.create("include runtime to the resulting .jar");
+    public static final CompilerConfigurationKey<Boolean> NO_JAR_COMPRESSION =
+            CompilerConfigurationKey.create("store entries of the output jar without compression");
+    public static final CompilerConfigurationKey<Boolean> CONCURRENT_CLASSPATH_INDEX =
+            CompilerConfigurationKey.create("use thread-safe index of classpath roots");
 
     public static final CompilerConfigurationKey<File> JDK_HOME =
             CompilerConfigurationKey.create("jdk home");
@@ -60,6 +64,10 @@ public class JVMConfigurationKeys {
             CompilerConfigurationKey.create("do not throw NPE on explicit 'equals' call for null receiver of platform boxed primitive type");
     public static final CompilerConfigurationKey<Boolean> DISABLE_OPTIMIZATION =
             CompilerConfigurationKey.create("disable optimization");
+    public static final CompilerConfigurationKey<Integer> OPTIMIZATION_THREADS =
+            CompilerConfigurationKey.create("number of threads for bytecode optimization of generated classes");
+    public static final CompilerConfigurationKey<Boolean> CACHE_OPTIMIZED_METHODS =
+            CompilerConfigurationKey.create("reuse optimized bytecode of unchanged methods between compilations");
     public static final CompilerConfigurationKey<Boolean> USE_TYPE_TABLE =
             CompilerConfigurationKey.create("use type table in serializer");
 
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.load.java.structure.impl.classFiles
+
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.util.containers.ContainerUtil
+import org.jetbrains.org.objectweb.asm.ClassReader
+import org.jetbrains.org.objectweb.asm.tree.ClassNode
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Class files parsed for [BinaryJavaClass], shared by all compilations in the process (e.g. by the builds in the daemon).
+ *
+ * A parsed class file doesn't refer to a compilation: it is replayed into a [BinaryJavaClass], which resolves classifiers
+ * in its own compilation. Parsed class files are never modified after they are cached, so they can be replayed concurrently.
+ *
+ * Only class files in jars are cached. A parsed class file is found by the path of the class file and the stamp of the jar,
+ * because jar entries may keep the same time when they are changed (e.g. in reproducible archives). Stamps of jars are computed
+ * once per cache instance, so an instance should be created for each compilation.
+ * Other class files (e.g. outputs of other modules) are parsed every time: they may be rewritten with the same size
+ * within the timestamp precision, and they change too often to benefit from caching.
+ * Parsed class files are softly referenced, so they are collected when the memory is low.
+ */
+class BinaryClassStructureCache {
+    private val jarStamps = ConcurrentHashMap<String, String>()
+
+    fun getClassStructure(virtualFile: VirtualFile, classContent: ByteArray?): ClassNode {
+        val key = cacheKey(virtualFile) ?: return parse(classContent ?: virtualFile.contentsToByteArray())
+        return parsedClasses[key] ?: parse(classContent ?: virtualFile.contentsToByteArray()).also { parsedClasses[key] = it }
+    }
+
+    private fun cacheKey(virtualFile: VirtualFile): String? {
+        if (virtualFile.fileSystem.protocol != StandardFileSystems.JAR_PROTOCOL) return null
+
+        val path = virtualFile.path
+        val jarSeparatorIndex = path.indexOf(JAR_SEPARATOR)
+        if (jarSeparatorIndex < 0) return null
+
+        val jarPath = path.substring(0, jarSeparatorIndex)
+        val stamp = jarStamps.getOrPut(jarPath) {
+            val jar = File(jarPath)
+            "${jar.lastModified()}:${jar.length()}"
+        }
+        return "$stamp:$path"
+    }
+
+    companion object {
+        private const val JAR_SEPARATOR = "!/"
+
+        private val parsedClasses: MutableMap<String, ClassNode> = ContainerUtil.createConcurrentSoftValueMap()
+
+        private fun parse(classContent: ByteArray): ClassNode =
+            ClassNode(ASM_API_VERSION_FOR_CLASS_READING).also {
+                ClassReader(classContent).accept(it, ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+            }
+    }
+}
@@ -37,7 +37,8 @@ class BinaryJavaClass(
     private val signatureParser: BinaryClassSignatureParser,
     override var access: Int = 0,
     override val outerClass: JavaClass?,
-    classContent: ByteArray? = null
+    classContent: ByteArray? = null,
+    private val classStructureCache: BinaryClassStructureCache? = null
 ) : ClassVisitor(ASM_API_VERSION_FOR_CLASS_READING), VirtualFileBoundJavaClass, BinaryJavaModifierListOwner, MapBasedJavaAnnotationOwner {
     private lateinit var myInternalName: String
 
@@ -73,10 +74,14 @@ class BinaryJavaClass(
     }
 
     init {
-        ClassReader(classContent ?: virtualFile.contentsToByteArray()).accept(
-            this,
-            ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
-        )
+        if (classStructureCache != null) {
+            classStructureCache.getClassStructure(virtualFile, classContent).accept(this)
+        } else {
+            ClassReader(classContent ?: virtualFile.contentsToByteArray()).accept(
+                this,
+                ClassReader.SKIP_CODE or ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES
+            )
+        }
     }
 
     override fun visitMethod(access: Int, name: String, desc: String, signature: String?, exceptions: Array<out String>?): MethodVisitor? {
@@ -209,7 +214,7 @@ class BinaryJavaClass(
         return virtualFile.parent.findChild("${virtualFile.nameWithoutExtension}$$name.class")?.let {
             BinaryJavaClass(
                 it, fqName.child(name), context.copyForMember(), signatureParser, access, this,
-                classFileContent
+                classFileContent, classStructureCache
             )
         }
     }
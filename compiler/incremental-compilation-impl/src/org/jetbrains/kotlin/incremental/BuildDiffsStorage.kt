@@ -18,22 +18,81 @@ package org.jetbrains.kotlin.incremental
 
 import org.jetbrains.annotations.TestOnly
 import org.jetbrains.kotlin.name.FqName
-import java.io.File
-import java.io.IOException
-import java.io.ObjectInputStream
-import java.io.ObjectOutputStream
+import java.io.*
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
 
 data class BuildDifference(val ts: Long, val isIncremental: Boolean, val dirtyData: DirtyData)
 
-// todo: storage format can be optimized by compressing fq-names
+/**
+ * History of builds of a module, which is read by modules depending on it to find out what has changed since their last build.
+ *
+ * The file starts with an index of builds (timestamp, kind and size of dirty data), so a reader can skip dirty data of the builds
+ * it already knows about without decoding it. Dirty data of each build is stored with its own table of distinct strings,
+ * so names and scopes repeated by lookup symbols and fq-names are written once.
+ */
 data class BuildDiffsStorage(val buildDiffs: List<BuildDifference>) {
+    private class IndexEntry(val ts: Long, val isIncremental: Boolean, val dataSize: Int)
+
+    // a build with its dirty data in serialized form, used to rewrite the history without decoding it
+    private class RawBuildDifference(val ts: Long, val isIncremental: Boolean, val data: ByteArray)
+
+    /**
+     * Builds which happened after a given timestamp.
+     * [hasKnownBuilds] is false when the history doesn't contain any build before the timestamp,
+     * so it's impossible to tell whether some changes are missing.
+     */
+    class NewBuilds(val hasKnownBuilds: Boolean, val builds: List<BuildDifference>)
+
     companion object {
         fun readFromFile(file: File, reporter: ICReporter?): BuildDiffsStorage? {
             val diffs = readDiffsFromFile(file, reporter)
             return diffs?.let { BuildDiffsStorage(it) }
         }
 
-        fun readDiffsFromFile(file: File, reporter: ICReporter?): MutableList<BuildDifference>? {
+        fun readDiffsFromFile(file: File, reporter: ICReporter?): MutableList<BuildDifference>? =
+            readHistory(file, reporter) { input, index ->
+                index.mapTo(ArrayList(index.size)) { input.readBuildDifference(it) }
+            }
+
+        fun readBuildsAfter(file: File, ts: Long, reporter: ICReporter?): NewBuilds? =
+            readHistory(file, reporter) { input, index ->
+                var hasKnownBuilds = false
+                val newBuilds = ArrayList<BuildDifference>()
+                for (entry in index) {
+                    if (entry.ts <= ts) {
+                        hasKnownBuilds = true
+                        input.skipFully(entry.dataSize)
+                    } else {
+                        newBuilds.add(input.readBuildDifference(entry))
+                    }
+                }
+                NewBuilds(hasKnownBuilds, newBuilds)
+            }
+
+        fun writeToFile(file: File, storage: BuildDiffsStorage, reporter: ICReporter?) {
+            val diffs = storage.buildDiffs.map { RawBuildDifference(it.ts, it.isIncremental, serializeDirtyData(it.dirtyData)) }
+            writeHistory(file, diffs, reporter)
+        }
+
+        /**
+         * Adds [diff] to the history in [file]. Dirty data of previous builds is copied as is.
+         */
+        fun appendToFile(file: File, diff: BuildDifference, reporter: ICReporter?) {
+            val prevDiffs = readHistory(file, reporter) { input, index ->
+                index.map { entry ->
+                    val data = ByteArray(entry.dataSize)
+                    input.readFully(data)
+                    RawBuildDifference(entry.ts, entry.isIncremental, data)
+                }
+            } ?: emptyList()
+
+            val newDiff = RawBuildDifference(diff.ts, diff.isIncremental, serializeDirtyData(diff.dirtyData))
+            writeHistory(file, prevDiffs + newDiff, reporter)
+        }
+
+        private fun <T> readHistory(file: File, reporter: ICReporter?, read: (DataInputStream, List<IndexEntry>) -> T): T? {
             fun reportFail(reason: String) {
                 reporter?.report { "Could not read diff from file $file: $reason" }
             }
@@ -41,7 +100,13 @@ data class BuildDiffsStorage(val buildDiffs: List<BuildDifference>) {
             if (!file.exists()) return null
 
             try {
-                ObjectInputStream(file.inputStream().buffered()).use { input ->
+                DataInputStream(file.inputStream().buffered()).use { input ->
+                    val magic = input.readInt()
+                    if (magic != MAGIC) {
+                        reportFail("unknown format")
+                        return null
+                    }
+
                     val version = input.readInt()
                     if (version != CURRENT_VERSION) {
                         reportFail("incompatible version $version, actual version is $CURRENT_VERSION")
@@ -49,11 +114,11 @@ data class BuildDiffsStorage(val buildDiffs: List<BuildDifference>) {
                     }
 
                     val size = input.readInt()
-                    val result = ArrayList<BuildDifference>(size)
+                    val index = ArrayList<IndexEntry>(size)
                     repeat(size) {
-                        result.add(input.readBuildDifference())
+                        index.add(IndexEntry(ts = input.readLong(), isIncremental = input.readBoolean(), dataSize = input.readInt()))
                     }
-                    return result
+                    return read(input, index)
                 }
             }
             catch (e: IOException) {
@@ -63,75 +128,110 @@ data class BuildDiffsStorage(val buildDiffs: List<BuildDifference>) {
             return null
         }
 
-        fun writeToFile(file: File, storage: BuildDiffsStorage, reporter: ICReporter?) {
+        private fun writeHistory(file: File, diffs: List<RawBuildDifference>, reporter: ICReporter?) {
             file.parentFile.mkdirs()
 
+            // The history is written to a temporary file and then moved,
+            // so that dependent modules compiled in parallel never read a partially written file
+            val tmpFile = File(file.parentFile, file.name + ".tmp")
             try {
-                ObjectOutputStream(file.outputStream().buffered()).use { output ->
+                DataOutputStream(tmpFile.outputStream().buffered()).use { output ->
+                    output.writeInt(MAGIC)
                     output.writeInt(CURRENT_VERSION)
 
-                    val diffsToWrite = storage.buildDiffs.sortedBy { it.ts }.takeLast(MAX_DIFFS_ENTRIES)
+                    val diffsToWrite = diffs.sortedBy { it.ts }.takeLast(MAX_DIFFS_ENTRIES)
                     output.writeInt(diffsToWrite.size)
                     for (diff in diffsToWrite) {
-                        output.writeBuildDifference(diff)
+                        output.writeLong(diff.ts)
+                        output.writeBoolean(diff.isIncremental)
+                        output.writeInt(diff.data.size)
                     }
+                    for (diff in diffsToWrite) {
+                        output.write(diff.data)
+                    }
+                }
+
+                try {
+                    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+                } catch (e: AtomicMoveNotSupportedException) {
+                    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
                 }
             }
             catch (e: IOException) {
+                tmpFile.delete()
                 reporter?.report { "Could not write diff to file $file: $e" }
             }
         }
 
-        private fun ObjectInputStream.readBuildDifference(): BuildDifference {
-            val ts = readLong()
-            val isIncremental = readBoolean()
+        private fun DataInputStream.readBuildDifference(entry: IndexEntry): BuildDifference {
             val dirtyData = readDirtyData()
-            return BuildDifference(ts, isIncremental, dirtyData)
+            return BuildDifference(entry.ts, entry.isIncremental, dirtyData)
         }
 
-        private fun ObjectOutputStream.writeBuildDifference(diff: BuildDifference) {
-            writeLong(diff.ts)
-            writeBoolean(diff.isIncremental)
-            writeDirtyData(diff.dirtyData)
-        }
+        private fun DataInputStream.readDirtyData(): DirtyData {
+            val stringsSize = readInt()
+            val strings = Array(stringsSize) { readUTF() }
 
-        private fun ObjectInputStream.readDirtyData(): DirtyData {
             val lookupSymbolSize = readInt()
             val lookupSymbols = ArrayList<LookupSymbol>(lookupSymbolSize)
             repeat(lookupSymbolSize) {
-                val name = readUTF()
-                val scope = readUTF()
+                val name = strings[readInt()]
+                val scope = strings[readInt()]
                 lookupSymbols.add(LookupSymbol(name = name, scope = scope))
             }
 
             val dirtyClassesSize = readInt()
             val dirtyClassesFqNames = ArrayList<FqName>(dirtyClassesSize)
             repeat(dirtyClassesSize) {
-                val fqNameString = readUTF()
-                dirtyClassesFqNames.add(FqName(fqNameString))
+                dirtyClassesFqNames.add(FqName(strings[readInt()]))
             }
 
             return DirtyData(lookupSymbols, dirtyClassesFqNames)
         }
 
-        private fun ObjectOutputStream.writeDirtyData(dirtyData: DirtyData) {
-            val lookupSymbols = dirtyData.dirtyLookupSymbols
-            writeInt(lookupSymbols.size)
-            for ((name, scope) in lookupSymbols) {
-                writeUTF(name)
-                writeUTF(scope)
+        private fun serializeDirtyData(dirtyData: DirtyData): ByteArray {
+            val stringIds = LinkedHashMap<String, Int>()
+            fun id(string: String): Int = stringIds.getOrPut(string) { stringIds.size }
+
+            val lookupSymbols = dirtyData.dirtyLookupSymbols.map { (name, scope) -> Pair(id(name), id(scope)) }
+            val dirtyClassesFqNames = dirtyData.dirtyClassesFqNames.map { id(it.asString()) }
+
+            val bytes = ByteArrayOutputStream()
+            DataOutputStream(bytes).use { output ->
+                output.writeInt(stringIds.size)
+                for (string in stringIds.keys) {
+                    output.writeUTF(string)
+                }
+
+                output.writeInt(lookupSymbols.size)
+                for ((name, scope) in lookupSymbols) {
+                    output.writeInt(name)
+                    output.writeInt(scope)
+                }
+
+                output.writeInt(dirtyClassesFqNames.size)
+                for (fqName in dirtyClassesFqNames) {
+                    output.writeInt(fqName)
+                }
             }
+            return bytes.toByteArray()
+        }
 
-            val dirtyClassesFqNames = dirtyData.dirtyClassesFqNames
-            writeInt(dirtyClassesFqNames.size)
-            for (fqName in dirtyClassesFqNames) {
-                writeUTF(fqName.asString())
+        private fun DataInputStream.skipFully(size: Int) {
+            var remaining = size
+            while (remaining > 0) {
+                val skipped = skipBytes(remaining)
+                if (skipped <= 0) throw EOFException()
+                remaining -= skipped
             }
         }
 
         internal val MAX_DIFFS_ENTRIES: Int = 10
 
+        // distinguishes the indexed format from the previous one, which was written by ObjectOutputStream
+        private const val MAGIC: Int = 0x4B424448
+
         @set:TestOnly
         var CURRENT_VERSION: Int = 0
     }
-}
\ No newline at end of file
+}
@@ -218,7 +218,10 @@ abstract class IncrementalCompilerRunner<
             caches.platformCache.markDirty(dirtySources)
             caches.inputsCache.removeOutputForSourceFiles(dirtySources)
 
-            val lookupTracker = LookupTrackerImpl(LookupTracker.DO_NOTHING)
+            val lookupTracker = LookupTrackerImpl(
+                LookupTracker.DO_NOTHING,
+                skipPlatformScopes = System.getProperty(SKIP_PLATFORM_LOOKUPS_PROPERTY)?.toBoolean() == true
+            )
             val expectActualTracker = ExpectActualTrackerImpl()
             val (sourcesToCompile, removedKotlinSources) = dirtySources.partition(File::exists)
 
@@ -318,7 +321,6 @@ abstract class IncrementalCompilerRunner<
         currentBuildInfo: BuildInfo,
         dirtyData: DirtyData
     ) {
-        val prevDiffs = BuildDiffsStorage.readFromFile(buildHistoryFile, reporter)?.buildDiffs ?: emptyList()
         val newDiff = if (compilationMode is CompilationMode.Incremental) {
             BuildDifference(currentBuildInfo.startTS, true, dirtyData)
         } else {
@@ -326,7 +328,7 @@ abstract class IncrementalCompilerRunner<
             BuildDifference(currentBuildInfo.startTS, false, emptyDirtyData)
         }
 
-        BuildDiffsStorage.writeToFile(buildHistoryFile, BuildDiffsStorage(prevDiffs + newDiff), reporter)
+        BuildDiffsStorage.appendToFile(buildHistoryFile, newDiff, reporter)
     }
 
     companion object {
@@ -45,14 +45,13 @@ internal fun getClasspathChanges(
     }
 
     for (historyFile in historyFiles) {
-        val allBuilds = BuildDiffsStorage.readDiffsFromFile(historyFile, reporter = reporter)
+        val newBuilds = BuildDiffsStorage.readBuildsAfter(historyFile, lastBuildTS, reporter = reporter)
             ?: return ChangesEither.Unknown("Could not read diffs from $historyFile")
-        val (knownBuilds, newBuilds) = allBuilds.partition { it.ts <= lastBuildTS }
-        if (knownBuilds.isEmpty()) {
+        if (!newBuilds.hasKnownBuilds) {
             return ChangesEither.Unknown("No previously known builds for $historyFile")
         }
 
-        for (buildDiff in newBuilds) {
+        for (buildDiff in newBuilds.builds) {
             if (!buildDiff.isIncremental) return ChangesEither.Unknown("Non-incremental build from dependency $historyFile")
 
             val dirtyData = buildDiff.dirtyData
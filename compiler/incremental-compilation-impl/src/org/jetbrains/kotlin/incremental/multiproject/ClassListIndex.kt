@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental.multiproject
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * Directories containing class files of a jar, which are used by [ModulesApiHistoryJvm] to find the modules
+ * whose classes are packed into the jar.
+ *
+ * Only directories are stored, because modules are found by directories. The number of class files is kept for each directory,
+ * so the index can be updated when class files are added or removed, without listing the other class files.
+ */
+class ClassListIndex {
+    private val classCountByDir = HashMap<File, Int>()
+
+    val directories: Set<File>
+        get() = classCountByDir.keys
+
+    fun addClass(classFile: File) {
+        val dir = classFile.absoluteFile.parentFile ?: return
+        classCountByDir[dir] = (classCountByDir[dir] ?: 0) + 1
+    }
+
+    fun removeClass(classFile: File) {
+        val dir = classFile.absoluteFile.parentFile ?: return
+        val count = classCountByDir[dir] ?: return
+        if (count > 1) {
+            classCountByDir[dir] = count - 1
+        } else {
+            classCountByDir.remove(dir)
+        }
+    }
+
+    fun write(file: File) {
+        file.parentFile.mkdirs()
+
+        // the index is moved into place, so that compilations of dependent modules never read a partially written file
+        val tmpFile = File(file.parentFile, file.name + ".tmp")
+        try {
+            DataOutputStream(tmpFile.outputStream().buffered()).use { output ->
+                output.writeInt(MAGIC)
+                output.writeInt(VERSION)
+                output.writeInt(classCountByDir.size)
+                for ((dir, count) in classCountByDir) {
+                    output.writeUTF(dir.path)
+                    output.writeInt(count)
+                }
+            }
+
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+            } catch (e: AtomicMoveNotSupportedException) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+            }
+        } finally {
+            tmpFile.delete()
+        }
+    }
+
+    companion object {
+        private const val MAGIC: Int = 0x4B434C49
+        private const val VERSION: Int = 1
+
+        /**
+         * Throws [IOException] if the file can't be read or was written in another format.
+         */
+        fun read(file: File): ClassListIndex {
+            val index = ClassListIndex()
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                if (input.readInt() != MAGIC) throw IOException("Unknown format of class list $file")
+
+                val version = input.readInt()
+                if (version != VERSION) throw IOException("Incompatible version $version of class list $file, actual version is $VERSION")
+
+                repeat(input.readInt()) {
+                    index.classCountByDir[File(input.readUTF())] = input.readInt()
+                }
+            }
+            return index
+        }
+    }
+}
@@ -98,15 +98,16 @@ class ModulesApiHistoryJvm(modulesInfo: IncrementalModuleInfo) : ModulesApiHisto
         val classListFile = modulesInfo.jarToClassListFile[jar] ?: return Either.Error("Unknown jar: $jar")
         if (!classListFile.isFile) return Either.Error("Class list file does not exist $classListFile")
 
-        val classFiles = try {
-            classListFile.readText().split(File.pathSeparator).map(::File)
+        val classFileDirs = try {
+            ClassListIndex.read(classListFile).directories
         } catch (t: Throwable) {
             return Either.Error("Could not read class list for $jar from $classListFile: $t")
         }
 
-        val classFileDirs = classFiles.filter { it.exists() && it.parentFile != null }.groupBy { it.parentFile }
         val result = HashSet<File>()
-        for (dir in classFileDirs.keys) {
+        for (dir in classFileDirs) {
+            if (!dir.isDirectory) continue
+
             when (val historyEither = getBuildHistoryForDir(dir)) {
                 is Either.Success<Set<File>> -> result.addAll(historyEither.value)
                 is Either.Error -> return historyEither
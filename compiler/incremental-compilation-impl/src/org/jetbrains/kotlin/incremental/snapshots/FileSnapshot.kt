@@ -19,10 +19,13 @@ package org.jetbrains.kotlin.incremental.snapshots
 import java.io.File
 import java.util.*
 
+// [lastModified] and [fileKey] only allow to reuse the hash of an unchanged file, so they don't take part in comparison
 class FileSnapshot(
         val file: File,
         val length: Long,
-        val hash: ByteArray
+        val hash: ByteArray,
+        val lastModified: Long,
+        val fileKey: String?
 ) {
     init {
         assert(!file.isDirectory)
@@ -49,6 +52,6 @@ class FileSnapshot(
     }
 
     override fun toString(): String {
-        return "FileSnapshot(file=$file, length=$length, hash=${Arrays.toString(hash)})"
+        return "FileSnapshot(file=$file, length=$length, hash=${Arrays.toString(hash)}, lastModified=$lastModified, fileKey=$fileKey)"
     }
 }
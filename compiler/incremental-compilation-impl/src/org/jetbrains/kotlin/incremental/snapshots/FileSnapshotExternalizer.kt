@@ -27,6 +27,9 @@ object FileSnapshotExternalizer : DataExternalizer<FileSnapshot> {
         out.writeLong(value.length)
         out.writeInt(value.hash.size)
         out.write(value.hash)
+        out.writeLong(value.lastModified)
+        out.writeBoolean(value.fileKey != null)
+        value.fileKey?.let { out.writeUTF(it) }
     }
 
     override fun read(input: DataInput): FileSnapshot {
@@ -35,6 +38,8 @@ object FileSnapshotExternalizer : DataExternalizer<FileSnapshot> {
         val hashSize = input.readInt()
         val hash = ByteArray(hashSize)
         input.readFully(hash)
-        return FileSnapshot(file, length, hash)
+        val lastModified = input.readLong()
+        val fileKey = if (input.readBoolean()) input.readUTF() else null
+        return FileSnapshot(file, length, hash, lastModified, fileKey)
     }
 }
\ No newline at end of file
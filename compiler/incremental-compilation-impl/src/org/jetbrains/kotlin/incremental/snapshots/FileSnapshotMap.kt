@@ -39,14 +39,20 @@ class FileSnapshotMap(storageFile: File) : BasicStringMap<FileSnapshot>(storageF
             }
         }
 
-        for (path in newPaths) {
-            val file = File(path)
-            val oldSnapshot = storage[path]
-            val newSnapshot = snapshotProvider[file]
+        val paths = newPaths.toList()
+        val oldSnapshots = paths.map { storage[it] }
+        val newSnapshots = snapshotProvider.getAll(paths.map(::File), oldSnapshots)
+
+        for (i in paths.indices) {
+            val oldSnapshot = oldSnapshots[i]
+            val newSnapshot = newSnapshots[i]
 
             if (oldSnapshot == null || oldSnapshot != newSnapshot) {
-                newOrModified.add(file)
-                storage[path] = newSnapshot
+                newOrModified.add(newSnapshot.file)
+                storage[paths[i]] = newSnapshot
+            } else if (oldSnapshot.lastModified != newSnapshot.lastModified || oldSnapshot.fileKey != newSnapshot.fileKey) {
+                // the content is the same, but new stamps allow not to hash the file next time
+                storage[paths[i]] = newSnapshot
             }
         }
 
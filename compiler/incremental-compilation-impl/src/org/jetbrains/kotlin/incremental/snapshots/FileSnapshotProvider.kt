@@ -17,15 +17,83 @@
 package org.jetbrains.kotlin.incremental.snapshots
 
 import java.io.File
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ThreadFactory
 
 interface FileSnapshotProvider {
     operator fun get(file: File): FileSnapshot
 }
 
 class SimpleFileSnapshotProviderImpl : FileSnapshotProvider {
-    override fun get(file: File): FileSnapshot {
-        val length = file.length()
-        val hash = file.md5
-        return FileSnapshot(file, length, hash)
+    override fun get(file: File): FileSnapshot = get(file, previousSnapshot = null)
+
+    /**
+     * Reuses the hash of [previousSnapshot] if the file has the same length, timestamp and identity (e.g. inode).
+     * Files whose length has changed are known to be modified, so they are not hashed if their timestamp can be trusted:
+     * their snapshot has an empty hash, which doesn't match any other, and is reused only while the timestamp is the same.
+     * Otherwise the next snapshot of the file would be compared with the empty hash, and the file would be reported as modified again.
+     */
+    fun get(file: File, previousSnapshot: FileSnapshot?): FileSnapshot {
+        val attributes = Files.readAttributes(file.toPath(), BasicFileAttributes::class.java)
+        val length = attributes.size()
+        val lastModified = attributes.lastModifiedTime().toMillis().takeIf { isSafeToTrust(it) } ?: UNKNOWN_LAST_MODIFIED
+        val fileKey = attributes.fileKey()?.toString()
+
+        val hash = when {
+            previousSnapshot == null -> file.contentHash(buffer.get())
+            lastModified == UNKNOWN_LAST_MODIFIED -> file.contentHash(buffer.get())
+            previousSnapshot.length != length -> NOT_COMPUTED_HASH
+            previousSnapshot.lastModified == lastModified && previousSnapshot.fileKey == fileKey -> previousSnapshot.hash
+            else -> file.contentHash(buffer.get())
+        }
+        return FileSnapshot(file, length, hash, lastModified, fileKey)
+    }
+
+    // A file modified right before taking a snapshot can be modified again within the timestamp granularity of a file system
+    private fun isSafeToTrust(lastModified: Long): Boolean =
+        System.currentTimeMillis() - lastModified > TIMESTAMP_GRANULARITY_MS
+
+    /**
+     * Computes snapshots of [files] in parallel. [previousSnapshots] are passed to [get] for files with the same indices.
+     */
+    fun getAll(files: List<File>, previousSnapshots: List<FileSnapshot?>): List<FileSnapshot> {
+        val threadCount = minOf(Runtime.getRuntime().availableProcessors(), files.size / MIN_FILES_PER_THREAD)
+        if (threadCount <= 1) return files.indices.map { get(files[it], previousSnapshots[it]) }
+
+        val executor = Executors.newFixedThreadPool(threadCount, HashingThreadFactory)
+        try {
+            val futures = files.indices.map { i -> executor.submit(Callable { get(files[i], previousSnapshots[i]) }) }
+            return futures.map {
+                try {
+                    it.get()
+                } catch (e: ExecutionException) {
+                    throw e.cause ?: e
+                }
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    private object HashingThreadFactory : ThreadFactory {
+        override fun newThread(r: Runnable): Thread =
+            Thread(r, "kotlin-ic-file-hashing").apply { isDaemon = true }
     }
-}
\ No newline at end of file
+
+    companion object {
+        private val NOT_COMPUTED_HASH = ByteArray(0)
+
+        private const val UNKNOWN_LAST_MODIFIED = -1L
+        private const val TIMESTAMP_GRANULARITY_MS = 2000L
+
+        private const val MIN_FILES_PER_THREAD = 16
+
+        // direct buffers let the channel read files without intermediate copying
+        private val buffer = ThreadLocal.withInitial { ByteBuffer.allocateDirect(256 * 1024) }
+    }
+}
@@ -17,20 +17,102 @@
 package org.jetbrains.kotlin.incremental.snapshots
 
 import java.io.File
-import java.security.MessageDigest
-
-internal val File.md5: ByteArray
-    get() {
-        val messageDigest = MessageDigest.getInstance("MD5")
-        val buffer = ByteArray(4048)
-        inputStream().use { input ->
-            while (true) {
-                val len = input.read(buffer)
-                if (len < 0) {
-                    break
-                }
-                messageDigest.update(buffer, 0, len)
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+// Files are read through a channel instead of being memory-mapped:
+// a mapped file stays locked on Windows until the buffer is garbage collected, which would prevent editing sources
+internal fun File.contentHash(buffer: ByteBuffer): ByteArray {
+    val hasher = Murmur3Hasher()
+    buffer.clear()
+    buffer.order(ByteOrder.LITTLE_ENDIAN)
+
+    FileChannel.open(toPath(), StandardOpenOption.READ).use { channel ->
+        while (channel.read(buffer) >= 0) {
+            buffer.flip()
+            hasher.update(buffer)
+            buffer.compact()
+        }
+    }
+
+    buffer.flip()
+    return hasher.finish(buffer)
+}
+
+/**
+ * 128-bit MurmurHash3 (x64 variant) with zero seed.
+ * It is not cryptographic, but its collisions are as unlikely as MD5 ones for accidental changes of files, and it is much faster.
+ */
+private class Murmur3Hasher {
+    private var h1 = 0L
+    private var h2 = 0L
+    private var length = 0L
+
+    // consumes all complete 16-byte blocks of a little-endian buffer
+    fun update(buffer: ByteBuffer) {
+        while (buffer.remaining() >= 16) {
+            mixBlock(buffer.long, buffer.long)
+            length += 16
+        }
+    }
+
+    private fun mixBlock(block1: Long, block2: Long) {
+        h1 = h1 xor mixK1(block1)
+        h1 = java.lang.Long.rotateLeft(h1, 27) + h2
+        h1 = h1 * 5 + 0x52dce729
+
+        h2 = h2 xor mixK2(block2)
+        h2 = java.lang.Long.rotateLeft(h2, 31) + h1
+        h2 = h2 * 5 + 0x38495ab5
+    }
+
+    // processes the remaining (less than 16) bytes of the buffer
+    fun finish(tail: ByteBuffer): ByteArray {
+        val tailLength = tail.remaining()
+        var k1 = 0L
+        var k2 = 0L
+        for (i in 0 until tailLength) {
+            val byte = tail.get(tail.position() + i).toLong() and 0xFF
+            if (i < 8) {
+                k1 = k1 or (byte shl (i * 8))
+            } else {
+                k2 = k2 or (byte shl ((i - 8) * 8))
             }
         }
-        return messageDigest.digest()
+        if (tailLength > 8) h2 = h2 xor mixK2(k2)
+        if (tailLength > 0) h1 = h1 xor mixK1(k1)
+        length += tailLength
+
+        h1 = h1 xor length
+        h2 = h2 xor length
+        h1 += h2
+        h2 += h1
+        h1 = fmix(h1)
+        h2 = fmix(h2)
+        h1 += h2
+        h2 += h1
+
+        return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array()
+    }
+
+    private fun mixK1(k: Long): Long = java.lang.Long.rotateLeft(k * C1, 31) * C2
+
+    private fun mixK2(k: Long): Long = java.lang.Long.rotateLeft(k * C2, 33) * C1
+
+    private fun fmix(value: Long): Long {
+        var k = value
+        k = k xor (k ushr 33)
+        k *= -0xae502812aa7333L
+        k = k xor (k ushr 33)
+        k *= -0x3b314601e57a13adL
+        k = k xor (k ushr 33)
+        return k
+    }
+
+    companion object {
+        private const val C1 = -0x783c846eeebdac2bL
+        private const val C2 = 0x4cf5ad432745937fL
     }
+}
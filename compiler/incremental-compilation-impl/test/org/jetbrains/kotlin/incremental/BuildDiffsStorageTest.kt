@@ -93,6 +93,40 @@ class BuildDiffsStorageTest {
         }
     }
 
+    @Test
+    fun readBuildsAfter() {
+        val diffs = (1L..5L).map { ts -> BuildDifference(ts, true, DirtyData(listOf(LookupSymbol("foo$ts", "bar")), listOf(FqName("fizz.Buzz$ts")))) }
+        BuildDiffsStorage.writeToFile(storageFile, BuildDiffsStorage(diffs), reporter = null)
+
+        val newBuilds = BuildDiffsStorage.readBuildsAfter(storageFile, 3, reporter = null)!!
+        Assert.assertTrue(newBuilds.hasKnownBuilds)
+        Assert.assertEquals(diffs.drop(3), newBuilds.builds)
+
+        val allBuilds = BuildDiffsStorage.readBuildsAfter(storageFile, 0, reporter = null)!!
+        Assert.assertFalse(allBuilds.hasKnownBuilds)
+        Assert.assertEquals(diffs, allBuilds.builds)
+    }
+
+    @Test
+    fun appendMany() {
+        val generated = Array(20) { getRandomDiff() }.toList()
+        for (diff in generated) {
+            BuildDiffsStorage.appendToFile(storageFile, diff, reporter = null)
+        }
+
+        val diffsDeserialized = BuildDiffsStorage.readFromFile(storageFile, reporter = null)
+        val expected = generated.sortedBy { it.ts }.takeLast(BuildDiffsStorage.MAX_DIFFS_ENTRIES).toTypedArray()
+        Assert.assertArrayEquals(expected, diffsDeserialized?.buildDiffs?.toTypedArray())
+    }
+
+    @Test
+    fun readUnknownFormat() {
+        storageFile.writeBytes(byteArrayOf(0xAC.toByte(), 0xED.toByte(), 0, 5, 0, 0, 0, 0))
+
+        val diffsDeserialized = BuildDiffsStorage.readFromFile(storageFile, reporter = null)
+        Assert.assertEquals(null, diffsDeserialized)
+    }
+
     private fun getRandomDiff(): BuildDifference {
         val ts = random.nextLong()
         val lookupSymbols = listOf(LookupSymbol("foo", "bar"))
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental
+
+import org.jetbrains.kotlin.incremental.components.LookupTracker
+import org.jetbrains.kotlin.incremental.components.Position
+import org.jetbrains.kotlin.incremental.components.ScopeKind
+import org.junit.Test
+import kotlin.concurrent.thread
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class LookupTrackerImplTest {
+    @Test
+    fun testRecordFromSeveralThreads() {
+        val tracker = LookupTrackerImpl(LookupTracker.DO_NOTHING)
+
+        (0 until 4).map { threadIndex ->
+            thread {
+                repeat(1000) { i ->
+                    tracker.record("/src/file${i % 10}.kt", Position.NO_POSITION, "foo", ScopeKind.PACKAGE, "name${i % 100}")
+                    tracker.record("/src/thread$threadIndex.kt", Position.NO_POSITION, "foo.Bar", ScopeKind.CLASSIFIER, "baz")
+                }
+            }
+        }.forEach { it.join() }
+
+        val lookups = tracker.lookups
+        assertEquals(101, lookups.keySet().size)
+        assertEquals(setOf("/src/file3.kt"), lookups[LookupSymbol("name13", "foo")].toSet())
+        assertEquals((0 until 4).map { "/src/thread$it.kt" }.toSet(), lookups[LookupSymbol("baz", "foo.Bar")].toSet())
+        assertEquals(14, tracker.pathInterner.values.size)
+
+        // lookups recorded after the merge are added to the merged ones
+        tracker.record("/src/other.kt", Position.NO_POSITION, "foo.Bar", ScopeKind.CLASSIFIER, "baz")
+        assertEquals(5, tracker.lookups[LookupSymbol("baz", "foo.Bar")].size)
+    }
+
+    @Test
+    fun testSkipPlatformScopes() {
+        val tracker = LookupTrackerImpl(LookupTracker.DO_NOTHING, skipPlatformScopes = true)
+        for (scope in listOf("kotlin", "kotlin.collections", "java.lang", "kotlinx.coroutines", "javax.inject", "foo")) {
+            tracker.record("/src/a.kt", Position.NO_POSITION, scope, ScopeKind.PACKAGE, "name")
+        }
+
+        assertEquals(setOf("kotlinx.coroutines", "javax.inject", "foo"), tracker.lookups.keySet().mapTo(HashSet()) { it.scope })
+    }
+
+    @Test
+    fun testPlatformLookupScopes() {
+        assertTrue(isPlatformLookupScope("kotlin"))
+        assertTrue(isPlatformLookupScope("kotlin.String"))
+        assertTrue(isPlatformLookupScope("java.util.List"))
+        assertFalse(isPlatformLookupScope("kotlinx"))
+        assertFalse(isPlatformLookupScope("javafx.scene"))
+        assertFalse(isPlatformLookupScope(""))
+    }
+}
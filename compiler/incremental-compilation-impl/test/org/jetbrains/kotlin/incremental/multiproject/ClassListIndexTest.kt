@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental.multiproject
+
+import org.jetbrains.kotlin.daemon.common.IncrementalModuleEntry
+import org.jetbrains.kotlin.daemon.common.IncrementalModuleInfo
+import org.jetbrains.kotlin.incremental.util.Either
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.IOException
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class ClassListIndexTest {
+    @JvmField
+    @Rule
+    val tmpFolder = TemporaryFolder()
+
+    @Test
+    fun testAddAndRemoveClasses() {
+        val classesDir = tmpFolder.newFolder("classes")
+        val index = ClassListIndex().apply {
+            addClass(classesDir.resolve("foo/A.class"))
+            addClass(classesDir.resolve("foo/B.class"))
+            addClass(classesDir.resolve("bar/C.class"))
+        }
+        assertEquals(setOf(classesDir.resolve("foo"), classesDir.resolve("bar")), index.directories)
+
+        index.removeClass(classesDir.resolve("foo/A.class"))
+        index.removeClass(classesDir.resolve("bar/C.class"))
+        assertEquals(setOf(classesDir.resolve("foo")), index.directories)
+    }
+
+    @Test
+    fun testWriteAndRead() {
+        val classesDir = tmpFolder.newFolder("classes")
+        val indexFile = tmpFolder.root.resolve("kotlin/lib-classes.bin")
+        ClassListIndex().apply {
+            addClass(classesDir.resolve("foo/A.class"))
+            addClass(classesDir.resolve("foo/B.class"))
+        }.write(indexFile)
+
+        // the number of classes is kept, so the directory stays until its last class is removed
+        val index = ClassListIndex.read(indexFile)
+        index.removeClass(classesDir.resolve("foo/A.class"))
+        assertEquals(setOf(classesDir.resolve("foo")), index.directories)
+        index.removeClass(classesDir.resolve("foo/B.class"))
+        assertEquals(emptySet(), index.directories)
+    }
+
+    @Test
+    fun testReadTextClassList() {
+        val classListFile = tmpFolder.newFile("lib-classes.txt").apply { writeText("/classes/foo/A.class") }
+        assertFailsWith<IOException> { ClassListIndex.read(classListFile) }
+    }
+
+    @Test
+    fun testModulesApiHistoryForJar() {
+        val projectRoot = tmpFolder.newFolder("project")
+        val libClassesDir = projectRoot.resolve("lib/build/classes/kotlin/main").apply { resolve("foo").mkdirs() }
+        val libHistory = projectRoot.resolve("lib/build/kotlin/history.bin")
+        val libEntry = IncrementalModuleEntry(":lib", "lib", projectRoot.resolve("lib/build"), libHistory)
+        val libJar = projectRoot.resolve("lib/build/libs/lib.jar")
+        val classListFile = projectRoot.resolve("lib/build/kotlin/libjar-classes.bin")
+        ClassListIndex().apply { addClass(libClassesDir.resolve("foo/A.class")) }.write(classListFile)
+
+        val info = IncrementalModuleInfo(
+            projectRoot = projectRoot,
+            dirToModule = mapOf(libClassesDir to libEntry),
+            nameToModules = mapOf("lib" to setOf(libEntry)),
+            jarToClassListFile = mapOf(libJar to classListFile),
+            jarToModule = mapOf()
+        )
+
+        val history = ModulesApiHistoryJvm(info).historyFilesForChangedFiles(setOf(libJar))
+        history as Either.Success<Set<File>>
+        assertEquals(setOf(libHistory), history.value)
+    }
+}
@@ -21,6 +21,22 @@ class FileSnapshotTest : TestWithWorkingDir() {
         val snapshot = fileSnapshotProvider[file]
         val deserializedSnapshot = saveAndReadBack(snapshot)
         assertEquals(snapshot, deserializedSnapshot)
+        // these fields are not compared by equals
+        assertEquals(snapshot.lastModified, deserializedSnapshot.lastModified)
+        assertEquals(snapshot.fileKey, deserializedSnapshot.fileKey)
+    }
+
+    @Test
+    fun testExternalizerWithTrustedTimestamp() {
+        val file = File(workingDir, "1.txt").apply {
+            writeText("test")
+            setLastModified(System.currentTimeMillis() - 60_000)
+        }
+        val snapshot = fileSnapshotProvider[file]
+        assertNotEquals(-1L, snapshot.lastModified)
+        val deserializedSnapshot = saveAndReadBack(snapshot)
+        assertEquals(snapshot.lastModified, deserializedSnapshot.lastModified)
+        assertEquals(snapshot.fileKey, deserializedSnapshot.fileKey)
     }
 
     @Test
@@ -72,6 +88,61 @@ class FileSnapshotTest : TestWithWorkingDir() {
         assertNotEquals(oldSnapshot, newSnapshot)
     }
 
+    @Test
+    fun testHashReusedForUnchangedStamp() {
+        val file = File(workingDir, "1.txt").apply {
+            writeText("file")
+            setLastModified(System.currentTimeMillis() - 60_000)
+        }
+        val provider = SimpleFileSnapshotProviderImpl()
+        val oldSnapshot = provider[file]
+        val newSnapshot = provider.get(file, oldSnapshot)
+        assertSame(oldSnapshot.hash, newSnapshot.hash)
+    }
+
+    @Test
+    fun testSameSizeModificationDetected() {
+        val file = File(workingDir, "1.txt").apply { writeText("file") }
+        val provider = SimpleFileSnapshotProviderImpl()
+        val oldSnapshot = provider[file]
+        file.writeText("main")
+        assertNotEquals(oldSnapshot, provider.get(file, oldSnapshot))
+    }
+
+    @Test
+    fun testChangedLengthWithUntrustedTimestampIsHashed() {
+        val file = File(workingDir, "1.txt").apply { writeText("file") }
+        val provider = SimpleFileSnapshotProviderImpl()
+        val oldSnapshot = provider[file]
+        file.writeText("file modified")
+        val newSnapshot = provider.get(file, oldSnapshot)
+        assertNotEquals(oldSnapshot, newSnapshot)
+        // the timestamp of the new snapshot can't be trusted, so the next build compares hashes
+        assertEquals(newSnapshot, provider.get(file, newSnapshot))
+    }
+
+    @Test
+    fun testChangedLengthWithTrustedTimestamp() {
+        val file = File(workingDir, "1.txt").apply { writeText("file") }
+        val provider = SimpleFileSnapshotProviderImpl()
+        val oldSnapshot = provider[file]
+        file.writeText("file modified")
+        file.setLastModified(System.currentTimeMillis() - 60_000)
+        val newSnapshot = provider.get(file, oldSnapshot)
+        assertNotEquals(oldSnapshot, newSnapshot)
+        assertEquals(newSnapshot, provider.get(file, newSnapshot))
+
+        file.writeText("file MODIFIED")
+        assertNotEquals(newSnapshot, provider.get(file, newSnapshot))
+    }
+
+    @Test
+    fun testParallelSnapshots() {
+        val files = (1..100).map { i -> File(workingDir, "$i.txt").apply { writeText("file $i") } }
+        val provider = SimpleFileSnapshotProviderImpl()
+        assertEquals(files.map { provider[it] }, provider.getAll(files, files.map { null }))
+    }
+
     private fun saveAndReadBack(snapshot: FileSnapshot): FileSnapshot {
         val byteOut = ByteArrayOutputStream()
         DataOutputStream(byteOut).use { FileSnapshotExternalizer.save(it, snapshot) }
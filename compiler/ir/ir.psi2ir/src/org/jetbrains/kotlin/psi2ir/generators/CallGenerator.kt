@@ -121,7 +121,7 @@ class CallGenerator(statementGenerator: StatementGenerator) : StatementGenerator
         if (descriptor is LocalVariableDescriptor && descriptor.isDelegated) {
             val getterDescriptor = descriptor.getter!!
             val getterSymbol = context.symbolTable.referenceFunction(getterDescriptor.original)
-            IrCallImpl(
+            IrCallImpl.create(
                 startOffset, endOffset, descriptor.type.toIrType(), getterSymbol, getterDescriptor,
                 origin ?: IrStatementOrigin.GET_LOCAL_PROPERTY
             ).apply {
@@ -319,7 +319,7 @@ class CallGenerator(statementGenerator: StatementGenerator) : StatementGenerator
                         )
                 }
             } else {
-                IrCallImpl(
+                IrCallImpl.create(
                     startOffset, endOffset,
                     irType,
                     context.symbolTable.referenceFunction(functionDescriptor.original),
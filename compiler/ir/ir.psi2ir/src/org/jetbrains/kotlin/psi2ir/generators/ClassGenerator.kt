@@ -259,7 +259,7 @@ class ClassGenerator(
         val substitutedOverridden = substituteOverriddenDescriptorForDelegate(delegated, overridden)
         val returnType = substitutedOverridden.returnType!!
         val irReturnType = returnType.toIrType()
-        val irCall = IrCallImpl(
+        val irCall = IrCallImpl.create(
             startOffset, endOffset, irReturnType,
             context.symbolTable.referenceFunction(overridden.original),
             substitutedOverridden,
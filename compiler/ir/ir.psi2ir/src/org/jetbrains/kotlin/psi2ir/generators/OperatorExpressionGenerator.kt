@@ -395,7 +395,7 @@ class OperatorExpressionGenerator(statementGenerator: StatementGenerator) : Stat
         functionDescriptor: FunctionDescriptor,
         receiver: IrExpression
     ): IrExpression =
-        IrCallImpl(
+        IrCallImpl.create(
             startOffset,
             endOffset,
             functionDescriptor.returnType!!.toIrType(),
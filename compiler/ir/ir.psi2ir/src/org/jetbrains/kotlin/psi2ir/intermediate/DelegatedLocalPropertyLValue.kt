@@ -37,10 +37,10 @@ class DelegatedLocalPropertyLValue(
     AssignmentReceiver {
 
     override fun load(): IrExpression =
-        IrCallImpl(startOffset, endOffset, type, getterSymbol!!, getterSymbol.descriptor, origin)
+        IrCallImpl.create(startOffset, endOffset, type, getterSymbol!!, getterSymbol.descriptor, origin)
 
     override fun store(irExpression: IrExpression): IrExpression =
-        IrCallImpl(startOffset, endOffset, context.irBuiltIns.unitType, setterSymbol!!, setterSymbol.descriptor, origin).apply {
+        IrCallImpl.create(startOffset, endOffset, context.irBuiltIns.unitType, setterSymbol!!, setterSymbol.descriptor, origin).apply {
             putValueArgument(0, irExpression)
         }
 
@@ -87,4 +87,63 @@ class IrCallImpl(
 
     override fun <R, D> accept(visitor: IrElementVisitor<R, D>, data: D): R =
         visitor.visitCall(this, data)
+
+    companion object {
+        /**
+         * Creates a call of [symbol]. Most calls have few value arguments, such calls keep them in fields instead of an array
+         * (see [IrCompactCallBase]), other calls are [IrCallImpl].
+         */
+        fun create(
+            startOffset: Int,
+            endOffset: Int,
+            type: IrType,
+            symbol: IrFunctionSymbol,
+            descriptor: FunctionDescriptor,
+            typeArgumentsCount: Int,
+            valueArgumentsCount: Int,
+            origin: IrStatementOrigin? = null,
+            superQualifierSymbol: IrClassSymbol? = null
+        ): IrCall =
+            when (valueArgumentsCount) {
+                0 -> IrNullaryCallImpl(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, origin, superQualifierSymbol)
+                1 -> IrUnaryCallImpl(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, origin, superQualifierSymbol)
+                2 -> IrBinaryCallImpl(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, origin, superQualifierSymbol)
+                3 -> IrTernaryCallImpl(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, origin, superQualifierSymbol)
+                else -> IrCallImpl(
+                    startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, valueArgumentsCount, origin, superQualifierSymbol
+                )
+            }
+
+        fun create(
+            startOffset: Int,
+            endOffset: Int,
+            type: IrType,
+            symbol: IrFunctionSymbol,
+            descriptor: FunctionDescriptor,
+            origin: IrStatementOrigin? = null,
+            superQualifierSymbol: IrClassSymbol? = null
+        ): IrCall =
+            create(
+                startOffset, endOffset, type, symbol, descriptor, descriptor.typeParametersCount,
+                descriptor.valueParameters.size, origin, superQualifierSymbol
+            )
+
+        fun create(
+            startOffset: Int,
+            endOffset: Int,
+            type: IrType,
+            symbol: IrFunctionSymbol,
+            descriptor: FunctionDescriptor,
+            typeArgumentsCount: Int,
+            origin: IrStatementOrigin? = null,
+            superQualifierSymbol: IrClassSymbol? = null
+        ): IrCall =
+            create(
+                startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount,
+                descriptor.valueParameters.size, origin, superQualifierSymbol
+            )
+
+        fun create(startOffset: Int, endOffset: Int, type: IrType, symbol: IrFunctionSymbol): IrCall =
+            create(startOffset, endOffset, type, symbol, symbol.descriptor)
+    }
 }
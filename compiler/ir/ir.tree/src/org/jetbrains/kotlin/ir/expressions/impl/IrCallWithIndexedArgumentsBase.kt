@@ -39,7 +39,8 @@ abstract class IrCallWithIndexedArgumentsBase(
         origin
     ) {
 
-    private val argumentsByParameterIndex: Array<IrExpression?> = arrayOfNulls(valueArgumentsCount)
+    private val argumentsByParameterIndex: Array<IrExpression?> =
+        if (valueArgumentsCount == 0) NO_VALUE_ARGUMENTS else arrayOfNulls(valueArgumentsCount)
 
     override fun getValueArgument(index: Int): IrExpression? {
         if (index >= valueArgumentsCount) {
@@ -70,4 +71,7 @@ abstract class IrCallWithIndexedArgumentsBase(
             argumentsByParameterIndex[i] = irExpression?.transform(transformer, data)
         }
     }
-}
\ No newline at end of file
+}
+
+// Shared by calls without value arguments; it is never written, because all writes are checked by valueArgumentsCount
+private val NO_VALUE_ARGUMENTS = arrayOfNulls<IrExpression>(0)
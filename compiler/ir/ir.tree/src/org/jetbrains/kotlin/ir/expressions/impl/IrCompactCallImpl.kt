@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.ir.expressions.impl
+
+import org.jetbrains.kotlin.descriptors.ClassDescriptor
+import org.jetbrains.kotlin.descriptors.ConstructorDescriptor
+import org.jetbrains.kotlin.descriptors.FunctionDescriptor
+import org.jetbrains.kotlin.ir.expressions.IrCall
+import org.jetbrains.kotlin.ir.expressions.IrExpression
+import org.jetbrains.kotlin.ir.expressions.IrStatementOrigin
+import org.jetbrains.kotlin.ir.symbols.IrClassSymbol
+import org.jetbrains.kotlin.ir.symbols.IrFunctionSymbol
+import org.jetbrains.kotlin.ir.types.IrType
+import org.jetbrains.kotlin.ir.visitors.IrElementTransformer
+import org.jetbrains.kotlin.ir.visitors.IrElementVisitor
+
+/**
+ * Calls created by [IrCallImpl.create] with at most [IrCompactCallBase.MAX_VALUE_ARGUMENTS] value arguments.
+ * Their value arguments are kept in fields instead of an array.
+ */
+abstract class IrCompactCallBase(
+    startOffset: Int,
+    endOffset: Int,
+    type: IrType,
+    override val symbol: IrFunctionSymbol,
+    override val descriptor: FunctionDescriptor,
+    typeArgumentsCount: Int,
+    valueArgumentsCount: Int,
+    origin: IrStatementOrigin?,
+    override val superQualifierSymbol: IrClassSymbol?
+) :
+    IrMemberAccessExpressionBase(startOffset, endOffset, type, typeArgumentsCount, valueArgumentsCount, origin),
+    IrCall {
+
+    init {
+        if (descriptor is ConstructorDescriptor) {
+            throw AssertionError("Should be IrConstructorCall: $descriptor")
+        }
+    }
+
+    override val superQualifier: ClassDescriptor? get() = superQualifierSymbol?.descriptor
+
+    override fun removeValueArgument(index: Int) {
+        putValueArgument(index, null)
+    }
+
+    protected fun noSuchValueArgument(index: Int): Nothing =
+        throw AssertionError("$this: No such value argument slot: $index")
+
+    override fun <R, D> accept(visitor: IrElementVisitor<R, D>, data: D): R =
+        visitor.visitCall(this, data)
+
+    companion object {
+        const val MAX_VALUE_ARGUMENTS = 3
+    }
+}
+
+class IrNullaryCallImpl(
+    startOffset: Int,
+    endOffset: Int,
+    type: IrType,
+    symbol: IrFunctionSymbol,
+    descriptor: FunctionDescriptor,
+    typeArgumentsCount: Int,
+    origin: IrStatementOrigin? = null,
+    superQualifierSymbol: IrClassSymbol? = null
+) : IrCompactCallBase(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, 0, origin, superQualifierSymbol) {
+
+    override fun getValueArgument(index: Int): IrExpression? = noSuchValueArgument(index)
+
+    override fun putValueArgument(index: Int, valueArgument: IrExpression?) {
+        noSuchValueArgument(index)
+    }
+}
+
+class IrUnaryCallImpl(
+    startOffset: Int,
+    endOffset: Int,
+    type: IrType,
+    symbol: IrFunctionSymbol,
+    descriptor: FunctionDescriptor,
+    typeArgumentsCount: Int,
+    origin: IrStatementOrigin? = null,
+    superQualifierSymbol: IrClassSymbol? = null
+) : IrCompactCallBase(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, 1, origin, superQualifierSymbol) {
+
+    private var argument0: IrExpression? = null
+
+    override fun getValueArgument(index: Int): IrExpression? =
+        when (index) {
+            0 -> argument0
+            else -> noSuchValueArgument(index)
+        }
+
+    override fun putValueArgument(index: Int, valueArgument: IrExpression?) {
+        when (index) {
+            0 -> argument0 = valueArgument
+            else -> noSuchValueArgument(index)
+        }
+    }
+
+    override fun <D> acceptChildren(visitor: IrElementVisitor<Unit, D>, data: D) {
+        super.acceptChildren(visitor, data)
+        argument0?.accept(visitor, data)
+    }
+
+    override fun <D> transformChildren(transformer: IrElementTransformer<D>, data: D) {
+        super.transformChildren(transformer, data)
+        argument0 = argument0?.transform(transformer, data)
+    }
+}
+
+class IrBinaryCallImpl(
+    startOffset: Int,
+    endOffset: Int,
+    type: IrType,
+    symbol: IrFunctionSymbol,
+    descriptor: FunctionDescriptor,
+    typeArgumentsCount: Int,
+    origin: IrStatementOrigin? = null,
+    superQualifierSymbol: IrClassSymbol? = null
+) : IrCompactCallBase(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, 2, origin, superQualifierSymbol) {
+
+    private var argument0: IrExpression? = null
+    private var argument1: IrExpression? = null
+
+    override fun getValueArgument(index: Int): IrExpression? =
+        when (index) {
+            0 -> argument0
+            1 -> argument1
+            else -> noSuchValueArgument(index)
+        }
+
+    override fun putValueArgument(index: Int, valueArgument: IrExpression?) {
+        when (index) {
+            0 -> argument0 = valueArgument
+            1 -> argument1 = valueArgument
+            else -> noSuchValueArgument(index)
+        }
+    }
+
+    override fun <D> acceptChildren(visitor: IrElementVisitor<Unit, D>, data: D) {
+        super.acceptChildren(visitor, data)
+        argument0?.accept(visitor, data)
+        argument1?.accept(visitor, data)
+    }
+
+    override fun <D> transformChildren(transformer: IrElementTransformer<D>, data: D) {
+        super.transformChildren(transformer, data)
+        argument0 = argument0?.transform(transformer, data)
+        argument1 = argument1?.transform(transformer, data)
+    }
+}
+
+class IrTernaryCallImpl(
+    startOffset: Int,
+    endOffset: Int,
+    type: IrType,
+    symbol: IrFunctionSymbol,
+    descriptor: FunctionDescriptor,
+    typeArgumentsCount: Int,
+    origin: IrStatementOrigin? = null,
+    superQualifierSymbol: IrClassSymbol? = null
+) : IrCompactCallBase(startOffset, endOffset, type, symbol, descriptor, typeArgumentsCount, 3, origin, superQualifierSymbol) {
+
+    private var argument0: IrExpression? = null
+    private var argument1: IrExpression? = null
+    private var argument2: IrExpression? = null
+
+    override fun getValueArgument(index: Int): IrExpression? =
+        when (index) {
+            0 -> argument0
+            1 -> argument1
+            2 -> argument2
+            else -> noSuchValueArgument(index)
+        }
+
+    override fun putValueArgument(index: Int, valueArgument: IrExpression?) {
+        when (index) {
+            0 -> argument0 = valueArgument
+            1 -> argument1 = valueArgument
+            2 -> argument2 = valueArgument
+            else -> noSuchValueArgument(index)
+        }
+    }
+
+    override fun <D> acceptChildren(visitor: IrElementVisitor<Unit, D>, data: D) {
+        super.acceptChildren(visitor, data)
+        argument0?.accept(visitor, data)
+        argument1?.accept(visitor, data)
+        argument2?.accept(visitor, data)
+    }
+
+    override fun <D> transformChildren(transformer: IrElementTransformer<D>, data: D) {
+        super.transformChildren(transformer, data)
+        argument0 = argument0?.transform(transformer, data)
+        argument1 = argument1?.transform(transformer, data)
+        argument2 = argument2?.transform(transformer, data)
+    }
+}
@@ -37,7 +37,8 @@ abstract class IrMemberAccessExpressionBase(
     override var dispatchReceiver: IrExpression? = null
     override var extensionReceiver: IrExpression? = null
 
-    private val typeArgumentsByIndex = arrayOfNulls<IrType>(typeArgumentsCount)
+    private val typeArgumentsByIndex =
+        if (typeArgumentsCount == 0) NO_TYPE_ARGUMENTS else arrayOfNulls<IrType>(typeArgumentsCount)
 
     override fun getTypeArgument(index: Int): IrType? {
         if (index >= typeArgumentsCount) {
@@ -62,4 +63,7 @@ abstract class IrMemberAccessExpressionBase(
         dispatchReceiver = dispatchReceiver?.transform(transformer, data)
         extensionReceiver = extensionReceiver?.transform(transformer, data)
     }
-}
\ No newline at end of file
+}
+
+// Most calls have no type arguments, they share this array; it is never written, because all writes are checked by typeArgumentsCount
+private val NO_TYPE_ARGUMENTS = arrayOfNulls<IrType>(0)
@@ -28,7 +28,8 @@ class IrSimpleTypeImpl(
     ) : this(null, classifier, hasQuestionMark, arguments, annotations)
 
     override fun equals(other: Any?): Boolean =
-        other is IrSimpleTypeImpl &&
+        this === other ||
+                other is IrSimpleTypeImpl &&
                 FqNameEqualityChecker.areEqual(classifier, other.classifier) &&
                 hasQuestionMark == other.hasQuestionMark &&
                 arguments == other.arguments
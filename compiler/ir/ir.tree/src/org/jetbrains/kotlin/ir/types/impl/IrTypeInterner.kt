@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.ir.types.impl
+
+import org.jetbrains.kotlin.ir.expressions.IrConst
+import org.jetbrains.kotlin.ir.expressions.IrConstructorCall
+import org.jetbrains.kotlin.ir.expressions.IrGetEnumValue
+import org.jetbrains.kotlin.ir.symbols.IrConstructorSymbol
+import org.jetbrains.kotlin.ir.types.IrSimpleType
+import org.jetbrains.kotlin.ir.types.IrStarProjection
+import org.jetbrains.kotlin.ir.types.IrTypeArgument
+import org.jetbrains.kotlin.ir.types.IrTypeProjection
+
+/**
+ * Hash-consing of [IrSimpleType]s created for one module: a type with the same classifier, nullability, arguments and
+ * original Kotlin type is represented by one instance, so equal types are found by reference.
+ *
+ * Classifiers and argument types are compared by reference, so arguments should be interned before the type itself.
+ * Types with equal annotations such as `@ExtensionFunctionType` or `@ParameterName("x")` are shared, together with their
+ * annotation calls. Keys keep their own copies of the constructor symbols and constant arguments of the annotations, so
+ * a change of an annotation call after interning doesn't affect the interner. Types with annotation arguments other than
+ * constants and enum entries are not interned.
+ */
+class IrTypeInterner {
+    private val types = HashMap<Key, IrSimpleTypeImpl>()
+
+    fun intern(type: IrSimpleTypeImpl): IrSimpleTypeImpl {
+        if (!type.annotations.all { it.isInternable() }) return type
+        return types.getOrPut(Key(type)) { type }
+    }
+
+    private fun IrConstructorCall.isInternable(): Boolean =
+        typeArgumentsCount == 0 && dispatchReceiver == null && extensionReceiver == null &&
+                (0 until valueArgumentsCount).all { index ->
+                    getValueArgument(index).let { it == null || it is IrConst<*> || it is IrGetEnumValue }
+                }
+
+    // Values of annotation arguments: a constant is represented by its kind and value, an enum entry by its symbol
+    private data class AnnotationKey(val symbol: IrConstructorSymbol, val arguments: List<Any?>) {
+        constructor(annotation: IrConstructorCall) : this(
+            annotation.symbol,
+            (0 until annotation.valueArgumentsCount).map { index ->
+                when (val argument = annotation.getValueArgument(index)) {
+                    is IrConst<*> -> argument.kind to argument.value
+                    is IrGetEnumValue -> argument.symbol
+                    else -> null
+                }
+            }
+        )
+    }
+
+    private class Key(type: IrSimpleType) {
+        private val classifier = type.classifier
+        private val hasQuestionMark = type.hasQuestionMark
+        private val arguments = type.arguments.toList()
+        private val annotations = type.annotations.map(::AnnotationKey)
+        private val originalKotlinType = type.originalKotlinType
+
+        private val hashCode = annotations.fold(
+            arguments.fold(
+                System.identityHashCode(classifier) * 31 + hasQuestionMark.hashCode()
+            ) { hash, argument -> hash * 31 + argument.identityHashCode() }
+        ) { hash, annotation -> hash * 31 + annotation.hashCode() }
+
+        override fun equals(other: Any?): Boolean {
+            if (other !is Key) return false
+            return classifier === other.classifier &&
+                    hasQuestionMark == other.hasQuestionMark &&
+                    arguments.size == other.arguments.size &&
+                    arguments.indices.all { arguments[it].isSameAs(other.arguments[it]) } &&
+                    annotations == other.annotations &&
+                    originalKotlinType == other.originalKotlinType
+        }
+
+        override fun hashCode(): Int = hashCode
+
+        private fun IrTypeArgument.identityHashCode(): Int =
+            when (this) {
+                is IrTypeProjection -> System.identityHashCode(type) * 31 + variance.hashCode()
+                else -> System.identityHashCode(this)
+            }
+
+        private fun IrTypeArgument.isSameAs(other: IrTypeArgument): Boolean =
+            when (this) {
+                is IrStarProjection -> this === other
+                is IrTypeProjection -> other is IrTypeProjection && type === other.type && variance == other.variance
+                else -> false
+            }
+    }
+}
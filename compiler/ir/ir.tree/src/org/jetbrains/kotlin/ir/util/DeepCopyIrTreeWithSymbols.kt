@@ -493,7 +493,7 @@ open class DeepCopyIrTreeWithSymbols(
                 )
             else -> {
                 val newCallee = symbolRemapper.getReferencedFunction(expression.symbol)
-                IrCallImpl(
+                IrCallImpl.create(
                     expression.startOffset, expression.endOffset,
                     expression.type.remapType(),
                     newCallee,
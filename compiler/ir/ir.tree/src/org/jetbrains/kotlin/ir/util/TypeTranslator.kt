@@ -26,7 +26,8 @@ class TypeTranslator(
     val languageVersionSettings: LanguageVersionSettings,
     builtIns: KotlinBuiltIns,
     private val typeParametersResolver: TypeParametersResolver = ScopedTypeParametersResolver(),
-    private val enterTableScope: Boolean = false
+    private val enterTableScope: Boolean = false,
+    private val typeInterner: IrTypeInterner = IrTypeInterner()
 ) {
 
     private val typeApproximatorForNI = TypeApproximator(builtIns)
@@ -76,10 +77,9 @@ class TypeTranslator(
         val ktTypeDescriptor = ktTypeConstructor.declarationDescriptor
             ?: throw AssertionError("No descriptor for type $approximatedType")
 
-        return IrSimpleTypeBuilder().apply {
+        val simpleType = IrSimpleTypeBuilder().apply {
             kotlinType = approximatedType
             hasQuestionMark = approximatedType.isMarkedNullable
-            this.variance = variance
             when (ktTypeDescriptor) {
                 is TypeParameterDescriptor -> {
                     classifier = resolveTypeParameter(ktTypeDescriptor)
@@ -95,7 +95,10 @@ class TypeTranslator(
                 else ->
                     throw AssertionError("Unexpected type descriptor $ktTypeDescriptor :: ${ktTypeDescriptor::class}")
             }
-        }.buildTypeProjection()
+        }.buildSimpleType()
+
+        val internedType = typeInterner.intern(simpleType)
+        return if (variance == Variance.INVARIANT) internedType else IrTypeProjectionImpl(internedType, variance)
     }
 
     private inner class LegacyTypeApproximation {
@@ -92,9 +92,10 @@ class ConstraintIncorporator(
         typeVariable: TypeVariableMarker,
         constraint: Constraint
     ) {
+        val typeVariableConstructor = typeVariable.freshTypeConstructor()
         for (typeVariableWithConstraint in this@insideOtherConstraint.allTypeVariablesWithConstraints) {
             val constraintsWhichConstraintMyVariable = typeVariableWithConstraint.constraints.filter {
-                it.type.contains { it.typeConstructor() == typeVariable.freshTypeConstructor() }
+                typeVariableConstructor in typeConstructorsInType(it)
             }
             constraintsWhichConstraintMyVariable.forEach {
                 generateNewConstraint(typeVariableWithConstraint.typeVariable, it, typeVariable, constraint)
@@ -102,6 +103,19 @@ class ConstraintIncorporator(
         }
     }
 
+    // Every new constraint is checked against all constraints of the system, so type constructors of a constraint are collected once
+    private fun Context.typeConstructorsInType(constraint: Constraint): Set<TypeConstructorMarker> {
+        constraint.typeConstructorsInType?.let { return it }
+
+        val typeConstructors = SmartSet.create<TypeConstructorMarker>()
+        constraint.type.contains {
+            typeConstructors.add(it.typeConstructor())
+            false
+        }
+        constraint.typeConstructorsInType = typeConstructors
+        return typeConstructors
+    }
+
     private fun Context.generateNewConstraint(
         targetVariable: TypeVariableMarker,
         baseConstraint: Constraint,
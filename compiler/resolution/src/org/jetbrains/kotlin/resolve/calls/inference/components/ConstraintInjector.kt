@@ -67,12 +67,13 @@ class ConstraintInjector(val constraintIncorporator: ConstraintIncorporator, val
         upperType: KotlinTypeMarker,
         incorporatePosition: IncorporationConstraintPosition
     ) {
-        val possibleNewConstraints = Stack<Pair<TypeVariableMarker, Constraint>>()
+        // work queue of constraints found by subtyping checks; incorporation of a new constraint adds more of them
+        val possibleNewConstraints = ArrayList<Pair<TypeVariableMarker, Constraint>>()
         val typeCheckerContext = TypeCheckerContext(c, incorporatePosition, lowerType, upperType, possibleNewConstraints)
         typeCheckerContext.runIsSubtypeOf(lowerType, upperType)
 
         while (possibleNewConstraints.isNotEmpty()) {
-            val (typeVariable, constraint) = possibleNewConstraints.pop()
+            val (typeVariable, constraint) = possibleNewConstraints.removeAt(possibleNewConstraints.lastIndex)
             if (c.shouldWeSkipConstraint(typeVariable, constraint)) continue
 
             val constraints =
@@ -125,6 +126,9 @@ class ConstraintInjector(val constraintIncorporator: ConstraintIncorporator, val
 
         val baseContext: AbstractTypeCheckerContext = newBaseTypeCheckerContext(isErrorTypeEqualsToAnything)
 
+        // successful subtyping checks from incorporation, they add nothing new if they are run again
+        private val incorporatedSubtypings = HashSet<Pair<KotlinTypeMarker, KotlinTypeMarker>>()
+
         override fun substitutionSupertypePolicy(type: SimpleTypeMarker): SupertypesPolicy.DoCustomTransform {
             return baseContext.substitutionSupertypePolicy(type)
         }
@@ -137,11 +141,13 @@ class ConstraintInjector(val constraintIncorporator: ConstraintIncorporator, val
             return baseContext.prepareType(type)
         }
 
-        fun runIsSubtypeOf(lowerType: KotlinTypeMarker, upperType: KotlinTypeMarker) {
+        fun runIsSubtypeOf(lowerType: KotlinTypeMarker, upperType: KotlinTypeMarker): Boolean {
             if (!AbstractTypeChecker.isSubtypeOf(this@TypeCheckerContext as AbstractTypeCheckerContext, lowerType, upperType)) {
                 // todo improve error reporting -- add information about base types
                 c.addError(NewConstraintError(lowerType, upperType, position))
+                return false
             }
+            return true
         }
 
         // from AbstractTypeCheckerContextForConstraintSystem
@@ -206,7 +212,12 @@ class ConstraintInjector(val constraintIncorporator: ConstraintIncorporator, val
         // from ConstraintIncorporator.Context
         override fun addNewIncorporatedConstraint(lowerType: KotlinTypeMarker, upperType: KotlinTypeMarker) {
             if (c.isAllowedType(lowerType) && c.isAllowedType(upperType)) {
-                runIsSubtypeOf(lowerType, upperType)
+                val subtyping = lowerType to upperType
+                if (subtyping in incorporatedSubtypings) return
+
+                if (runIsSubtypeOf(lowerType, upperType)) {
+                    incorporatedSubtypings.add(subtyping)
+                }
             }
         }
 
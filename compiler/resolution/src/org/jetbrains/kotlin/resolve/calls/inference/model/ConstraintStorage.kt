@@ -69,6 +69,9 @@ class Constraint(
     val position: IncorporationConstraintPosition,
     val typeHashCode: Int = type.hashCode()
 ) {
+    // all type constructors in [type], computed on the first incorporation of this constraint
+    internal var typeConstructorsInType: Set<TypeConstructorMarker>? = null
+
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (other?.javaClass != javaClass) return false
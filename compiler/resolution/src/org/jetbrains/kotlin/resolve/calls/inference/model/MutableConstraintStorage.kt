@@ -11,6 +11,8 @@ import org.jetbrains.kotlin.resolve.calls.tower.isSuccess
 import org.jetbrains.kotlin.types.model.KotlinTypeMarker
 import org.jetbrains.kotlin.types.model.TypeConstructorMarker
 import org.jetbrains.kotlin.types.model.TypeVariableMarker
+import org.jetbrains.kotlin.utils.SmartList
+import java.util.*
 import kotlin.collections.ArrayList
 import kotlin.collections.LinkedHashMap
 
@@ -29,11 +31,16 @@ class MutableVariableWithConstraints(
 
     private val mutableConstraints = ArrayList(constraints)
 
+    // constraints from mutableConstraints grouped by the hash code of their types, kept in the order of addition
+    private val constraintsByTypeHashCode = HashMap<Int, MutableList<Constraint>>().also { index ->
+        mutableConstraints.forEach { index.getOrPut(it.typeHashCode) { SmartList() }.add(it) }
+    }
+
     private var simplifiedConstraints: List<Constraint>? = null
 
     // return new actual constraint, if this constraint is new
     fun addConstraint(constraint: Constraint): Constraint? {
-        val previousConstraintWithSameType = constraints.filter { it.typeHashCode == constraint.typeHashCode && it.type == constraint.type }
+        val previousConstraintWithSameType = constraintsWithSameType(constraint)
 
         if (previousConstraintWithSameType.any { previous -> newConstraintIsUseless(previous, constraint) })
             return null
@@ -52,20 +59,30 @@ class MutableVariableWithConstraints(
             constraint
 
         mutableConstraints.add(actualConstraint)
+        constraintsByTypeHashCode.getOrPut(actualConstraint.typeHashCode) { SmartList() }.add(actualConstraint)
         simplifiedConstraints = null
         return actualConstraint
     }
 
+    private fun constraintsWithSameType(constraint: Constraint): List<Constraint> =
+        constraintsByTypeHashCode[constraint.typeHashCode]?.filter { it.type == constraint.type }.orEmpty()
+
     // This method should be used only for transaction in constraint system
     // shouldRemove should give true only for tail elements
     internal fun removeLastConstraints(shouldRemove: (Constraint) -> Boolean) {
         mutableConstraints.trimToSize(mutableConstraints.indexOfLast { !shouldRemove(it) } + 1)
-        simplifiedConstraints = null
+        rebuildIndex()
     }
 
     // This method should be used only when constraint system has state COMPLETION
     internal fun removeConstrains(shouldRemove: (Constraint) -> Boolean) {
         mutableConstraints.removeAll(shouldRemove)
+        rebuildIndex()
+    }
+
+    private fun rebuildIndex() {
+        constraintsByTypeHashCode.clear()
+        mutableConstraints.forEach { constraintsByTypeHashCode.getOrPut(it.typeHashCode) { SmartList() }.add(it) }
         simplifiedConstraints = null
     }
 
@@ -83,38 +100,36 @@ class MutableVariableWithConstraints(
     }
 
     private fun simplifyConstraints(): List<Constraint> {
-        val distinctConstraints = removeDuplicatesFromDeclaredUpperBoundConstraints(mutableConstraints)
+        val removedDuplicates = findDuplicatesFromDeclaredUpperBoundConstraints()
 
-        val equalityConstraints = distinctConstraints
-            .filter { it.kind == ConstraintKind.EQUALITY }
-            .groupBy { it.typeHashCode }
-        return distinctConstraints.filter { isUsefulConstraint(it, equalityConstraints) }
+        return mutableConstraints.filter { it !in removedDuplicates && isUsefulConstraint(it) }
     }
 
-    private fun removeDuplicatesFromDeclaredUpperBoundConstraints(constraints: List<Constraint>): MutableList<Constraint> {
-        val currentConstraints = constraints.toMutableList()
-        val iterator = currentConstraints.iterator()
-        while (iterator.hasNext()) {
-            val potentialDuplicate = iterator.next()
-
+    // Constraints from declared upper bounds which have a duplicate of the same kind among the constraints left
+    private fun findDuplicatesFromDeclaredUpperBoundConstraints(): Set<Constraint> {
+        var removedDuplicates: MutableSet<Constraint>? = null
+        for (potentialDuplicate in mutableConstraints) {
             if (potentialDuplicate.position.from !is DeclaredUpperBoundConstraintPosition) continue
-            val hasDuplicate = currentConstraints.any { other ->
+
+            val hasDuplicate = constraintsByTypeHashCode[potentialDuplicate.typeHashCode]!!.any { other ->
                 potentialDuplicate !== other &&
-                        potentialDuplicate.typeHashCode == other.typeHashCode &&
-                        potentialDuplicate.type == other.type &&
-                        potentialDuplicate.kind == other.kind
+                        other.kind == potentialDuplicate.kind &&
+                        other.type == potentialDuplicate.type &&
+                        removedDuplicates?.contains(other) != true
             }
 
-            if (hasDuplicate)
-                iterator.remove()
+            if (hasDuplicate) {
+                if (removedDuplicates == null) removedDuplicates = Collections.newSetFromMap(IdentityHashMap())
+                removedDuplicates!!.add(potentialDuplicate)
+            }
         }
 
-        return currentConstraints
+        return removedDuplicates ?: emptySet()
     }
 
-    private fun isUsefulConstraint(constraint: Constraint, equalityConstraints: Map<Int, List<Constraint>>): Boolean {
+    private fun isUsefulConstraint(constraint: Constraint): Boolean {
         if (constraint.kind == ConstraintKind.EQUALITY) return true
-        return equalityConstraints[constraint.typeHashCode]?.none { it.type == constraint.type } ?: true
+        return constraintsWithSameType(constraint).none { it.kind == ConstraintKind.EQUALITY }
     }
 
     override fun toString(): String {
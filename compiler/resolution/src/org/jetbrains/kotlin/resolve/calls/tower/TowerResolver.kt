@@ -22,6 +22,7 @@ import org.jetbrains.kotlin.resolve.calls.tasks.ExplicitReceiverKind
 import org.jetbrains.kotlin.resolve.descriptorUtil.HIDES_MEMBERS_NAME_LIST
 import org.jetbrains.kotlin.resolve.scopes.ImportingScope
 import org.jetbrains.kotlin.resolve.scopes.LexicalScope
+import org.jetbrains.kotlin.resolve.scopes.LexicalScopeWithNameIndex
 import org.jetbrains.kotlin.resolve.scopes.ResolutionScope
 import org.jetbrains.kotlin.resolve.scopes.receivers.ReceiverValueWithSmartCastInfo
 import org.jetbrains.kotlin.resolve.scopes.utils.parentsWithSelf
@@ -129,25 +130,27 @@ class TowerResolver {
                 }
             }
 
-            lexicalScope.parentsWithSelf.forEach { scope ->
-                if (scope is LexicalScope) {
-                    if (!scope.kind.withLocalDescriptors) {
-                        addLevel(
-                            ScopeBasedTowerLevel(this@createNonLocalLevels, scope),
-                            scope.mayFitForName(name)
-                        )
-                    }
-
-                    getImplicitReceiver(scope)?.let {
-                        addLevel(
-                            MemberScopeTowerLevel(this@createNonLocalLevels, it),
-                            it.mayFitForName(name)
-                        )
+            lexicalScope.parentsWithSelf.forEach { parentScope ->
+                if (parentScope is LexicalScope) {
+                    for (scope in parentScope.scopesForName()) {
+                        if (!scope.kind.withLocalDescriptors) {
+                            addLevel(
+                                ScopeBasedTowerLevel(this@createNonLocalLevels, scope),
+                                scope.mayFitForName(name)
+                            )
+                        }
+
+                        getImplicitReceiver(scope)?.let {
+                            addLevel(
+                                MemberScopeTowerLevel(this@createNonLocalLevels, it),
+                                it.mayFitForName(name)
+                            )
+                        }
                     }
                 } else {
                     addLevel(
-                        ImportingScopeBasedTowerLevel(this@createNonLocalLevels, scope as ImportingScope),
-                        scope.mayFitForName(name)
+                        ImportingScopeBasedTowerLevel(this@createNonLocalLevels, parentScope as ImportingScope),
+                        parentScope.mayFitForName(name)
                     )
                 }
             }
@@ -183,20 +186,22 @@ class TowerResolver {
                 TowerData.TowerLevel(localLevel).process()?.let { return it }
             }
 
-            for (scope in implicitScopeTower.lexicalScope.parentsWithSelf) {
-                if (scope is LexicalScope) {
-                    // statics
-                    if (!scope.kind.withLocalDescriptors) {
-                        TowerData.TowerLevel(ScopeBasedTowerLevel(implicitScopeTower, scope))
-                            .process(scope.mayFitForName(name))?.let { return it }
+            for (parentScope in implicitScopeTower.lexicalScope.parentsWithSelf) {
+                if (parentScope is LexicalScope) {
+                    for (scope in parentScope.scopesForName()) {
+                        // statics
+                        if (!scope.kind.withLocalDescriptors) {
+                            TowerData.TowerLevel(ScopeBasedTowerLevel(implicitScopeTower, scope))
+                                .process(scope.mayFitForName(name))?.let { return it }
+                        }
+
+                        implicitScopeTower.getImplicitReceiver(scope)
+                            ?.let(this::processImplicitReceiver)
+                            ?.let { return it }
                     }
-
-                    implicitScopeTower.getImplicitReceiver(scope)
-                        ?.let(this::processImplicitReceiver)
-                        ?.let { return it }
                 } else {
-                    TowerData.TowerLevel(ImportingScopeBasedTowerLevel(implicitScopeTower, scope as ImportingScope))
-                        .process(scope.mayFitForName(name))?.let { return it }
+                    TowerData.TowerLevel(ImportingScopeBasedTowerLevel(implicitScopeTower, parentScope as ImportingScope))
+                        .process(parentScope.mayFitForName(name))?.let { return it }
                 }
             }
 
@@ -238,6 +243,10 @@ class TowerResolver {
             processor.recordLookups(skippedDataForLookup, name)
         }
 
+        // a scope with a name index is replaced by its scopes which may declare the name
+        private fun LexicalScope.scopesForName(): List<LexicalScope> =
+            if (this is LexicalScopeWithNameIndex) getScopes(name) else listOf(this)
+
         private fun ReceiverValueWithSmartCastInfo.mayFitForName(name: Name): Boolean {
             if (receiverValue.type.mayFitForName(name)) return true
             if (possibleTypes.isEmpty()) return false
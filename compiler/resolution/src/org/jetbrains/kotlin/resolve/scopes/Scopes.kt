@@ -63,6 +63,23 @@ interface LexicalScope : HierarchicalScope {
     }
 }
 
+/**
+ * A lexical scope which stands for several scopes with their own implicit receivers, e.g. the scopes of the previous lines of a REPL session,
+ * and indexes them by the names they declare. Call resolution visits only the scopes returned for the name it looks up
+ * instead of a level for each of the [scopes], so that a lookup doesn't depend on their number.
+ */
+interface LexicalScopeWithNameIndex : LexicalScope {
+    /**
+     * All the scopes, the innermost first.
+     */
+    val scopes: List<LexicalScope>
+
+    /**
+     * The scopes which may contain declarations named [name], the innermost first.
+     */
+    fun getScopes(name: Name): List<LexicalScope>
+}
+
 enum class LexicalScopeKind(val withLocalDescriptors: Boolean) {
     EMPTY(false),
     THROWING(false),
@@ -36,15 +36,19 @@ val HierarchicalScope.parents: Sequence<HierarchicalScope>
 /**
  * Adds receivers to the list in order of locality, so that the closest (the most local) receiver goes first
  */
-fun LexicalScope.getImplicitReceiversHierarchy(): List<ReceiverParameterDescriptor> = collectFromMeAndParent {
-    (it as? LexicalScope)?.implicitReceiver
-}
+fun LexicalScope.getImplicitReceiversHierarchy(): List<ReceiverParameterDescriptor> = collectAllFromMeAndParent {
+    when (it) {
+        is LexicalScopeWithNameIndex -> it.scopes.mapNotNull(LexicalScope::implicitReceiver)
+        is LexicalScope -> listOfNotNull(it.implicitReceiver)
+        else -> emptyList()
+    }
+}.toList()
 
 fun LexicalScope.getDeclarationsByLabel(labelName: Name): Collection<DeclarationDescriptor> = collectAllFromMeAndParent {
-    if (it is LexicalScope && it.isOwnerDescriptorAccessibleByLabel && it.ownerDescriptor.name == labelName) {
-        listOf(it.ownerDescriptor)
-    } else {
-        listOf()
+    val scopes = if (it is LexicalScopeWithNameIndex) it.scopes else listOf(it)
+    scopes.mapNotNull { scope ->
+        if (scope is LexicalScope && scope.isOwnerDescriptorAccessibleByLabel && scope.ownerDescriptor.name == labelName) scope.ownerDescriptor
+        else null
     }
 }
 
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.test
+
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryType
+
+/**
+ * Helpers of benchmarks, the tests which measure the compiler and report the numbers instead of asserting them,
+ * because the numbers depend on the machine.
+ *
+ * Benchmarks are run only if the `kotlin.test.benchmarks` system property is `true` (`-Pkotlin.test.benchmarks=true` in the build),
+ * and report their results as TeamCity build statistics.
+ */
+object Benchmarks {
+    val isEnabled: Boolean = System.getProperty("kotlin.test.benchmarks")?.toBoolean() == true
+
+    /**
+     * Runs [body] [warmUpRuns] times, and then [runs] more times, and returns the median time of the last runs in milliseconds.
+     */
+    fun medianMillis(warmUpRuns: Int, runs: Int, body: () -> Unit): Long {
+        repeat(warmUpRuns) { body() }
+        val times = (0 until runs).map {
+            val start = System.nanoTime()
+            body()
+            (System.nanoTime() - start) / 1_000_000
+        }
+        return times.sorted()[runs / 2]
+    }
+
+    /**
+     * Returns the peak usage of the heap while [body] runs, in megabytes.
+     */
+    fun peakHeapMb(body: () -> Unit): Long {
+        val heapPools = ManagementFactory.getMemoryPoolMXBeans().filter { it.type == MemoryType.HEAP }
+        System.gc()
+        heapPools.forEach { it.resetPeakUsage() }
+        body()
+        return heapPools.fold(0L) { sum, pool -> sum + pool.peakUsage.used } / (1024 * 1024)
+    }
+
+    /**
+     * Returns the heap used after a garbage collection, in kilobytes, so the difference of two calls is the size of the objects
+     * which were created and stay reachable in between.
+     */
+    fun usedHeapKb(): Long {
+        val runtime = Runtime.getRuntime()
+        repeat(3) { System.gc() }
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024
+    }
+
+    fun report(key: String, value: Long, unit: String) {
+        println("$key: $value $unit")
+        println("##teamcity[buildStatisticValue key='kotlin.benchmark.$key' value='$value']")
+    }
+}
@@ -829,6 +829,11 @@ public class CliTestGenerated extends AbstractCliTest {
             runTest("compiler/testData/cli/js/sourceMapRootMultiple.args");
         }
 
+        @TestMetadata("sourceMapStreaming.args")
+        public void testSourceMapStreaming() throws Exception {
+            runTest("compiler/testData/cli/js/sourceMapStreaming.args");
+        }
+
         @TestMetadata("suppressAllWarningsJS.args")
         public void testSuppressAllWarningsJS() throws Exception {
             runTest("compiler/testData/cli/js/suppressAllWarningsJS.args");
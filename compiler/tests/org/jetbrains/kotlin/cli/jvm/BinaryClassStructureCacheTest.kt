@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.cli.jvm
+
+import com.intellij.core.CoreJavaFileManager
+import com.intellij.openapi.components.ServiceManager
+import com.intellij.openapi.util.Disposer
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.psi.search.GlobalSearchScope
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCliJavaFileManagerImpl
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.load.java.structure.JavaClass
+import org.jetbrains.kotlin.load.java.structure.impl.classFiles.BinaryClassStructureCache
+import org.jetbrains.kotlin.load.java.structure.impl.classFiles.BinaryJavaClass
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+
+class BinaryClassStructureCacheTest : KtUsefulTestCase() {
+    fun testClassesAreTheSameInSubsequentCompilations() {
+        val fqNames = listOf("java.util.HashMap", "java.util.Map.Entry", "java.lang.annotation.Retention", "java.util.concurrent.TimeUnit")
+
+        val first = withFileManager(emptyList()) { manager, scope -> fqNames.map { manager.findClass(it, scope).render() } }
+        val second = withFileManager(emptyList()) { manager, scope -> fqNames.map { manager.findClass(it, scope).render() } }
+
+        assertEquals(first, second)
+    }
+
+    fun testChangedClassFileIsParsedAgain() {
+        val classesDir = KotlinTestUtils.tmpDir("classes")
+
+        // the class files have the same size and may have the same timestamp
+        compileJavaClass(classesDir, "public class Foo { public void first() {} }")
+        val before = withFileManager(listOf(classesDir)) { manager, scope -> manager.findClass("Foo", scope).render() }
+
+        compileJavaClass(classesDir, "public class Foo { public void other() {} }")
+        val after = withFileManager(listOf(classesDir)) { manager, scope -> manager.findClass("Foo", scope).render() }
+
+        assertTrue(before, "first" in before)
+        assertTrue(after, "other" in after && "first" !in after)
+    }
+
+    fun testJarEntriesAreSharedBetweenCompilations() {
+        val rtJar = KotlinTestUtils.findMockJdkRtJar()
+        fun parse() = withFileManager(emptyList()) { _, _ ->
+            val jarFileSystem = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.JAR_PROTOCOL)
+            BinaryClassStructureCache().getClassStructure(jarFileSystem.findFileByPath("${rtJar.path}!/java/util/HashMap.class")!!, null)
+        }
+
+        assertSame(parse(), parse())
+    }
+
+    fun testLocalClassFilesAreNotCached() {
+        val classesDir = KotlinTestUtils.tmpDir("classes")
+        compileJavaClass(classesDir, "public class Foo {}")
+        fun parse() = withFileManager(listOf(classesDir)) { _, _ ->
+            val localFileSystem = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL)
+            val classFile = localFileSystem.findFileByPath(File(classesDir, "Foo.class").path)!!
+            BinaryClassStructureCache().getClassStructure(classFile, null)
+        }
+
+        assertNotSame(parse(), parse())
+    }
+
+    fun testBenchmarkRepeatedModuleBuilds() {
+        if (!Benchmarks.isEnabled) return
+
+        val packages = listOf("java.lang", "java.util", "java.util.concurrent", "java.io")
+        fun build() = withFileManager(emptyList()) { manager, scope ->
+            for (packageName in packages) {
+                for (className in manager.knownClassNamesInPackage(FqName(packageName))) {
+                    manager.findClass(ClassId.topLevel(FqName("$packageName.$className")), scope)?.methods
+                }
+            }
+        }
+
+        // the first build parses the class files of the JDK, the next ones find them in the cache
+        val firstBuildTime = Benchmarks.medianMillis(warmUpRuns = 0, runs = 1) { build() }
+        val nextBuildTime = Benchmarks.medianMillis(warmUpRuns = 0, runs = 5) { build() }
+        Benchmarks.report("binaryClassStructureCache.firstBuild", firstBuildTime, "ms")
+        Benchmarks.report("binaryClassStructureCache.nextBuild", nextBuildTime, "ms")
+    }
+
+    private fun <T> withFileManager(classpath: List<File>, body: (KotlinCliJavaFileManagerImpl, GlobalSearchScope) -> T): T {
+        val disposable = Disposer.newDisposable()
+        try {
+            val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.JDK_ONLY, TestJdkKind.MOCK_JDK, classpath, emptyList())
+            configuration.put(JVMConfigurationKeys.USE_FAST_CLASS_FILES_READING, true)
+            val environment = KotlinCoreEnvironment.createForTests(disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+            val manager = ServiceManager.getService(environment.project, CoreJavaFileManager::class.java) as KotlinCliJavaFileManagerImpl
+            return body(manager, GlobalSearchScope.allScope(environment.project))
+        } finally {
+            Disposer.dispose(disposable)
+        }
+    }
+
+    private fun KotlinCliJavaFileManagerImpl.findClass(fqName: String, scope: GlobalSearchScope): JavaClass {
+        val segments = fqName.split('.')
+        val packageSegments = segments.takeWhile { it.first().isLowerCase() }
+        val relativeClassName = segments.drop(packageSegments.size).joinToString(".")
+        val classId = ClassId(FqName(packageSegments.joinToString(".")), FqName(relativeClassName), false)
+        return findClass(classId, scope) as BinaryJavaClass
+    }
+
+    private fun JavaClass.render(): String =
+        "$fqName: " + supertypes.joinToString { it.classifierQualifiedName } + "; " +
+                methods.joinToString { "${it.name}/${it.valueParameters.size}" } + "; " +
+                fields.joinToString { it.name.asString() } + "; " +
+                innerClassNames.sorted().joinToString()
+
+    private fun compileJavaClass(classesDir: File, text: String) {
+        val sourceFile = File(KotlinTestUtils.tmpDir("sources"), "Foo.java").apply { writeText(text) }
+        assertTrue(KotlinTestUtils.compileJavaFiles(listOf(sourceFile), listOf("-d", classesDir.path)))
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.cli.jvm
+
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFile
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.cli.jvm.index.ConcurrentJvmDependenciesIndexImpl
+import org.jetbrains.kotlin.cli.jvm.index.JavaRoot
+import org.jetbrains.kotlin.cli.jvm.index.JvmDependenciesIndex
+import org.jetbrains.kotlin.cli.jvm.index.JvmDependenciesIndexImpl
+import org.jetbrains.kotlin.name.ClassId
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
+import org.jetbrains.kotlin.test.TestJdkKind
+import java.io.File
+import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConcurrentJvmDependenciesIndexTest : KotlinTestWithEnvironment() {
+    private lateinit var classpathDir: File
+
+    override fun createEnvironment(): KotlinCoreEnvironment {
+        classpathDir = KotlinTestUtils.tmpDir("concurrent-index-test")
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.JDK_ONLY, TestJdkKind.MOCK_JDK)
+        return KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+    }
+
+    fun testSameResultsAsSequentialIndex() {
+        val roots = createClasspath(rootCount = 20, packagesPerRoot = 3, classesPerPackage = 3)
+        val classIds = collectClassIds(roots) + ClassId.topLevel(FqName("shared.Missing")) + ClassId.topLevel(FqName("absent.pkg.Missing"))
+
+        val sequential = JvmDependenciesIndexImpl(roots)
+        val concurrent = ConcurrentJvmDependenciesIndexImpl(roots)
+
+        for (classId in classIds) {
+            for (rootTypes in listOf(JavaRoot.SourceAndBinary, JavaRoot.OnlyBinary)) {
+                assertEquals(classId.toString(), findClassFile(sequential, classId, rootTypes), findClassFile(concurrent, classId, rootTypes))
+            }
+        }
+
+        for (packageFqName in classIds.map { it.packageFqName }.distinct()) {
+            assertEquals(packageFqName.asString(), packageDirectories(sequential, packageFqName), packageDirectories(concurrent, packageFqName))
+        }
+    }
+
+    fun testPrefixedRoots() {
+        val roots = createClasspath(rootCount = 2, packagesPerRoot = 1, classesPerPackage = 1)
+        val prefixedRoot = JavaRoot(roots[0].file.findFileByRelativePath("lib0/p0")!!, JavaRoot.RootType.SOURCE, FqName("prefix.pkg"))
+        val index = ConcurrentJvmDependenciesIndexImpl(roots + prefixedRoot)
+
+        assertEquals(
+            prefixedRoot.file.findChild("C0.class"),
+            findClassFile(index, ClassId.topLevel(FqName("prefix.pkg.C0")), JavaRoot.SourceAndBinary)
+        )
+        assertNull(findClassFile(index, ClassId.topLevel(FqName("prefix.other.C0")), JavaRoot.SourceAndBinary))
+    }
+
+    fun testConcurrentLookupsOfUnknownPackages() {
+        val roots = createClasspath(rootCount = 100, packagesPerRoot = 5, classesPerPackage = 3)
+        val classIds = collectClassIds(roots) + ClassId.topLevel(FqName("shared.Missing")) + ClassId.topLevel(FqName("absent.pkg.Missing"))
+        val sequential = JvmDependenciesIndexImpl(roots)
+        val expected = classIds.associate { it to findClassFile(sequential, it, JavaRoot.SourceAndBinary) }
+
+        // The index is not warmed up, so threads compute and publish package snapshots concurrently
+        val concurrent = ConcurrentJvmDependenciesIndexImpl(roots)
+        val threadCount = Runtime.getRuntime().availableProcessors().coerceIn(4, 16)
+        val executor = Executors.newFixedThreadPool(threadCount)
+        try {
+            val tasks = (0 until threadCount).map { thread ->
+                executor.submit(Callable {
+                    val random = Random(thread.toLong())
+                    repeat(20_000) {
+                        val classId = classIds[random.nextInt(classIds.size)]
+                        assertEquals(classId.toString(), expected[classId], findClassFile(concurrent, classId, JavaRoot.SourceAndBinary))
+                    }
+                })
+            }
+            tasks.forEach { it.get(1, TimeUnit.MINUTES) }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+    fun testBenchmarkFindClassThroughput() {
+        if (!Benchmarks.isEnabled) return
+
+        val roots = createClasspath(rootCount = 300, packagesPerRoot = 10, classesPerPackage = 5)
+        val classIds = collectClassIds(roots)
+        val threadCount = Runtime.getRuntime().availableProcessors().coerceAtLeast(2)
+        val lookupsPerThread = 200_000
+
+        val sequentialIndex = JvmDependenciesIndexImpl(roots)
+        val sequentialTime = Benchmarks.medianMillis(warmUpRuns = 1, runs = 5) {
+            runLookups(sequentialIndex, classIds, 1, lookupsPerThread)
+        }.coerceAtLeast(1)
+        val concurrentIndex = ConcurrentJvmDependenciesIndexImpl(roots)
+        val concurrentTime = Benchmarks.medianMillis(warmUpRuns = 1, runs = 5) {
+            runLookups(concurrentIndex, classIds, threadCount, lookupsPerThread)
+        }.coerceAtLeast(1)
+
+        Benchmarks.report("jvmDependenciesIndex.sequential.lookupsPerMs", lookupsPerThread / sequentialTime, "lookups/ms, 1 thread")
+        Benchmarks.report(
+            "jvmDependenciesIndex.concurrent.lookupsPerMs", lookupsPerThread.toLong() * threadCount / concurrentTime,
+            "lookups/ms, $threadCount threads"
+        )
+    }
+
+    private fun runLookups(index: JvmDependenciesIndex, classIds: List<ClassId>, threadCount: Int, lookupsPerThread: Int) {
+        val executor = Executors.newFixedThreadPool(threadCount)
+        try {
+            val tasks = (0 until threadCount).map { thread ->
+                executor.submit(Callable {
+                    val random = Random(thread.toLong())
+                    repeat(lookupsPerThread) {
+                        val classId = classIds[random.nextInt(classIds.size)]
+                        assertNotNull(classId.toString(), findClassFile(index, classId, JavaRoot.SourceAndBinary))
+                    }
+                })
+            }
+            tasks.forEach { it.get() }
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    // Each root contains its own packages "lib<root>.p<package>" and a few classes of a package "shared" common to all roots
+    private fun createClasspath(rootCount: Int, packagesPerRoot: Int, classesPerPackage: Int): List<JavaRoot> {
+        val rootDirs = (0 until rootCount).map { rootIndex ->
+            val rootDir = File(classpathDir, "root$rootIndex")
+            for (packageIndex in 0 until packagesPerRoot) {
+                val packageDir = File(rootDir, "lib$rootIndex/p$packageIndex").apply { mkdirs() }
+                for (classIndex in 0 until classesPerPackage) {
+                    File(packageDir, "C$classIndex.class").writeBytes(ByteArray(0))
+                }
+            }
+            File(rootDir, "shared").apply { mkdirs() }.resolve("S$rootIndex.class").writeBytes(ByteArray(0))
+            rootDir
+        }
+
+        val localFileSystem = StandardFileSystems.local()
+        return rootDirs.map { JavaRoot(localFileSystem.refreshAndFindFileByPath(it.path)!!, JavaRoot.RootType.BINARY) }
+    }
+
+    private fun collectClassIds(roots: List<JavaRoot>): List<ClassId> {
+        val result = ArrayList<ClassId>()
+        fun collect(dir: VirtualFile, packageFqName: FqName) {
+            for (child in dir.children) {
+                if (child.isDirectory) {
+                    collect(child, packageFqName.child(Name.identifier(child.name)))
+                } else {
+                    result.add(ClassId.topLevel(packageFqName.child(Name.identifier(child.nameWithoutExtension))))
+                }
+            }
+        }
+        roots.forEach { collect(it.file, FqName.ROOT) }
+        return result
+    }
+
+    private fun findClassFile(index: JvmDependenciesIndex, classId: ClassId, rootTypes: Set<JavaRoot.RootType>): VirtualFile? =
+        index.findClass(classId, rootTypes) { dir, _ -> dir.findChild(classId.relativeClassName.asString() + ".class") }
+
+    private fun packageDirectories(index: JvmDependenciesIndex, packageFqName: FqName): List<VirtualFile> {
+        val result = ArrayList<VirtualFile>()
+        index.traverseDirectoriesInPackage(packageFqName) { dir, _ -> result.add(dir) }
+        return result
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.cli.jvm
+
+import org.jetbrains.kotlin.cli.jvm.compiler.JarOutputWriter
+import org.jetbrains.kotlin.test.TestCaseWithTmpdir
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.util.jar.*
+import java.util.zip.ZipEntry
+
+class JarOutputWriterTest : TestCaseWithTmpdir() {
+    private val entries = (1..200).associate { "foo/Class$it.class" to "content of class $it ".repeat(it).toByteArray() }
+
+    fun testDeflated() {
+        val jar = writeJar(store = false)
+        checkJar(jar, expectedMethod = ZipEntry.DEFLATED)
+    }
+
+    fun testStored() {
+        val jar = writeJar(store = true)
+        checkJar(jar, expectedMethod = ZipEntry.STORED)
+    }
+
+    fun testCopyEntries() {
+        val source = File(tmpdir, "source.jar")
+        JarOutputStream(source.outputStream()).use { stream ->
+            for ((name, content) in entries) {
+                stream.putNextEntry(JarEntry(name))
+                stream.write(content)
+            }
+            stream.putNextEntry(JarEntry("foo/resource.txt"))
+            stream.write("resource".toByteArray())
+        }
+
+        val target = File(tmpdir, "target.jar")
+        target.outputStream().use { output ->
+            JarOutputWriter(output, store = false).use { writer ->
+                writer.addManifest(createManifest())
+                writer.copyEntries(source) { it.endsWith(".class") }
+                writer.finish()
+            }
+        }
+
+        checkJar(target, expectedMethod = ZipEntry.DEFLATED)
+    }
+
+    fun testDuplicateEntry() {
+        JarOutputWriter(ByteArrayOutputStream(), store = false).use { writer ->
+            writer.addEntry("a.class", ByteArray(1))
+            try {
+                writer.addEntry("a.class", ByteArray(1))
+                fail("Duplicate entry should not be allowed")
+            } catch (e: java.util.zip.ZipException) {
+                // expected
+            }
+        }
+    }
+
+    fun testZip64ForManyEntries() {
+        val count = 0xFFFF + 1000
+        val names = (0 until count).map { "many/Entry$it.class" }
+
+        val source = File(tmpdir, "many.jar")
+        source.outputStream().use { output ->
+            JarOutputWriter(output, store = true).use { writer ->
+                writer.addManifest(createManifest())
+                for (name in names) {
+                    writer.addEntry(name, name.toByteArray())
+                }
+                writer.finish()
+            }
+        }
+        checkManyEntries(source, names)
+
+        // Entries are found through the zip64 end of central directory record when they are copied
+        val target = File(tmpdir, "copy.jar")
+        target.outputStream().use { output ->
+            JarOutputWriter(output, store = false).use { writer ->
+                writer.addManifest(createManifest())
+                writer.copyEntries(source) { it.startsWith("many/") }
+                writer.finish()
+            }
+        }
+        checkManyEntries(target, names)
+    }
+
+    private fun checkManyEntries(jar: File, names: List<String>) {
+        JarFile(jar).use { jarFile ->
+            assertEquals("foo.MainKt", jarFile.manifest.mainAttributes.getValue("Main-Class"))
+            assertEquals(names.size + 1, jarFile.size())
+            for (name in listOf(names.first(), names[0xFFFF], names.last())) {
+                assertEquals(name, jarFile.getInputStream(jarFile.getJarEntry(name)).readBytes().toString(Charsets.UTF_8))
+            }
+        }
+    }
+
+    private fun writeJar(store: Boolean): File {
+        val jar = File(tmpdir, "out.jar")
+        jar.outputStream().use { output ->
+            JarOutputWriter(output, store).use { writer ->
+                writer.addManifest(createManifest())
+                for ((name, content) in entries) {
+                    writer.addEntry(name, content)
+                }
+                writer.finish()
+            }
+        }
+        return jar
+    }
+
+    private fun createManifest(): ByteArray {
+        val manifest = Manifest()
+        manifest.mainAttributes.putValue("Manifest-Version", "1.0")
+        manifest.mainAttributes.putValue("Main-Class", "foo.MainKt")
+        return ByteArrayOutputStream().also { manifest.write(it) }.toByteArray()
+    }
+
+    private fun checkJar(jar: File, expectedMethod: Int) {
+        JarFile(jar).use { jarFile ->
+            assertEquals("foo.MainKt", jarFile.manifest.mainAttributes.getValue("Main-Class"))
+            assertEquals(entries.size + 1, jarFile.size())
+
+            for ((name, content) in entries) {
+                val entry = jarFile.getJarEntry(name)
+                assertEquals(expectedMethod, entry.method)
+                assertEquals(String(content), jarFile.getInputStream(entry).readBytes().toString(Charsets.UTF_8))
+            }
+        }
+
+        JarInputStream(jar.inputStream()).use { stream ->
+            assertNotNull(stream.manifest)
+            var count = 0
+            while (stream.nextJarEntry != null) {
+                stream.readBytes()
+                count++
+            }
+            assertEquals(entries.size, count)
+        }
+    }
+}
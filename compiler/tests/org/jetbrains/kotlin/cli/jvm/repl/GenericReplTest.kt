@@ -29,6 +29,7 @@ import org.jetbrains.kotlin.integration.KotlinIntegrationTestBase
 import org.jetbrains.kotlin.script.loadScriptingPlugin
 import org.jetbrains.kotlin.scripting.definitions.KotlinScriptDefinition
 import org.jetbrains.kotlin.scripting.repl.GenericReplCompiler
+import org.jetbrains.kotlin.scripting.repl.GenericReplCompilerState
 import org.jetbrains.kotlin.scripting.resolve.KotlinScriptDefinitionFromAnnotatedTemplate
 import org.jetbrains.kotlin.test.ConfigurationKind
 import org.jetbrains.kotlin.test.KotlinTestUtils
@@ -137,6 +138,44 @@ class GenericReplTest : KtUsefulTestCase() {
         }
     }
 
+    fun testReplRedeclarationsAfterReset() {
+        TestRepl().use { repl ->
+            val state = repl.createState()
+
+            repl.compileAndEval(state, ReplCodeLine(0, 0, "val x = 1"))
+            repl.compileAndEval(state, ReplCodeLine(1, 0, "val x = \"a\""))
+            state.history.resetTo(LineId(ReplCodeLine(0, 0, "val x = 1")))
+
+            val res = repl.compileAndEval(state, ReplCodeLine(1, 0, "x + 1"))
+            assertEquals(res.second.toString(), 2, (res.second as? ReplEvalResult.ValueResult)?.value)
+        }
+    }
+
+    fun testLookupsDoNotDependOnHistory() {
+        TestRepl().use { repl ->
+            val state = repl.createState()
+            val analyzer = state.asState(GenericReplCompilerState::class.java).analyzerEngine
+            repl.compileAndEval(state, repl.nextCodeLine("val x = 0"))
+
+            // each iteration redeclares the variables of the previous one, as notebook cells usually do
+            val iterations = 100
+            repeat(iterations) { i ->
+                repl.compileAndEval(state, repl.nextCodeLine("val y = x + 1"))
+                repl.compileAndEval(state, repl.nextCodeLine("val x = y"))
+                repl.compileAndEval(state, repl.nextCodeLine("fun f$i() = x"))
+            }
+
+            val res = repl.compileAndEval(state, repl.nextCodeLine("x + f0()"))
+            assertEquals(res.second.toString(), iterations * 2, (res.second as? ReplEvalResult.ValueResult)?.value)
+
+            // a name is looked up only in the lines which declare it and are not shadowed by later lines
+            assertEquals(1, analyzer.countPreviousLinesDeclaring("x"))
+            assertEquals(1, analyzer.countPreviousLinesDeclaring("y"))
+            assertEquals(1, analyzer.countPreviousLinesDeclaring("f0"))
+            assertEquals(0, analyzer.countPreviousLinesDeclaring("z"))
+        }
+    }
+
     fun testReplResultFieldWithFunction() {
         TestRepl().use { repl ->
             val state = repl.createState()
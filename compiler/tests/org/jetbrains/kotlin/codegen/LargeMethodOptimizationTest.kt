@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.codegen.optimization.OptimizationMethodVisitor
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.org.objectweb.asm.ClassReader
+import org.jetbrains.org.objectweb.asm.tree.ClassNode
+import org.jetbrains.org.objectweb.asm.tree.MethodInsnNode
+import org.jetbrains.org.objectweb.asm.tree.MethodNode
+
+class LargeMethodOptimizationTest : CodegenTestCase() {
+    fun testRedundantBoxingIsRemovedInOversizedMethod() {
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+
+        // Before optimizations, the method has more than 30000 instructions and 2200 locals, which is beyond the limit for full frames
+        val method = compileAndFindMethod(generateBoxingMethod(2200), "test/BoxingKt", "test")
+
+        assertEquals(0, method.instructions.toArray().count { it is MethodInsnNode && it.name == "valueOf" })
+    }
+
+    fun testOversizedMethodIsOptimizedUsingSparseFrames() {
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+
+        val method = compileAndFindMethod(generateBoxingMethod(2200), "test/BoxingKt", "test", disableOptimization = true)
+
+        assertFalse(OptimizationMethodVisitor.canBeOptimized(method))
+        assertTrue(OptimizationMethodVisitor.canBeOptimizedUsingSparseFrames(method))
+    }
+
+    fun testSmallerMethodIsOptimizedUsingFullFrames() {
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+
+        val method = compileAndFindMethod(generateBoxingMethod(1100), "test/BoxingKt", "test", disableOptimization = true)
+
+        assertTrue(OptimizationMethodVisitor.canBeOptimized(method))
+    }
+
+    fun testBenchmarkLargeMethodOptimization() {
+        if (!Benchmarks.isEnabled) return
+
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+
+        // 550 and 1100 values are optimized with full frames, 2200 values with sparse frames
+        for (valuesCount in listOf(550, 1100, 2200)) {
+            val text = generateBoxingMethod(valuesCount)
+            Benchmarks.report("largeMethodOptimization.$valuesCount.ms", Benchmarks.medianMillis(1, 3) {
+                compileAndFindMethod(text, "test/BoxingKt", "test")
+            }, "ms")
+            Benchmarks.report("largeMethodOptimization.$valuesCount.peakHeapMb", Benchmarks.peakHeapMb {
+                compileAndFindMethod(text, "test/BoxingKt", "test")
+            }, "MB")
+        }
+    }
+
+    // Every boxed value lives in its own local variable, so full frames of the method are huge
+    private fun generateBoxingMethod(valuesCount: Int): String = buildString {
+        appendln("package test")
+        appendln()
+        appendln("fun test(): Int {")
+        for (i in 0 until valuesCount) {
+            appendln("    val b$i: Any = $i")
+        }
+        appendln("    var sum = 0")
+        for (i in 0 until valuesCount) {
+            appendln("    sum += b$i as Int")
+        }
+        appendln("    return sum")
+        appendln("}")
+    }
+
+    private fun compileAndFindMethod(
+        text: String,
+        className: String,
+        methodName: String,
+        disableOptimization: Boolean = false
+    ): MethodNode {
+        val file = KotlinTestUtils.createFile("boxing.kt", text, myEnvironment.project)
+        val configuration = myEnvironment.configuration.copy()
+        configuration.put(JVMConfigurationKeys.DISABLE_OPTIMIZATION, disableOptimization)
+        val state = GenerationUtils.compileFiles(
+            listOf(file), configuration, ClassBuilderFactories.TEST, myEnvironment::createPackagePartProvider
+        )
+        val classFile = state.factory.asList().single { it.relativePath == "$className.class" }
+
+        val classNode = ClassNode()
+        ClassReader(classFile.asByteArray()).accept(classNode, 0)
+        return classNode.methods.single { it.name == methodName }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.codegen.optimization.common.MethodAnalyzer
+import org.jetbrains.kotlin.codegen.optimization.common.OptimizationBasicInterpreter
+import org.jetbrains.kotlin.codegen.optimization.common.analyzeWithSharedBasicFrames
+import org.jetbrains.kotlin.codegen.optimization.common.releasePooledFrames
+import org.jetbrains.kotlin.codegen.optimization.common.withPooledFrames
+import org.jetbrains.kotlin.codegen.optimization.common.withSharedBasicFrames
+import org.jetbrains.kotlin.codegen.optimization.transformer.MethodTransformer
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.org.objectweb.asm.Label
+import org.jetbrains.org.objectweb.asm.Opcodes
+import org.jetbrains.org.objectweb.asm.tree.MethodNode
+import org.jetbrains.org.objectweb.asm.tree.VarInsnNode
+import java.io.File
+import java.lang.management.ManagementFactory
+
+class MethodAnalysisReuseTest : CodegenTestCase() {
+    fun testFramesAreSharedWhileMethodIsNotChanged() {
+        val method = MethodNode(Opcodes.ACC_STATIC, "test", "(II)I", null, null).apply {
+            visitCode()
+            visitVarInsn(Opcodes.ILOAD, 0)
+            visitVarInsn(Opcodes.ISTORE, 1)
+            visitVarInsn(Opcodes.ILOAD, 1)
+            visitInsn(Opcodes.IRETURN)
+            visitMaxs(1, 2)
+        }
+
+        assertNotSame(analyzeWithSharedBasicFrames("Test", method), analyzeWithSharedBasicFrames("Test", method))
+
+        withSharedBasicFrames(method) {
+            val frames = analyzeWithSharedBasicFrames("Test", method)
+            assertSame(frames, analyzeWithSharedBasicFrames("Test", method))
+            assertNotSame(frames, analyzeWithSharedBasicFrames("Other", method))
+
+            val otherFrames = analyzeWithSharedBasicFrames("Other", method)
+            (method.instructions[0] as VarInsnNode).`var` = 1
+            assertNotSame(otherFrames, analyzeWithSharedBasicFrames("Other", method))
+        }
+    }
+
+    fun testHandlersOfPreviousMethodAreNotReused() {
+        val start = Label()
+        val end = Label()
+        val handler = Label()
+        val methodWithTryCatch = MethodNode(Opcodes.ACC_STATIC, "tryCatch", "()V", null, null).apply {
+            visitCode()
+            visitTryCatchBlock(start, end, handler, null)
+            visitLabel(start)
+            visitInsn(Opcodes.NOP)
+            visitLabel(end)
+            visitInsn(Opcodes.RETURN)
+            visitLabel(handler)
+            visitInsn(Opcodes.POP)
+            visitInsn(Opcodes.RETURN)
+            visitMaxs(1, 0)
+        }
+        val methodWithDeadCode = MethodNode(Opcodes.ACC_STATIC, "deadCode", "()V", null, null).apply {
+            visitCode()
+            visitInsn(Opcodes.NOP)
+            visitInsn(Opcodes.RETURN)
+            repeat(4) { visitInsn(Opcodes.NOP) }
+            visitInsn(Opcodes.RETURN)
+            visitMaxs(1, 0)
+        }
+
+        val tryCatchFrames = MethodAnalyzer("Test", methodWithTryCatch, OptimizationBasicInterpreter()).analyze()
+        assertNotNull(tryCatchFrames[methodWithTryCatch.instructions.size() - 1])
+
+        val deadCodeFrames = MethodAnalyzer("Test", methodWithDeadCode, OptimizationBasicInterpreter()).analyze()
+        assertEquals(listOf(true, true, false, false, false, false, false), deadCodeFrames.map { it != null })
+    }
+
+    fun testFramesOfChangedMethodAreReused() {
+        val method = MethodNode(Opcodes.ACC_STATIC, "test", "(II)I", null, null).apply {
+            visitCode()
+            visitVarInsn(Opcodes.ILOAD, 0)
+            visitVarInsn(Opcodes.ISTORE, 1)
+            visitVarInsn(Opcodes.ILOAD, 1)
+            visitInsn(Opcodes.IRETURN)
+            visitMaxs(1, 3)
+        }
+
+        withSharedBasicFrames(method) {
+            val frames = analyzeWithSharedBasicFrames("Test", method)
+            (method.instructions[1] as VarInsnNode).`var` = 2
+            (method.instructions[2] as VarInsnNode).`var` = 2
+
+            val newFrames = analyzeWithSharedBasicFrames("Test", method)
+            assertNotSame(frames, newFrames)
+            for (frame in newFrames) {
+                assertTrue("Frame is not taken from the previous analysis: $frame", frames.any { it === frame })
+            }
+
+            val expectedFrames = MethodAnalyzer("Test", method, OptimizationBasicInterpreter()).analyze()
+            assertEquals(expectedFrames.map { it?.toString() }, newFrames.map { it?.toString() })
+        }
+    }
+
+    fun testFramesAreReusedByFollowingPasses() {
+        val method = MethodNode(Opcodes.ACC_STATIC, "test", "(II)I", null, null).apply {
+            visitCode()
+            visitVarInsn(Opcodes.ILOAD, 0)
+            visitVarInsn(Opcodes.ISTORE, 1)
+            visitVarInsn(Opcodes.ILOAD, 1)
+            visitInsn(Opcodes.IRETURN)
+            visitMaxs(1, 2)
+        }
+        val expectedFrames = MethodAnalyzer("Test", method, OptimizationBasicInterpreter()).analyze().map { it?.toString() }
+
+        withPooledFrames {
+            val frames = MethodAnalyzer("Test", method, OptimizationBasicInterpreter()).analyze()
+
+            // Frames of the current pass are not reused until they are released
+            val framesOfSamePass = MethodTransformer.analyze("Test", method, OptimizationBasicInterpreter())
+            assertTrue(framesOfSamePass.none { frame -> frames.any { it === frame } })
+
+            releasePooledFrames()
+            val framesOfNextPass = MethodTransformer.analyze("Test", method, OptimizationBasicInterpreter())
+            for (frame in framesOfNextPass) {
+                assertTrue("Frame is not taken from the pool: $frame", (frames + framesOfSamePass).any { it === frame })
+            }
+            assertEquals(expectedFrames, framesOfNextPass.map { it?.toString() })
+        }
+
+        // Outside of withPooledFrames every analysis has its own frames
+        val frames = MethodAnalyzer("Test", method, OptimizationBasicInterpreter()).analyze()
+        releasePooledFrames()
+        val otherFrames = MethodAnalyzer("Test", method, OptimizationBasicInterpreter()).analyze()
+        assertTrue(otherFrames.none { frame -> frames.any { it === frame } })
+    }
+
+    fun testUnchangedMethodIsMatchedWithoutAllocations() {
+        val threadMXBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+        if (threadMXBean == null || !threadMXBean.isThreadAllocatedMemorySupported || !threadMXBean.isThreadAllocatedMemoryEnabled) return
+
+        val start = Label()
+        val end = Label()
+        val handler = Label()
+        val method = MethodNode(Opcodes.ACC_STATIC, "test", "(I)V", null, null).apply {
+            visitCode()
+            visitTryCatchBlock(start, end, handler, "java/lang/Exception")
+            visitLabel(start)
+            visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;")
+            visitVarInsn(Opcodes.ILOAD, 0)
+            visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(I)V", false)
+            visitLabel(end)
+            visitInsn(Opcodes.RETURN)
+            visitLabel(handler)
+            visitInsn(Opcodes.POP)
+            visitInsn(Opcodes.RETURN)
+            visitMaxs(2, 1)
+        }
+
+        withSharedBasicFrames(method) {
+            val frames = analyzeWithSharedBasicFrames("Test", method)
+            assertSame(frames, analyzeWithSharedBasicFrames("Test", method))
+
+            val threadId = Thread.currentThread().id
+            val calls = 10000
+            val allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId)
+            repeat(calls) {
+                analyzeWithSharedBasicFrames("Test", method)
+            }
+            val allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore
+
+            // Comparing operands through lists would allocate several lists per call
+            assertTrue("$allocated bytes are allocated by $calls calls", allocated < calls * 8L)
+        }
+    }
+
+    // Compiles the single-file box tests, the same code as BlackBoxCodegenTestGenerated does, and reports time and allocations
+    fun testBenchmarkBoxTests() {
+        if (!Benchmarks.isEnabled) return
+
+        val threadMXBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+        if (threadMXBean == null || !threadMXBean.isThreadAllocatedMemorySupported || !threadMXBean.isThreadAllocatedMemoryEnabled) return
+
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+
+        val texts = File(KotlinTestUtils.getTestDataPathBase(), "codegen/box").walkTopDown()
+            .filter { it.isFile && it.extension == "kt" }
+            .map { it.readText() }
+            .filter { text -> SKIPPED_DIRECTIVES.none { text.contains(it) } }
+            .toList()
+
+        fun compileAll(): Int {
+            var compiled = 0
+            for ((index, text) in texts.withIndex()) {
+                val file = KotlinTestUtils.createFile("box$index.kt", text, myEnvironment.project)
+                try {
+                    GenerationUtils.compileFiles(listOf(file), myEnvironment).destroy()
+                    compiled++
+                } catch (e: Throwable) {
+                    // Some of the tests need directives or libraries which are not configured here
+                }
+            }
+            return compiled
+        }
+
+        // warm-up
+        val compiledCount = compileAll()
+
+        val threadId = Thread.currentThread().id
+        val allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId)
+        val start = System.nanoTime()
+        compileAll()
+        val time = (System.nanoTime() - start) / 1_000_000
+        val allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore
+
+        Benchmarks.report("methodAnalysis.boxTests.files", compiledCount.toLong(), "files")
+        Benchmarks.report("methodAnalysis.boxTests.ms", time, "ms")
+        Benchmarks.report("methodAnalysis.boxTests.allocatedMb", allocated / (1024 * 1024), "MB")
+    }
+
+    companion object {
+        private val SKIPPED_DIRECTIVES = listOf("// FILE:", "// MODULE:", "BACKEND:", "// !", "// LANGUAGE", "// JVM_TARGET", "COROUTINES")
+    }
+}
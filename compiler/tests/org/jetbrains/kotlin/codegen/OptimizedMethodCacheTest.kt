@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import com.intellij.openapi.util.Disposer
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.codegen.optimization.getOptimizedMethodCacheHits
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+
+class OptimizedMethodCacheTest : KtUsefulTestCase() {
+    fun testOutputIsTheSameWithCachedMethods() {
+        val source = """
+            package test
+
+            inline class Id(val value: Int)
+
+            fun sum(ids: List<Id>): Int {
+                var result = 0
+                for (id in ids) result += id.value
+                return result
+            }
+
+            fun boxed(x: Int?): Int {
+                val y: Any = x ?: 0
+                return if (y is Int) y + 1 else 0
+            }
+
+            fun nullable(s: String?): Int = s?.length ?: -1
+
+            fun local(): () -> Int {
+                var captured = 0
+                return { captured++ }
+            }
+
+            fun tryCatch(s: String): Int =
+                try {
+                    s.toInt()
+                } catch (e: NumberFormatException) {
+                    -1
+                } finally {
+                    println(s)
+                }
+        """
+
+        val uncached = compile(source, cacheOptimizedMethods = false)
+        val firstCached = compile(source, cacheOptimizedMethods = true)
+        val secondCached = compile(source, cacheOptimizedMethods = true)
+
+        for (cached in listOf(firstCached, secondCached)) {
+            assertEquals(uncached.keys.toList(), cached.keys.toList())
+            for ((path, bytes) in uncached) {
+                assertTrue("Class file $path differs from the output without the cache", bytes.contentEquals(cached[path]!!))
+            }
+        }
+    }
+
+    fun testRepeatedCompilationReadsOptimizedMethodsFromCache() {
+        val functionsCount = 200
+        val source = buildString {
+            appendln("package repeated")
+            for (i in 0 until functionsCount) {
+                appendln("fun f$i(x: Int?, s: String?): Int {")
+                appendln("    var r: Any = x ?: 0")
+                for (j in 0 until 10) {
+                    appendln("    if (r is Int && s != null) r = (r as Int) + s.length + $j")
+                }
+                appendln("    return r as Int")
+                appendln("}")
+            }
+        }
+
+        val hitsBefore = getOptimizedMethodCacheHits()
+        compile(source, cacheOptimizedMethods = false)
+        assertEquals(hitsBefore, getOptimizedMethodCacheHits())
+
+        compile(source, cacheOptimizedMethods = true)
+        val hitsAfterFirst = getOptimizedMethodCacheHits()
+        compile(source, cacheOptimizedMethods = true)
+
+        // Each function of the second compilation is read from the cache
+        val hits = getOptimizedMethodCacheHits() - hitsAfterFirst
+        assertTrue("Only $hits of $functionsCount functions were read from the cache", hits >= functionsCount)
+    }
+
+    private fun compile(source: String, cacheOptimizedMethods: Boolean): Map<String, ByteArray> {
+        val disposable = Disposer.newDisposable()
+        try {
+            val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK)
+            configuration.put(JVMConfigurationKeys.CACHE_OPTIMIZED_METHODS, cacheOptimizedMethods)
+            val environment = KotlinCoreEnvironment.createForTests(disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+            val file = KotlinTestUtils.createFile("test.kt", source.trimIndent(), environment.project)
+
+            val state = GenerationUtils.compileFiles(listOf(file), environment, ClassBuilderFactories.BINARIES)
+            try {
+                return state.factory.asList().associate { it.relativePath to it.asByteArray() }
+            } finally {
+                state.destroy()
+            }
+        } finally {
+            Disposer.dispose(disposable)
+        }
+    }
+}
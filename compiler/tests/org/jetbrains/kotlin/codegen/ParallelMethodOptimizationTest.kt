@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import com.intellij.openapi.util.Disposer
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+
+class ParallelMethodOptimizationTest : KtUsefulTestCase() {
+    fun testOutputIsTheSameAsSequential() {
+        val sources = mapOf(
+            "a.kt" to """
+                package a
+
+                inline class Id(val value: Int)
+
+                fun sum(ids: List<Id>): Int {
+                    var result = 0
+                    for (id in ids) result += id.value
+                    return result
+                }
+
+                fun boxed(x: Int?): Int {
+                    val y: Any = x ?: 0
+                    return if (y is Int) y + 1 else 0
+                }
+
+                enum class Color { RED, GREEN, BLUE }
+
+                fun name(color: Color) = when (color) {
+                    Color.RED -> "red"
+                    Color.GREEN -> "green"
+                    Color.BLUE -> "blue"
+                }
+            """,
+            "b.kt" to """
+                package b
+
+                class Counter {
+                    private var count = 0
+
+                    fun increment(times: Int): Int {
+                        var x = 0
+                        repeat(times) { x++ }
+                        count += x
+                        return count
+                    }
+
+                    fun filtered(items: List<String>) = items.filter { it.length > count }.map { it.toUpperCase() }
+
+                    fun local(): () -> Int {
+                        var captured = 0
+                        return { captured++ }
+                    }
+
+                    fun nullable(s: String?): Int = s?.length ?: -1
+
+                    inline fun <reified T> isInstance(x: Any) = x is T
+
+                    fun usesInline(x: Any) = isInstance<String>(x) || isInstance<Int>(x)
+                }
+            """
+        )
+
+        val sequential = compile(sources, optimizationThreads = 1)
+        val parallel = compile(sources, optimizationThreads = 4)
+
+        assertEquals(sequential.keys.toList(), parallel.keys.toList())
+        for ((path, bytes) in sequential) {
+            assertTrue("Class file $path differs from the sequential output", bytes.contentEquals(parallel[path]!!))
+        }
+    }
+
+    private fun compile(sources: Map<String, String>, optimizationThreads: Int): Map<String, ByteArray> {
+        val disposable = Disposer.newDisposable()
+        try {
+            val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK)
+            configuration.put(JVMConfigurationKeys.OPTIMIZATION_THREADS, optimizationThreads)
+            val environment = KotlinCoreEnvironment.createForTests(disposable, configuration, EnvironmentConfigFiles.JVM_CONFIG_FILES)
+            val files = sources.map { (name, text) -> KotlinTestUtils.createFile(name, text.trimIndent(), environment.project) }
+
+            val state = GenerationUtils.compileFiles(files, environment, ClassBuilderFactories.BINARIES)
+            try {
+                return state.factory.asList().associate { it.relativePath to it.asByteArray() }
+            } finally {
+                state.destroy()
+            }
+        } finally {
+            Disposer.dispose(disposable)
+        }
+    }
+}
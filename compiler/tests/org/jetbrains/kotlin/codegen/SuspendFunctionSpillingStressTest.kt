@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen
+
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.org.objectweb.asm.ClassReader
+import org.jetbrains.org.objectweb.asm.tree.ClassNode
+
+class SuspendFunctionSpillingStressTest : CodegenTestCase() {
+    fun testTenSuspensionPoints() {
+        doTest(10)
+    }
+
+    fun testHundredSuspensionPoints() {
+        doTest(100)
+    }
+
+    fun testFiveHundredSuspensionPoints() {
+        doTest(500)
+    }
+
+    // Generates classes, verifies them with ASM and checks that only `sum` is spilled, whatever the number of suspension points
+    private fun doTest(suspensionPointsCount: Int) {
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+        loadText(generateSuspendFunction(suspensionPointsCount))
+        generateAndCreateClassLoader()
+
+        val continuation = generateClassesInFile().asList().single { it.relativePath.endsWith("\$test\$1.class") }
+        val classNode = ClassNode().also { ClassReader(continuation.asByteArray()).accept(it, ClassReader.SKIP_CODE) }
+        assertEquals(listOf("I$0"), classNode.fields.map { it.name }.filter { SPILLED_FIELD_NAME.matches(it) })
+    }
+
+    fun testBenchmarkSpilling() {
+        if (!Benchmarks.isEnabled) return
+
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+
+        for (suspensionPointsCount in listOf(10, 100, 250, 500)) {
+            val file = KotlinTestUtils.createFile(
+                "suspensionPoints$suspensionPointsCount.kt", generateSuspendFunction(suspensionPointsCount), myEnvironment.project
+            )
+            Benchmarks.report("suspendFunctionSpilling.$suspensionPointsCount.ms", Benchmarks.medianMillis(2, 5) {
+                GenerationUtils.compileFiles(listOf(file), myEnvironment).destroy()
+            }, "ms")
+            Benchmarks.report("suspendFunctionSpilling.$suspensionPointsCount.peakHeapMb", Benchmarks.peakHeapMb {
+                GenerationUtils.compileFiles(listOf(file), myEnvironment).destroy()
+            }, "MB")
+        }
+    }
+
+    // `sum` is the only variable which is alive at the suspension points, so the live set doesn't grow with the size of the function
+    private fun generateSuspendFunction(suspensionPointsCount: Int): String = buildString {
+        appendln("package test")
+        appendln()
+        appendln("suspend fun id(x: Int): Int = x")
+        appendln()
+        appendln("suspend fun test(): Int {")
+        appendln("    var sum = 0")
+        appendln("    var value: Int")
+        for (i in 0 until suspensionPointsCount) {
+            appendln("    value = id($i)")
+            appendln("    sum += value")
+        }
+        appendln("    return sum")
+        appendln("}")
+    }
+
+    companion object {
+        private val SPILLED_FIELD_NAME = Regex("[IJFDL]\\$\\d+")
+    }
+}
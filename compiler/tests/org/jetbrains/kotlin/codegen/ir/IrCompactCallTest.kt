@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.codegen.ir
+
+import org.jetbrains.kotlin.codegen.CodegenTestCase
+import org.jetbrains.kotlin.codegen.CodegenTestFiles
+import org.jetbrains.kotlin.codegen.GenerationUtils
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.config.languageVersionSettings
+import org.jetbrains.kotlin.ir.AbstractIrGeneratorTestCase
+import org.jetbrains.kotlin.ir.IrElement
+import org.jetbrains.kotlin.ir.declarations.IrModuleFragment
+import org.jetbrains.kotlin.ir.expressions.IrCall
+import org.jetbrains.kotlin.ir.expressions.IrExpression
+import org.jetbrains.kotlin.ir.expressions.copyTypeArgumentsFrom
+import org.jetbrains.kotlin.ir.expressions.impl.IrCallImpl
+import org.jetbrains.kotlin.ir.expressions.impl.IrCompactCallBase
+import org.jetbrains.kotlin.ir.util.render
+import org.jetbrains.kotlin.ir.visitors.IrElementTransformerVoid
+import org.jetbrains.kotlin.ir.visitors.IrElementVisitorVoid
+import org.jetbrains.kotlin.ir.visitors.acceptChildrenVoid
+import org.jetbrains.kotlin.ir.visitors.acceptVoid
+import org.jetbrains.kotlin.ir.visitors.transformChildrenVoid
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi2ir.Psi2IrConfiguration
+import org.jetbrains.kotlin.psi2ir.Psi2IrTranslator
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+
+class IrCompactCallTest : CodegenTestCase() {
+    override fun updateConfiguration(configuration: CompilerConfiguration) {
+        configuration.put(JVMConfigurationKeys.IR, true)
+    }
+
+    fun testCallsWithFewValueArgumentsAreCompact() {
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+        loadText(generateFile(0))
+
+        val calls = collectCalls(generateIrModule(myFiles.psiFiles))
+        val callsWithFewValueArguments = calls.filter { it.valueArgumentsCount <= IrCompactCallBase.MAX_VALUE_ARGUMENTS }
+
+        // 20 functions with 20 statements of 5 calls each, and the calls of the getter of x
+        assertTrue("Too few calls: ${calls.size}", callsWithFewValueArguments.size >= 20 * 20 * 5)
+        for (call in callsWithFewValueArguments) {
+            assertTrue("Call with ${call.valueArgumentsCount} value arguments is not compact: ${call.render()}", call is IrCompactCallBase)
+        }
+        assertEquals(callsWithFewValueArguments.size, calls.count { it is IrCompactCallBase })
+    }
+
+    fun testCompactCallsAreCompiled() {
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+        myFiles = CodegenTestFiles.create(createFiles(50))
+
+        // Verifies all generated classes with ASM
+        generateAndCreateClassLoader()
+
+        // A class and a file facade per file
+        assertEquals(2 * 50, generateClassesInFile().asList().count { it.relativePath.endsWith(".class") })
+    }
+
+    fun testBenchmarkCompactCalls() {
+        if (!Benchmarks.isEnabled) return
+
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+        val files = createFiles(50)
+
+        // The same module is measured twice: as psi2ir creates it, and after all compact calls are replaced with IrCallImpl
+        val irModule = generateIrModule(files)
+        val compactCallsKb = Benchmarks.usedHeapKb()
+        irModule.transformChildrenVoid(CompactCallExpander())
+        assertEquals(0, collectCalls(irModule).count { it is IrCompactCallBase })
+        val indexedCallsKb = Benchmarks.usedHeapKb()
+
+        Benchmarks.report("irCompactCall.compactCalls.retainedKb", compactCallsKb, "KB")
+        Benchmarks.report("irCompactCall.indexedCalls.retainedKb", indexedCallsKb, "KB")
+        Benchmarks.report("irCompactCall.peakHeapMb", Benchmarks.peakHeapMb {
+            GenerationUtils.compileFiles(files, myEnvironment).destroy()
+        }, "MB")
+    }
+
+    private fun generateIrModule(files: List<KtFile>): IrModuleFragment {
+        val psi2ir = Psi2IrTranslator(myEnvironment.configuration.languageVersionSettings, Psi2IrConfiguration())
+        return AbstractIrGeneratorTestCase.generateIrModuleWithJvmResolve(files, myEnvironment, psi2ir)
+    }
+
+    private fun createFiles(count: Int): List<KtFile> =
+        (0 until count).map { KotlinTestUtils.createFile("file$it.kt", generateFile(it), myEnvironment.project) }
+
+    private fun collectCalls(irModule: IrModuleFragment): List<IrCall> {
+        val calls = ArrayList<IrCall>()
+        irModule.acceptVoid(object : IrElementVisitorVoid {
+            override fun visitElement(element: IrElement) {
+                element.acceptChildrenVoid(this)
+            }
+
+            override fun visitCall(expression: IrCall) {
+                calls.add(expression)
+                super.visitCall(expression)
+            }
+        })
+        return calls
+    }
+
+    // Replaces every compact call with an IrCallImpl of the same shape, as psi2ir created them before
+    private class CompactCallExpander : IrElementTransformerVoid() {
+        override fun visitCall(expression: IrCall): IrExpression {
+            expression.transformChildrenVoid(this)
+            if (expression !is IrCompactCallBase) return expression
+
+            return IrCallImpl(
+                expression.startOffset, expression.endOffset, expression.type, expression.symbol, expression.descriptor,
+                expression.typeArgumentsCount, expression.valueArgumentsCount, expression.origin, expression.superQualifierSymbol
+            ).apply {
+                copyTypeArgumentsFrom(expression)
+                dispatchReceiver = expression.dispatchReceiver
+                extensionReceiver = expression.extensionReceiver
+                for (i in 0 until valueArgumentsCount) {
+                    putValueArgument(i, expression.getValueArgument(i))
+                }
+            }
+        }
+    }
+
+    // Mostly calls without type arguments and with few value arguments, the most common shapes in real code
+    private fun generateFile(index: Int): String = buildString {
+        appendln("package p$index")
+        appendln()
+        appendln("class C$index(val x: Int) {")
+        appendln("    fun plus(y: Int) = C$index(x + y)")
+        appendln("    fun sum(a: Int, b: Int, c: Int) = x + a + b + c")
+        appendln("}")
+        appendln()
+        for (f in 0 until 20) {
+            appendln("fun f$f(c: C$index): Int {")
+            appendln("    var r = c.x")
+            for (s in 0 until 20) {
+                appendln("    r += c.plus($s).sum(r, $s, c.x) + maxOf(r, $s) + listOf(r, $s).size")
+            }
+            appendln("    return r")
+            appendln("}")
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.ir
+
+import org.jetbrains.kotlin.backend.common.BackendContext
+import org.jetbrains.kotlin.backend.common.extensions.IrGenerationExtension
+import org.jetbrains.kotlin.codegen.CodegenTestCase
+import org.jetbrains.kotlin.codegen.GenerationUtils
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.config.JVMConfigurationKeys
+import org.jetbrains.kotlin.config.languageVersionSettings
+import org.jetbrains.kotlin.ir.declarations.IrFile
+import org.jetbrains.kotlin.ir.declarations.IrFunction
+import org.jetbrains.kotlin.ir.declarations.IrModuleFragment
+import org.jetbrains.kotlin.ir.declarations.IrSimpleFunction
+import org.jetbrains.kotlin.ir.declarations.IrValueParameter
+import org.jetbrains.kotlin.ir.declarations.IrVariable
+import org.jetbrains.kotlin.ir.expressions.IrExpression
+import org.jetbrains.kotlin.ir.types.IrType
+import org.jetbrains.kotlin.ir.util.render
+import org.jetbrains.kotlin.ir.visitors.IrElementVisitorVoid
+import org.jetbrains.kotlin.ir.visitors.acceptChildrenVoid
+import org.jetbrains.kotlin.ir.visitors.acceptVoid
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.psi2ir.Psi2IrConfiguration
+import org.jetbrains.kotlin.psi2ir.Psi2IrTranslator
+import org.jetbrains.kotlin.resolve.BindingContext
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import java.util.*
+
+class IrTypeInterningTest : CodegenTestCase() {
+    override fun setUp() {
+        super.setUp()
+        createEnvironmentWithMockJdkAndIdeaAnnotations(ConfigurationKind.ALL)
+    }
+
+    override fun updateConfiguration(configuration: CompilerConfiguration) {
+        configuration.put(JVMConfigurationKeys.IR, true)
+    }
+
+    fun testEqualTypesAreShared() {
+        val irModule = generateIrModule(
+            """
+            fun <T> a(x: T, s: String?): List<String> = listOf(s ?: "")
+            fun <T> b(x: T, s: String?): List<String> = listOf(s ?: "")
+            """
+        )
+        val (a, b) = irModule.files.single().declarations.filterIsInstance<IrSimpleFunction>()
+
+        assertSame(a.returnType, b.returnType)
+        assertSame(a.valueParameters[1].type, b.valueParameters[1].type)
+        // type parameters of different functions are different classifiers, even with the same name
+        assertNotSame(a.valueParameters[0].type, b.valueParameters[0].type)
+        assertFalse(a.valueParameters[0].type == b.valueParameters[0].type)
+    }
+
+    fun testTypesWithEqualAnnotationsAreShared() {
+        val irModule = generateIrModule(
+            """
+            @Target(AnnotationTarget.TYPE)
+            annotation class A(val name: String)
+
+            fun a(): @A("x") String = ""
+            fun b(): @A("x") String = ""
+            fun c(): @A("y") String = ""
+            fun d(): String = ""
+            """
+        )
+        val (a, b, c, d) = irModule.files.single().declarations.filterIsInstance<IrSimpleFunction>()
+
+        assertSame(a.returnType, b.returnType)
+        assertNotSame(a.returnType, c.returnType)
+        assertNotSame(a.returnType, d.returnType)
+        assertEquals(1, a.returnType.annotations.size)
+        assertEquals(0, d.returnType.annotations.size)
+    }
+
+    // Interned types share their annotation calls, so the JVM IR lowerings must leave them as psi2ir created them
+    fun testLoweringsDoNotChangeAnnotationsOfTypes() {
+        loadText(
+            """
+            @Target(AnnotationTarget.TYPE)
+            annotation class A(val name: String)
+
+            class C(val f: @A("f") String.(index: Int) -> @A("r") String) {
+                fun g(s: @A("s") String): @A("s") String = s.f(0)
+                inline fun h(block: (name: @A("b") String) -> Unit) = block(g(""))
+            }
+
+            fun test(c: C): @A("t") String {
+                var result: @A("t") String = ""
+                c.h { result = it + c.f(it, 1) }
+                val lambda: (@A("l") String) -> @A("l") String = { it + result }
+                return lambda(result)
+            }
+            """.trimIndent()
+        )
+
+        val annotationsOfTypes = IdentityHashMap<IrType, String>()
+        IrGenerationExtension.registerExtension(myEnvironment.project, object : IrGenerationExtension {
+            override fun generate(file: IrFile, backendContext: BackendContext, bindingContext: BindingContext) {
+                for (type in collectTypes(file)) {
+                    if (type.annotations.isNotEmpty()) {
+                        annotationsOfTypes[type] = type.renderAnnotations()
+                    }
+                }
+            }
+        })
+
+        generateAndCreateClassLoader()
+
+        assertTrue(annotationsOfTypes.isNotEmpty())
+        for ((type, annotations) in annotationsOfTypes) {
+            assertEquals(annotations, type.renderAnnotations())
+        }
+    }
+
+    fun testTypeInstancesDoNotGrowWithNumberOfExpressions() {
+        val (expressions, instances) = countExpressionTypes(generateIrModule(generateFunctions(150)))
+        val (twiceExpressions, twiceInstances) = countExpressionTypes(generateIrModule(generateFunctions(300)))
+
+        assertEquals(2 * expressions, twiceExpressions)
+        // Without interning every expression has its own type instance, so their number would double too
+        assertTrue(
+            "Type instances grow with the number of expressions: $instances for $expressions, $twiceInstances for $twiceExpressions",
+            twiceInstances * 2 < instances * 3
+        )
+    }
+
+    fun testBenchmarkTypeInterning() {
+        if (!Benchmarks.isEnabled) return
+
+        val files = (0 until 50).map {
+            KotlinTestUtils.createFile("file$it.kt", "package p$it\n\n" + generateFunctions(100), myEnvironment.project)
+        }
+
+        val before = Benchmarks.usedHeapKb()
+        val irModule = generateIrModule(files)
+        Benchmarks.report("irTypeInterning.irModule.retainedKb", Benchmarks.usedHeapKb() - before, "KB")
+        val (expressions, instances) = countExpressionTypes(irModule)
+        Benchmarks.report("irTypeInterning.expressions", expressions.toLong(), "expressions")
+        Benchmarks.report("irTypeInterning.typeInstances", instances.toLong(), "instances")
+
+        Benchmarks.report("irTypeInterning.compile.ms", Benchmarks.medianMillis(2, 5) {
+            GenerationUtils.compileFiles(files, myEnvironment).destroy()
+        }, "ms")
+        Benchmarks.report("irTypeInterning.compile.peakHeapMb", Benchmarks.peakHeapMb {
+            GenerationUtils.compileFiles(files, myEnvironment).destroy()
+        }, "MB")
+    }
+
+    private fun generateFunctions(functionsCount: Int): String = buildString {
+        for (i in 0 until functionsCount) {
+            appendln("fun f$i(x: Int?, s: String, l: List<String>): Map<String, Int?> {")
+            appendln("    val y = x ?: s.length + l.size")
+            appendln("    return mapOf(s to y, l.first() to x, \"$i\" to l.map { it.length }.sum())")
+            appendln("}")
+        }
+    }
+
+    // Returns the number of expressions and the number of instances of their types
+    private fun countExpressionTypes(irModule: IrModuleFragment): Pair<Int, Int> {
+        val types = ArrayList<IrType>()
+        irModule.acceptVoid(object : IrElementVisitorVoid {
+            override fun visitElement(element: IrElement) {
+                element.acceptChildrenVoid(this)
+            }
+
+            override fun visitExpression(expression: IrExpression) {
+                types.add(expression.type)
+                super.visitExpression(expression)
+            }
+        })
+
+        return types.size to Collections.newSetFromMap(IdentityHashMap<IrType, Boolean>()).apply { addAll(types) }.size
+    }
+
+    private fun collectTypes(element: IrElement): List<IrType> {
+        val types = ArrayList<IrType>()
+        element.acceptVoid(object : IrElementVisitorVoid {
+            override fun visitElement(element: IrElement) {
+                element.acceptChildrenVoid(this)
+            }
+
+            override fun visitFunction(declaration: IrFunction) {
+                types.add(declaration.returnType)
+                super.visitFunction(declaration)
+            }
+
+            override fun visitValueParameter(declaration: IrValueParameter) {
+                types.add(declaration.type)
+                super.visitValueParameter(declaration)
+            }
+
+            override fun visitVariable(declaration: IrVariable) {
+                types.add(declaration.type)
+                super.visitVariable(declaration)
+            }
+
+            override fun visitExpression(expression: IrExpression) {
+                types.add(expression.type)
+                super.visitExpression(expression)
+            }
+        })
+        return types
+    }
+
+    private fun IrType.renderAnnotations(): String = annotations.joinToString { it.render() }
+
+    private fun generateIrModule(text: String): IrModuleFragment =
+        generateIrModule(listOf(KotlinTestUtils.createFile("test.kt", text.trimIndent(), myEnvironment.project)))
+
+    private fun generateIrModule(files: List<KtFile>): IrModuleFragment {
+        val psi2ir = Psi2IrTranslator(myEnvironment.configuration.languageVersionSettings, Psi2IrConfiguration())
+        return AbstractIrGeneratorTestCase.generateIrModuleWithJvmResolve(files, myEnvironment, psi2ir)
+    }
+}
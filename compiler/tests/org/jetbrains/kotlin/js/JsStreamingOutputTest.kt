@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.js
+
+import org.jetbrains.kotlin.cli.js.K2JSCompiler
+import org.jetbrains.kotlin.js.parser.sourcemaps.JsonObject
+import org.jetbrains.kotlin.js.parser.sourcemaps.JsonString
+import org.jetbrains.kotlin.js.parser.sourcemaps.parseJson
+import org.jetbrains.kotlin.js.sourceMap.SourceMap3Builder
+import org.jetbrains.kotlin.js.util.TextOutputImpl
+import org.jetbrains.kotlin.test.CompilerTestUtil
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+import java.io.StringReader
+import java.io.StringWriter
+import java.util.function.Supplier
+
+class JsStreamingOutputTest : KtUsefulTestCase() {
+    fun testSmallOutputIsTheSameAsInMemory() {
+        val sourceDir = KotlinTestUtils.tmpDirForTest(this)
+        File("compiler/testData/cli/js/sourceMap.kt").copyTo(File(sourceDir, "sourceMap.kt"))
+        File("compiler/testData/cli/js/sourceMapCharEscape.kt").copyTo(File(sourceDir, "sourceMapCharEscape.kt"))
+
+        compareWithInMemoryOutput(sourceDir)
+    }
+
+    fun testLargeOutputIsTheSameAsInMemory() {
+        val sourceDir = KotlinTestUtils.tmpDirForTest(this)
+        File(sourceDir, "large.kt").writeText(buildString {
+            appendln("package large")
+            for (i in 0 until 4000) {
+                appendln("fun f$i(x: Int): Int {")
+                appendln("    val y = x * $i")
+                appendln("    return if (y > 10) y - \"\\u044f$i\".length else y + 2")
+                appendln("}")
+            }
+        })
+
+        val sourceMap = compareWithInMemoryOutput(sourceDir)
+
+        // Mappings of this size are moved to the spill file during the streaming compilation
+        val mappings = ((parseJson(sourceMap) as JsonObject).properties["mappings"] as JsonString).value
+        assertTrue("Mappings are too short to be spilled: ${mappings.length}", mappings.length > 1 shl 16)
+    }
+
+    fun testSpilledMappingsAreTheSameAsInMemory() {
+        val spillFile = File(KotlinTestUtils.tmpDirForTest(this), "mappings.tmp")
+        val generatedFile = File("out.js")
+
+        val inMemoryOutput = TextOutputImpl()
+        val inMemoryBuilder = SourceMap3Builder(generatedFile, inMemoryOutput, "")
+        val spillingOutput = TextOutputImpl()
+        val spillingBuilder = SourceMap3Builder(generatedFile, spillingOutput, "", spillFile)
+
+        for ((output, builder) in listOf(inMemoryOutput to inMemoryBuilder, spillingOutput to spillingBuilder)) {
+            builder.skipLinesAtBeginning(2)
+            for (line in 0 until 20000) {
+                val source = "dir/source${line % 7}.kt"
+                val content = Supplier { StringReader("// content of $source\n\"quoted\"\t\u044f") }
+                builder.addMapping(source, null, content, line, line % 13)
+                output.print("var x$line = 1;")
+                builder.addEmptyMapping()
+                output.print(" ")
+                builder.addMapping(source, null, content, line, 0)
+                output.print("x$line++;")
+                output.newline()
+                builder.newLine()
+            }
+        }
+        assertTrue("Mappings were not spilled", spillFile.exists())
+
+        val spilledMap = StringWriter().also { spillingBuilder.build(it) }.toString()
+        assertEquals(inMemoryBuilder.build(), spilledMap)
+        assertFalse(spillFile.exists())
+    }
+
+    // Returns the text of the source map
+    private fun compareWithInMemoryOutput(sourceDir: File): String {
+        val inMemoryDir = File(sourceDir.parentFile, "${sourceDir.name}-in-memory")
+        val streamingDir = File(sourceDir.parentFile, "${sourceDir.name}-streaming")
+
+        for ((outputDir, extraArguments) in listOf(inMemoryDir to emptyList<String>(), streamingDir to listOf("-Xstreaming-output"))) {
+            CompilerTestUtil.executeCompilerAssertSuccessful(
+                K2JSCompiler(),
+                listOf(
+                    sourceDir.path,
+                    "-source-map",
+                    "-source-map-prefix", "./",
+                    "-source-map-embed-sources", "always",
+                    "-output", File(outputDir, "out.js").path
+                ) + extraArguments
+            )
+        }
+
+        for (name in listOf("out.js", "out.js.map")) {
+            val expected = File(inMemoryDir, name).readBytes()
+            val actual = File(streamingDir, name).readBytes()
+            assertTrue("$name differs from the in-memory output", expected.contentEquals(actual))
+        }
+
+        return File(streamingDir, "out.js.map").readText()
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.js
+
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.psi.PsiManager
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
+import org.jetbrains.kotlin.incremental.js.IncrementalResultsConsumerImpl
+import org.jetbrains.kotlin.js.analyze.TopDownAnalyzerFacadeForJS
+import org.jetbrains.kotlin.js.config.JSConfigurationKeys
+import org.jetbrains.kotlin.js.config.JsConfig
+import org.jetbrains.kotlin.js.facade.K2JSTranslator
+import org.jetbrains.kotlin.js.facade.MainCallParameters
+import org.jetbrains.kotlin.js.facade.TranslationResult
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+
+class ParallelFragmentProcessingTest : KtUsefulTestCase() {
+    fun testParallelOutputIsTheSameAsSequential() {
+        val sourceDir = KotlinTestUtils.tmpDirForTest(this)
+        for (i in 0 until 8) {
+            File(sourceDir, "file$i.kt").writeText(generateFile(i))
+        }
+
+        val (sequentialCode, sequentialAsts) = translate(sourceDir, threads = 1)
+        val (parallelCode, parallelAsts) = translate(sourceDir, threads = 4)
+
+        assertEquals(sequentialCode, parallelCode)
+        assertEquals(sequentialAsts.keys, parallelAsts.keys)
+        for ((file, binaryAst) in sequentialAsts) {
+            assertTrue("Binary AST of $file differs from the sequential one", binaryAst.contentEquals(parallelAsts[file]!!))
+        }
+    }
+
+    // Each file has coroutines, labeled blocks, is-checks and calls of inline functions from the other files
+    private fun generateFile(index: Int): String = """
+        package test$index
+
+        inline fun <reified T> isInstance$index(x: Any?): Boolean = x is T
+
+        suspend fun step$index(x: Int): Int = x + $index
+
+        suspend fun run$index(items: List<Any?>): Int {
+            var result = 0
+            outer@ for (item in items) {
+                for (i in 0 until $index) {
+                    if (item is String && i == 1) continue@outer
+                    if (item == null) break@outer
+                }
+                result += if (isInstance$index<Int>(item)) step$index(item as Int) else $index
+            }
+            return result + test${(index + 1) % 8}.isInstance${(index + 1) % 8}<String>(items.firstOrNull()).hashCode()
+        }
+    """.trimIndent()
+
+    private fun translate(sourceDir: File, threads: Int): Pair<String, Map<File, ByteArray>> {
+        val incrementalResults = IncrementalResultsConsumerImpl()
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK).apply {
+            put(CommonConfigurationKeys.MODULE_NAME, "test")
+            put(JSConfigurationKeys.LIBRARIES, JsConfig.JS_STDLIB)
+            put(JSConfigurationKeys.FRAGMENT_PROCESSING_THREADS, threads)
+            put(JSConfigurationKeys.INCREMENTAL_RESULTS_CONSUMER, incrementalResults)
+        }
+        val environment = KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JS_CONFIG_FILES)
+
+        val fileSystem = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL)
+        val psiManager = PsiManager.getInstance(environment.project)
+        val ktFiles = sourceDir.listFiles()!!.sortedBy { it.name }.map { file ->
+            psiManager.findFile(fileSystem.findFileByPath(file.path)!!) as KtFile
+        }
+
+        val config = JsConfig(environment.project, environment.configuration)
+        val analysisResult = TopDownAnalyzerFacadeForJS.analyzeFiles(ktFiles, config)
+        val result = K2JSTranslator(config).translate(
+            object : JsConfig.Reporter() {}, ktFiles, MainCallParameters.noCall(), analysisResult
+        ) as TranslationResult.Success
+
+        return result.getCode() to incrementalResults.packageParts.mapValues { it.value.binaryAst }
+    }
+}
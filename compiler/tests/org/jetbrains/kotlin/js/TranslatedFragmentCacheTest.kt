@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.js
+
+import com.intellij.openapi.vfs.StandardFileSystems
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.psi.PsiManager
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.CommonConfigurationKeys
+import org.jetbrains.kotlin.incremental.js.FileTranslatedFragmentCache
+import org.jetbrains.kotlin.incremental.js.TranslatedFragmentCache
+import org.jetbrains.kotlin.js.analyze.TopDownAnalyzerFacadeForJS
+import org.jetbrains.kotlin.js.config.JSConfigurationKeys
+import org.jetbrains.kotlin.js.config.JsConfig
+import org.jetbrains.kotlin.js.facade.K2JSTranslator
+import org.jetbrains.kotlin.js.facade.MainCallParameters
+import org.jetbrains.kotlin.js.facade.TranslationResult
+import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.TestJdkKind
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+
+class TranslatedFragmentCacheTest : KtUsefulTestCase() {
+    fun testFileCacheHitAndMiss() {
+        val cache = FileTranslatedFragmentCache(KotlinTestUtils.tmpDirForTest(this))
+        val key = "0123456789abcdef0123456789abcdef"
+
+        assertNull(cache[key])
+        cache.put(key, byteArrayOf(1, 2, 3))
+        assertEquals(listOf<Byte>(1, 2, 3), cache[key]!!.toList())
+
+        // Entries are immutable, so the second value for the same key is ignored
+        cache.put(key, byteArrayOf(4))
+        assertEquals(listOf<Byte>(1, 2, 3), cache[key]!!.toList())
+
+        assertNull(cache["fedcba9876543210fedcba9876543210"])
+    }
+
+    fun testCachedOutputIsTheSameAsUncached() {
+        val workDir = KotlinTestUtils.tmpDirForTest(this)
+        val sourceDir = File(workDir, "src").apply { mkdirs() }
+        File(sourceDir, "inline.kt").writeText(
+            """
+            package lib
+
+            inline fun twice(f: () -> Int): Int = f() + f()
+
+            inline fun <reified T> isInstance(x: Any?): Boolean = x is T
+            """.trimIndent()
+        )
+        File(sourceDir, "main.kt").writeText(
+            """
+            package main
+
+            import lib.*
+
+            fun compute(items: List<Any?>): Int {
+                var result = 0
+                loop@ for (item in items) {
+                    if (item == null) break@loop
+                    result += twice { if (isInstance<String>(item)) 1 else 2 }
+                }
+                return result
+            }
+            """.trimIndent()
+        )
+        File(sourceDir, "other.kt").writeText(
+            """
+            package other
+
+            fun unrelated(x: Int) = x * 2
+            """.trimIndent()
+        )
+
+        val uncachedCode = translate(sourceDir, null)
+
+        val cache = CountingCache(FileTranslatedFragmentCache(File(workDir, "cache")))
+        val firstCode = translate(sourceDir, cache)
+        assertEquals(0, cache.hits)
+        assertEquals(3, cache.puts)
+
+        val secondCode = translate(sourceDir, cache)
+        assertEquals(3, cache.hits)
+        assertEquals(3, cache.puts)
+
+        assertEquals(uncachedCode, firstCode)
+        assertEquals(uncachedCode, secondCode)
+
+        // A change of an inline function changes keys of the files which call it
+        File(sourceDir, "inline.kt").appendText("\n\nfun changed() = 1\n")
+        translate(sourceDir, cache)
+        assertEquals(4, cache.hits)
+        assertEquals(5, cache.puts)
+    }
+
+    private class CountingCache(private val delegate: TranslatedFragmentCache) : TranslatedFragmentCache {
+        var hits = 0
+        var puts = 0
+
+        override fun get(key: String): ByteArray? = delegate[key]?.also { hits++ }
+
+        override fun put(key: String, binaryAst: ByteArray) {
+            puts++
+            delegate.put(key, binaryAst)
+        }
+    }
+
+    private fun translate(sourceDir: File, cache: TranslatedFragmentCache?): String {
+        val configuration = KotlinTestUtils.newConfiguration(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK).apply {
+            put(CommonConfigurationKeys.MODULE_NAME, "test")
+            put(JSConfigurationKeys.LIBRARIES, JsConfig.JS_STDLIB)
+            if (cache != null) {
+                put(JSConfigurationKeys.TRANSLATED_FRAGMENT_CACHE, cache)
+            }
+        }
+        val environment = KotlinCoreEnvironment.createForTests(testRootDisposable, configuration, EnvironmentConfigFiles.JS_CONFIG_FILES)
+
+        val fileSystem = VirtualFileManager.getInstance().getFileSystem(StandardFileSystems.FILE_PROTOCOL)
+        fileSystem.refresh(false)
+        val psiManager = PsiManager.getInstance(environment.project)
+        val ktFiles = sourceDir.listFiles()!!.sortedBy { it.name }.map { file ->
+            psiManager.findFile(fileSystem.refreshAndFindFileByPath(file.path)!!) as KtFile
+        }
+
+        val config = JsConfig(environment.project, environment.configuration)
+        val analysisResult = TopDownAnalyzerFacadeForJS.analyzeFiles(ktFiles, config)
+        val result = K2JSTranslator(config).translate(
+            object : JsConfig.Reporter() {}, ktFiles, MainCallParameters.noCall(), analysisResult
+        ) as TranslationResult.Success
+
+        return result.getCode()
+    }
+}
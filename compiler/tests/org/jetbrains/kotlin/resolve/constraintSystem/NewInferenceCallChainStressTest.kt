@@ -0,0 +1,121 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.resolve.constraintSystem
+
+import org.jetbrains.kotlin.builtins.DefaultBuiltIns
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.config.*
+import org.jetbrains.kotlin.descriptors.annotations.Annotations
+import org.jetbrains.kotlin.descriptors.impl.TypeParameterDescriptorImpl
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.resolve.calls.components.ClassicTypeSystemContextForCS
+import org.jetbrains.kotlin.resolve.calls.inference.components.ConstraintIncorporator
+import org.jetbrains.kotlin.resolve.calls.inference.components.ConstraintInjector
+import org.jetbrains.kotlin.resolve.calls.inference.components.SimpleConstraintSystemImpl
+import org.jetbrains.kotlin.resolve.calls.inference.components.TrivialConstraintTypeInferenceOracle
+import org.jetbrains.kotlin.resolve.calls.inference.substitute
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.KotlinTestWithEnvironment
+import org.jetbrains.kotlin.types.TypeApproximator
+import org.jetbrains.kotlin.types.TypeSubstitutor
+import org.jetbrains.kotlin.types.Variance
+
+class NewInferenceCallChainStressTest : KotlinTestWithEnvironment() {
+    override fun createEnvironment(): KotlinCoreEnvironment = createEnvironmentWithMockJdk(ConfigurationKind.ALL)
+
+    fun testGenericCallChainsAreInferred() {
+        for (depth in listOf(20, 40, 80)) {
+            analyze(depth)
+        }
+    }
+
+    // Int <: T0 <: T1 <: ... is incorporated into constraints between all pairs of the variables,
+    // and adding the same chain again must not add any more of them
+    fun testIncorporationDoesNotDuplicateConstraints() {
+        val builtIns = DefaultBuiltIns.Instance
+        val approximator = TypeApproximator(builtIns)
+        val incorporator = ConstraintIncorporator(approximator, TrivialConstraintTypeInferenceOracle(ClassicTypeSystemContextForCS(builtIns)))
+        val constraintSystem = SimpleConstraintSystemImpl(ConstraintInjector(incorporator, approximator), builtIns)
+
+        val chainLength = 30
+        val typeParameters = (0 until chainLength).map {
+            TypeParameterDescriptorImpl.createWithDefaultBound(
+                builtIns.any, Annotations.EMPTY, false, Variance.INVARIANT, Name.identifier("T$it"), it
+            )
+        }
+        val substitutor = constraintSystem.registerTypeVariables(typeParameters) as TypeSubstitutor
+        val variableTypes = typeParameters.map { substitutor.substitute(it.defaultType) }
+
+        fun addChain() {
+            constraintSystem.addSubtypeConstraint(builtIns.intType, variableTypes.first())
+            for (i in 1 until chainLength) {
+                constraintSystem.addSubtypeConstraint(variableTypes[i - 1], variableTypes[i])
+            }
+        }
+
+        fun constraintsCount() =
+            constraintSystem.system.asReadOnlyStorage().notFixedTypeVariables.values.sumBy { it.constraints.size }
+
+        addChain()
+        val constraintsCount = constraintsCount()
+        addChain()
+        assertEquals(constraintsCount, constraintsCount())
+        assertFalse(constraintSystem.hasContradiction())
+
+        for (variable in constraintSystem.system.asReadOnlyStorage().notFixedTypeVariables.values) {
+            val constraints = variable.constraints
+            assertEquals(constraints.toString(), constraints.size, constraints.distinctBy { it.kind to it.type }.size)
+            // Int, Any? from the declared upper bound, and every other variable of the chain
+            assertTrue(constraints.toString(), constraints.size <= chainLength + 1)
+        }
+    }
+
+    fun testBenchmarkGenericCallChains() {
+        if (!Benchmarks.isEnabled) return
+
+        for (depth in listOf(20, 40, 80)) {
+            Benchmarks.report("newInferenceCallChain.$depth.ms", Benchmarks.medianMillis(2, 5) { analyze(depth) }, "ms")
+        }
+    }
+
+    private fun analyze(depth: Int) {
+        val configuration = environment.configuration.copy()
+        configuration.languageVersionSettings = LanguageVersionSettingsImpl(
+            LanguageVersion.LATEST_STABLE, ApiVersion.LATEST_STABLE,
+            specificFeatures = mapOf(LanguageFeature.NewInference to LanguageFeature.State.ENABLED)
+        )
+        val file = KotlinTestUtils.createFile("chain$depth.kt", generateCallChain(depth), project)
+        JvmResolveUtil.analyzeAndCheckForErrors(project, listOf(file), configuration, environment::createPackagePartProvider)
+    }
+
+    // A builder lambda with nested builders, which is transformed by a chain of generic calls,
+    // so every call of the chain is inferred together with the calls around it
+    private fun generateCallChain(depth: Int): String = buildString {
+        appendln("package chain$depth")
+        appendln()
+        appendln("class Flow<T>(val value: T)")
+        appendln("fun <T> flow(builder: () -> T): Flow<T> = Flow(builder())")
+        appendln("fun <T, R> Flow<T>.map(transform: (T) -> R): Flow<R> = Flow(transform(value))")
+        appendln("fun <T> Flow<T>.filter(predicate: (T) -> Boolean): Flow<T> = this")
+        appendln("fun <T, R> Flow<T>.zip(other: Flow<R>): Flow<Pair<T, R>> = Flow(value to other.value)")
+        appendln()
+        append("val result = ")
+        repeat(depth / 5) { append("flow { ") }
+        append("listOf(1)")
+        repeat(depth / 5) { append(" }.map { it }") }
+        appendln()
+        for (i in 0 until depth) {
+            when (i % 3) {
+                0 -> appendln("    .map { listOf(it) }")
+                1 -> appendln("    .filter { it.isNotEmpty() }")
+                else -> appendln("    .zip(flow { $i }).map { it.first }")
+            }
+        }
+    }
+}
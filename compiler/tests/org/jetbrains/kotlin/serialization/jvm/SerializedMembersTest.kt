@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.serialization.jvm
+
+import org.jetbrains.kotlin.codegen.forTestCompile.ForTestCompileRuntime
+import org.jetbrains.kotlin.incremental.components.NoLookupLocation
+import org.jetbrains.kotlin.load.kotlin.FileBasedKotlinClass
+import org.jetbrains.kotlin.load.kotlin.header.KotlinClassHeader
+import org.jetbrains.kotlin.metadata.ProtoBuf
+import org.jetbrains.kotlin.metadata.deserialization.NameResolver
+import org.jetbrains.kotlin.metadata.jvm.deserialization.JvmProtoBufUtil
+import org.jetbrains.kotlin.name.FqName
+import org.jetbrains.kotlin.protobuf.CodedInputStream
+import org.jetbrains.kotlin.protobuf.MessageLite
+import org.jetbrains.kotlin.protobuf.Parser
+import org.jetbrains.kotlin.resolve.lazy.JvmResolveUtil
+import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
+import org.jetbrains.kotlin.test.Benchmarks
+import org.jetbrains.kotlin.test.ConfigurationKind
+import org.jetbrains.kotlin.test.KotlinTestUtils
+import org.jetbrains.kotlin.test.testFramework.KtUsefulTestCase
+import java.io.File
+import java.util.zip.ZipFile
+
+class SerializedMembersTest : KtUsefulTestCase() {
+    fun testMembersAreTheSameAsInParsedPackage() {
+        val packageParts = loadPackageParts(ForTestCompileRuntime.runtimeJarForTests())
+        assertTrue(packageParts.isNotEmpty())
+
+        for (header in packageParts) {
+            val data = header.data!!
+            val strings = header.strings!!
+            val (nameResolver, packageProto) = JvmProtoBufUtil.readPackageDataFrom(data, strings)
+            val (_, packageWithoutMembers, members) = JvmProtoBufUtil.readPackageDataWithSerializedMembersFrom(data, strings)
+
+            assertEquals(
+                packageProto.toBuilder().clearFunction().clearProperty().clearTypeAlias().build().toByteString(),
+                packageWithoutMembers.toByteString()
+            )
+            val bytes = members.bytes
+            assertMembersByName(nameResolver, packageProto.functionList, bytes, members.functions, ProtoBuf.Function.PARSER) { it.name }
+            assertMembersByName(nameResolver, packageProto.propertyList, bytes, members.properties, ProtoBuf.Property.PARSER) { it.name }
+            assertMembersByName(nameResolver, packageProto.typeAliasList, bytes, members.typeAliases, ProtoBuf.TypeAlias.PARSER) { it.name }
+        }
+    }
+
+    fun testLookupsReturnAllMembersOfPackage() {
+        val environment = KotlinTestUtils.createEnvironmentWithMockJdkAndIdeaAnnotations(myTestRootDisposable, ConfigurationKind.ALL)
+        val module = JvmResolveUtil.analyze(environment).moduleDescriptor
+        val scope = module.getPackage(FqName("kotlin.collections")).memberScope
+
+        val allFunctions = scope.getContributedDescriptors(DescriptorKindFilter.FUNCTIONS)
+        val allVariables = scope.getContributedDescriptors(DescriptorKindFilter.VARIABLES)
+        assertTrue(allFunctions.isNotEmpty() && allVariables.isNotEmpty())
+
+        assertEquals(
+            allFunctions.groupBy { it.name }.mapValues { it.value.size },
+            scope.getFunctionNames().associate { it to scope.getContributedFunctions(it, NoLookupLocation.FROM_TEST).size }
+        )
+        assertEquals(
+            allVariables.groupBy { it.name }.mapValues { it.value.size },
+            scope.getVariableNames().associate { it to scope.getContributedVariables(it, NoLookupLocation.FROM_TEST).size }
+        )
+    }
+
+    fun testBenchmarkReadingPackageParts() {
+        if (!Benchmarks.isEnabled) return
+
+        val packageParts = loadPackageParts(ForTestCompileRuntime.runtimeJarForTests())
+
+        Benchmarks.report("deserializedMembers.parsedPackages.ms", Benchmarks.medianMillis(5, 10) {
+            for (header in packageParts) {
+                JvmProtoBufUtil.readPackageDataFrom(header.data!!, header.strings!!)
+            }
+        }, "ms")
+        Benchmarks.report("deserializedMembers.serializedMembers.ms", Benchmarks.medianMillis(5, 10) {
+            for (header in packageParts) {
+                JvmProtoBufUtil.readPackageDataWithSerializedMembersFrom(header.data!!, header.strings!!)
+            }
+        }, "ms")
+
+        Benchmarks.report("deserializedMembers.parsedPackages.retainedKb", retainedHeapKb(packageParts) {
+            JvmProtoBufUtil.readPackageDataFrom(it.data!!, it.strings!!)
+        }, "KB")
+        Benchmarks.report("deserializedMembers.serializedMembers.retainedKb", retainedHeapKb(packageParts) {
+            JvmProtoBufUtil.readPackageDataWithSerializedMembersFrom(it.data!!, it.strings!!)
+        }, "KB")
+    }
+
+    private fun retainedHeapKb(packageParts: List<KotlinClassHeader>, read: (KotlinClassHeader) -> Any): Long {
+        val before = Benchmarks.usedHeapKb()
+        val retained = packageParts.map(read)
+        val after = Benchmarks.usedHeapKb()
+        assertEquals(packageParts.size, retained.size)
+        return after - before
+    }
+
+    private inline fun <M : MessageLite> assertMembersByName(
+        nameResolver: NameResolver,
+        expected: List<M>,
+        bytes: ByteArray,
+        locations: IntArray,
+        parser: Parser<M>,
+        getNameIndex: (M) -> Int
+    ) {
+        val actual = (0 until locations.size step 3).map { i ->
+            val input = CodedInputStream.newInstance(bytes, locations[i + 1], locations[i + 2])
+            val member = parser.parseFrom(input, JvmProtoBufUtil.EXTENSION_REGISTRY)
+            assertEquals(getNameIndex(member), locations[i])
+            member
+        }
+
+        assertEquals(
+            expected.groupBy({ nameResolver.getString(getNameIndex(it)) }, { it.toByteString() }),
+            actual.groupBy({ nameResolver.getString(getNameIndex(it)) }, { it.toByteString() })
+        )
+    }
+
+    private fun loadPackageParts(jar: File): List<KotlinClassHeader> =
+        ZipFile(jar).use { zip ->
+            zip.entries().toList().filter { it.name.endsWith(".class") }.mapNotNull { entry ->
+                val header = FileBasedKotlinClass.create(zip.getInputStream(entry).readBytes()) { _, _, header, _ -> header }
+                header?.takeIf {
+                    (it.kind == KotlinClassHeader.Kind.FILE_FACADE || it.kind == KotlinClassHeader.Kind.MULTIFILE_CLASS_PART) &&
+                            it.data != null && it.strings != null
+                }
+            }
+        }
+}
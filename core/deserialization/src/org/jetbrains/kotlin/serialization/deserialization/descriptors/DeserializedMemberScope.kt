@@ -19,9 +19,10 @@ package org.jetbrains.kotlin.serialization.deserialization.descriptors
 import org.jetbrains.kotlin.descriptors.*
 import org.jetbrains.kotlin.incremental.components.LookupLocation
 import org.jetbrains.kotlin.metadata.ProtoBuf
+import org.jetbrains.kotlin.metadata.deserialization.SerializedMembers
 import org.jetbrains.kotlin.name.ClassId
 import org.jetbrains.kotlin.name.Name
-import org.jetbrains.kotlin.protobuf.AbstractMessageLite
+import org.jetbrains.kotlin.protobuf.CodedInputStream
 import org.jetbrains.kotlin.protobuf.MessageLite
 import org.jetbrains.kotlin.protobuf.Parser
 import org.jetbrains.kotlin.resolve.MemberComparator
@@ -31,35 +32,45 @@ import org.jetbrains.kotlin.serialization.deserialization.DeserializationContext
 import org.jetbrains.kotlin.serialization.deserialization.getName
 import org.jetbrains.kotlin.storage.getValue
 import org.jetbrains.kotlin.utils.Printer
+import org.jetbrains.kotlin.utils.SmartList
 import org.jetbrains.kotlin.utils.addIfNotNull
 import org.jetbrains.kotlin.utils.compact
-import java.io.ByteArrayInputStream
-import java.io.ByteArrayOutputStream
 import java.util.*
 
+/**
+ * If [serializedMembers] are given, the functions, properties and type aliases of the scope are parsed from them when requested,
+ * and the lists of the parsed members are ignored.
+ */
 abstract class DeserializedMemberScope protected constructor(
     protected val c: DeserializationContext,
     functionList: Collection<ProtoBuf.Function>,
     propertyList: Collection<ProtoBuf.Property>,
     typeAliasList: Collection<ProtoBuf.TypeAlias>,
+    serializedMembers: SerializedMembers?,
     classNames: () -> Collection<Name>
 ) : MemberScopeImpl() {
 
-    private val functionProtosBytes = functionList.groupByName { it.name }.packToByteArray()
+    protected constructor(
+        c: DeserializationContext,
+        functionList: Collection<ProtoBuf.Function>,
+        propertyList: Collection<ProtoBuf.Property>,
+        typeAliasList: Collection<ProtoBuf.TypeAlias>,
+        classNames: () -> Collection<Name>
+    ) : this(c, functionList, propertyList, typeAliasList, null, classNames)
 
-    private val propertyProtosBytes = propertyList.groupByName { it.name }.packToByteArray()
+    private val functionProtos: MemberProtos<ProtoBuf.Function> =
+        if (serializedMembers != null) SerializedProtos(serializedMembers.bytes, serializedMembers.functions, ProtoBuf.Function.PARSER)
+        else ParsedProtos(functionList) { it.name }
 
-    private val typeAliasBytes =
-        if (c.components.configuration.typeAliasesAllowed)
-            typeAliasList.groupByName { it.name }.packToByteArray()
-        else
-            emptyMap()
+    private val propertyProtos: MemberProtos<ProtoBuf.Property> =
+        if (serializedMembers != null) SerializedProtos(serializedMembers.bytes, serializedMembers.properties, ProtoBuf.Property.PARSER)
+        else ParsedProtos(propertyList) { it.name }
 
-    private fun Map<Name, Collection<AbstractMessageLite>>.packToByteArray(): Map<Name, ByteArray> =
-        mapValues { entry ->
-            val byteArrayOutputStream = ByteArrayOutputStream()
-            entry.value.map { proto -> proto.writeDelimitedTo(byteArrayOutputStream) }
-            byteArrayOutputStream.toByteArray()
+    private val typeAliasProtos: MemberProtos<ProtoBuf.TypeAlias> =
+        when {
+            !c.components.configuration.typeAliasesAllowed -> ParsedProtos(emptyList<ProtoBuf.TypeAlias>()) { it.name }
+            serializedMembers != null -> SerializedProtos(serializedMembers.bytes, serializedMembers.typeAliases, ProtoBuf.TypeAlias.PARSER)
+            else -> ParsedProtos(typeAliasList) { it.name }
         }
 
     private val functions =
@@ -70,14 +81,14 @@ abstract class DeserializedMemberScope protected constructor(
         c.storageManager.createMemoizedFunctionWithNullableValues<Name, TypeAliasDescriptor> { createTypeAlias(it) }
 
     private val functionNamesLazy by c.storageManager.createLazyValue {
-        functionProtosBytes.keys + getNonDeclaredFunctionNames()
+        functionProtos.names + getNonDeclaredFunctionNames()
     }
 
     private val variableNamesLazy by c.storageManager.createLazyValue {
-        propertyProtosBytes.keys + getNonDeclaredVariableNames()
+        propertyProtos.names + getNonDeclaredVariableNames()
     }
 
-    private val typeAliasNames: Set<Name> get() = typeAliasBytes.keys
+    private val typeAliasNames: Set<Name> get() = typeAliasProtos.names
 
     internal val classNames by c.storageManager.createLazyValue { classNames().toSet() }
 
@@ -89,37 +100,62 @@ abstract class DeserializedMemberScope protected constructor(
         return name !in functionNamesLazy && name !in variableNamesLazy && name !in classNames && name !in typeAliasNames
     }
 
-    private inline fun <M : MessageLite> Collection<M>.groupByName(
-        getNameIndex: (M) -> Int
-    ) = groupBy { c.nameResolver.getName(getNameIndex(it)) }
+    /**
+     * Protos of the members of one kind, which are grouped by name on the first request,
+     * because most deserialized scopes are only asked for a few names, or for none at all.
+     */
+    private interface MemberProtos<M : MessageLite> {
+        val names: Set<Name>
+
+        operator fun get(name: Name): List<M>
+    }
+
+    private inner class ParsedProtos<M : MessageLite>(
+        private val protos: Collection<M>,
+        private val getNameIndex: (M) -> Int
+    ) : MemberProtos<M> {
+        private val protosByName by c.storageManager.createLazyValue {
+            protos.groupBy { c.nameResolver.getName(getNameIndex(it)) }
+        }
+
+        override val names: Set<Name> get() = protosByName.keys
+
+        override fun get(name: Name): List<M> = protosByName[name].orEmpty()
+    }
+
+    /**
+     * Keeps only the locations of the members in the serialized container (see [SerializedMembers]),
+     * and parses the members with the requested name from there.
+     */
+    private inner class SerializedProtos<M : MessageLite>(
+        private val bytes: ByteArray,
+        private val locations: IntArray,
+        private val parser: Parser<M>
+    ) : MemberProtos<M> {
+        private val locationsByName by c.storageManager.createLazyValue {
+            val result = LinkedHashMap<Name, MutableList<Int>>()
+            for (i in 0 until locations.size step 3) {
+                result.getOrPut(c.nameResolver.getName(locations[i])) { SmartList() }.add(i)
+            }
+            result
+        }
+
+        override val names: Set<Name> get() = locationsByName.keys
+
+        override fun get(name: Name): List<M> =
+            locationsByName[name]?.map { i ->
+                val input = CodedInputStream.newInstance(bytes, locations[i + 1], locations[i + 2])
+                parser.parseFrom(input, c.components.extensionRegistryLite)
+            }.orEmpty()
+    }
 
     private fun computeFunctions(name: Name) =
         computeDescriptors(
-            name,
-            functionProtosBytes,
-            ProtoBuf.Function.PARSER,
+            functionProtos[name],
             { c.memberDeserializer.loadFunction(it) },
             { computeNonDeclaredFunctions(name, it) }
         )
 
-    private inline fun <M : MessageLite, D : DeclarationDescriptor> computeDescriptors(
-        name: Name,
-        bytesByName: Map<Name, ByteArray>,
-        parser: Parser<M>,
-        factory: (M) -> D,
-        computeNonDeclared: (MutableCollection<D>) -> Unit
-    ): Collection<D> =
-        computeDescriptors(
-            bytesByName[name]?.let {
-                val inputStream = ByteArrayInputStream(it)
-                generateSequence {
-                    parser.parseDelimitedFrom(inputStream, c.components.extensionRegistryLite)
-                }.toList()
-            } ?: emptyList(),
-            factory,
-            computeNonDeclared
-        )
-
     private inline fun <M : MessageLite, D : DeclarationDescriptor> computeDescriptors(
         protos: Collection<M>,
         factory: (M) -> D,
@@ -141,9 +177,7 @@ abstract class DeserializedMemberScope protected constructor(
 
     private fun computeProperties(name: Name) =
         computeDescriptors(
-            name,
-            propertyProtosBytes,
-            ProtoBuf.Property.PARSER,
+            propertyProtos[name],
             { c.memberDeserializer.loadProperty(it) },
             { computeNonDeclaredProperties(name, it) }
         )
@@ -152,11 +186,7 @@ abstract class DeserializedMemberScope protected constructor(
     }
 
     private fun createTypeAlias(name: Name): TypeAliasDescriptor? {
-        val byteArray = typeAliasBytes[name] ?: return null
-        val proto =
-            ProtoBuf.TypeAlias.parseDelimitedFrom(
-                ByteArrayInputStream(byteArray), c.components.extensionRegistryLite
-            ) ?: return null
+        val proto = typeAliasProtos[name].firstOrNull() ?: return null
         return c.memberDeserializer.loadTypeAlias(proto)
     }
 
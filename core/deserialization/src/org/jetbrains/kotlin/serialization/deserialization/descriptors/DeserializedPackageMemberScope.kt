@@ -25,6 +25,7 @@ import org.jetbrains.kotlin.incremental.record
 import org.jetbrains.kotlin.metadata.ProtoBuf
 import org.jetbrains.kotlin.metadata.deserialization.BinaryVersion
 import org.jetbrains.kotlin.metadata.deserialization.NameResolver
+import org.jetbrains.kotlin.metadata.deserialization.SerializedMembers
 import org.jetbrains.kotlin.metadata.deserialization.TypeTable
 import org.jetbrains.kotlin.metadata.deserialization.VersionRequirementTable
 import org.jetbrains.kotlin.name.ClassId
@@ -39,13 +40,14 @@ open class DeserializedPackageMemberScope(
     metadataVersion: BinaryVersion,
     containerSource: DeserializedContainerSource?,
     components: DeserializationComponents,
+    serializedMembers: SerializedMembers? = null,
     classNames: () -> Collection<Name>
 ) : DeserializedMemberScope(
     components.createContext(
         packageDescriptor, nameResolver, TypeTable(proto.typeTable),
         VersionRequirementTable.create(proto.versionRequirementTable), metadataVersion, containerSource
     ),
-    proto.functionList, proto.propertyList, proto.typeAliasList, classNames
+    proto.functionList, proto.propertyList, proto.typeAliasList, serializedMembers, classNames
 ) {
     private val packageFqName = packageDescriptor.fqName
 
@@ -40,6 +40,21 @@ object JvmProtoBufUtil {
         return Pair(input.readNameResolver(strings), ProtoBuf.Package.parseFrom(input, EXTENSION_REGISTRY))
     }
 
+    /**
+     * Same as [readPackageDataFrom], but the members of the package are not parsed and are returned as [SerializedMembers] instead.
+     */
+    @JvmStatic
+    fun readPackageDataWithSerializedMembersFrom(
+        data: Array<String>,
+        strings: Array<String>
+    ): Triple<JvmNameResolver, ProtoBuf.Package, SerializedMembers> {
+        val bytes = BitEncoding.decodeBytes(data)
+        val input = ByteArrayInputStream(bytes)
+        val nameResolver = input.readNameResolver(strings)
+        val (packageProto, members) = SerializedMembers.readPackage(bytes, bytes.size - input.available(), EXTENSION_REGISTRY)
+        return Triple(nameResolver, packageProto, members)
+    }
+
     @JvmStatic
     fun readFunctionDataFrom(data: Array<String>, strings: Array<String>): Pair<JvmNameResolver, ProtoBuf.Function> {
         val input = ByteArrayInputStream(BitEncoding.decodeBytes(data))
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.metadata.deserialization
+
+import org.jetbrains.kotlin.metadata.ProtoBuf
+import org.jetbrains.kotlin.protobuf.CodedInputStream
+import org.jetbrains.kotlin.protobuf.ExtensionRegistryLite
+import org.jetbrains.kotlin.protobuf.InvalidProtocolBufferException
+import org.jetbrains.kotlin.protobuf.WireFormat
+import java.io.ByteArrayOutputStream
+
+/**
+ * Functions, properties and type aliases of a serialized [ProtoBuf.Package], which are located in its bytes but not parsed,
+ * so that a deserialized scope can parse only the members with the requested name.
+ *
+ * Every member takes three consecutive elements of [functions], [properties] or [typeAliases]:
+ * the index of its name in the string table, the offset of its bytes in [bytes], and their length.
+ */
+class SerializedMembers private constructor(
+    val bytes: ByteArray,
+    val functions: IntArray,
+    val properties: IntArray,
+    val typeAliases: IntArray
+) {
+    private class Locations(val nameTag: Int) {
+        private var array = IntArray(3 * 8)
+        private var size = 0
+
+        fun add(nameIndex: Int, offset: Int, length: Int) {
+            if (size + 3 > array.size) {
+                array = array.copyOf(array.size * 2)
+            }
+            array[size++] = nameIndex
+            array[size++] = offset
+            array[size++] = length
+        }
+
+        fun toIntArray(): IntArray = array.copyOf(size)
+    }
+
+    companion object {
+        // Same as WireFormat.makeTag, which is not public
+        private fun tag(fieldNumber: Int, wireType: Int): Int = (fieldNumber shl 3) or wireType
+
+        private val FUNCTION_TAG = tag(ProtoBuf.Package.FUNCTION_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED)
+        private val PROPERTY_TAG = tag(ProtoBuf.Package.PROPERTY_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED)
+        private val TYPE_ALIAS_TAG = tag(ProtoBuf.Package.TYPE_ALIAS_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED)
+
+        /**
+         * Reads a [ProtoBuf.Package] which starts at [offset] in [bytes] and lasts till their end.
+         * Its functions, properties and type aliases are only located, and the returned proto doesn't contain them.
+         */
+        @JvmStatic
+        fun readPackage(
+            bytes: ByteArray,
+            offset: Int,
+            extensionRegistry: ExtensionRegistryLite
+        ): Pair<ProtoBuf.Package, SerializedMembers> {
+            val functions = Locations(tag(ProtoBuf.Function.NAME_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT))
+            val properties = Locations(tag(ProtoBuf.Property.NAME_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT))
+            val typeAliases = Locations(tag(ProtoBuf.TypeAlias.NAME_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT))
+
+            // All other fields are copied as is and parsed as the package
+            val otherFields = ByteArrayOutputStream()
+
+            val input = CodedInputStream.newInstance(bytes, offset, bytes.size - offset)
+            while (true) {
+                val fieldOffset = offset + input.totalBytesRead
+                val tag = input.readTag()
+                if (tag == 0) break
+
+                val locations = when (tag) {
+                    FUNCTION_TAG -> functions
+                    PROPERTY_TAG -> properties
+                    TYPE_ALIAS_TAG -> typeAliases
+                    else -> null
+                }
+                if (locations != null) {
+                    val length = input.readRawVarint32()
+                    val memberOffset = offset + input.totalBytesRead
+                    locations.add(readNameIndex(bytes, memberOffset, length, locations.nameTag), memberOffset, length)
+                    input.skipRawBytes(length)
+                } else {
+                    input.skipField(tag)
+                    otherFields.write(bytes, fieldOffset, offset + input.totalBytesRead - fieldOffset)
+                }
+            }
+
+            val proto = ProtoBuf.Package.parseFrom(otherFields.toByteArray(), extensionRegistry)
+            return Pair(proto, SerializedMembers(bytes, functions.toIntArray(), properties.toIntArray(), typeAliases.toIntArray()))
+        }
+
+        // The name is required, and usually goes right after the flags, so only a few bytes of the member are read here
+        private fun readNameIndex(bytes: ByteArray, offset: Int, length: Int, nameTag: Int): Int {
+            val input = CodedInputStream.newInstance(bytes, offset, length)
+            while (true) {
+                val tag = input.readTag()
+                when (tag) {
+                    0 -> throw InvalidProtocolBufferException("Member has no name")
+                    nameTag -> return input.readInt32()
+                    else -> input.skipField(tag)
+                }
+            }
+        }
+    }
+}
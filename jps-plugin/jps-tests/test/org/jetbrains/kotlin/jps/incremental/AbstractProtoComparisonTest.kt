@@ -72,23 +72,31 @@ abstract class AbstractProtoComparisonTest<PROTO_DATA> : TestWithWorkingDir() {
             }
 
             val changesInfo = ChangesCollector().apply { collectProtoChanges(oldData, newData) }.changes()
+
+            // Unchanged classes must produce no changes, and changed members must be reported, when the protos are not compared
+            val changesByFingerprints = ChangesCollector()
+            if (changesByFingerprints.collectProtoChanges(oldData.abiFingerprint(), newData.abiFingerprint(), newData)) {
+                assertEquals("Changes by ABI fingerprints in $classId", changesInfo.render(), changesByFingerprints.changes().render())
+            }
+
             if (changesInfo.isEmpty()) {
                 return@forEach
             }
 
-            val changes = changesInfo.map {
-                when (it) {
-                    is ChangeInfo.SignatureChanged -> "CLASS_SIGNATURE"
-                    is ChangeInfo.MembersChanged -> "MEMBERS\n    ${it.names.sorted()}"
-                }
-            }.sorted()
-
-            p.println("CHANGES in $classId: ${changes.joinToString()}")
+            p.println("CHANGES in $classId: ${changesInfo.render().joinToString()}")
         }
 
         KotlinTestUtils.assertEqualsToFile(expectedOutputFile(testDir), sb.toString())
     }
 
+    private fun List<ChangeInfo>.render(): List<String> =
+        map {
+            when (it) {
+                is ChangeInfo.SignatureChanged -> "CLASS_SIGNATURE"
+                is ChangeInfo.MembersChanged -> "MEMBERS\n    ${it.names.sorted()}"
+            }
+        }.sorted()
+
     private fun classesForPrefixedSources(testDir: File, workingDir: File, prefix: String): Map<ClassId, PROTO_DATA> {
         val srcDir = workingDir.createSubDirectory("$prefix/src")
         val outDir = workingDir.createSubDirectory("$prefix/out")
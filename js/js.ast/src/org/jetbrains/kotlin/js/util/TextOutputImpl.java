@@ -4,6 +4,10 @@
 
 package org.jetbrains.kotlin.js.util;
 
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 
 public class TextOutputImpl implements TextOutput {
@@ -12,7 +16,7 @@ public class TextOutputImpl implements TextOutput {
     private final static int indentGranularity = 2;
     private char[][] indents = new char[][] {new char[0]};
     private boolean justNewlined;
-    private final StringBuilder out;
+    private final Appendable out;
     private int position = 0;
     private int line = 0;
     private int column = 0;
@@ -26,8 +30,16 @@ public class TextOutputImpl implements TextOutput {
     }
 
     public TextOutputImpl(boolean compact) {
+        this(new StringBuilder(), compact);
+    }
+
+    /**
+     * Creates an output which passes all printed text directly to {@code out}, e.g. a buffered writer of the resulting file.
+     * {@link #toString()} only returns the generated text when {@code out} is a {@link StringBuilder}.
+     */
+    public TextOutputImpl(@NotNull Appendable out, boolean compact) {
         this.compact = compact;
-        out = new StringBuilder();
+        this.out = out;
     }
 
     @Override
@@ -71,7 +83,7 @@ public class TextOutputImpl implements TextOutput {
 
     @Override
     public void newline() {
-        out.append('\n');
+        append('\n');
         position++;
         line++;
         column = 0;
@@ -81,23 +93,19 @@ public class TextOutputImpl implements TextOutput {
     @Override
     public void print(double value) {
         maybeIndent();
-        int oldLength = out.length();
-        out.append(value);
-        movePosition(out.length() - oldLength);
+        printAndCount(String.valueOf(value));
     }
 
     @Override
     public void print(int value) {
         maybeIndent();
-        int oldLength = out.length();
-        out.append(value);
-        movePosition(out.length() - oldLength);
+        printAndCount(String.valueOf(value));
     }
 
     @Override
     public void print(char c) {
         maybeIndent();
-        out.append(c);
+        append(c);
         movePosition(1);
     }
 
@@ -136,12 +144,35 @@ public class TextOutputImpl implements TextOutput {
     private void printAndCount(CharSequence charSequence) {
         position += charSequence.length();
         column += charSequence.length();
-        out.append(charSequence);
+        append(charSequence);
     }
 
     private void printAndCount(char[] chars) {
         position += chars.length;
         column += chars.length;
-        out.append(chars);
+        if (out instanceof StringBuilder) {
+            ((StringBuilder) out).append(chars);
+        }
+        else {
+            append(new String(chars));
+        }
+    }
+
+    private void append(char c) {
+        try {
+            out.append(c);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void append(CharSequence charSequence) {
+        try {
+            out.append(charSequence);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
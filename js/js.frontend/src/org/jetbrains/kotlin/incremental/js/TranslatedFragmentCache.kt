@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.incremental.js
+
+import java.io.File
+import java.io.IOException
+
+/**
+ * Content-addressed storage of inlined and post-processed fragments (serialized [JsAstProtoBuf.Chunk]).
+ * Keys are computed by the translator from the binary AST of a file before inlining, from everything its inline calls depend on,
+ * and from the versions of the compiler and of the binary AST format. So entries are never invalidated: a compiler of another version
+ * computes other keys and doesn't see the entries of this one. Entries which are no longer used are not removed from the cache.
+ */
+// byte arrays are used to simplify passing to different classloaders
+interface TranslatedFragmentCache {
+    operator fun get(key: String): ByteArray?
+
+    fun put(key: String, binaryAst: ByteArray)
+}
+
+class FileTranslatedFragmentCache(private val cacheDir: File) : TranslatedFragmentCache {
+    override fun get(key: String): ByteArray? {
+        val file = fileForKey(key)
+        return try {
+            if (file.exists()) file.readBytes() else null
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    override fun put(key: String, binaryAst: ByteArray) {
+        val file = fileForKey(key)
+        if (file.exists()) return
+
+        // Entries are immutable, so writing to a temporary file and renaming it is enough for concurrent builds
+        file.parentFile.mkdirs()
+        val tmpFile = File.createTempFile(key, ".tmp", file.parentFile)
+        try {
+            tmpFile.writeBytes(binaryAst)
+            if (!tmpFile.renameTo(file) && !file.exists()) {
+                throw IOException("Could not move $tmpFile to $file")
+            }
+        } finally {
+            tmpFile.delete()
+        }
+    }
+
+    private fun fileForKey(key: String): File {
+        require(key.length > 2 && key.all { it in '0'..'9' || it in 'a'..'f' }) { "Invalid fragment cache key: $key" }
+        return File(File(cacheDir, key.substring(0, 2)), key.substring(2))
+    }
+}
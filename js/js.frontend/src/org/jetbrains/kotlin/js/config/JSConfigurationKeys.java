@@ -19,6 +19,7 @@ package org.jetbrains.kotlin.js.config;
 import org.jetbrains.kotlin.config.CompilerConfigurationKey;
 import org.jetbrains.kotlin.incremental.js.IncrementalDataProvider;
 import org.jetbrains.kotlin.incremental.js.IncrementalResultsConsumer;
+import org.jetbrains.kotlin.incremental.js.TranslatedFragmentCache;
 import org.jetbrains.kotlin.serialization.js.ModuleKind;
 
 import java.io.File;
@@ -69,4 +70,10 @@ public class JSConfigurationKeys {
 
     public static final CompilerConfigurationKey<List<String>> FRIEND_PATHS =
             CompilerConfigurationKey.create("friend module paths");
+
+    public static final CompilerConfigurationKey<TranslatedFragmentCache> TRANSLATED_FRAGMENT_CACHE =
+            CompilerConfigurationKey.create("content-addressed cache of inlined fragments");
+
+    public static final CompilerConfigurationKey<Integer> FRAGMENT_PROCESSING_THREADS =
+            CompilerConfigurationKey.create("number of threads used for per-file post-processing of translated fragments");
 }
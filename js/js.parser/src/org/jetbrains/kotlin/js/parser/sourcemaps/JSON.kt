@@ -90,6 +90,32 @@ data class JsonString(val value: String) : JsonNode() {
     override fun write(writer: Writer) {
         writer.append('"')
         for (c in value) {
+            writeEscaped(c, writer)
+        }
+        writer.append('"')
+    }
+
+    override fun toString(): String = super.toString()
+
+    companion object {
+        /**
+         * Writes the content of [reader] as a JSON string, without reading the whole content into memory.
+         */
+        @JvmStatic
+        fun write(reader: Reader, writer: Writer) {
+            writer.append('"')
+            val buffer = CharArray(8192)
+            while (true) {
+                val count = reader.read(buffer)
+                if (count < 0) break
+                for (i in 0 until count) {
+                    writeEscaped(buffer[i], writer)
+                }
+            }
+            writer.append('"')
+        }
+
+        private fun writeEscaped(c: Char, writer: Writer) {
             when (c) {
                 '\\' -> writer.append("\\\\")
                 '"' -> writer.append("\\\"")
@@ -110,10 +136,7 @@ data class JsonString(val value: String) : JsonNode() {
                 }
             }
         }
-        writer.append('"')
     }
-
-    override fun toString(): String = super.toString()
 }
 
 data class JsonNumber(val value: Double) : JsonNode() {
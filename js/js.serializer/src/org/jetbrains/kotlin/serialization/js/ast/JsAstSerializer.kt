@@ -682,4 +682,11 @@ class JsAstSerializer(private val jsAstValidator: ((JsProgramFragment, Set<JsNam
 
         return JsLocation(path, startLine, startChar)
     }
-}
\ No newline at end of file
+    companion object {
+        /**
+         * Version of the binary AST format, must be increased on every change of JsAstProtoBuf or of the way fragments are serialized.
+         * Stored binary ASTs of a different version can't be read, see [org.jetbrains.kotlin.incremental.js.TranslatedFragmentCache].
+         */
+        const val FORMAT_VERSION = 1
+    }
+}
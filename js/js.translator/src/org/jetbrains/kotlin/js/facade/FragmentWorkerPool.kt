@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.js.facade
+
+import java.io.Closeable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs independent per-fragment passes of the translator.
+ *
+ * With a single thread every pass is invoked once over the whole list, exactly as before.
+ * Otherwise each item is processed by a separate task and results are collected in the original order.
+ */
+internal class FragmentWorkerPool(threadCount: Int) : Closeable {
+    private val executor: ExecutorService? =
+        if (threadCount > 1) Executors.newFixedThreadPool(threadCount, WorkerThreadFactory) else null
+
+    val isParallel: Boolean
+        get() = executor != null
+
+    fun <T> forEachChunk(items: Collection<T>, action: (Collection<T>) -> Unit) {
+        if (executor == null) {
+            action(items)
+            return
+        }
+        map(items) { action(listOf(it)) }
+    }
+
+    fun <T, R> map(items: Collection<T>, transform: (T) -> R): List<R> {
+        if (executor == null || items.size <= 1) return items.map(transform)
+
+        val futures: List<Future<R>> = items.map { item -> executor.submit<R> { transform(item) } }
+        try {
+            return futures.map { it.getUnwrapped() }
+        }
+        finally {
+            futures.forEach { it.cancel(true) }
+        }
+    }
+
+    override fun close() {
+        executor?.shutdownNow()
+    }
+
+    private fun <R> Future<R>.getUnwrapped(): R {
+        try {
+            return get()
+        }
+        catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    private object WorkerThreadFactory : ThreadFactory {
+        private val counter = AtomicInteger()
+
+        override fun newThread(r: Runnable): Thread =
+            Thread(r, "kotlin-js-fragment-worker-${counter.incrementAndGet()}").apply { isDaemon = true }
+    }
+}
@@ -41,6 +41,7 @@ import java.io.IOException
 import java.util.ArrayList
 
 import org.jetbrains.kotlin.diagnostics.DiagnosticUtils.hasError
+import org.jetbrains.kotlin.incremental.js.TranslatedFragmentCache
 import org.jetbrains.kotlin.js.backend.ast.JsBlock
 import org.jetbrains.kotlin.js.backend.ast.JsName
 import org.jetbrains.kotlin.js.backend.ast.JsProgramFragment
@@ -116,6 +117,10 @@ class K2JSTranslator @JvmOverloads constructor(
         if (hasError(diagnostics)) return TranslationResult.Fail(diagnostics)
         checkCanceled()
 
+        val fragmentCache = config.configuration.get(JSConfigurationKeys.TRANSLATED_FRAGMENT_CACHE)
+        val fragmentCacheKeys = fragmentCache?.let { reuseCachedFragments(it, translationResult, pathResolver) }.orEmpty()
+        checkCanceled()
+
         JsInliner(
             reporter,
             config,
@@ -125,17 +130,21 @@ class K2JSTranslator @JvmOverloads constructor(
         if (hasError(diagnostics)) return TranslationResult.Fail(diagnostics)
         checkCanceled()
 
-        transformLabeledBlockToDoWhile(translationResult.newFragments)
-        checkCanceled()
+        FragmentWorkerPool(config.configuration.get(JSConfigurationKeys.FRAGMENT_PROCESSING_THREADS, 1)).use { pool ->
+            val newFragments = translationResult.newFragments
 
-        transformCoroutines(translationResult.newFragments)
-        checkCanceled()
+            pool.forEachChunk(newFragments, ::transformLabeledBlockToDoWhile)
+            checkCanceled()
 
-        expandIsCalls(translationResult.newFragments)
-        checkCanceled()
+            pool.forEachChunk(newFragments, ::transformCoroutines)
+            checkCanceled()
 
-        trySaveIncrementalData(translationResult, pathResolver, bindingTrace, moduleDescriptor)
-        checkCanceled()
+            pool.forEachChunk(newFragments, ::expandIsCalls)
+            checkCanceled()
+
+            trySaveIncrementalData(translationResult, pathResolver, bindingTrace, moduleDescriptor, pool, fragmentCache, fragmentCacheKeys)
+            checkCanceled()
+        }
 
         // Global phases
 
@@ -163,29 +172,68 @@ class K2JSTranslator @JvmOverloads constructor(
         ProgressIndicatorAndCompilationCanceledStatus.checkCanceled()
     }
 
+    /**
+     * Replaces fragments of files whose inlined and post-processed AST is already in [fragmentCache].
+     * Returns cache keys of the remaining files, which are stored into the cache once processed.
+     */
+    private fun reuseCachedFragments(
+        fragmentCache: TranslatedFragmentCache,
+        translationResult: AstGenerationResult,
+        pathResolver: SourceFilePathResolver
+    ): Map<TranslationUnit.SourceFile, String> {
+        val keys = TranslatedFragmentCacheKeys(config, createSerializer(pathResolver, validate = false)).compute(translationResult)
+
+        return keys.filter { (unit, key) ->
+            val cachedAst = fragmentCache[key] ?: return@filter true
+            translationResult.reuseProcessedFragment(unit, cachedAst)
+            false
+        }
+    }
+
+    private fun createSerializer(pathResolver: SourceFilePathResolver, validate: Boolean) =
+        JsAstSerializer(if (validate) ::validateJsAst else null) { file ->
+            try {
+                pathResolver.getPathRelativeToSourceRoots(file)
+            } catch (e: IOException) {
+                throw RuntimeException("IO error occurred resolving path to source file", e)
+            }
+        }
+
     private fun trySaveIncrementalData(
         translationResult: AstGenerationResult,
         pathResolver: SourceFilePathResolver,
         bindingTrace: BindingTrace,
-        moduleDescriptor: ModuleDescriptor
+        moduleDescriptor: ModuleDescriptor,
+        pool: FragmentWorkerPool,
+        fragmentCache: TranslatedFragmentCache?,
+        fragmentCacheKeys: Map<TranslationUnit.SourceFile, String>
     ) {
         // TODO Maybe switch validation on for recompile
-        if (incrementalResults == null && !shouldValidateJsAst) return
+        if (incrementalResults == null && !shouldValidateJsAst && fragmentCacheKeys.isEmpty()) return
 
-        val serializer = JsAstSerializer(if (shouldValidateJsAst) ::validateJsAst else null) { file ->
-            try {
-                pathResolver.getPathRelativeToSourceRoots(file)
-            } catch (e: IOException) {
-                throw RuntimeException("IO error occurred resolving path to source file", e)
+        fun createSerializer() = createSerializer(pathResolver, shouldValidateJsAst)
+
+        // JsAstSerializer keeps per-chunk name and string tables, so each worker task needs its own instance
+        val sharedSerializer = if (pool.isParallel) null else createSerializer()
+        val translatedSourceFiles = translationResult.translatedSourceFiles.entries.toList()
+        val binaryAsts = pool.map(translatedSourceFiles) { (_, fileTranslationResult) ->
+            val output = ByteArrayOutputStream()
+            (sharedSerializer ?: createSerializer()).serialize(fileTranslationResult.fragment, output)
+            output.toByteArray()
+        }
+
+        if (fragmentCache != null) {
+            for ((index, entry) in translatedSourceFiles.withIndex()) {
+                fragmentCacheKeys[entry.key]?.let { key -> fragmentCache.put(key, binaryAsts[index]) }
             }
         }
 
-        for ((sourceUnit, fileTranslationResult) in translationResult.translatedSourceFiles) {
+        if (incrementalResults == null && !shouldValidateJsAst) return
+
+        for ((index, entry) in translatedSourceFiles.withIndex()) {
+            val (sourceUnit, fileTranslationResult) = entry
             val file = sourceUnit.file
-            val fragment = fileTranslationResult.fragment
-            val output = ByteArrayOutputStream()
-            serializer.serialize(fragment, output)
-            val binaryAst = output.toByteArray()
+            val binaryAst = binaryAsts[index]
 
             val scope = fileTranslationResult.memberScope
             val metadataVersion = config.configuration.get(CommonConfigurationKeys.METADATA_VERSION)
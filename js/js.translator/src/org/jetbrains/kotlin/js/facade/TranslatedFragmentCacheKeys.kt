@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.js.facade
+
+import org.jetbrains.kotlin.config.KotlinCompilerVersion
+import org.jetbrains.kotlin.descriptors.CallableDescriptor
+import org.jetbrains.kotlin.js.backend.ast.*
+import org.jetbrains.kotlin.js.backend.ast.metadata.descriptor
+import org.jetbrains.kotlin.js.backend.ast.metadata.inlineStrategy
+import org.jetbrains.kotlin.js.config.JsConfig
+import org.jetbrains.kotlin.js.translate.context.Namer
+import org.jetbrains.kotlin.js.translate.general.AstGenerationResult
+import org.jetbrains.kotlin.resolve.inline.InlineStrategy
+import org.jetbrains.kotlin.serialization.js.ast.JsAstSerializer
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.security.MessageDigest
+
+/**
+ * Computes keys of [org.jetbrains.kotlin.incremental.js.TranslatedFragmentCache] for newly translated files.
+ *
+ * A key covers the binary AST of a file before inlining, binary ASTs of all units that define inline functions
+ * it calls (transitively), libraries the remaining inline functions may come from, the module settings,
+ * the version of the compiler and the version of the binary AST format.
+ */
+internal class TranslatedFragmentCacheKeys(
+    private val config: JsConfig,
+    private val serializer: JsAstSerializer
+) {
+    fun compute(translationResult: AstGenerationResult): Map<TranslationUnit.SourceFile, String> {
+        val digests = hashMapOf<TranslationUnit, ByteArray>()
+        val dependencies = hashMapOf<TranslationUnit, Set<TranslationUnit>>()
+
+        for (unit in translationResult.units) {
+            when (unit) {
+                is TranslationUnit.SourceFile -> {
+                    val fragment = translationResult.translatedSourceFiles[unit]!!.fragment
+                    val output = ByteArrayOutputStream()
+                    serializer.serialize(fragment, output)
+                    digests[unit] = output.toByteArray().md5()
+                    dependencies[unit] = collectCalledInlineFunctionTags(fragment)
+                        .mapNotNullTo(mutableSetOf()) { translationResult.inlineFunctionTagMap[it] }
+                }
+                // Binary ASTs are stored after inlining, so their content already reflects their own dependencies
+                is TranslationUnit.BinaryAst -> digests[unit] = unit.data.md5()
+            }
+        }
+
+        val environmentDigest = computeEnvironmentDigest()
+
+        return translationResult.translatedSourceFiles.keys.associate { unit ->
+            val digest = MessageDigest.getInstance("MD5")
+            digest.update(environmentDigest)
+            digest.update(digests[unit]!!)
+            collectTransitiveDependencies(unit, dependencies)
+                .map { digests[it]!! }
+                .sortedWith(Comparator { a, b -> compareDigests(a, b) })
+                .forEach { digest.update(it) }
+            unit to digest.digest().toHexString()
+        }
+    }
+
+    private fun collectCalledInlineFunctionTags(fragment: JsProgramFragment): Set<String> {
+        val tags = mutableSetOf<String>()
+
+        fun process(strategy: InlineStrategy?, descriptor: CallableDescriptor?) {
+            if (strategy != null && strategy.isInline && descriptor != null) {
+                tags += Namer.getFunctionTag(descriptor, config)
+            }
+        }
+
+        val visitor = object : RecursiveJsVisitor() {
+            override fun visitInvocation(invocation: JsInvocation) {
+                process(invocation.inlineStrategy, invocation.descriptor)
+                super.visitInvocation(invocation)
+            }
+
+            override fun visitNameRef(nameRef: JsNameRef) {
+                process(nameRef.inlineStrategy, nameRef.descriptor)
+                super.visitNameRef(nameRef)
+            }
+        }
+
+        fragment.declarationBlock.accept(visitor)
+        fragment.initializerBlock.accept(visitor)
+        fragment.exportBlock.accept(visitor)
+        fragment.tests?.accept(visitor)
+        fragment.mainFunction?.accept(visitor)
+        fragment.inlinedLocalDeclarations.values.forEach { it.accept(visitor) }
+
+        return tags
+    }
+
+    private fun collectTransitiveDependencies(
+        unit: TranslationUnit,
+        dependencies: Map<TranslationUnit, Set<TranslationUnit>>
+    ): Set<TranslationUnit> {
+        val result = mutableSetOf<TranslationUnit>()
+        val queue = ArrayList(dependencies[unit].orEmpty())
+        while (queue.isNotEmpty()) {
+            val next = queue.removeAt(queue.lastIndex)
+            if (next != unit && result.add(next)) {
+                queue += dependencies[next].orEmpty()
+            }
+        }
+        return result
+    }
+
+    private fun computeEnvironmentDigest(): ByteArray {
+        val environment = buildString {
+            appendln(KotlinCompilerVersion.getVersion() ?: compilerClassesStamp())
+            appendln(JsAstSerializer.FORMAT_VERSION)
+            appendln(config.moduleId)
+            appendln(config.moduleKind)
+            appendln(config.languageVersionSettings)
+            for (library in config.libraries) {
+                val file = File(library)
+                appendln("${file.absolutePath}:${file.length()}:${file.lastModified()}")
+            }
+        }
+        return environment.toByteArray().md5()
+    }
+
+    // Snapshot builds of the compiler have no version, so they are told apart by the jar or directory of the translator classes
+    private fun compilerClassesStamp(): String {
+        val location = K2JSTranslator::class.java.protectionDomain?.codeSource?.location ?: return "unknown"
+        val file = File(location.toURI())
+        return "${file.absolutePath}:${file.length()}:${file.lastModified()}"
+    }
+
+    private fun compareDigests(a: ByteArray, b: ByteArray): Int {
+        for (i in 0 until minOf(a.size, b.size)) {
+            val diff = (a[i].toInt() and 0xFF) - (b[i].toInt() and 0xFF)
+            if (diff != 0) return diff
+        }
+        return a.size - b.size
+    }
+
+    private fun ByteArray.md5(): ByteArray = MessageDigest.getInstance("MD5").digest(this)
+
+    private fun ByteArray.toHexString(): String = joinToString("") { "%02x".format(it) }
+}
@@ -68,20 +68,7 @@ abstract class TranslationResult protected constructor(val diagnostics: Diagnost
             val output = TextOutputImpl()
 
             val sourceMapBuilder = SourceMap3Builder(outputFile, output, config.sourceMapPrefix)
-            val sourceMapBuilderConsumer =
-                    if (config.configuration.getBoolean(JSConfigurationKeys.SOURCE_MAP)) {
-                        val sourceMapContentEmbedding = config.sourceMapContentEmbedding
-                        val pathResolver = SourceFilePathResolver.create(config)
-                        SourceMapBuilderConsumer(
-                                File("."),
-                                sourceMapBuilder,
-                                pathResolver,
-                                sourceMapContentEmbedding == SourceMapSourceEmbedding.ALWAYS,
-                                sourceMapContentEmbedding != SourceMapSourceEmbedding.NEVER)
-                    }
-                    else {
-                        null
-                    }
+            val sourceMapBuilderConsumer = createSourceMapBuilderConsumer(sourceMapBuilder)
 
             getCode(output, sourceMapBuilderConsumer)
             if (sourceMapBuilderConsumer != null) {
@@ -91,40 +78,12 @@ abstract class TranslationResult protected constructor(val diagnostics: Diagnost
 
             val prefix = outputPrefixFile?.readText() ?: ""
             val postfix = outputPostfixFile?.readText() ?: ""
-            val sourceFiles = files.map {
-                val virtualFile = it.originalFile.virtualFile
-
-                when {
-                    virtualFile == null -> File(it.name)
-                    else -> VfsUtilCore.virtualToIoFile(virtualFile)
-                }
-            }
+            val sourceFiles = getSourceFiles()
 
             val jsFile = SimpleOutputFile(sourceFiles, outputFile.name, prefix + code + postfix)
             val outputFiles = arrayListOf<OutputFile>(jsFile)
 
-            if (config.configuration.getBoolean(JSConfigurationKeys.META_INFO)) {
-                val metaFileName = KotlinJavascriptMetadataUtils.replaceSuffix(outputFile.name)
-                val moduleDescription = JsModuleDescriptor(
-                    name = config.moduleId,
-                    data = moduleDescriptor,
-                    kind = config.moduleKind,
-                    imported = importedModules
-                )
-                val serializedMetadata = KotlinJavascriptSerializationUtil.serializeMetadata(
-                    bindingContext, moduleDescription,
-                    config.configuration.languageVersionSettings,
-                    config.configuration.get(CommonConfigurationKeys.METADATA_VERSION) as? JsMetadataVersion ?: JsMetadataVersion.INSTANCE
-                )
-                val metaFileContent = serializedMetadata.asString()
-                val sourceFilesForMetaFile = ArrayList(sourceFiles)
-                val jsMetaFile = SimpleOutputFile(sourceFilesForMetaFile, metaFileName, metaFileContent)
-                outputFiles.add(jsMetaFile)
-
-                for (serializedPackage in serializedMetadata.serializedPackages()) {
-                    outputFiles.add(kjsmFileForPackage(serializedPackage.fqName, serializedPackage.bytes))
-                }
-            }
+            outputFiles.addAll(getMetadataFiles(outputFile, sourceFiles))
 
             if (sourceMapBuilderConsumer != null) {
                 sourceMapBuilder.skipLinesAtBeginning(StringUtil.getLineBreakCount(prefix))
@@ -136,6 +95,107 @@ abstract class TranslationResult protected constructor(val diagnostics: Diagnost
             return SimpleOutputFileCollection(outputFiles)
         }
 
+        /**
+         * Writes the generated code and its source map straight to [outputDir] instead of keeping them in memory,
+         * and returns the remaining output files. Written files are byte-identical to the ones from [getOutputFiles].
+         */
+        fun writeCodeAndGetMetadataFiles(
+            outputFile: File,
+            outputDir: File,
+            outputPrefixFile: File?,
+            outputPostfixFile: File?,
+            report: ((sources: List<File>, output: File) -> Unit)?
+        ): OutputFileCollection {
+            val prefix = outputPrefixFile?.readText() ?: ""
+            val postfix = outputPostfixFile?.readText() ?: ""
+            val sourceFiles = getSourceFiles()
+
+            val generateSourceMap = config.configuration.getBoolean(JSConfigurationKeys.SOURCE_MAP)
+            val mappingsSpillFile = if (generateSourceMap) File.createTempFile("kotlin-js-mappings", ".tmp") else null
+
+            try {
+                val jsFile = File(outputDir, outputFile.name)
+                jsFile.parentFile?.mkdirs()
+                val sourceMapBuilder = jsFile.bufferedWriter().use { writer ->
+                    val output = TextOutputImpl(writer, false)
+
+                    val sourceMapBuilder = SourceMap3Builder(outputFile, output, config.sourceMapPrefix, mappingsSpillFile)
+                    val sourceMapBuilderConsumer = createSourceMapBuilderConsumer(sourceMapBuilder)
+                    sourceMapBuilderConsumer?.let { sourceMapBuilder.skipLinesAtBeginning(StringUtil.getLineBreakCount(prefix)) }
+
+                    writer.write(prefix)
+                    getCode(output, sourceMapBuilderConsumer)
+                    if (sourceMapBuilderConsumer != null) {
+                        sourceMapBuilder.addLink()
+                    }
+                    writer.write(postfix)
+
+                    sourceMapBuilder.takeIf { sourceMapBuilderConsumer != null }
+                }
+                report?.invoke(sourceFiles, jsFile)
+
+                if (sourceMapBuilder != null) {
+                    val sourceMapFile = File(outputDir, sourceMapBuilder.outFile.name)
+                    sourceMapFile.bufferedWriter().use { sourceMapBuilder.build(it) }
+                    report?.invoke(sourceFiles, sourceMapFile)
+                }
+            }
+            finally {
+                mappingsSpillFile?.delete()
+            }
+
+            return SimpleOutputFileCollection(getMetadataFiles(outputFile, sourceFiles))
+        }
+
+        private fun createSourceMapBuilderConsumer(sourceMapBuilder: SourceMap3Builder): SourceMapBuilderConsumer? {
+            if (!config.configuration.getBoolean(JSConfigurationKeys.SOURCE_MAP)) return null
+
+            val sourceMapContentEmbedding = config.sourceMapContentEmbedding
+            val pathResolver = SourceFilePathResolver.create(config)
+            return SourceMapBuilderConsumer(
+                    File("."),
+                    sourceMapBuilder,
+                    pathResolver,
+                    sourceMapContentEmbedding == SourceMapSourceEmbedding.ALWAYS,
+                    sourceMapContentEmbedding != SourceMapSourceEmbedding.NEVER)
+        }
+
+        private fun getSourceFiles(): List<File> = files.map {
+            val virtualFile = it.originalFile.virtualFile
+
+            when {
+                virtualFile == null -> File(it.name)
+                else -> VfsUtilCore.virtualToIoFile(virtualFile)
+            }
+        }
+
+        private fun getMetadataFiles(outputFile: File, sourceFiles: List<File>): List<OutputFile> {
+            if (!config.configuration.getBoolean(JSConfigurationKeys.META_INFO)) return emptyList()
+
+            val metaFileName = KotlinJavascriptMetadataUtils.replaceSuffix(outputFile.name)
+            val moduleDescription = JsModuleDescriptor(
+                name = config.moduleId,
+                data = moduleDescriptor,
+                kind = config.moduleKind,
+                imported = importedModules
+            )
+            val serializedMetadata = KotlinJavascriptSerializationUtil.serializeMetadata(
+                bindingContext, moduleDescription,
+                config.configuration.languageVersionSettings,
+                config.configuration.get(CommonConfigurationKeys.METADATA_VERSION) as? JsMetadataVersion ?: JsMetadataVersion.INSTANCE
+            )
+            val metaFileContent = serializedMetadata.asString()
+            val sourceFilesForMetaFile = ArrayList(sourceFiles)
+            val jsMetaFile = SimpleOutputFile(sourceFilesForMetaFile, metaFileName, metaFileContent)
+            val outputFiles = arrayListOf<OutputFile>(jsMetaFile)
+
+            for (serializedPackage in serializedMetadata.serializedPackages()) {
+                outputFiles.add(kjsmFileForPackage(serializedPackage.fqName, serializedPackage.bytes))
+            }
+
+            return outputFiles
+        }
+
         private fun kjsmFileForPackage(packageFqName: FqName, bytes: ByteArray): SimpleOutputBinaryFile {
             val ktFiles = (bindingContext.get(BindingContext.PACKAGE_TO_FILES, packageFqName) ?: emptyList())
             val sourceFiles = ktFiles.map { VfsUtilCore.virtualToIoFile(it.virtualFile) }
@@ -24,18 +24,25 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.js.parser.sourcemaps.*;
 import org.jetbrains.kotlin.js.util.TextOutput;
 
-import java.io.File;
-import java.io.Reader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
 
 public class SourceMap3Builder implements SourceMapBuilder {
+    private static final int SPILL_THRESHOLD = 1 << 16;
+
     private final StringBuilder out = new StringBuilder(8192);
     private final File generatedFile;
     private final TextOutput textOutput;
     private final String pathPrefix;
 
+    @Nullable
+    private final File mappingsSpillFile;
+    @Nullable
+    private Writer mappingsSpill;
+
     private final TObjectIntHashMap<SourceKey> sources = new TObjectIntHashMap<SourceKey>() {
         @Override
         public int get(SourceKey key) {
@@ -58,9 +65,18 @@ public class SourceMap3Builder implements SourceMapBuilder {
     private boolean currentMappingIsEmpty = true;
 
     public SourceMap3Builder(File generatedFile, TextOutput textOutput, String pathPrefix) {
+        this(generatedFile, textOutput, pathPrefix, null);
+    }
+
+    /**
+     * @param mappingsSpillFile if not null, mappings that can no longer change are moved from memory to this file
+     *                          as they are produced. The file is deleted once the source map is built.
+     */
+    public SourceMap3Builder(File generatedFile, TextOutput textOutput, String pathPrefix, @Nullable File mappingsSpillFile) {
         this.generatedFile = generatedFile;
         this.textOutput = textOutput;
         this.pathPrefix = pathPrefix;
+        this.mappingsSpillFile = mappingsSpillFile;
     }
 
     @Override
@@ -70,32 +86,74 @@ public class SourceMap3Builder implements SourceMapBuilder {
 
     @Override
     public String build() {
-        @SuppressWarnings("unchecked")
-        JsonObject json = new JsonObject();
-        json.getProperties().put("version", new JsonNumber(3));
-        json.getProperties().put("file", new JsonString(generatedFile.getName()));
-        appendSources(json);
-        appendSourcesContent(json);
-        json.getProperties().put("names", new JsonArray());
-        json.getProperties().put("mappings", new JsonString(out.toString()));
-        return json.toString();
+        StringWriter writer = new StringWriter();
+        try {
+            build(writer);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    // Written as JsonObject would write it, but the content of sources and the mappings are streamed instead of materialized as strings
+    @Override
+    public void build(@NotNull Writer writer) throws IOException {
+        writer.write("{\"version\":3,\"file\":");
+        new JsonString(generatedFile.getName()).write(writer);
+        writer.write(",\"sources\":");
+        writeSources(writer);
+        writer.write(",\"sourcesContent\":");
+        writeSourcesContent(writer);
+        writer.write(",\"names\":[]");
+        // Mappings consist of Base64 digits, ';' and ',' only, so they never need escaping.
+        writer.write(",\"mappings\":\"");
+        writeMappings(writer);
+        writer.write("\"}");
     }
 
-    private void appendSources(JsonObject json) {
+    private void writeMappings(@NotNull Writer writer) throws IOException {
+        if (mappingsSpill != null) {
+            assert mappingsSpillFile != null;
+            mappingsSpill.close();
+            mappingsSpill = null;
+            try (Reader reader = new InputStreamReader(new FileInputStream(mappingsSpillFile), StandardCharsets.UTF_8)) {
+                TextStreamsKt.copyTo(reader, writer, 8192);
+            }
+            //noinspection ResultOfMethodCallIgnored
+            mappingsSpillFile.delete();
+        }
+        writer.append(out);
+    }
+
+    private void writeSources(@NotNull Writer writer) {
         JsonArray array = new JsonArray();
         for (String source : orderedSources) {
             array.getElements().add(new JsonString(pathPrefix + source));
         }
-        json.getProperties().put("sources", array);
+        array.write(writer);
     }
 
-    private void appendSourcesContent(JsonObject json) {
-        JsonArray array = new JsonArray();
+    private void writeSourcesContent(@NotNull Writer writer) throws IOException {
+        writer.write('[');
+        boolean first = true;
         for (Supplier<Reader> contentSupplier : orderedSourceContentSuppliers) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+
             Reader reader = contentSupplier.get();
-            array.getElements().add(reader != null ? new JsonString(TextStreamsKt.readText(reader)) : JsonNull.INSTANCE);
+            if (reader == null) {
+                JsonNull.INSTANCE.write(writer);
+            }
+            else {
+                try (Reader contentReader = reader) {
+                    JsonString.write(contentReader, writer);
+                }
+            }
         }
-        json.getProperties().put("sourcesContent", array);
+        writer.write(']');
     }
 
     @Override
@@ -106,7 +164,11 @@ public class SourceMap3Builder implements SourceMapBuilder {
 
     @Override
     public void skipLinesAtBeginning(int count) {
+        if (mappingsSpill != null) {
+            throw new IllegalStateException("Lines should be skipped before mappings are spilled to " + mappingsSpillFile);
+        }
         out.insert(0, StringUtil.repeatSymbol(';', count));
+        previousMappingOffset += count;
     }
 
     private int getSourceIndex(String source, Object identityObject, Supplier<Reader> contentSupplier) {
@@ -176,6 +238,10 @@ public class SourceMap3Builder implements SourceMapBuilder {
             previousPreviousSourceIndex = previousSourceIndex;
             previousPreviousSourceLine = previousSourceLine;
             previousPreviousSourceColumn = previousSourceColumn;
+
+            if (mappingsSpillFile != null && previousMappingOffset >= SPILL_THRESHOLD) {
+                spillMappings();
+            }
         }
         else {
             out.setLength(previousMappingOffset);
@@ -185,6 +251,22 @@ public class SourceMap3Builder implements SourceMapBuilder {
         }
     }
 
+    // Everything before previousMappingOffset is final, only the current segment can still be rolled back
+    private void spillMappings() {
+        assert mappingsSpillFile != null;
+        try {
+            if (mappingsSpill == null) {
+                mappingsSpill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mappingsSpillFile), StandardCharsets.UTF_8));
+            }
+            mappingsSpill.append(out, 0, previousMappingOffset);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.delete(0, previousMappingOffset);
+        previousMappingOffset = 0;
+    }
+
     @Override
     public void addLink() {
         textOutput.print("\n//# sourceMappingURL=");
@@ -16,7 +16,11 @@
 
 package org.jetbrains.kotlin.js.sourceMap;
 
+import org.jetbrains.annotations.NotNull;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 
 public interface SourceMapBuilder extends SourceMapMappingConsumer {
     void skipLinesAtBeginning(int count);
@@ -26,4 +30,6 @@ public interface SourceMapBuilder extends SourceMapMappingConsumer {
     File getOutFile();
 
     String build();
+
+    void build(@NotNull Writer writer) throws IOException;
 }
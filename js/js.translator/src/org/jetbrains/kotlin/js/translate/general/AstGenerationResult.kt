@@ -30,13 +30,21 @@ import java.util.HashSet
 
 class AstGenerationResult(
     val units: Collection<TranslationUnit>,
-    val translatedSourceFiles: Map<TranslationUnit.SourceFile, SourceFileTranslationResult>,
+    translatedSourceFiles: Map<TranslationUnit.SourceFile, SourceFileTranslationResult>,
     val inlineFunctionTagMap: Map<String, TranslationUnit>,
     moduleDescriptor: ModuleDescriptor,
     config: JsConfig
 ) {
 
-    val newFragments = translatedSourceFiles.values.map { it.fragment }.toSet()
+    private val _translatedSourceFiles = LinkedHashMap(translatedSourceFiles)
+    val translatedSourceFiles: Map<TranslationUnit.SourceFile, SourceFileTranslationResult>
+        get() = _translatedSourceFiles
+
+    private val _newFragments = translatedSourceFiles.values.mapTo(LinkedHashSet()) { it.fragment }
+
+    /** Fragments which still have to be inlined and post-processed. */
+    val newFragments: Set<JsProgramFragment>
+        get() = _newFragments
 
     private val cache = mutableMapOf<TranslationUnit.BinaryAst, DeserializedFileTranslationResult>()
 
@@ -59,6 +67,17 @@ class AstGenerationResult(
             }
         }
 
+    /**
+     * Replaces a fragment translated from [unit] with the already inlined and post-processed [binaryAst]
+     * of the same source, so that it's treated like a fragment from previous compilation.
+     */
+    fun reuseProcessedFragment(unit: TranslationUnit.SourceFile, binaryAst: ByteArray) {
+        val translated = _translatedSourceFiles[unit] ?: error("Unknown source file: ${unit.file.name}")
+        val fragment = deserializer.deserialize(ByteArrayInputStream(binaryAst))
+        _newFragments.remove(translated.fragment)
+        _translatedSourceFiles[unit] = SourceFileTranslationResult(fragment, translated.inlineFunctionTags, translated.memberScope)
+    }
+
     fun buildProgram(): Pair<JsProgram, List<String>> {
         val fragments = units.map { getTranslationResult(it).fragment }
         fragments.forEach { merger.addFragment(it) }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package kotlin.script.experimental.jvmhost
+
+import org.jetbrains.kotlin.config.KotlinCompilerVersion
+import java.io.File
+import java.io.IOException
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import kotlin.script.experimental.api.*
+import kotlin.script.experimental.jvm.JvmDependency
+import kotlin.script.experimental.jvm.impl.KJvmCompiledScript
+import kotlin.script.experimental.util.PropertiesCollection
+import kotlin.script.experimental.jvmhost.impl.KJvmCompiledModuleInMemory
+
+/**
+ * Persistent cache of compiled scripts, which keeps every script in a separate jar in [baseDir].
+ *
+ * A jar is found by a hash of the script, of the (refined) compilation configuration and of the stamps of the files
+ * from the script dependencies, so a script is recompiled if any of them has changed (see [uniqueHash]). Entries which weren't used
+ * for the longest time are deleted when there are more than [maxEntries] of them.
+ *
+ * The cache can be shared between processes: jars are written to temporary files and then moved to their places, so a jar is
+ * never read while it is written. Entries which can't be read (e.g. written by an incompatible version) are treated as missing.
+ */
+open class CompiledScriptJarsCache(val baseDir: File, val maxEntries: Int = 1000) : CompiledJvmScriptsCache {
+
+    override fun get(script: SourceCode, scriptCompilationConfiguration: ScriptCompilationConfiguration): CompiledScript<*>? {
+        val hash = uniqueHash(script, scriptCompilationConfiguration) ?: return null
+        val file = File(baseDir, hash + JAR_EXTENSION)
+        if (!file.isFile) return null
+
+        val compiledScript = try {
+            file.loadScriptFromJar()
+        } catch (e: Exception) {
+            null
+        }
+        if (compiledScript == null) {
+            file.delete()
+            return null
+        }
+
+        // last modification time is used as a last access time for eviction
+        file.setLastModified(System.currentTimeMillis())
+        return compiledScript
+    }
+
+    override fun store(
+        compiledScript: CompiledScript<*>,
+        script: SourceCode,
+        scriptCompilationConfiguration: ScriptCompilationConfiguration
+    ) {
+        val jvmScript = compiledScript as? KJvmCompiledScript<*> ?: return
+        val module = jvmScript.compiledModule as? KJvmCompiledModuleInMemory ?: return
+        val hash = uniqueHash(script, scriptCompilationConfiguration) ?: return
+
+        baseDir.mkdirs()
+        val file = File(baseDir, hash + JAR_EXTENSION)
+        val tmpFile = File.createTempFile(file.nameWithoutExtension, TMP_EXTENSION, baseDir)
+        try {
+            tmpFile.outputStream().use { jvmScript.writeJar(module, it, emptyList()) }
+            moveFile(tmpFile, file)
+        } catch (e: IOException) {
+            // e.g. the entry is being read by another process on Windows; the script is just not cached
+        } finally {
+            tmpFile.delete()
+        }
+
+        evictEntries()
+    }
+
+    /**
+     * Returns the name of the jar for [script], or null if the script can't be cached.
+     *
+     * Only values of the configuration with a known representation, which is stable between runs, are hashed.
+     * Scripts are identified by their location and text, dependencies by the stamps of their files, and refinement handlers
+     * by their classes, so handlers shouldn't depend on captured state. Any other value disables caching of the script.
+     */
+    protected open fun uniqueHash(script: SourceCode, scriptCompilationConfiguration: ScriptCompilationConfiguration): String? {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.updateWith(CACHE_VERSION.toString())
+        digest.updateWith(KotlinCompilerVersion.VERSION)
+        digest.updateWith(script)
+        if (!digest.updateWithValue(scriptCompilationConfiguration)) return null
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    private fun MessageDigest.updateWithValue(value: Any?): Boolean {
+        when (value) {
+            null -> updateWith("null")
+            is String, is Boolean, is Char, is Number -> updateWith(value.toString())
+            is Enum<*> -> updateWith(value.name)
+            is File -> updateWith(value.absolutePath)
+            is KotlinType -> updateWith(value.typeName)
+            is SourceCode -> updateWith(value)
+            is ScriptSourceNamedFragment -> {
+                updateWith(value.name.toString())
+                updateWith(value.range.toString())
+            }
+            is JvmDependency -> value.classpath.forEach {
+                updateWith(it.absolutePath)
+                updateWith(it.lastModified().toString())
+                updateWith(it.length().toString())
+            }
+            is RefineConfigurationUnconditionallyData -> updateWith(value.handler.javaClass.name)
+            is RefineConfigurationOnAnnotationsData -> {
+                updateWithValue(value.annotations)
+                updateWith(value.handler.javaClass.name)
+            }
+            is Collection<*> -> {
+                updateWith(value.size.toString())
+                return value.all { updateWithValue(it) }
+            }
+            is Map<*, *> -> {
+                updateWith(value.size.toString())
+                return value.entries.sortedBy { it.key.toString() }.all { updateWithValue(it.key) && updateWithValue(it.value) }
+            }
+            is PropertiesCollection -> {
+                val entries = value.entries().sortedBy { it.key.name }
+                updateWith(entries.size.toString())
+                return entries.all { updateWith(it.key.name); updateWithValue(it.value) }
+            }
+            else -> return false
+        }
+        return true
+    }
+
+    private fun MessageDigest.updateWith(script: SourceCode) {
+        updateWith(script.locationId.toString())
+        updateWith(script.text)
+    }
+
+    private fun MessageDigest.updateWith(value: String) {
+        update(value.toByteArray())
+        update(0)
+    }
+
+    private fun moveFile(source: File, target: File) {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+        } catch (e: AtomicMoveNotSupportedException) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        }
+    }
+
+    private fun evictEntries() {
+        val files = baseDir.listFiles() ?: return
+        val now = System.currentTimeMillis()
+
+        // temporary files left by processes which were killed while storing a script
+        files.filter { it.name.endsWith(TMP_EXTENSION) && now - it.lastModified() > STALE_TMP_FILE_AGE_MS }.forEach { it.delete() }
+
+        val entries = files.filter { it.name.endsWith(JAR_EXTENSION) }
+        if (entries.size <= maxEntries) return
+
+        // deletion may fail if another process reads the entry, it will be evicted next time then
+        entries.sortedBy { it.lastModified() }.take(entries.size - maxEntries).forEach { it.delete() }
+    }
+
+    companion object {
+        private const val CACHE_VERSION = 2
+        private const val JAR_EXTENSION = ".jar"
+        private const val TMP_EXTENSION = ".tmp"
+        private const val STALE_TMP_FILE_AGE_MS = 60 * 60 * 1000L
+    }
+}
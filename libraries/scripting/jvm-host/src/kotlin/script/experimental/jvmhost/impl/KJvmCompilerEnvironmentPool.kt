@@ -0,0 +1,201 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package kotlin.script.experimental.jvmhost.impl
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.util.Disposer
+import org.jetbrains.kotlin.cli.common.CLIConfigurationKeys
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageLocation
+import org.jetbrains.kotlin.cli.common.messages.CompilerMessageSeverity
+import org.jetbrains.kotlin.cli.common.messages.MessageCollector
+import org.jetbrains.kotlin.cli.jvm.compiler.EnvironmentConfigFiles
+import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
+import org.jetbrains.kotlin.cli.jvm.config.jvmClasspathRoots
+import org.jetbrains.kotlin.config.CompilerConfiguration
+import org.jetbrains.kotlin.scripting.compiler.plugin.definitions.CliScriptDependenciesProvider
+import org.jetbrains.kotlin.scripting.configuration.ScriptingConfigurationKeys
+import org.jetbrains.kotlin.scripting.definitions.ScriptDependenciesProvider
+import java.io.Closeable
+import java.io.File
+import java.util.*
+import kotlin.script.experimental.api.ScriptCompilationConfiguration
+import kotlin.script.experimental.jvmhost.impl.KJvmCompilerImpl.SourcesWithRefinedConfigurations
+
+/**
+ * Keeps compiler environments of [KJvmCompilerImpl] between compilations, so that only the first script compiled with a given
+ * compilation configuration and classpath pays for the environment setup (registration of services, indexing of the classpath,
+ * loading of module mappings).
+ *
+ * An environment is used by one compilation at a time. Its script definition refers to the state of the current compilation, and its
+ * message collector reports to the collector of the current compilation; the script dependencies cached by the environment are
+ * cleared before each use. Environments which were modified by a compilation in a way that can't be reset (e.g. the classpath was
+ * extended by script dependencies) are not returned to the pool.
+ *
+ * The pool keeps at most [maxIdleEnvironments] idle environments and drops them when the used heap exceeds [maxUsedHeapFraction]
+ * of the maximum heap size. Environments are recreated after [maxUsesPerEnvironment] compilations, to limit the growth of their caches.
+ */
+class KJvmCompilerEnvironmentPool(
+    val maxIdleEnvironments: Int = 4,
+    val maxUsedHeapFraction: Double = 0.75,
+    val maxUsesPerEnvironment: Int = 100
+) : Closeable {
+    internal data class EnvironmentKey(
+        val scriptCompilationConfiguration: ScriptCompilationConfiguration,
+        val classpath: List<ClasspathEntry>
+    )
+
+    internal data class ClasspathEntry(val file: File, val lastModified: Long, val length: Long)
+
+    internal class PooledEnvironment(val key: EnvironmentKey, var sources: SourcesWithRefinedConfigurations) {
+        val disposable: Disposable = Disposer.newDisposable()
+        val messageCollector = DelegatingMessageCollector()
+        lateinit var scriptDefinition: BridgeScriptDefinition
+        lateinit var environment: KotlinCoreEnvironment
+
+        var uses = 0
+            private set
+
+        fun prepareForScript(sources: SourcesWithRefinedConfigurations, scriptMessageCollector: MessageCollector) {
+            uses++
+            this.sources = sources
+            messageCollector.delegate = scriptMessageCollector
+            // dependencies are cached by file path, and scripts without a file have the same path
+            (ScriptDependenciesProvider.getInstance(environment.project) as? CliScriptDependenciesProvider)?.clearCache()
+        }
+
+        fun finishScript() {
+            messageCollector.delegate = MessageCollector.NONE
+        }
+
+        fun dispose() {
+            Disposer.dispose(disposable)
+        }
+    }
+
+    private val idleEnvironments = LinkedHashMap<EnvironmentKey, ArrayDeque<PooledEnvironment>>()
+    private var idleCount = 0
+    private var isClosed = false
+
+    internal fun acquire(
+        compilerConfiguration: CompilerConfiguration,
+        scriptCompilationConfiguration: ScriptCompilationConfiguration,
+        sources: SourcesWithRefinedConfigurations,
+        scriptMessageCollector: MessageCollector,
+        makeScriptDefinition: (currentSources: () -> SourcesWithRefinedConfigurations) -> BridgeScriptDefinition
+    ): PooledEnvironment {
+        val key = EnvironmentKey(
+            scriptCompilationConfiguration,
+            compilerConfiguration.jvmClasspathRoots.map { ClasspathEntry(it, it.lastModified(), it.length()) }
+        )
+
+        val idle = synchronized(this) {
+            val environments = idleEnvironments[key]
+            environments?.pollLast()?.also {
+                idleCount--
+                if (environments.isEmpty()) idleEnvironments.remove(key)
+            }
+        }
+        if (idle != null) {
+            idle.prepareForScript(sources, scriptMessageCollector)
+            return idle
+        }
+
+        val pooled = PooledEnvironment(key, sources)
+        try {
+            pooled.scriptDefinition = makeScriptDefinition { pooled.sources }
+            val environmentConfiguration = compilerConfiguration.copy().apply {
+                put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, pooled.messageCollector)
+                add(ScriptingConfigurationKeys.SCRIPT_DEFINITIONS, pooled.scriptDefinition)
+            }
+            pooled.messageCollector.delegate = scriptMessageCollector
+            pooled.environment = KotlinCoreEnvironment.createForProduction(
+                pooled.disposable, environmentConfiguration, EnvironmentConfigFiles.JVM_CONFIG_FILES
+            )
+            pooled.prepareForScript(sources, scriptMessageCollector)
+            return pooled
+        } catch (e: Throwable) {
+            pooled.dispose()
+            throw e
+        }
+    }
+
+    /**
+     * Returns [pooled] to the pool. [canBeReused] should be false if the compilation has changed the environment in a way
+     * which would affect other scripts.
+     */
+    internal fun release(pooled: PooledEnvironment, canBeReused: Boolean) {
+        pooled.finishScript()
+
+        if (!canBeReused || pooled.uses >= maxUsesPerEnvironment) {
+            pooled.dispose()
+            return
+        }
+
+        if (isHeapExhausted()) {
+            pooled.dispose()
+            disposeIdleEnvironments()
+            return
+        }
+
+        val toDispose = synchronized(this) {
+            if (isClosed) return@synchronized pooled
+
+            // re-inserted to keep the map in the order of use
+            val environments = idleEnvironments.remove(pooled.key) ?: ArrayDeque()
+            environments.addLast(pooled)
+            idleEnvironments[pooled.key] = environments
+            idleCount++
+            // the least recently used environments are evicted first
+            if (idleCount > maxIdleEnvironments) evictEldest() else null
+        }
+        toDispose?.dispose()
+    }
+
+    private fun evictEldest(): PooledEnvironment? {
+        val iterator = idleEnvironments.entries.iterator()
+        if (!iterator.hasNext()) return null
+        val entry = iterator.next()
+        val evicted = entry.value.pollFirst()
+        if (entry.value.isEmpty()) iterator.remove()
+        if (evicted != null) idleCount--
+        return evicted
+    }
+
+    private fun isHeapExhausted(): Boolean {
+        val runtime = Runtime.getRuntime()
+        val usedMemory = runtime.totalMemory() - runtime.freeMemory()
+        return usedMemory > runtime.maxMemory() * maxUsedHeapFraction
+    }
+
+    private fun disposeIdleEnvironments() {
+        val environments = synchronized(this) {
+            idleEnvironments.values.flatten().also {
+                idleEnvironments.clear()
+                idleCount = 0
+            }
+        }
+        environments.forEach { it.dispose() }
+    }
+
+    override fun close() {
+        synchronized(this) {
+            isClosed = true
+        }
+        disposeIdleEnvironments()
+    }
+}
+
+internal class DelegatingMessageCollector : MessageCollector {
+    @Volatile
+    var delegate: MessageCollector = MessageCollector.NONE
+
+    override fun clear() = delegate.clear()
+
+    override fun report(severity: CompilerMessageSeverity, message: String, location: CompilerMessageLocation?) =
+        delegate.report(severity, message, location)
+
+    override fun hasErrors(): Boolean = delegate.hasErrors()
+}
@@ -71,7 +71,10 @@ import kotlin.script.experimental.jvm.withUpdatedClasspath
 import kotlin.script.experimental.jvmhost.KJvmCompilerProxy
 import kotlin.script.experimental.util.getOrError
 
-class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvmCompilerProxy {
+class KJvmCompilerImpl(
+    val hostConfiguration: ScriptingHostConfiguration,
+    private val environmentPool: KJvmCompilerEnvironmentPool? = null
+) : KJvmCompilerProxy {
 
     override fun compile(
         script: SourceCode,
@@ -87,6 +90,8 @@ class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvm
             failure(message.asErrorDiagnostics(path = script.locationId))
 
         val disposable = Disposer.newDisposable()
+        var pooledEnvironment: KJvmCompilerEnvironmentPool.PooledEnvironment? = null
+        var canReuseEnvironment = false
 
         try {
             setIdeaIoUseFallback()
@@ -101,14 +106,24 @@ class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvm
 
             val sourcesWithRefinementsState = SourcesWithRefinedConfigurations(script)
 
-            kotlinCompilerConfiguration.add(
-                ScriptingConfigurationKeys.SCRIPT_DEFINITIONS,
-                makeScriptDefinition(initialScriptCompilationConfiguration, script, sourcesWithRefinementsState)
-            )
-
-            val environment = KotlinCoreEnvironment.createForProduction(
-                disposable, kotlinCompilerConfiguration, EnvironmentConfigFiles.JVM_CONFIG_FILES
-            )
+            val environment = if (environmentPool != null) {
+                val pooled = environmentPool.acquire(
+                    kotlinCompilerConfiguration, scriptCompilationConfiguration, sourcesWithRefinementsState, messageCollector
+                ) { currentSources ->
+                    makeScriptDefinition(initialScriptCompilationConfiguration, currentSources)
+                }
+                pooledEnvironment = pooled
+                kotlinCompilerConfiguration.add(ScriptingConfigurationKeys.SCRIPT_DEFINITIONS, pooled.scriptDefinition)
+                pooled.environment
+            } else {
+                kotlinCompilerConfiguration.add(
+                    ScriptingConfigurationKeys.SCRIPT_DEFINITIONS,
+                    makeScriptDefinition(initialScriptCompilationConfiguration) { sourcesWithRefinementsState }
+                )
+                KotlinCoreEnvironment.createForProduction(
+                    disposable, kotlinCompilerConfiguration, EnvironmentConfigFiles.JVM_CONFIG_FILES
+                )
+            }
 
             val mainKtFile = getMainKtFile(script, initialScriptCompilationConfiguration, environment)
                 ?: return failure("Unable to make PSI file from script")
@@ -130,10 +145,13 @@ class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvm
             sourceFiles.addAll(newSources)
 
             // collectScriptsCompilationDependencies calls resolver for every file, so at this point all updated configurations are collected
-            environment.configuration.updateWithRefinedConfigurations(
+            val isConfigurationUpdated = environment.configuration.updateWithRefinedConfigurations(
                 initialScriptCompilationConfiguration, sourcesWithRefinementsState.refinedConfigurations, messageCollector, reportingState
             )
 
+            // script dependencies and changed options stay in the environment, and imported scripts are cached by their paths
+            canReuseEnvironment = classpath.isEmpty() && newSources.isEmpty() && !isConfigurationUpdated
+
             val analysisResult = analyze(sourceFiles, environment)
 
             if (!analysisResult.shouldGenerateCode) return failure("no code to generate")
@@ -149,13 +167,17 @@ class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvm
 
             return ResultWithDiagnostics.Success(compiledScript, messageCollector.diagnostics)
         } catch (ex: Throwable) {
+            canReuseEnvironment = false
             return failure(ex.asDiagnostics(path = script.locationId))
         } finally {
+            if (pooledEnvironment != null) {
+                environmentPool?.release(pooledEnvironment, canReuseEnvironment)
+            }
             disposable.dispose()
         }
     }
 
-    private class SourcesWithRefinedConfigurations(rootScript: SourceCode) {
+    internal class SourcesWithRefinedConfigurations(val rootScript: SourceCode) {
         val knownSources = hashSetOf(rootScript)
         val refinedConfigurations = hashMapOf<SourceCode, ScriptCompilationConfiguration>()
     }
@@ -164,21 +186,24 @@ class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvm
         var currentArguments = K2JVMCompilerArguments()
     }
 
+    // the state is obtained on every call, since a pooled environment keeps the definition between compilations
     private fun makeScriptDefinition(
         scriptCompilationConfiguration: ScriptCompilationConfiguration,
-        mainScript: SourceCode,
-        sourcsesWithConfigurationsState: SourcesWithRefinedConfigurations
+        currentSources: () -> SourcesWithRefinedConfigurations
     ): BridgeScriptDefinition =
         BridgeScriptDefinition(
             scriptCompilationConfiguration,
             hostConfiguration,
             { script, updatedConfiguration ->
+                val sourcsesWithConfigurationsState = currentSources()
                 sourcsesWithConfigurationsState.refinedConfigurations[script] = updatedConfiguration
                 updatedConfiguration[ScriptCompilationConfiguration.importScripts]?.let {
                     sourcsesWithConfigurationsState.knownSources.addAll(it)
                 }
             },
             { scriptContents ->
+                val sourcsesWithConfigurationsState = currentSources()
+                val mainScript = sourcsesWithConfigurationsState.rootScript
                 val name = scriptContents.file?.name
                 sourcsesWithConfigurationsState.knownSources.find {
                     // TODO: consider using merged text (likely should be cached)
@@ -290,7 +315,7 @@ class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvm
             refinedScriptCompilationConfigurations: HashMap<SourceCode, ScriptCompilationConfiguration>,
             messageCollector: ScriptDiagnosticsMessageCollector,
             reportingState: ReportingState
-        ) {
+        ): Boolean {
             val updatedCompilerOptions = refinedScriptCompilationConfigurations.flatMap {
                 it.value[ScriptCompilationConfiguration.compilerOptions] ?: emptyList()
             }
@@ -309,7 +334,9 @@ class KJvmCompilerImpl(val hostConfiguration: ScriptingHostConfiguration) : KJvm
                 setupJvmSpecificArguments(updatedArguments)
 
                 configureAdvancedJvmOptions(updatedArguments)
+                return true
             }
+            return false
         }
 
         private fun analyze(sourceFiles: Collection<KtFile>, environment: KotlinCoreEnvironment): AnalysisResult {
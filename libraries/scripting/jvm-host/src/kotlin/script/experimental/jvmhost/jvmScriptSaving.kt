@@ -8,6 +8,7 @@ package kotlin.script.experimental.jvmhost
 import org.jetbrains.kotlin.utils.KotlinPaths
 import java.io.*
 import java.util.jar.JarEntry
+import java.util.jar.JarFile
 import java.util.jar.JarOutputStream
 import java.util.jar.Manifest
 import kotlin.script.experimental.api.*
@@ -60,28 +61,52 @@ fun KJvmCompiledScript<*>.saveToJar(outputJar: File) {
     )
     val dependencies = (dependenciesFromScript + dependenciesForMain).distinct()
     FileOutputStream(outputJar).use { fileStream ->
-        val manifest = Manifest()
-        manifest.mainAttributes.apply {
-            putValue("Manifest-Version", "1.0")
-            putValue("Created-By", "JetBrains Kotlin")
-            if (dependencies.isNotEmpty()) {
-                // TODO: implement options for various cases - paths as is (now), absolute paths (local execution only), names only (most likely as a hint only), fat jar
-                putValue("Class-Path", dependencies.joinToString(" "))
-            }
-            putValue("Main-Class", scriptClassFQName)
-        }
-        // TODO: fat jar/dependencies
-        val jarStream = JarOutputStream(fileStream, manifest)
-        jarStream.putNextEntry(JarEntry(scriptMetadataPath(scriptClassFQName)))
-        jarStream.write(copyWithoutModule().toBytes())
-        for ((path, bytes) in module.compilerOutputFiles) {
-            jarStream.putNextEntry(JarEntry(path))
-            jarStream.write(bytes)
+        writeJar(module, fileStream, dependencies)
+    }
+}
+
+internal fun KJvmCompiledScript<*>.writeJar(module: KJvmCompiledModuleInMemory, outputStream: OutputStream, dependencies: List<File>) {
+    val manifest = Manifest()
+    manifest.mainAttributes.apply {
+        putValue("Manifest-Version", "1.0")
+        putValue("Created-By", "JetBrains Kotlin")
+        if (dependencies.isNotEmpty()) {
+            // TODO: implement options for various cases - paths as is (now), absolute paths (local execution only), names only (most likely as a hint only), fat jar
+            putValue("Class-Path", dependencies.joinToString(" "))
         }
-        jarStream.finish()
+        putValue("Main-Class", scriptClassFQName)
     }
+    // TODO: fat jar/dependencies
+    val jarStream = JarOutputStream(outputStream, manifest)
+    jarStream.putNextEntry(JarEntry(scriptMetadataPath(scriptClassFQName)))
+    jarStream.write(copyWithoutModule().toBytes())
+    for ((path, bytes) in module.compilerOutputFiles) {
+        jarStream.putNextEntry(JarEntry(path))
+        jarStream.write(bytes)
+    }
+    jarStream.finish()
 }
 
+/**
+ * Loads a script saved by [saveToJar]. The classes of the script are read into memory, so the jar is not kept open.
+ * Returns null if the jar doesn't contain a script.
+ */
+fun File.loadScriptFromJar(): KJvmCompiledScript<*>? =
+    JarFile(this).use { jar ->
+        val scriptClassFQName = jar.manifest?.mainAttributes?.getValue("Main-Class") ?: return null
+        val metadataEntry = jar.getJarEntry(scriptMetadataPath(scriptClassFQName)) ?: return null
+        val script = jar.getInputStream(metadataEntry).use {
+            ObjectInputStream(it).readObject() as? KJvmCompiledScript<*>
+        } ?: return null
+        val compilerOutputFiles = HashMap<String, ByteArray>()
+        for (entry in jar.entries()) {
+            if (entry.isDirectory || entry.name == JarFile.MANIFEST_NAME || entry.name == metadataEntry.name) continue
+            compilerOutputFiles[entry.name] = jar.getInputStream(entry).use { it.readBytes() }
+        }
+        script.compiledModule = KJvmCompiledModuleInMemory(compilerOutputFiles)
+        script
+    }
+
 open class BasicJvmScriptJarGenerator(val outputJar: File) : ScriptEvaluator {
 
     override suspend operator fun invoke(
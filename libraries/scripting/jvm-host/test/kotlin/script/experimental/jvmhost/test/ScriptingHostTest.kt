@@ -24,6 +24,9 @@ import kotlin.script.experimental.jvm.BasicJvmScriptEvaluator
 import kotlin.script.experimental.jvm.defaultJvmScriptingHostConfiguration
 import kotlin.script.experimental.jvmhost.*
 import kotlin.script.experimental.jvmhost.impl.CompiledScriptClassLoader
+import kotlin.script.experimental.jvmhost.impl.KJvmCompilerEnvironmentPool
+import kotlin.script.experimental.jvmhost.impl.KJvmCompilerImpl
+import kotlin.script.experimental.jvmhost.impl.withDefaults
 import kotlin.script.experimental.jvm.impl.KJvmCompiledScript
 import kotlin.script.templates.standard.SimpleScriptTemplate
 
@@ -322,6 +325,99 @@ class ScriptingHostTest : TestCase() {
         }
     }
 
+    @Test
+    fun testJarsCache() {
+        val script = "val x = 1\nprintln(\"x = \$x\")"
+        val expectedOutput = listOf("x = 1")
+        val cacheDir = Files.createTempDirectory("scriptingTestJarsCache").toFile()
+        try {
+            val cache = JarsCacheWithCounters(cacheDir)
+            checkWithCache(cache, script, expectedOutput)
+            Assert.assertEquals(1, cacheDir.listFiles().count { it.name.endsWith(".jar") })
+
+            // a new instance of the cache, e.g. in another process, finds the script
+            val otherCache = JarsCacheWithCounters(cacheDir)
+            val scriptCompilationConfiguration = createJvmCompilationConfigurationFromTemplate<SimpleScriptTemplate>()
+            val cachedScript = otherCache.get(script.toScriptSource(), scriptCompilationConfiguration)
+            Assert.assertNotNull(cachedScript)
+            val output = captureOut {
+                runBlocking { BasicJvmScriptEvaluator()(cachedScript!!).throwOnFailure() }
+            }.lines()
+            Assert.assertEquals(expectedOutput, output)
+        } finally {
+            cacheDir.deleteRecursively()
+        }
+    }
+
+    @Test
+    fun testSimpleImportWithJarsCache() {
+        val script = "println(\"Hello from imported \$helloScriptName script!\")"
+        val expectedOutput = listOf("Hello from helloWithVal script!", "Hello from imported helloWithVal script!")
+        val cacheDir = Files.createTempDirectory("scriptingTestJarsCache").toFile()
+        try {
+            checkWithCache(JarsCacheWithCounters(cacheDir), script, expectedOutput) { makeSimpleConfigurationWithTestImport() }
+        } finally {
+            cacheDir.deleteRecursively()
+        }
+    }
+
+    @Test
+    fun testJarsCacheEvictionAndCorruptedEntries() {
+        val cacheDir = Files.createTempDirectory("scriptingTestJarsCache").toFile()
+        try {
+            val cache = JarsCacheWithCounters(cacheDir, maxEntries = 2)
+            val compiler = JvmScriptCompiler(defaultJvmScriptingHostConfiguration, cache = cache)
+            val scriptCompilationConfiguration = createJvmCompilationConfigurationFromTemplate<SimpleScriptTemplate>()
+            val scripts = (1..3).map { "val x = $it" }
+            fun jars() = cacheDir.listFiles().filter { it.name.endsWith(".jar") }
+
+            for (script in scripts) {
+                runBlocking { compiler(script.toScriptSource(), scriptCompilationConfiguration) }.throwOnFailure()
+                // makes the order of entries independent of the timestamp resolution
+                jars().forEach { it.setLastModified(it.lastModified() - 10_000) }
+            }
+            Assert.assertEquals(3, cache.storedScripts)
+            Assert.assertEquals(2, jars().size)
+            Assert.assertNull(cache.get(scripts[0].toScriptSource(), scriptCompilationConfiguration))
+            Assert.assertNotNull(cache.get(scripts[2].toScriptSource(), scriptCompilationConfiguration))
+
+            jars().forEach { it.writeText("corrupted") }
+            Assert.assertNull(cache.get(scripts[2].toScriptSource(), scriptCompilationConfiguration))
+            Assert.assertEquals(1, jars().size)
+        } finally {
+            cacheDir.deleteRecursively()
+        }
+    }
+
+    @Test
+    fun testJarsCacheKeys() {
+        val tmpDir = Files.createTempDirectory("scriptingTestJarsCacheKeys").toFile()
+        try {
+            val cache = JarsCacheWithCounters(File(tmpDir, "cache"))
+            val script = "val x = 1".toScriptSource()
+            fun hash(body: ScriptCompilationConfiguration.Builder.() -> Unit) =
+                cache.scriptHash(script, createJvmCompilationConfigurationFromTemplate<SimpleScriptTemplate>(body = body))
+
+            val imported1 = File(tmpDir, "imported1.kts").apply { writeText("val y = 1") }
+            val imported2 = File(tmpDir, "imported2.kts").apply { writeText("val y = 2") }
+            val imported3 = File(tmpDir, "imported3.kts").apply { writeText("val y = 1") }
+            val importHashes = listOf(imported1, imported2, imported3).map { file -> hash { importScripts(file.toScriptSource()) } }
+            Assert.assertEquals(importHashes[0], hash { importScripts(imported1.toScriptSource()) })
+            Assert.assertEquals(3, importHashes.toSet().size)
+
+            val handlerHashes = listOf<RefineScriptCompilationConfigurationHandler>(
+                { ctx -> ctx.compilationConfiguration.asSuccess() },
+                { ctx -> ScriptCompilationConfiguration(ctx.compilationConfiguration) { defaultImports("java.io.*") }.asSuccess() }
+            ).map { handler -> hash { refineConfiguration { beforeCompiling(handler) } } }
+            Assert.assertNotEquals(handlerHashes[0], handlerHashes[1])
+
+            // values without a stable representation disable caching
+            Assert.assertNull(hash { dependencies(object : ScriptDependency {}) })
+        } finally {
+            tmpDir.deleteRecursively()
+        }
+    }
+
     private fun checkWithCache(
         cache: ScriptingCacheWithCounters, script: String, expectedOutput: List<String>,
         configurationBuilder: ScriptCompilationConfiguration.Builder.() -> Unit = {}
@@ -371,6 +467,29 @@ class ScriptingHostTest : TestCase() {
         Assert.assertEquals(output, output3)
     }
 
+    @Test
+    fun testPooledCompilerEnvironments() {
+        val scriptCompilationConfiguration = createJvmCompilationConfigurationFromTemplate<SimpleScriptTemplate>()
+        KJvmCompilerEnvironmentPool(maxIdleEnvironments = 1).use { pool ->
+            val compiler = JvmScriptCompiler(
+                defaultJvmScriptingHostConfiguration,
+                KJvmCompilerImpl(defaultJvmScriptingHostConfiguration.withDefaults(), pool)
+            )
+            val host = BasicJvmScriptingHost(compiler = compiler)
+
+            fun eval(script: String) = host.eval(script.toScriptSource(), scriptCompilationConfiguration, null)
+
+            Assert.assertEquals("x = 1", captureOut { eval("val x = 1\nprintln(\"x = \$x\")").throwOnFailure() })
+
+            val failure = eval("val y: Int = \"\"")
+            Assert.assertTrue(failure is ResultWithDiagnostics.Failure)
+            Assert.assertTrue(failure.reports.any { it.severity == ScriptDiagnostic.Severity.ERROR && it.message.contains("Type mismatch") })
+
+            // neither the declarations nor the errors of the previous scripts are visible to the next ones
+            Assert.assertEquals("x = 2", captureOut { eval("val x = \"2\"\nprintln(\"x = \$x\")").throwOnFailure() })
+        }
+    }
+
     @Test
     fun testCompiledScriptClassLoader() {
         val script = "val x = 1"
@@ -526,6 +645,34 @@ private class FileBasedScriptCache(val baseDir: File) : ScriptingCacheWithCounte
         get() = _retrievedScripts
 }
 
+private class JarsCacheWithCounters(baseDir: File, maxEntries: Int = 1000) :
+    CompiledScriptJarsCache(baseDir, maxEntries), ScriptingCacheWithCounters {
+
+    fun scriptHash(script: SourceCode, scriptCompilationConfiguration: ScriptCompilationConfiguration): String? =
+        uniqueHash(script, scriptCompilationConfiguration)
+
+    override fun get(script: SourceCode, scriptCompilationConfiguration: ScriptCompilationConfiguration): CompiledScript<*>? =
+        super.get(script, scriptCompilationConfiguration)?.also { _retrievedScripts++ }
+
+    override fun store(
+        compiledScript: CompiledScript<*>,
+        script: SourceCode,
+        scriptCompilationConfiguration: ScriptCompilationConfiguration
+    ) {
+        super.store(compiledScript, script, scriptCompilationConfiguration)
+        _storedScripts++
+    }
+
+    private var _storedScripts = 0
+    private var _retrievedScripts = 0
+
+    override val storedScripts: Int
+        get() = _storedScripts
+
+    override val retrievedScripts: Int
+        get() = _retrievedScripts
+}
+
 private fun captureOut(body: () -> Unit): String = captureOutAndErr(body).first
 
 private fun captureOutAndErr(body: () -> Unit): Pair<String, String> {
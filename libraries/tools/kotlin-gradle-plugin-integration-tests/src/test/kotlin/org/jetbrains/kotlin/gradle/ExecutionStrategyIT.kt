@@ -57,6 +57,11 @@ abstract class ExecutionStrategyIT : BaseGradleIT() {
         doTestExecutionStrategy("out-of-process")
     }
 
+    @Test
+    fun testWorkerPool() {
+        doTestExecutionStrategy("worker-pool")
+    }
+
     private fun doTestExecutionStrategy(executionStrategy: String) {
         val project = Project("kotlinBuiltins")
         setupProject(project)
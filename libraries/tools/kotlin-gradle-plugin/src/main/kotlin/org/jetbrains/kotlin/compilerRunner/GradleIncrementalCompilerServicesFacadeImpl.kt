@@ -19,6 +19,7 @@ internal open class GradleCompilerServicesFacadeImpl(
     // Messages reported from non-Gradle threads are not grouped and not shown in build scans.
     // To fix this, we store all messages in a buffer, then report them from a Gradle thread
     private val compilerMessageCollector: GradleBufferingMessageCollector,
+    private val outputItemsCollector: OutputItemsCollector? = null,
     port: Int = SOCKET_ANY_FREE_PORT
 ) : UnicastRemoteObject(port, LoopbackNetworkInterface.clientLoopbackSocketFactory, LoopbackNetworkInterface.serverLoopbackSocketFactory),
     CompilerServicesFacadeBase,
@@ -34,7 +35,9 @@ internal open class GradleCompilerServicesFacadeImpl(
             }
             else -> {
                 compilerMessageCollector.reportFromDaemon(
-                    outputsCollector = null,
+                    outputsCollector = outputItemsCollector?.let { collector ->
+                        { outputFile, sourceFiles -> collector.add(sourceFiles, outputFile) }
+                    },
                     category = category,
                     severity = severity,
                     message = message,
@@ -48,6 +51,7 @@ internal open class GradleCompilerServicesFacadeImpl(
 internal class GradleIncrementalCompilerServicesFacadeImpl(
     log: KotlinLogger,
     messageCollector: GradleBufferingMessageCollector,
+    outputItemsCollector: OutputItemsCollector? = null,
     port: Int = SOCKET_ANY_FREE_PORT
-) : GradleCompilerServicesFacadeImpl(log, messageCollector, port),
+) : GradleCompilerServicesFacadeImpl(log, messageCollector, outputItemsCollector, port),
     IncrementalCompilerServicesFacade
\ No newline at end of file
@@ -13,8 +13,10 @@ import org.jetbrains.kotlin.daemon.common.*
 import org.jetbrains.kotlin.gradle.logging.*
 import org.jetbrains.kotlin.gradle.plugin.internal.state.TaskExecutionResults
 import org.jetbrains.kotlin.gradle.plugin.internal.state.TaskLoggers
+import org.jetbrains.kotlin.gradle.plugin.internal.state.TaskOutputsBackups
 import org.jetbrains.kotlin.gradle.report.BuildReportMode
 import org.jetbrains.kotlin.gradle.report.TaskExecutionResult
+import org.jetbrains.kotlin.gradle.tasks.TaskOutputsBackup
 import org.jetbrains.kotlin.gradle.tasks.clearLocalState
 import org.jetbrains.kotlin.gradle.tasks.throwGradleExceptionIfError
 import org.jetbrains.kotlin.gradle.utils.stackTraceAsString
@@ -111,7 +113,27 @@ internal class GradleKotlinCompilerWork @Inject constructor(
     private val isIncremental: Boolean
         get() = incrementalCompilationEnvironment != null
 
+    // the backup of outputs taken by the task, which is owned by the work until it is completed
+    private var outputsBackup: TaskOutputsBackup? = null
+
     override fun run() {
+        val outputsBackup = TaskOutputsBackups.remove(taskPath)
+        this.outputsBackup = outputsBackup
+        try {
+            runImpl()
+        } catch (t: Throwable) {
+            if (outputsBackup != null) {
+                log.logTime("Restoring previous outputs on error") {
+                    outputsBackup.restoreOutputs()
+                }
+            }
+            throw t
+        } finally {
+            outputsBackup?.deleteSnapshot()
+        }
+    }
+
+    private fun runImpl() {
         val messageCollector = GradlePrintingMessageCollector(log)
         val exitCode = compileWithDaemonOrFallbackImpl(messageCollector)
         if (incrementalCompilationEnvironment?.disableMultiModuleIC == true) {
@@ -137,6 +159,14 @@ internal class GradleKotlinCompilerWork @Inject constructor(
             } else {
                 log.warn("Could not connect to kotlin daemon. Using fallback strategy.")
             }
+        } else if (executionStrategy == WORKER_POOL_EXECUTION_STRATEGY) {
+            val workerExitCode = compileWithWorkerPool(messageCollector)
+
+            if (workerExitCode != null) {
+                return workerExitCode
+            } else {
+                log.warn("Could not compile with Kotlin compiler worker. Using fallback strategy.")
+            }
         }
 
         val isGradleDaemonUsed = System.getProperty("org.gradle.daemon")?.let(String::toBoolean)
@@ -254,12 +284,16 @@ internal class GradleKotlinCompilerWork @Inject constructor(
             null -> null
         }?.let { requestedCompilationResults.add(it) }
 
+        // other execution strategies are non-incremental and delete all outputs before the compilation,
+        // so only the daemon reports outputs which may be written into files linked to their backups
+        val outputItemsCollector = outputsBackup?.outputItemsCollector
+
         val compilationOptions = IncrementalCompilationOptions(
             areFileChangesKnown = knownChangedFiles != null,
             modifiedFiles = knownChangedFiles?.modified,
             deletedFiles = knownChangedFiles?.removed,
             workingDir = icEnv.workingDir,
-            reportCategories = reportCategories(isVerbose),
+            reportCategories = reportCategories(isVerbose, reportOutputs = outputItemsCollector != null),
             reportSeverity = reportSeverity(isVerbose),
             requestedCompilationResults = requestedCompilationResults.map { it.code }.toTypedArray(),
             compilerMode = CompilerMode.INCREMENTAL_COMPILER,
@@ -272,7 +306,7 @@ internal class GradleKotlinCompilerWork @Inject constructor(
         )
 
         log.info("Options for KOTLIN DAEMON: $compilationOptions")
-        val servicesFacade = GradleIncrementalCompilerServicesFacadeImpl(log, bufferingMessageCollector)
+        val servicesFacade = GradleIncrementalCompilerServicesFacadeImpl(log, bufferingMessageCollector, outputItemsCollector)
         val compilationResults = GradleCompilationResults(log, projectRootFile)
         val result = daemon.compile(sessionId, compilerArgs, compilationOptions, servicesFacade, compilationResults)
 
@@ -301,6 +335,31 @@ internal class GradleKotlinCompilerWork @Inject constructor(
         }
     }
 
+    private fun compileWithWorkerPool(messageCollector: MessageCollector): ExitCode? {
+        clearLocalState(outputFiles, log, reason = "$WORKER_POOL_EXECUTION_STRATEGY execution strategy is non-incremental")
+
+        val response = try {
+            KotlinCompilerWorkerPool.instance.compile(taskPath, compilerFullClasspath, compilerClassName, compilerArgs, log)
+        } catch (e: IOException) {
+            log.error("Caught an exception trying to compile with Kotlin compiler worker:")
+            log.error(e.stackTraceAsString())
+            return null
+        }
+
+        val exitCode = ExitCode.valueOf(response.exitCode)
+        val stream = ByteArrayOutputStream(response.output.size).apply { write(response.output) }
+        processCompilerOutput(messageCollector, OutputItemsCollectorImpl(), stream, exitCode)
+        log.logFinish(WORKER_POOL_EXECUTION_STRATEGY)
+
+        reportExecutionResultIfNeeded {
+            TaskExecutionResult(
+                executionStrategy = WORKER_POOL_EXECUTION_STRATEGY,
+                icLogLines = nonIcBuildLog("$WORKER_POOL_EXECUTION_STRATEGY execution strategy does not support incremental compilation")
+            )
+        }
+        return exitCode
+    }
+
     private fun compileInProcess(messageCollector: MessageCollector): ExitCode {
         clearLocalState(outputFiles, log, reason = "in-process execution strategy is non-incremental")
 
@@ -354,9 +413,13 @@ internal class GradleKotlinCompilerWork @Inject constructor(
         return exitCode
     }
 
-    private fun reportCategories(verbose: Boolean): Array<Int> =
+    private fun reportCategories(verbose: Boolean, reportOutputs: Boolean = false): Array<Int> =
         if (!verbose) {
-            arrayOf(ReportCategory.COMPILER_MESSAGE.code)
+            if (reportOutputs) {
+                arrayOf(ReportCategory.COMPILER_MESSAGE.code, ReportCategory.OUTPUT_MESSAGE.code)
+            } else {
+                arrayOf(ReportCategory.COMPILER_MESSAGE.code)
+            }
         } else {
             ReportCategory.values().map { it.code }.toTypedArray()
         }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.compilerRunner
+
+import org.jetbrains.kotlin.compilerRunner.KotlinCompilerWorkerProtocol.CompileRequest
+import org.jetbrains.kotlin.compilerRunner.KotlinCompilerWorkerProtocol.CompileResponse
+import java.io.*
+import java.lang.reflect.Method
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.SocketTimeoutException
+import kotlin.concurrent.thread
+import kotlin.system.exitProcess
+
+/**
+ * Entry point of a compiler worker process started by [KotlinCompilerWorkerPool].
+ *
+ * The worker is started with the compiler classpath, so the compiler classes, their JIT-compiled code and the caches kept by
+ * the compiler between compilations survive from one compilation to another. It serves a single connection and exits when
+ * the connection is closed or no request comes during the idle timeout (passed as the only argument, in milliseconds).
+ *
+ * Like [KotlinCompilerWorkerProtocol], this class may use only `java.*` and the Kotlin standard library.
+ */
+object KotlinCompilerWorker {
+    private const val CONNECTION_TIMEOUT_MS = 60 * 1000
+    private const val SERVICES_CLASS_NAME = "org.jetbrains.kotlin.config.Services"
+    private const val INTERNAL_ERROR_EXIT_CODE = "INTERNAL_ERROR"
+
+    private val execMethods = HashMap<String, Method>()
+
+    @JvmStatic
+    fun main(args: Array<String>) {
+        val idleTimeoutMs = args.firstOrNull()?.toIntOrNull() ?: 0
+        // the token prevents other local processes from connecting to the worker, it is not passed as an argument to keep it private
+        val token = System.`in`.bufferedReader().readLine() ?: exitProcess(1)
+
+        try {
+            serve(token, idleTimeoutMs)
+        } catch (e: IOException) {
+            // the client has gone
+        }
+        exitProcess(0)
+    }
+
+    private fun serve(token: String, idleTimeoutMs: Int) {
+        val socket = ServerSocket(0, 1, InetAddress.getLoopbackAddress()).use { serverSocket ->
+            serverSocket.soTimeout = CONNECTION_TIMEOUT_MS
+            println(KotlinCompilerWorkerProtocol.PORT_ANNOUNCEMENT_PREFIX + serverSocket.localPort)
+            System.out.flush()
+            serverSocket.accept()
+        }
+
+        socket.use {
+            socket.soTimeout = idleTimeoutMs
+            socket.tcpNoDelay = true
+            val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+            val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+
+            if (!KotlinCompilerWorkerProtocol.readHandshake(input, token)) return
+            KotlinCompilerWorkerProtocol.writeHandshakeReply(output)
+
+            while (true) {
+                val request = try {
+                    KotlinCompilerWorkerProtocol.readRequest(input)
+                } catch (e: SocketTimeoutException) {
+                    null
+                } catch (e: EOFException) {
+                    null
+                } ?: return
+
+                KotlinCompilerWorkerProtocol.writeCompileResponse(output, compile(request))
+            }
+        }
+    }
+
+    private fun compile(request: CompileRequest): CompileResponse {
+        val stream = ByteArrayOutputStream()
+        var exitCode = INTERNAL_ERROR_EXIT_CODE
+
+        // the compiler is run in a separate thread to avoid leaking thread locals between compilations (see KT-28037)
+        val compilerThread = thread(name = "Kotlin compiler") {
+            try {
+                val exec = execMethods.getOrPut(request.compilerClassName) { findExecMethod(request.compilerClassName) }
+                val services = Class.forName(SERVICES_CLASS_NAME).getField("EMPTY").get(null)
+                PrintStream(stream).use { out ->
+                    exitCode = exec.invoke(exec.declaringClass.newInstance(), out, services, request.args).toString()
+                }
+            } catch (e: Throwable) {
+                // the output is reported by the client, while the stderr of the worker only goes to the log
+                PrintStream(stream).use { e.printStackTrace(it) }
+            }
+        }
+        compilerThread.join()
+
+        return CompileResponse(exitCode, stream.toByteArray())
+    }
+
+    private fun findExecMethod(compilerClassName: String): Method {
+        val servicesClass = Class.forName(SERVICES_CLASS_NAME)
+        val compilerClass = Class.forName(compilerClassName)
+        return compilerClass.getMethod("execAndOutputXml", PrintStream::class.java, servicesClass, Array<String>::class.java)
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.compilerRunner
+
+import org.jetbrains.kotlin.cli.common.KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY
+import org.jetbrains.kotlin.compilerRunner.KotlinCompilerWorkerProtocol.CompileRequest
+import org.jetbrains.kotlin.compilerRunner.KotlinCompilerWorkerProtocol.CompileResponse
+import org.jetbrains.kotlin.daemon.client.DaemonReportingTargets
+import org.jetbrains.kotlin.daemon.client.launchProcessWithFallback
+import org.jetbrains.kotlin.gradle.logging.GradlePrintingMessageCollector
+import org.jetbrains.kotlin.gradle.logging.kotlinDebug
+import org.slf4j.LoggerFactory
+import java.io.*
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.net.SocketTimeoutException
+import java.util.*
+import kotlin.concurrent.thread
+
+internal const val KOTLIN_COMPILER_WORKERS_MAX_PROPERTY = "kotlin.compiler.workers.max"
+internal const val KOTLIN_COMPILER_WORKERS_JVM_ARGS_PROPERTY = "kotlin.compiler.workers.jvm.args"
+
+/**
+ * Pool of compiler processes used by the [WORKER_POOL_EXECUTION_STRATEGY].
+ *
+ * Unlike the daemon, the workers belong to the build process: they are started on demand, are not shared with other builds,
+ * and exit when the build process exits or when they are idle for [idleTimeoutMs].
+ * Unlike the out-of-process strategy, a worker is reused by subsequent compilations with the same compiler classpath,
+ * so they don't pay for the JVM startup and the compiler warmup.
+ *
+ * At most [maxWorkers] workers are running at the same time. A task is compiled by the worker which has compiled it previously
+ * if that worker is idle, because the worker already holds the caches for the classpath of the module.
+ */
+internal class KotlinCompilerWorkerPool(
+    private val maxWorkers: Int,
+    private val jvmArgs: List<String>,
+    private val idleTimeoutMs: Int
+) : Closeable {
+    private data class ClasspathEntry(val file: File, val lastModified: Long, val length: Long)
+
+    private class Worker(val classpath: List<ClasspathEntry>, val process: Process, val socket: Socket) {
+        private val input = DataInputStream(BufferedInputStream(socket.getInputStream()))
+        private val output = DataOutputStream(BufferedOutputStream(socket.getOutputStream()))
+
+        val isAlive: Boolean
+            get() = process.isAlive && !socket.isClosed
+
+        fun handshake(token: String) {
+            socket.soTimeout = HANDSHAKE_TIMEOUT_MS
+            KotlinCompilerWorkerProtocol.writeHandshake(output, token)
+            KotlinCompilerWorkerProtocol.readHandshakeReply(input)
+            socket.soTimeout = 0
+        }
+
+        fun compile(request: CompileRequest): CompileResponse {
+            KotlinCompilerWorkerProtocol.writeCompileRequest(output, request)
+            awaitResponse()
+            return KotlinCompilerWorkerProtocol.readCompileResponse(input)
+        }
+
+        // A compilation may take any time, so there is no timeout for it, but the worker process is checked while it runs.
+        // The response is read without a timeout, because a timeout in the middle of it would break the framing.
+        private fun awaitResponse() {
+            socket.soTimeout = PROCESS_CHECK_INTERVAL_MS
+            try {
+                while (true) {
+                    try {
+                        input.mark(1)
+                        if (input.read() < 0) throw EOFException("Kotlin compiler worker has closed the connection")
+                        input.reset()
+                        return
+                    } catch (e: SocketTimeoutException) {
+                        if (!process.isAlive) throw IOException("Kotlin compiler worker has exited during the compilation")
+                    }
+                }
+            } finally {
+                socket.soTimeout = 0
+            }
+        }
+
+        fun shutdown() {
+            try {
+                KotlinCompilerWorkerProtocol.writeShutdownRequest(output)
+            } catch (e: IOException) {
+            }
+            socket.close()
+        }
+
+        fun kill() {
+            socket.close()
+            process.destroy()
+        }
+    }
+
+    private val lock = Object()
+    private val workers = HashSet<Worker>()
+    // idle workers in the order of release, the least recently used ones go first
+    private val idleWorkers = ArrayList<Worker>()
+    private val lastWorkerByTask = HashMap<String, Worker>()
+    // workers which are being started are counted too
+    private var workersCount = 0
+    private var isClosed = false
+
+    /**
+     * Compiles [args] with a worker, starting a new one if needed.
+     * Throws [IOException] if a worker couldn't be started or has crashed during the compilation.
+     */
+    fun compile(
+        taskPath: String,
+        compilerClasspath: List<File>,
+        compilerClassName: String,
+        args: Array<String>,
+        log: KotlinLogger
+    ): CompileResponse {
+        val classpath = compilerClasspath.map { ClasspathEntry(it, it.lastModified(), it.length()) }
+        val worker = acquire(taskPath, classpath, log)
+
+        var isReusable = false
+        try {
+            val response = worker.compile(CompileRequest(compilerClassName, args))
+            isReusable = true
+            return response
+        } finally {
+            release(worker, taskPath, isReusable)
+        }
+    }
+
+    private fun acquire(taskPath: String, classpath: List<ClasspathEntry>, log: KotlinLogger): Worker {
+        val toShutdown = ArrayList<Worker>()
+        try {
+            synchronized(lock) {
+                while (true) {
+                    if (isClosed) throw IOException("Kotlin compiler worker pool is closed")
+
+                    idleWorkers.filter { !it.isAlive }.forEach {
+                        removeWorker(it)
+                        toShutdown.add(it)
+                    }
+
+                    val worker = lastWorkerByTask[taskPath]?.takeIf { it.classpath == classpath && it in idleWorkers }
+                        ?: idleWorkers.lastOrNull { it.classpath == classpath }
+                    if (worker != null) {
+                        idleWorkers.remove(worker)
+                        log.kotlinDebug { "Using Kotlin compiler worker ${worker.socket.port} for $taskPath" }
+                        return worker
+                    }
+
+                    if (workersCount >= maxWorkers) {
+                        // a worker with another compiler classpath is useless for this task
+                        val eldest = idleWorkers.firstOrNull()
+                        if (eldest != null) {
+                            removeWorker(eldest)
+                            toShutdown.add(eldest)
+                        }
+                    }
+
+                    if (workersCount < maxWorkers) {
+                        workersCount++
+                        break
+                    }
+
+                    lock.wait()
+                }
+            }
+        } finally {
+            toShutdown.forEach { it.shutdown() }
+        }
+
+        val worker = try {
+            startWorker(classpath, log)
+        } catch (e: Throwable) {
+            synchronized(lock) {
+                workersCount--
+                lock.notifyAll()
+            }
+            throw e
+        }
+
+        synchronized(lock) {
+            if (isClosed) {
+                worker.kill()
+                throw IOException("Kotlin compiler worker pool is closed")
+            }
+            workers.add(worker)
+        }
+        return worker
+    }
+
+    private fun release(worker: Worker, taskPath: String, isReusable: Boolean) {
+        synchronized(lock) {
+            if (isReusable && !isClosed && worker.isAlive) {
+                idleWorkers.add(worker)
+                lastWorkerByTask[taskPath] = worker
+            } else {
+                removeWorker(worker)
+                worker.kill()
+            }
+            lock.notifyAll()
+        }
+    }
+
+    private fun removeWorker(worker: Worker) {
+        if (workers.remove(worker)) workersCount--
+        idleWorkers.remove(worker)
+        lastWorkerByTask.values.removeAll { it === worker }
+    }
+
+    private fun startWorker(classpath: List<ClasspathEntry>, log: KotlinLogger): Worker {
+        val javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java"
+        // classes of the worker are taken from the plugin, but the compiler classes should win
+        val workerClasspath = classpath.map { it.file } + File(KotlinCompilerWorker::class.java.protectionDomain.codeSource.location.toURI())
+        val command = listOf(javaBin) + jvmArgs + listOf(
+            "-D$KOTLIN_COMPILER_ENVIRONMENT_KEEPALIVE_PROPERTY=true",
+            "-cp", workerClasspath.joinToString(separator = File.pathSeparator) { it.absolutePath },
+            KotlinCompilerWorker::class.java.name,
+            idleTimeoutMs.toString()
+        )
+        log.kotlinDebug { "Starting Kotlin compiler worker: ${command.joinToString(" ")}" }
+
+        val process = launchProcessWithFallback(
+            ProcessBuilder(command),
+            DaemonReportingTargets(messageCollector = GradlePrintingMessageCollector(log))
+        )
+        try {
+            val token = UUID.randomUUID().toString()
+            process.outputStream.bufferedWriter().use {
+                it.write(token)
+                it.newLine()
+            }
+
+            val stdout = process.inputStream.bufferedReader()
+            val port = generateSequence { stdout.readLine() }
+                .firstOrNull { it.startsWith(KotlinCompilerWorkerProtocol.PORT_ANNOUNCEMENT_PREFIX) }
+                ?.removePrefix(KotlinCompilerWorkerProtocol.PORT_ANNOUNCEMENT_PREFIX)?.toIntOrNull()
+                ?: throw IOException("Kotlin compiler worker has exited before accepting connections")
+
+            // important to read the streams, otherwise the process may hang on some systems
+            drainStream(stdout, "Kotlin compiler worker $port stdout") { workerLogger.info(it) }
+            drainStream(process.errorStream.bufferedReader(), "Kotlin compiler worker $port stderr") { workerLogger.warn(it) }
+
+            val socket = Socket()
+            socket.connect(InetSocketAddress(InetAddress.getLoopbackAddress(), port), HANDSHAKE_TIMEOUT_MS)
+            socket.tcpNoDelay = true
+            val worker = Worker(classpath, process, socket)
+            worker.handshake(token)
+            return worker
+        } catch (e: Throwable) {
+            process.destroy()
+            throw e
+        }
+    }
+
+    private fun drainStream(reader: BufferedReader, threadName: String, log: (String) -> Unit) {
+        thread(isDaemon = true, name = threadName) {
+            try {
+                reader.forEachLine(log)
+            } catch (e: IOException) {
+                // the worker was killed
+            }
+        }
+    }
+
+    override fun close() {
+        val toClose = synchronized(lock) {
+            isClosed = true
+            lock.notifyAll()
+            workers.toList()
+        }
+        // busy workers are killed too, their compilations will fail with an IOException
+        toClose.forEach { it.kill() }
+    }
+
+    companion object {
+        private const val DEFAULT_IDLE_TIMEOUT_MS = 10 * 60 * 1000
+        private const val HANDSHAKE_TIMEOUT_MS = 60 * 1000
+        private const val PROCESS_CHECK_INTERVAL_MS = 1000
+
+        private val workerLogger = LoggerFactory.getLogger("KotlinCompilerWorker")
+
+        val instance: KotlinCompilerWorkerPool by lazy {
+            val maxWorkers = System.getProperty(KOTLIN_COMPILER_WORKERS_MAX_PROPERTY)?.toIntOrNull()
+                ?: (Runtime.getRuntime().availableProcessors() / 2).coerceAtLeast(1)
+            val jvmArgs = System.getProperty(KOTLIN_COMPILER_WORKERS_JVM_ARGS_PROPERTY)
+                ?.split(' ')?.filter { it.isNotBlank() }
+                .orEmpty()
+
+            KotlinCompilerWorkerPool(maxWorkers, jvmArgs, DEFAULT_IDLE_TIMEOUT_MS).also { pool ->
+                Runtime.getRuntime().addShutdownHook(thread(start = false, name = "Kotlin compiler worker pool shutdown") { pool.close() })
+            }
+        }
+    }
+}
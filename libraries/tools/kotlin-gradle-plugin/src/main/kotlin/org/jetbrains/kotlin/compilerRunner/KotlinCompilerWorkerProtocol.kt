@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.compilerRunner
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Messages exchanged by [KotlinCompilerWorkerPool] and [KotlinCompilerWorker] over a loopback socket.
+ *
+ * A connection starts with a handshake: the client sends the protocol version and the token it passed to the worker through stdin,
+ * the worker answers with its version. Then the client sends requests one by one, and the worker answers each compilation request
+ * with the exit code and the XML output of the compiler.
+ *
+ * Only `java.*` and the Kotlin standard library may be used here, because this code is also loaded by the worker,
+ * whose classpath is the compiler classpath.
+ */
+internal object KotlinCompilerWorkerProtocol {
+    const val VERSION = 1
+    const val PORT_ANNOUNCEMENT_PREFIX = "Kotlin compiler worker is listening on port "
+
+    private const val COMPILE_REQUEST: Byte = 1
+    private const val SHUTDOWN_REQUEST: Byte = 2
+
+    class CompileRequest(val compilerClassName: String, val args: Array<String>)
+
+    class CompileResponse(val exitCode: String, val output: ByteArray)
+
+    fun writeHandshake(output: DataOutputStream, token: String) {
+        output.writeInt(VERSION)
+        output.writeString(token)
+        output.flush()
+    }
+
+    fun readHandshake(input: DataInputStream, expectedToken: String): Boolean =
+        input.readInt() == VERSION && input.readString() == expectedToken
+
+    fun writeHandshakeReply(output: DataOutputStream) {
+        output.writeInt(VERSION)
+        output.flush()
+    }
+
+    fun readHandshakeReply(input: DataInputStream) {
+        val version = input.readInt()
+        if (version != VERSION) throw IOException("Unsupported version of Kotlin compiler worker protocol: $version")
+    }
+
+    fun writeCompileRequest(output: DataOutputStream, request: CompileRequest) {
+        output.writeByte(COMPILE_REQUEST.toInt())
+        output.writeString(request.compilerClassName)
+        output.writeInt(request.args.size)
+        request.args.forEach { output.writeString(it) }
+        output.flush()
+    }
+
+    fun writeShutdownRequest(output: DataOutputStream) {
+        output.writeByte(SHUTDOWN_REQUEST.toInt())
+        output.flush()
+    }
+
+    /**
+     * Returns `null` if the client asked the worker to shut down.
+     */
+    fun readRequest(input: DataInputStream): CompileRequest? =
+        when (val kind = input.readByte()) {
+            COMPILE_REQUEST -> {
+                val compilerClassName = input.readString()
+                val args = Array(input.readInt()) { input.readString() }
+                CompileRequest(compilerClassName, args)
+            }
+            SHUTDOWN_REQUEST -> null
+            else -> throw IOException("Unknown Kotlin compiler worker request: $kind")
+        }
+
+    fun writeCompileResponse(output: DataOutputStream, response: CompileResponse) {
+        output.writeString(response.exitCode)
+        output.writeInt(response.output.size)
+        output.write(response.output)
+        output.flush()
+    }
+
+    fun readCompileResponse(input: DataInputStream): CompileResponse {
+        val exitCode = input.readString()
+        val output = ByteArray(input.readInt())
+        input.readFully(output)
+        return CompileResponse(exitCode, output)
+    }
+
+    // DataOutput.writeUTF is limited to 64K bytes, which is not enough e.g. for classpath arguments
+    private fun DataOutputStream.writeString(value: String) {
+        val bytes = value.toByteArray(Charsets.UTF_8)
+        writeInt(bytes.size)
+        write(bytes)
+    }
+
+    private fun DataInputStream.readString(): String {
+        val bytes = ByteArray(readInt())
+        readFully(bytes)
+        return String(bytes, Charsets.UTF_8)
+    }
+}
@@ -27,6 +27,7 @@ import org.jetbrains.kotlin.compilerRunner.GradleCompilerRunner
 import org.jetbrains.kotlin.gradle.logging.kotlinDebug
 import org.jetbrains.kotlin.gradle.plugin.internal.state.TaskExecutionResults
 import org.jetbrains.kotlin.gradle.plugin.internal.state.TaskLoggers
+import org.jetbrains.kotlin.gradle.plugin.internal.state.TaskOutputsBackups
 import org.jetbrains.kotlin.gradle.report.configureBuildReporter
 import org.jetbrains.kotlin.gradle.utils.relativeToRoot
 import org.jetbrains.kotlin.utils.addToStdlib.sumByLong
@@ -78,6 +79,7 @@ internal class KotlinGradleBuildServices private constructor(
 
         TaskLoggers.clear()
         TaskExecutionResults.clear()
+        TaskOutputsBackups.clear()
 
         configureBuildReporter(gradle, log)
     }
@@ -85,6 +87,7 @@ internal class KotlinGradleBuildServices private constructor(
     override fun buildFinished(result: BuildResult) {
         TaskLoggers.clear()
         TaskExecutionResults.clear()
+        TaskOutputsBackups.clear()
 
         val gradle = result.gradle!!
         GradleCompilerRunner.clearBuildModulesInfo()
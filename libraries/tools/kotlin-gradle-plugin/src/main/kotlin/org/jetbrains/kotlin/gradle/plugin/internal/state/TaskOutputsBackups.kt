@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.gradle.plugin.internal.state
+
+import org.jetbrains.kotlin.gradle.tasks.TaskOutputsBackup
+import java.util.HashMap
+
+// Passes backups of task outputs from tasks to the compiler work, which may be executed asynchronously
+internal object TaskOutputsBackups {
+    private val backups = HashMap<String, TaskOutputsBackup>()
+
+    @Synchronized
+    fun put(path: String, backup: TaskOutputsBackup) {
+        backups.put(path, backup)?.deleteSnapshot()
+    }
+
+    @Synchronized
+    fun remove(path: String): TaskOutputsBackup? =
+        backups.remove(path)
+
+    // Deletes snapshots of the work which was never executed
+    @Synchronized
+    fun clear() {
+        backups.values.forEach { it.deleteSnapshot() }
+        backups.clear()
+    }
+}
@@ -9,8 +9,11 @@ import org.gradle.api.DefaultTask
 import org.gradle.api.file.FileCollection
 import org.gradle.api.plugins.JavaPluginConvention
 import org.gradle.api.tasks.*
+import org.gradle.api.tasks.incremental.IncrementalTaskInputs
 import org.gradle.jvm.tasks.Jar
+import org.jetbrains.kotlin.incremental.multiproject.ClassListIndex
 import java.io.File
+import java.io.IOException
 
 internal open class InspectClassesForMultiModuleIC : DefaultTask() {
     @get:Internal
@@ -22,7 +25,7 @@ internal open class InspectClassesForMultiModuleIC : DefaultTask() {
     @Suppress("MemberVisibilityCanBePrivate")
     @get:OutputFile
     internal val classesListFile: File
-        get() = File(File(project.buildDir, KOTLIN_BUILD_DIR_NAME), "${sanitizeFileName(jarTask.archiveName)}-classes.txt")
+        get() = File(File(project.buildDir, KOTLIN_BUILD_DIR_NAME), "${sanitizeFileName(jarTask.archiveName)}-classes.bin")
 
     @Suppress("MemberVisibilityCanBePrivate")
     @get:InputFiles
@@ -40,12 +43,31 @@ internal open class InspectClassesForMultiModuleIC : DefaultTask() {
         get() = jarTask.archivePath.canonicalPath
 
     @TaskAction
-    fun run() {
-        classesListFile.parentFile.mkdirs()
-        val text = classFiles.map { it.absolutePath }.sorted().joinToString(File.pathSeparator)
-        classesListFile.writeText(text)
+    fun run(inputs: IncrementalTaskInputs) {
+        val previousIndex = if (inputs.isIncremental) readClassListIndex() else null
+
+        val index = if (previousIndex != null) {
+            // only directories are indexed, so modified class files don't change the index
+            previousIndex.apply {
+                inputs.outOfDate { if (it.isAdded) addClass(it.file) }
+                inputs.removed { removeClass(it.file) }
+            }
+        } else {
+            ClassListIndex().apply {
+                classFiles.forEach { addClass(it) }
+            }
+        }
+
+        index.write(classesListFile)
     }
 
+    private fun readClassListIndex(): ClassListIndex? =
+        try {
+            ClassListIndex.read(classesListFile)
+        } catch (e: IOException) {
+            null
+        }
+
     private fun sanitizeFileName(candidate: String): String =
         candidate.filter { it.isLetterOrDigit() }
 }
\ No newline at end of file
@@ -32,8 +32,10 @@ import org.jetbrains.kotlin.gradle.plugin.COMPILER_CLASSPATH_CONFIGURATION_NAME
 import org.jetbrains.kotlin.gradle.plugin.KotlinMultiplatformPluginWrapper
 import org.jetbrains.kotlin.gradle.plugin.KotlinPlatformPluginBase
 import org.jetbrains.kotlin.gradle.plugin.PLUGIN_CLASSPATH_CONFIGURATION_NAME
+import org.jetbrains.kotlin.gradle.plugin.internal.state.TaskOutputsBackups
 import org.jetbrains.kotlin.gradle.report.BuildReportMode
 import org.jetbrains.kotlin.gradle.utils.isParentOf
+import org.jetbrains.kotlin.gradle.utils.outputsCompatible
 import org.jetbrains.kotlin.gradle.utils.pathsAsStringRelativeTo
 import org.jetbrains.kotlin.gradle.utils.toSortedPathsArray
 import org.jetbrains.kotlin.incremental.ChangedFiles
@@ -127,6 +129,9 @@ abstract class AbstractKotlinCompile<T : CommonCompilerArguments>() : AbstractKo
 
     override fun localStateDirectories(): FileCollection = project.files(taskBuildDirectory)
 
+    private val outputsBackupDirectory: File
+        get() = File(File(project.buildDir, KOTLIN_BUILD_DIR_NAME), "$name-outputs-backup")
+
     // indicates that task should compile kotlin incrementally if possible
     // it's not possible when IncrementalTaskInputs#isIncremental returns false (i.e first build)
     @get:Input
@@ -276,7 +281,7 @@ abstract class AbstractKotlinCompile<T : CommonCompilerArguments>() : AbstractKo
         val outputsBackup: TaskOutputsBackup? =
             if (incremental && inputs.isIncremental)
                 kotlinLogger.logTime("Backing up outputs for incremental build") {
-                    TaskOutputsBackup(allOutputFiles())
+                    TaskOutputsBackup(outputsCompatible.files, localStateDirectories(), outputsBackupDirectory)
                 }
             else null
 
@@ -284,13 +289,20 @@ abstract class AbstractKotlinCompile<T : CommonCompilerArguments>() : AbstractKo
             clearLocalState("IC is disabled")
         }
 
+        if (outputsBackup != null) {
+            // the compiler work takes the backup, restores outputs if it fails and deletes the snapshot when it is completed
+            TaskOutputsBackups.put(path, outputsBackup)
+        }
+
         try {
             executeImpl(inputs)
         } catch (t: Throwable) {
-            if (outputsBackup != null) {
+            // the backup is still here if the task failed before the compiler work was started
+            TaskOutputsBackups.remove(path)?.let { backup ->
                 kotlinLogger.logTime("Restoring previous outputs on error") {
-                    outputsBackup.restoreOutputs()
+                    backup.restoreOutputs()
                 }
+                backup.deleteSnapshot()
             }
             throw t
         }
@@ -307,6 +319,7 @@ abstract class AbstractKotlinCompile<T : CommonCompilerArguments>() : AbstractKo
 
         if (allKotlinSources.isEmpty()) {
             logger.kotlinDebug { "No Kotlin files found, skipping Kotlin compiler task" }
+            TaskOutputsBackups.remove(path)?.deleteSnapshot()
             return
         }
 
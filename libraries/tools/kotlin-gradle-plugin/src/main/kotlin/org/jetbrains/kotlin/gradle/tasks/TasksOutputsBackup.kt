@@ -5,44 +5,131 @@
 
 package org.jetbrains.kotlin.gradle.tasks
 
-import org.gradle.api.file.FileCollection
-import org.jetbrains.kotlin.utils.keysToMap
+import org.jetbrains.kotlin.compilerRunner.OutputItemsCollector
 import java.io.File
-import java.util.HashSet
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.*
 
-internal class TaskOutputsBackup(private val outputs: FileCollection) {
-    private val previousOutputs: Map<File, ByteArray>
+/**
+ * Keeps a snapshot of task outputs in [snapshotDir] without reading them into memory.
+ *
+ * Class files are hard linked into the snapshot, which doesn't copy any data. This is safe because incremental compilation
+ * deletes class files of dirty sources before compiling them, and other execution strategies delete all outputs,
+ * so the compiler doesn't write into a file linked to its backup.
+ * Class files which are reported by [outputItemsCollector] or whose stamp has changed are considered touched anyway.
+ * If a touched file is still linked to its backup, its previous content is lost, and the file is deleted on restore,
+ * so that Gradle doesn't trust outputs of the task during the next build.
+ *
+ * Other outputs (e.g. module mappings in META-INF or JS files) are rewritten in place by the compiler, so they are copied.
+ * The same is done for local state (incremental caches), and for class files if hard links are not supported.
+ * On restore, backups are moved back only for files which were changed, untouched class files stay as they are.
+ *
+ * The compiler may be executed asynchronously, so the snapshot is deleted by the compiler work when it is completed.
+ */
+internal class TaskOutputsBackup(
+    outputs: Iterable<File>,
+    localState: Iterable<File>,
+    private val snapshotDir: File
+) {
+    private class BackedUpFile(val file: File, val backup: File, val isLink: Boolean, val length: Long, val lastModified: Long)
+
+    private val outputRoots = outputs.toList()
+    private val localStateRoots = localState.toList()
+    private val backedUpFiles = ArrayList<BackedUpFile>()
+    private val backedUpDirs = HashSet<File>()
+    private var canCreateLinks = true
+
+    private val touchedFiles: MutableSet<File> = Collections.synchronizedSet(HashSet<File>())
+
+    val outputItemsCollector = OutputItemsCollector { _, outputFile -> touchedFiles.add(outputFile.absoluteFile) }
 
     init {
-        val outputFiles = HashSet<File>()
-        outputs.forEach {
-            if (it.isDirectory) {
-                it.walk().filterTo(outputFiles, File::isFile)
-            } else if (it.isFile) {
-                outputFiles.add(it)
+        snapshotDir.deleteRecursively()
+        snapshotDir.mkdirs()
+
+        var index = 0
+        outputRoots.forEach { backUp(it, File(snapshotDir, (index++).toString()), isOutput = true) }
+        localStateRoots.forEach { backUp(it, File(snapshotDir, (index++).toString()), isOutput = false) }
+    }
+
+    private fun backUp(root: File, backupRoot: File, isOutput: Boolean) {
+        when {
+            root.isDirectory -> {
+                for (file in root.walk().onEnter { it != snapshotDir }) {
+                    val backup = File(backupRoot, file.relativeTo(root).path)
+                    if (file.isDirectory) {
+                        backedUpDirs.add(file.absoluteFile)
+                        backup.mkdirs()
+                    } else if (file.isFile) {
+                        backUpFile(file, backup, isOutput)
+                    }
+                }
             }
+            root.isFile -> backUpFile(root, backupRoot, isOutput)
+        }
+    }
+
+    private fun backUpFile(file: File, backup: File, isOutput: Boolean) {
+        val isLink = isOutput && isDeletedBeforeWriting(file) && createLink(backup, file)
+        if (!isLink) {
+            Files.copy(file.toPath(), backup.toPath(), StandardCopyOption.COPY_ATTRIBUTES)
         }
+        backedUpFiles.add(BackedUpFile(file.absoluteFile, backup, isLink, file.length(), file.lastModified()))
+    }
+
+    private fun isDeletedBeforeWriting(file: File): Boolean =
+        file.name.endsWith(".class")
+
+    private fun createLink(link: File, existing: File): Boolean {
+        if (!canCreateLinks) return false
 
-        previousOutputs = outputFiles.keysToMap { it.readBytes() }
+        try {
+            Files.createLink(link.toPath(), existing.toPath())
+            return true
+        } catch (e: UnsupportedOperationException) {
+        } catch (e: IOException) {
+            // e.g. the snapshot is on another file system
+        }
+        canCreateLinks = false
+        return false
     }
 
     fun restoreOutputs() {
-        outputs.forEach {
-            if (it.isDirectory) {
-                it.deleteRecursively()
-            } else if (it.isFile) {
-                it.delete()
+        val files = backedUpFiles.mapTo(HashSet()) { it.file }
+
+        // files and directories created by the compiler
+        for (root in outputRoots + localStateRoots) {
+            for (file in root.walkBottomUp().onEnter { it != snapshotDir }) {
+                val absoluteFile = file.absoluteFile
+                if (file.isDirectory) {
+                    if (absoluteFile !in backedUpDirs) file.delete()
+                } else if (absoluteFile !in files) {
+                    file.delete()
+                }
             }
         }
 
-        val dirs = HashSet<File>()
-
-        for ((file, bytes) in previousOutputs) {
-            val dir = file.parentFile
-            if (dirs.add(dir)) {
-                dir.mkdirs()
+        for (backedUp in backedUpFiles) {
+            val file = backedUp.file
+            when {
+                !file.exists() -> moveBackup(backedUp)
+                !backedUp.isLink || !Files.isSameFile(file.toPath(), backedUp.backup.toPath()) -> moveBackup(backedUp)
+                file in touchedFiles || file.length() != backedUp.length || file.lastModified() != backedUp.lastModified -> {
+                    // the file was modified in place together with its backup
+                    file.delete()
+                }
             }
-            file.writeBytes(bytes)
         }
     }
+
+    private fun moveBackup(backedUp: BackedUpFile) {
+        backedUp.file.parentFile.mkdirs()
+        Files.move(backedUp.backup.toPath(), backedUp.file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+    }
+
+    fun deleteSnapshot() {
+        snapshotDir.deleteRecursively()
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.compilerRunner
+
+import org.jetbrains.kotlin.compilerRunner.KotlinCompilerWorkerProtocol.CompileRequest
+import org.jetbrains.kotlin.compilerRunner.KotlinCompilerWorkerProtocol.CompileResponse
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+
+class KotlinCompilerWorkerProtocolTest {
+    @Test
+    fun testHandshake() {
+        val input = exchange { KotlinCompilerWorkerProtocol.writeHandshake(it, "token") }
+        assertTrue(KotlinCompilerWorkerProtocol.readHandshake(input, "token"))
+
+        val otherInput = exchange { KotlinCompilerWorkerProtocol.writeHandshake(it, "token") }
+        assertFalse(KotlinCompilerWorkerProtocol.readHandshake(otherInput, "another token"))
+    }
+
+    @Test
+    fun testRequests() {
+        // longer than the limit of DataOutput.writeUTF
+        val classpath = "/path/to/library.jar:".repeat(10000)
+        val input = exchange {
+            KotlinCompilerWorkerProtocol.writeCompileRequest(it, CompileRequest("Compiler", arrayOf("-classpath", classpath, "ü.kt")))
+            KotlinCompilerWorkerProtocol.writeShutdownRequest(it)
+        }
+
+        val request = KotlinCompilerWorkerProtocol.readRequest(input)!!
+        assertEquals("Compiler", request.compilerClassName)
+        assertEquals(listOf("-classpath", classpath, "ü.kt"), request.args.toList())
+        assertNull(KotlinCompilerWorkerProtocol.readRequest(input))
+    }
+
+    @Test
+    fun testResponse() {
+        val output = "<MESSAGES></MESSAGES>".toByteArray()
+        val input = exchange { KotlinCompilerWorkerProtocol.writeCompileResponse(it, CompileResponse("OK", output)) }
+
+        val response = KotlinCompilerWorkerProtocol.readCompileResponse(input)
+        assertEquals("OK", response.exitCode)
+        assertArrayEquals(output, response.output)
+    }
+
+    private fun exchange(write: (DataOutputStream) -> Unit): DataInputStream {
+        val bytes = ByteArrayOutputStream()
+        write(DataOutputStream(bytes))
+        return DataInputStream(ByteArrayInputStream(bytes.toByteArray()))
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2019 JetBrains s.r.o. and Kotlin Programming Language contributors.
+ * Use of this source code is governed by the Apache 2.0 license that can be found in the license/LICENSE.txt file.
+ */
+
+package org.jetbrains.kotlin.gradle.tasks
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class TaskOutputsBackupTest {
+    @Rule
+    @JvmField
+    var tmp = TemporaryFolder()
+
+    private lateinit var classesDir: File
+    private lateinit var localStateDir: File
+    private lateinit var backup: TaskOutputsBackup
+
+    @Before
+    fun setUp() {
+        classesDir = tmp.newFolder("classes")
+        localStateDir = tmp.newFolder("local-state")
+
+        File(classesDir, "foo/A.class").apply { parentFile.mkdirs() }.writeText("A")
+        File(classesDir, "foo/B.class").writeText("B")
+        File(localStateDir, "caches/lookups.tab").apply { parentFile.mkdirs() }.writeText("lookups")
+
+        backup = TaskOutputsBackup(listOf(classesDir), listOf(localStateDir), File(tmp.root, "backup"))
+    }
+
+    @Test
+    fun testRestoreChangedOutputs() {
+        File(classesDir, "foo/A.class").run {
+            delete()
+            writeText("A changed")
+        }
+        File(classesDir, "foo/B.class").delete()
+        File(classesDir, "bar/C.class").apply { parentFile.mkdirs() }.writeText("C")
+        File(localStateDir, "caches/lookups.tab").appendText(" changed")
+
+        backup.restoreOutputs()
+
+        assertEquals(mapOf("foo/A.class" to "A", "foo/B.class" to "B"), classesDir.contents())
+        assertFalse(File(classesDir, "bar").exists())
+        assertEquals(mapOf("caches/lookups.tab" to "lookups"), localStateDir.contents())
+    }
+
+    @Test
+    fun testOutputModifiedInPlaceIsDeleted() {
+        File(classesDir, "foo/A.class").appendText(" changed")
+        backup.outputItemsCollector.add(emptyList(), File(classesDir, "foo/B.class"))
+
+        backup.restoreOutputs()
+
+        assertEquals(emptyMap<String, String>(), classesDir.contents())
+    }
+
+    @Test
+    fun testOutputRewrittenInPlaceIsRestored() {
+        val moduleFile = File(classesDir, "META-INF/main.kotlin_module").apply { parentFile.mkdirs() }
+        moduleFile.writeText("module")
+        backup = TaskOutputsBackup(listOf(classesDir), listOf(localStateDir), File(tmp.root, "backup"))
+
+        // the same inode, size and timestamp, as if the compiler has rewritten module mappings in place within the timestamp precision
+        val lastModified = moduleFile.lastModified()
+        moduleFile.writeText("MODULE")
+        moduleFile.setLastModified(lastModified)
+
+        backup.restoreOutputs()
+
+        assertEquals(
+            mapOf("foo/A.class" to "A", "foo/B.class" to "B", "META-INF/main.kotlin_module" to "module"),
+            classesDir.contents()
+        )
+    }
+
+    @Test
+    fun testDeleteSnapshot() {
+        backup.deleteSnapshot()
+
+        assertFalse(File(tmp.root, "backup").exists())
+        assertEquals(mapOf("foo/A.class" to "A", "foo/B.class" to "B"), classesDir.contents())
+    }
+
+    private fun File.contents(): Map<String, String> =
+        walk().filter { it.isFile }.associate { it.relativeTo(this).invariantSeparatorsPath to it.readText() }
+}
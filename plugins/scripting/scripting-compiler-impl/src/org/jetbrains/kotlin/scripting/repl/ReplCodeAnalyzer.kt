@@ -7,6 +7,7 @@
 
 package org.jetbrains.kotlin.scripting.repl
 
+import org.jetbrains.annotations.TestOnly
 import org.jetbrains.kotlin.cli.common.repl.CompiledReplCodeLine
 import org.jetbrains.kotlin.cli.common.repl.ILineId
 import org.jetbrains.kotlin.cli.common.repl.ReplCodeLine
@@ -15,11 +16,14 @@ import org.jetbrains.kotlin.cli.jvm.compiler.KotlinCoreEnvironment
 import org.jetbrains.kotlin.cli.jvm.compiler.NoScopeRecordCliBindingTrace
 import org.jetbrains.kotlin.cli.jvm.compiler.TopDownAnalyzerFacadeForJVM
 import org.jetbrains.kotlin.container.get
-import org.jetbrains.kotlin.descriptors.ClassDescriptorWithResolutionScopes
+import org.jetbrains.kotlin.descriptors.*
 import org.jetbrains.kotlin.descriptors.impl.ModuleDescriptorImpl
 import org.jetbrains.kotlin.diagnostics.Severity
+import org.jetbrains.kotlin.incremental.components.LookupLocation
 import org.jetbrains.kotlin.name.FqName
-import org.jetbrains.kotlin.psi.KtFile
+import org.jetbrains.kotlin.name.Name
+import org.jetbrains.kotlin.psi.*
+import org.jetbrains.kotlin.psi.psiUtil.visibilityModifier
 import org.jetbrains.kotlin.resolve.BindingTraceContext
 import org.jetbrains.kotlin.resolve.LazyTopDownAnalyzer
 import org.jetbrains.kotlin.resolve.TopDownAnalysisContext
@@ -29,10 +33,11 @@ import org.jetbrains.kotlin.resolve.diagnostics.Diagnostics
 import org.jetbrains.kotlin.resolve.lazy.*
 import org.jetbrains.kotlin.resolve.lazy.data.KtClassLikeInfo
 import org.jetbrains.kotlin.resolve.lazy.declarations.*
-import org.jetbrains.kotlin.resolve.scopes.ImportingScope
+import org.jetbrains.kotlin.resolve.scopes.*
 import org.jetbrains.kotlin.resolve.scopes.utils.parentsWithSelf
-import org.jetbrains.kotlin.resolve.scopes.utils.replaceImportingScopes
 import org.jetbrains.kotlin.scripting.definitions.ScriptPriorities
+import org.jetbrains.kotlin.utils.Printer
+import org.jetbrains.kotlin.utils.addToStdlib.firstNotNullResult
 
 class ReplCodeAnalyzer(environment: KotlinCoreEnvironment) {
     private val topDownAnalysisContext: TopDownAnalysisContext
@@ -84,6 +89,12 @@ class ReplCodeAnalyzer(environment: KotlinCoreEnvironment) {
 
     fun reset(): List<ReplCodeLine> = replState.reset()
 
+    /**
+     * The number of previous lines in which a new line looks up the [name].
+     */
+    @TestOnly
+    fun countPreviousLinesDeclaring(name: String): Int = replState.countLiveLinesDeclaring(Name.identifier(name))
+
     fun analyzeReplLine(psiFile: KtFile, codeLine: ReplCodeLine): ReplLineAnalysisResult {
         topDownAnalysisContext.scripts.clear()
         trace.clearDiagnostics()
@@ -114,20 +125,11 @@ class ReplCodeAnalyzer(environment: KotlinCoreEnvironment) {
 
     private class ScriptMutableDeclarationProviderFactory : DeclarationProviderFactory {
         private lateinit var delegateFactory: DeclarationProviderFactory
-        private lateinit var rootPackageProvider: AdaptablePackageMemberDeclarationProvider
+        private val rootPackageProvider = ReplPackageMemberDeclarationProvider()
 
         fun setDelegateFactory(delegateFactory: DeclarationProviderFactory) {
             this.delegateFactory = delegateFactory
-
-            val provider = delegateFactory.getPackageMemberDeclarationProvider(FqName.ROOT)!!
-            try {
-                rootPackageProvider.addDelegateProvider(provider)
-            } catch (e: UninitializedPropertyAccessException) {
-                rootPackageProvider =
-                    AdaptablePackageMemberDeclarationProvider(
-                        provider
-                    )
-            }
+            rootPackageProvider.addLineProvider(delegateFactory.getPackageMemberDeclarationProvider(FqName.ROOT)!!)
         }
 
         override fun getClassMemberDeclarationProvider(classLikeInfo: KtClassLikeInfo): ClassMemberDeclarationProvider {
@@ -146,14 +148,46 @@ class ReplCodeAnalyzer(environment: KotlinCoreEnvironment) {
             delegateFactory.diagnoseMissingPackageFragment(fqName, file)
         }
 
-        class AdaptablePackageMemberDeclarationProvider(
-            private var delegateProvider: PackageMemberDeclarationProvider
-        ) : org.jetbrains.kotlin.scripting.repl.DelegatePackageMemberDeclarationProvider(delegateProvider) {
-            fun addDelegateProvider(provider: PackageMemberDeclarationProvider) {
-                delegateProvider = CombinedPackageMemberDeclarationProvider(listOf(provider, delegateProvider))
-
-                delegate = delegateProvider
+        // Combines the root package providers of all lines, the latest line first. Lookups by name only query the lines which declare
+        // the name, so they don't depend on the length of the history
+        class ReplPackageMemberDeclarationProvider : PackageMemberDeclarationProvider {
+            private val providers = ArrayList<PackageMemberDeclarationProvider>()
+            private val providersByName = HashMap<Name, ArrayList<PackageMemberDeclarationProvider>>()
+            private val files = LinkedHashSet<KtFile>()
+
+            fun addLineProvider(provider: PackageMemberDeclarationProvider) {
+                providers.add(0, provider)
+                for (name in provider.getDeclarationNames()) {
+                    providersByName.getOrPut(name) { ArrayList(1) }.add(0, provider)
+                }
+                files.addAll(provider.getPackageFiles())
             }
+
+            private inline fun <T> collect(name: Name, declarations: (PackageMemberDeclarationProvider) -> Collection<T>): List<T> =
+                providersByName[name]?.flatMap(declarations).orEmpty()
+
+            override fun getAllDeclaredSubPackages(nameFilter: (Name) -> Boolean) = providers.flatMap { it.getAllDeclaredSubPackages(nameFilter) }
+
+            override fun getPackageFiles(): Collection<KtFile> = files
+
+            override fun containsFile(file: KtFile) = file in files
+
+            override fun getDeclarations(kindFilter: DescriptorKindFilter, nameFilter: (Name) -> Boolean) =
+                providers.flatMap { it.getDeclarations(kindFilter, nameFilter) }
+
+            override fun getFunctionDeclarations(name: Name) = collect(name) { it.getFunctionDeclarations(name) }
+
+            override fun getPropertyDeclarations(name: Name) = collect(name) { it.getPropertyDeclarations(name) }
+
+            override fun getDestructuringDeclarationsEntries(name: Name) = collect(name) { it.getDestructuringDeclarationsEntries(name) }
+
+            override fun getClassOrObjectDeclarations(name: Name) = collect(name) { it.getClassOrObjectDeclarations(name) }
+
+            override fun getScriptDeclarations(name: Name) = collect(name) { it.getScriptDeclarations(name) }
+
+            override fun getTypeAliasDeclarations(name: Name) = collect(name) { it.getTypeAliasDeclarations(name) }
+
+            override fun getDeclarationNames(): Set<Name> = providersByName.keys
         }
     }
 
@@ -162,22 +196,25 @@ class ReplCodeAnalyzer(environment: KotlinCoreEnvironment) {
     class ResettableAnalyzerState {
         private val successfulLines = ReplHistory<LineInfo.SuccessfulLine>()
         private val submittedLines = hashMapOf<KtFile, LineInfo>()
+        private val liveLines = LiveLinesIndex()
 
         fun resetToLine(lineId: ILineId): List<ReplCodeLine> {
             val removed = successfulLines.resetToLine(lineId.no)
             removed.forEach { submittedLines.remove(it.second.linePsi) }
+            liveLines.rebuild(successfulLines.copyValues())
             return removed.map { it.first }
         }
 
         fun reset(): List<ReplCodeLine> {
             submittedLines.clear()
+            liveLines.rebuild(emptyList())
             return successfulLines.reset().map { it.first }
         }
 
         fun submitLine(ktFile: KtFile, codeLine: ReplCodeLine) {
             val line = LineInfo.SubmittedLine(
                 ktFile,
-                successfulLines.lastValue()
+                liveLines.snapshot()
             )
             submittedLines[ktFile] = line
             ktFile.fileScopesCustomizer = object : FileScopesCustomizer {
@@ -190,44 +227,209 @@ class ReplCodeAnalyzer(environment: KotlinCoreEnvironment) {
         fun lineSuccess(ktFile: KtFile, codeLine: ReplCodeLine, scriptDescriptor: ClassDescriptorWithResolutionScopes) {
             val successfulLine = LineInfo.SuccessfulLine(
                 ktFile,
-                successfulLines.lastValue(),
-                scriptDescriptor
+                lineInfo(ktFile)?.previousLines ?: liveLines.snapshot(),
+                scriptDescriptor,
+                codeLine.no
             )
             submittedLines[ktFile] = successfulLine
             successfulLines.add(CompiledReplCodeLine(ktFile.name, codeLine), successfulLine)
+            liveLines.add(successfulLine)
         }
 
         fun lineFailure(ktFile: KtFile, codeLine: ReplCodeLine) {
             submittedLines[ktFile] = LineInfo.FailedLine(
                 ktFile,
-                successfulLines.lastValue()
+                lineInfo(ktFile)?.previousLines ?: liveLines.snapshot()
             )
         }
 
+        @TestOnly
+        fun countLiveLinesDeclaring(name: Name): Int = liveLines.linesDeclaring(name).size
+
         private fun lineInfo(ktFile: KtFile) = submittedLines[ktFile]
 
         // use sealed?
         private sealed class LineInfo {
             abstract val linePsi: KtFile
-            abstract val parentLine: SuccessfulLine?
+            abstract val previousLines: PreviousLines
 
-            class SubmittedLine(override val linePsi: KtFile, override val parentLine: SuccessfulLine?) : LineInfo()
+            class SubmittedLine(override val linePsi: KtFile, override val previousLines: PreviousLines) : LineInfo()
             class SuccessfulLine(
                 override val linePsi: KtFile,
-                override val parentLine: SuccessfulLine?,
-                val lineDescriptor: ClassDescriptorWithResolutionScopes
-            ) : LineInfo()
+                override val previousLines: PreviousLines,
+                val lineDescriptor: ClassDescriptorWithResolutionScopes,
+                val lineNo: Int
+            ) : LineInfo() {
+                val declarations = LineDeclarations(linePsi.script!!, (lineDescriptor as? ScriptDescriptor)?.resultValue)
+
+                val importingScope: ImportingScope by lazy(LazyThreadSafetyMode.NONE) {
+                    lineDescriptor.scopeForInitializerResolution.parentsWithSelf.first { it is ImportingScope } as ImportingScope
+                }
+
+                // the same member and static scopes as the ones the line script creates for itself, see ClassResolutionScopesSupport;
+                // they are only visited via PreviousLinesScope, so their parent doesn't matter
+                @Suppress("DEPRECATION")
+                val scopes: List<LexicalScope> by lazy(LazyThreadSafetyMode.NONE) {
+                    val memberScope = LexicalScopeImpl(
+                        ImportingScope.Empty, lineDescriptor, true, lineDescriptor.thisAsReceiverParameter, LexicalScopeKind.CLASS_MEMBER_SCOPE
+                    )
+                    if (!declarations.hasClassifiers) listOf(memberScope)
+                    else listOf(
+                        memberScope,
+                        LexicalChainedScope(
+                            ImportingScope.Empty, lineDescriptor, false, null, LexicalScopeKind.CLASS_INHERITANCE,
+                            listOf(lineDescriptor.staticScope, lineDescriptor.unsubstitutedInnerClassesScope),
+                            isStaticScope = true
+                        )
+                    )
+                }
+            }
+
+            class FailedLine(override val linePsi: KtFile, override val previousLines: PreviousLines) : LineInfo()
+        }
+
+        /**
+         * Previous lines which are visible from a line: the lines which declare each name that isn't shadowed by later lines,
+         * the latest first, and the last line with import directives, whose importing scope includes all earlier imports.
+         */
+        private class PreviousLines(val linesByName: Map<Name, List<LineInfo.SuccessfulLine>>, val lastLineWithImports: LineInfo.SuccessfulLine?)
+
+        private class LineDeclarations(script: KtScript, resultValue: PropertyDescriptor?) {
+            // names of properties which are not visible anymore if a later line declares a property with the same name
+            val shadowableNames = LinkedHashSet<Name>()
+
+            // names of all other declarations and of the result value: functions can be overloaded by later lines,
+            // and extensions and declarations with an explicit visibility don't shadow anything
+            val otherNames = LinkedHashSet<Name>()
+
+            var hasClassifiers = false
+                private set
+
+            val hasImports = script.containingKtFile.importDirectives.isNotEmpty()
+
+            init {
+                resultValue?.let { otherNames.add(it.name) }
+
+                for (declaration in script.declarations) {
+                    when (declaration) {
+                        is KtScriptInitializer -> {
+                        }
+                        // a property with an explicit visibility may be invisible in later lines, and then it doesn't shadow anything
+                        is KtProperty ->
+                            if (declaration.receiverTypeReference == null && declaration.visibilityModifier() == null) {
+                                shadowableNames.add(declaration.nameAsSafeName)
+                            } else {
+                                otherNames.add(declaration.nameAsSafeName)
+                            }
+                        is KtDestructuringDeclaration ->
+                            if (declaration.visibilityModifier() == null) declaration.entries.mapTo(shadowableNames) { it.nameAsSafeName }
+                            else declaration.entries.mapTo(otherNames) { it.nameAsSafeName }
+                        is KtClassOrObject, is KtTypeAlias -> {
+                            hasClassifiers = true
+                            otherNames.add(declaration.nameAsSafeName)
+                        }
+                        is KtNamedDeclaration -> otherNames.add(declaration.nameAsSafeName)
+                    }
+                }
+            }
+        }
+
+        private class LiveLinesIndex {
+            // the lines which declare each name, the latest first; the lists are not modified, so that snapshots can share them
+            private val linesByName = HashMap<Name, List<LineInfo.SuccessfulLine>>()
+            private val propertyOwners = HashMap<Name, LineInfo.SuccessfulLine>()
+            private var lastLineWithImports: LineInfo.SuccessfulLine? = null
+
+            fun add(line: LineInfo.SuccessfulLine) {
+                val declarations = line.declarations
+                if (declarations.hasImports) {
+                    lastLineWithImports = line
+                }
+
+                for (name in declarations.shadowableNames) {
+                    val shadowedLine = propertyOwners.put(name, line) ?: continue
+                    if (name !in shadowedLine.declarations.otherNames) {
+                        linesByName[name] = linesDeclaring(name) - shadowedLine
+                    }
+                }
+
+                for (name in declarations.shadowableNames + declarations.otherNames) {
+                    linesByName[name] = listOf(line) + linesDeclaring(name)
+                }
+            }
+
+            fun linesDeclaring(name: Name): List<LineInfo.SuccessfulLine> = linesByName[name].orEmpty()
+
+            fun rebuild(history: List<LineInfo.SuccessfulLine>) {
+                linesByName.clear()
+                propertyOwners.clear()
+                lastLineWithImports = null
+                history.forEach(::add)
+            }
 
-            class FailedLine(override val linePsi: KtFile, override val parentLine: SuccessfulLine?) : LineInfo()
+            fun snapshot() = PreviousLines(HashMap(linesByName), lastLineWithImports)
+        }
+
+        /**
+         * The declarations of the previous lines. Call resolution looks up a name only in the lines which declare it,
+         * instead of a scope level for each line, so a lookup doesn't depend on the length of the history.
+         */
+        private class PreviousLinesScope(
+            override val parent: HierarchicalScope,
+            override val ownerDescriptor: DeclarationDescriptor,
+            private val linesByName: Map<Name, List<LineInfo.SuccessfulLine>>
+        ) : LexicalScopeWithNameIndex {
+            override val isOwnerDescriptorAccessibleByLabel: Boolean get() = false
+
+            override val implicitReceiver: ReceiverParameterDescriptor? get() = null
+
+            override val kind: LexicalScopeKind get() = LexicalScopeKind.CLASS_INHERITANCE
+
+            override val scopes: List<LexicalScope> by lazy(LazyThreadSafetyMode.NONE) {
+                linesByName.values.flatten().distinct().sortedByDescending { it.lineNo }.flatMap { it.scopes }
+            }
+
+            override fun getScopes(name: Name): List<LexicalScope> = linesByName[name]?.flatMap { it.scopes }.orEmpty()
+
+            override fun getContributedClassifier(name: Name, location: LookupLocation): ClassifierDescriptor? =
+                getScopes(name).firstNotNullResult { it.getContributedClassifier(name, location) }
+
+            override fun getContributedVariables(name: Name, location: LookupLocation): Collection<VariableDescriptor> =
+                getScopes(name).flatMap { it.getContributedVariables(name, location) }
+
+            override fun getContributedFunctions(name: Name, location: LookupLocation): Collection<FunctionDescriptor> =
+                getScopes(name).flatMap { it.getContributedFunctions(name, location) }
+
+            override fun getContributedDescriptors(
+                kindFilter: DescriptorKindFilter,
+                nameFilter: (Name) -> Boolean
+            ): Collection<DeclarationDescriptor> = scopes.flatMap { it.getContributedDescriptors(kindFilter, nameFilter) }
+
+            override fun definitelyDoesNotContainName(name: Name): Boolean = name !in linesByName
+
+            override fun printStructure(p: Printer) {
+                p.println(this::class.java.simpleName, " with ", linesByName.size, " names {")
+                p.pushIndent()
+                p.print("parent = ")
+                parent.printStructure(p.withholdIndentOnce())
+                p.popIndent()
+                p.println("}")
+            }
         }
 
         private fun computeFileScopes(lineInfo: LineInfo, fileScopeFactory: FileScopeFactory): FileScopes? {
-            // create scope that wraps previous line lexical scope and adds imports from this line
-            val lexicalScopeAfterLastLine = lineInfo.parentLine?.lineDescriptor?.scopeForInitializerResolution ?: return null
-            val lastLineImports = lexicalScopeAfterLastLine.parentsWithSelf.first { it is ImportingScope } as ImportingScope
-            val scopesForThisLine = fileScopeFactory.createScopesForFile(lineInfo.linePsi, lastLineImports)
-            val combinedLexicalScopes = lexicalScopeAfterLastLine.replaceImportingScopes(scopesForThisLine.importingScope)
-            return FileScopes(combinedLexicalScopes, scopesForThisLine.importingScope, scopesForThisLine.importForceResolver)
+            val previousLines = lineInfo.previousLines
+            if (previousLines.linesByName.isEmpty() && previousLines.lastLineWithImports == null) return null
+
+            // create scopes with imports from this line and from the previous lines,
+            // and wrap them into a single scope of the declarations of the previous lines
+            val scopesForThisLine = fileScopeFactory.createScopesForFile(lineInfo.linePsi, previousLines.lastLineWithImports?.importingScope)
+            val lexicalScope =
+                if (previousLines.linesByName.isEmpty()) scopesForThisLine.lexicalScope
+                else PreviousLinesScope(
+                    scopesForThisLine.lexicalScope, scopesForThisLine.lexicalScope.ownerDescriptor, previousLines.linesByName
+                )
+            return FileScopes(lexicalScope, scopesForThisLine.importingScope, scopesForThisLine.importForceResolver)
         }
     }
 }
@@ -29,6 +29,12 @@ class CliScriptDependenciesProvider(private val project: Project) : ScriptDepend
         calculateExternalDependencies(file)
     }
 
+    fun clearCache() {
+        cacheLock.write {
+            cache.clear()
+        }
+    }
+
     private fun calculateExternalDependencies(file: VirtualFile): ScriptDependencies? {
         val path = file.path
         val cached = cache[path]